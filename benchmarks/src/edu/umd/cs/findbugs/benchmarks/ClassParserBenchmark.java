@@ -0,0 +1,66 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.InvalidClassFileFormatException;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
+import edu.umd.cs.findbugs.classfile.engine.ClassParserUsingASM;
+
+/**
+ * Measures parsing every class file of the corpus into a ClassInfo with
+ * ClassParserUsingASM. The class files are read into memory during setup, so
+ * no I/O is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+public class ClassParserBenchmark {
+
+    @Benchmark
+    public void parseClasses(Corpus corpus, Blackhole blackhole) throws InvalidClassFileFormatException {
+        List<ClassDescriptor> classList = corpus.getClassList();
+        List<ICodeBaseEntry> entryList = corpus.getEntryList();
+        List<byte[]> bytesList = corpus.getBytesList();
+        for (int i = 0; i < classList.size(); i++) {
+            ClassParserUsingASM parser = new ClassParserUsingASM(new ClassReader(bytesList.get(i)), classList.get(i),
+                    entryList.get(i));
+            ClassInfo.Builder builder = new ClassInfo.Builder();
+            parser.parse(builder);
+            blackhole.consume(builder.build());
+        }
+    }
+}
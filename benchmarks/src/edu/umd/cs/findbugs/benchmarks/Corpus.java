@@ -0,0 +1,206 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.NoOpFindBugsProgress;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.CFG;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
+import edu.umd.cs.findbugs.io.IO;
+
+/**
+ * The classes analyzed by the benchmarks: one of the jar files in
+ * findbugs/lib, loaded into a fresh analysis cache the same way FindBugs2
+ * does. The jars in findbugs/lib are versioned with the sources, so numbers
+ * measured on different revisions are comparable. The directory containing
+ * the jars is given by the findbugs.benchmark.lib system property, and
+ * defaults to ../findbugs/lib (i.e., the benchmarks are run from the
+ * benchmarks directory).
+ *
+ * <p>
+ * Only methods for which a CFG can be built are included in the method list,
+ * so the benchmarks don't measure the cost of failing.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+    public static final String LIB_DIRECTORY_PROPERTY = "findbugs.benchmark.lib";
+
+    @Param({ "dom4j-1.6.1.jar", "jaxen-1.1.6.jar" })
+    public String jar;
+
+    private IClassPath classPath;
+
+    private IAnalysisCache analysisCache;
+
+    private AnalysisContext analysisContext;
+
+    private BugReporter bugReporter;
+
+    private List<ClassDescriptor> classList;
+
+    private List<ICodeBaseEntry> entryList;
+
+    private List<byte[]> bytesList;
+
+    private List<MethodDescriptor> methodList;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File file = new File(System.getProperty(LIB_DIRECTORY_PROPERTY, "../findbugs/lib"), jar);
+        if (!file.isFile()) {
+            throw new IOException("Benchmark corpus " + file.getAbsolutePath() + " not found; set " + LIB_DIRECTORY_PROPERTY);
+        }
+
+        Project project = new Project();
+        project.addFile(file.getPath());
+        bugReporter = new BugCollectionBugReporter(project);
+        bugReporter.setErrorVerbosity(BugReporter.SILENT);
+        bugReporter.setPriorityThreshold(Priorities.LOW_PRIORITY);
+
+        IClassFactory classFactory = ClassFactory.instance();
+        classPath = classFactory.createClassPath();
+
+        DetectorFactoryCollection detectorFactoryCollection = DetectorFactoryCollection.instance();
+        analysisCache = classFactory.createAnalysisCache(classPath, bugReporter);
+        FindBugs2.registerBuiltInAnalysisEngines(analysisCache);
+        FindBugs2.registerPluginAnalysisEngines(detectorFactoryCollection, analysisCache);
+        analysisCache.eagerlyPutDatabase(DetectorFactoryCollection.class, detectorFactoryCollection);
+        Global.setAnalysisCacheForCurrentThread(analysisCache);
+
+        FindBugs2.createAnalysisContext(project, Collections.<ClassDescriptor> emptyList(), null);
+        analysisContext = AnalysisContext.currentAnalysisContext();
+
+        IClassPathBuilder builder = classFactory.createClassPathBuilder(bugReporter);
+        builder.addCodeBase(classFactory.createFilesystemCodeBaseLocator(file.getPath()), true);
+        builder.build(classPath, new NoOpFindBugsProgress());
+        classList = builder.getAppClassList();
+        FindBugs2.setAppClassList(classList);
+
+        entryList = new ArrayList<ICodeBaseEntry>(classList.size());
+        bytesList = new ArrayList<byte[]>(classList.size());
+        methodList = new ArrayList<MethodDescriptor>();
+        for (ClassDescriptor classDescriptor : classList) {
+            ICodeBaseEntry entry = classPath.lookupResource(classDescriptor.toResourceName());
+            entryList.add(entry);
+            bytesList.add(IO.readAll(entry.openResource()));
+
+            XClass xclass = analysisCache.getClassAnalysis(XClass.class, classDescriptor);
+            for (XMethod xmethod : xclass.getXMethods()) {
+                if (xmethod.isAbstract() || xmethod.isNative()) {
+                    continue;
+                }
+                MethodDescriptor methodDescriptor = xmethod.getMethodDescriptor();
+                try {
+                    analysisCache.getMethodAnalysis(CFG.class, methodDescriptor);
+                } catch (CheckedAnalysisException e) {
+                    continue;
+                }
+                methodList.add(methodDescriptor);
+            }
+        }
+    }
+
+    /**
+     * Install the analysis cache and context as the current ones of the
+     * calling thread. JMH doesn't promise to run the trial setup and the
+     * iterations on the same thread.
+     */
+    @Setup(Level.Iteration)
+    public void enter() {
+        Global.setAnalysisCacheForCurrentThread(analysisCache);
+        AnalysisContext.setCurrentAnalysisContext(analysisContext);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        classPath.close();
+        AnalysisContext.removeCurrentAnalysisContext();
+        Global.removeAnalysisCacheForCurrentThread();
+    }
+
+    public IAnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
+    public BugReporter getBugReporter() {
+        return bugReporter;
+    }
+
+    /**
+     * @return the application classes of the corpus
+     */
+    public List<ClassDescriptor> getClassList() {
+        return classList;
+    }
+
+    /**
+     * @return the code base entries of the application classes, in the same
+     *         order as {@link #getClassList()}
+     */
+    public List<ICodeBaseEntry> getEntryList() {
+        return entryList;
+    }
+
+    /**
+     * @return the contents of the class files of the application classes, in
+     *         the same order as {@link #getClassList()}
+     */
+    public List<byte[]> getBytesList() {
+        return bytesList;
+    }
+
+    /**
+     * @return the methods of the application classes that have a CFG
+     */
+    public List<MethodDescriptor> getMethodList() {
+        return methodList;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.IsNullValueDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.TypeDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.ValueNumberDataflowFactory;
+
+/**
+ * Measures running the value number, type and null value dataflow analyses on
+ * every method of the corpus. The factories are invoked directly rather than
+ * through the analysis cache, so each invocation executes the measured
+ * analysis, while the analyses it depends on (the CFG, and for the null value
+ * analysis the value number and type analyses) are computed once during warmup
+ * and then come from the cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+public class DataflowBenchmark {
+
+    private final ValueNumberDataflowFactory valueNumberDataflowFactory = new ValueNumberDataflowFactory();
+
+    private final TypeDataflowFactory typeDataflowFactory = new TypeDataflowFactory();
+
+    private final IsNullValueDataflowFactory isNullValueDataflowFactory = new IsNullValueDataflowFactory();
+
+    @Benchmark
+    public void valueNumberAnalysis(Corpus corpus, Blackhole blackhole) {
+        analyzeAll(valueNumberDataflowFactory, corpus, blackhole);
+    }
+
+    @Benchmark
+    public void typeAnalysis(Corpus corpus, Blackhole blackhole) {
+        analyzeAll(typeDataflowFactory, corpus, blackhole);
+    }
+
+    @Benchmark
+    public void isNullValueAnalysis(Corpus corpus, Blackhole blackhole) {
+        analyzeAll(isNullValueDataflowFactory, corpus, blackhole);
+    }
+
+    private static void analyzeAll(AnalysisFactory<?> factory, Corpus corpus, Blackhole blackhole) {
+        IAnalysisCache analysisCache = corpus.getAnalysisCache();
+        for (MethodDescriptor methodDescriptor : corpus.getMethodList()) {
+            try {
+                blackhole.consume(factory.analyze(analysisCache, methodDescriptor));
+            } catch (CheckedAnalysisException e) {
+                // Same methods fail on every invocation
+                blackhole.consume(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umd.cs.findbugs.Detector2;
+import edu.umd.cs.findbugs.DetectorFactory;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+
+/**
+ * Measures one pass of a single detector over the corpus: a new instance of
+ * the detector visits every class, and then finishes the pass. The analyses
+ * the detector requests are computed during warmup and then come from the
+ * analysis cache, so only the detector's own work is measured. Detectors that
+ * rely on databases built by an earlier pass see those databases empty.
+ *
+ * <p>
+ * Other detectors may be benchmarked by giving their short names with
+ * <code>-p detector=...</code>.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DetectorBenchmark {
+
+    @Param({ "FindNullDeref", "FindDeadLocalStores", "FindRefComparison", "DumbMethods", "FindOpenStream",
+        "FindInconsistentSync2", "SwitchFallthrough" })
+    public String detector;
+
+    private DetectorFactory factory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        factory = DetectorFactoryCollection.instance().getFactory(detector);
+        if (factory == null) {
+            throw new IllegalArgumentException("No detector named " + detector);
+        }
+    }
+
+    @Benchmark
+    public void visitClasses(Corpus corpus) throws CheckedAnalysisException {
+        Detector2 detector2 = factory.createDetector2(corpus.getBugReporter());
+        for (ClassDescriptor classDescriptor : corpus.getClassList()) {
+            detector2.visitClass(classDescriptor);
+        }
+        detector2.finishPass();
+    }
+}
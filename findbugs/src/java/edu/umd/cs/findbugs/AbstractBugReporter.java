@@ -35,6 +35,7 @@ import javax.annotation.WillClose;
 
 import org.dom4j.DocumentException;
 
+import edu.umd.cs.findbugs.ba.AnalysisBudgetExceededException;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassNotFoundExceptionParser;
 import edu.umd.cs.findbugs.ba.MethodUnprofitableException;
@@ -295,7 +296,7 @@ public abstract class AbstractBugReporter implements BugReporter {
     /**
      * @param message
      */
-    private void logMissingClass(String message) {
+    private synchronized void logMissingClass(String message) {
         if (!isValidMissingClassMessage(message)) {
             return;
         }
@@ -313,7 +314,7 @@ public abstract class AbstractBugReporter implements BugReporter {
     }
 
     @Override
-    public void logError(String message) {
+    public synchronized void logError(String message) {
         if (verbosityLevel == SILENT) {
             return;
         }
@@ -339,9 +340,9 @@ public abstract class AbstractBugReporter implements BugReporter {
     }
 
     @Override
-    public void logError(String message, Throwable e) {
+    public synchronized void logError(String message, Throwable e) {
 
-        if (e instanceof MethodUnprofitableException) {
+        if (e instanceof MethodUnprofitableException || e instanceof AnalysisBudgetExceededException) {
             // TODO: log this
             return;
         }
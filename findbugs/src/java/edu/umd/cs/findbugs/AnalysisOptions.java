@@ -19,6 +19,8 @@
 
 package edu.umd.cs.findbugs;
 
+import java.util.Collection;
+
 import edu.umd.cs.findbugs.config.AnalysisFeatureSetting;
 import edu.umd.cs.findbugs.config.UserPreferences;
 
@@ -76,6 +78,28 @@ public class AnalysisOptions {
      */
     public boolean noClassOk;
 
+    /**
+     * Number of threads used to apply stateless detectors to classes
+     */
+    public int threads = 1;
+
+    /**
+     * Directory keeping the analysis results of unchanged classes between
+     * runs, or null
+     */
+    public String analysisResultCacheDir;
+
+    /**
+     * Previous analysis results for incremental analysis, or null
+     */
+    public String incrementalBaseline;
+
+    /**
+     * Changed classes (class names or class file names) for incremental
+     * analysis
+     */
+    public Collection<String> changedClasses;
+
     String releaseName;
 
     String projectName;
@@ -0,0 +1,645 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import edu.umd.cs.findbugs.ParallelAnalysisPass.ClassResult;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.AnalysisFeatures;
+import edu.umd.cs.findbugs.ba.ClassHash;
+import edu.umd.cs.findbugs.ba.FieldSummary;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XFactory;
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.analysis.ClassNameAndSuperclassInfo;
+import edu.umd.cs.findbugs.classfile.engine.ClassParser;
+import edu.umd.cs.findbugs.detect.FindNoSideEffectMethods.NoSideEffectMethodsDatabase;
+import edu.umd.cs.findbugs.plan.AnalysisPass;
+import edu.umd.cs.findbugs.plan.ExecutionPlan;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Keeps what detectors computed for each class in a directory, so that later
+ * runs can skip applying them to classes which have not changed. For the
+ * first pass, these are the contributions of the
+ * {@link CacheableFirstPassDetector}s to the databases; for later passes, the
+ * warnings reported by the stateless detectors.
+ *
+ * <p>
+ * The entry for a class in a pass is keyed by
+ * <ul>
+ * <li>the FindBugs release, the versions of the plugins, the detectors in all
+ * passes and the analysis feature settings;</li>
+ * <li>the bytes of the class, and those of the classes it references and their
+ * supertypes (its dependencies);</li>
+ * <li>the names, {@link ClassHash}es and access flags of the subtypes of the
+ * class and of the classes it references, other than its own supertypes and
+ * <code>java.lang.Object</code>. These only change when a subtype or one of
+ * its members is added, removed or renamed, and tell which methods may be
+ * overridden;</li>
+ * <li>after the first pass, the facts the first pass found about the class and
+ * its dependencies: field summaries, called methods, side effects and the
+ * like. These depend on other classes as well, but only change if those
+ * changes matter to the class.</li>
+ * </ul>
+ * The digests of the classes are computed once per run. Detectors which keep
+ * state between classes are always run. A stateless detector which reads other
+ * databases built by the first pass must add them to
+ * {@link #computeFactsDigest(ClassDescriptor)}.
+ * </p>
+ *
+ * <p>
+ * Entries which haven't been used for
+ * <code>findbugs.analysisResultCache.maxAgeDays</code> days (30 by default)
+ * are deleted at the end of a run, and then the least recently used ones, as
+ * long as the cache holds more than
+ * <code>findbugs.analysisResultCache.maxSizeMB</code> megabytes (1024 by
+ * default).
+ * </p>
+ *
+ * @see FindBugs2
+ */
+final class AnalysisResultCache {
+
+    private static final boolean DEBUG = SystemProperties.getBoolean("findbugs.analysisResultCache.debug");
+
+    private static final int MAX_AGE_DAYS = SystemProperties.getInt("findbugs.analysisResultCache.maxAgeDays", 30);
+
+    private static final int MAX_SIZE_MB = SystemProperties.getInt("findbugs.analysisResultCache.maxSizeMB", 1024);
+
+    private static final String SUFFIX = ".bugs";
+
+    /** Change when the format of the entries changes */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] MISSING = "missing".getBytes(UTF8);
+
+    private static final ClassDescriptor OBJECT = DescriptorFactory.createClassDescriptor("java/lang/Object");
+
+    private final File directory;
+
+    private final BugReporter bugReporter;
+
+    private final byte[] configurationDigest;
+
+    private final Set<ClassDescriptor> programClasses;
+
+    private final Map<ClassDescriptor, ClassDigest> classDigests = new HashMap<ClassDescriptor, ClassDigest>();
+
+    private final Map<ClassDescriptor, Set<ClassDescriptor>> supertypes = new HashMap<ClassDescriptor, Set<ClassDescriptor>>();
+
+    private final Map<ClassDescriptor, Set<ClassDescriptor>> subtypes = new HashMap<ClassDescriptor, Set<ClassDescriptor>>();
+
+    private final Map<ClassDescriptor, byte[]> shapeDigests = new HashMap<ClassDescriptor, byte[]>();
+
+    /** Digests of the first pass facts about classes, in the current pass */
+    private final Map<ClassDescriptor, byte[]> factsDigests = new HashMap<ClassDescriptor, byte[]>();
+
+    /** Keys of the entries of the current pass */
+    private final Map<ClassDescriptor, byte[]> keys = new HashMap<ClassDescriptor, byte[]>();
+
+    private int currentPass = -1;
+
+    private boolean errorLogged;
+
+    /**
+     * The digest of the bytes of a class, and the classes it references.
+     */
+    private static final class ClassDigest {
+        final byte[] digest;
+
+        final Collection<ClassDescriptor> referencedClasses;
+
+        ClassDigest(byte[] digest, Collection<ClassDescriptor> referencedClasses) {
+            this.digest = digest;
+            this.referencedClasses = referencedClasses;
+        }
+    }
+
+    /**
+     * Open the cache for a run.
+     *
+     * @param directory
+     *            the cache directory; created if it does not exist
+     * @param executionPlan
+     *            the execution plan
+     * @param programClasses
+     *            the classes analyzed by the first pass
+     * @param analysisOptions
+     *            the analysis options
+     * @param bugReporter
+     *            the BugReporter, for logging errors
+     * @return the cache, or null if the directory can't be used
+     */
+    static @CheckForNull AnalysisResultCache open(File directory, ExecutionPlan executionPlan,
+            Collection<ClassDescriptor> programClasses, AnalysisOptions analysisOptions, BugReporter bugReporter) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            bugReporter.logError("Can't create analysis result cache directory " + directory);
+            return null;
+        }
+        return new AnalysisResultCache(directory, computeConfigurationDigest(executionPlan, analysisOptions), programClasses,
+                bugReporter);
+    }
+
+    private AnalysisResultCache(File directory, byte[] configurationDigest, Collection<ClassDescriptor> programClasses,
+            BugReporter bugReporter) {
+        this.directory = directory;
+        this.configurationDigest = configurationDigest;
+        this.programClasses = new HashSet<ClassDescriptor>(programClasses);
+        this.bugReporter = bugReporter;
+        for (ClassDescriptor c : programClasses) {
+            for (ClassDescriptor supertype : getSupertypes(c)) {
+                Set<ClassDescriptor> s = subtypes.get(supertype);
+                if (s == null) {
+                    s = new TreeSet<ClassDescriptor>();
+                    subtypes.put(supertype, s);
+                }
+                s.add(c);
+            }
+        }
+    }
+
+    /**
+     * Find the detectors of a pass whose first pass contributions can be
+     * cached.
+     *
+     * @param detectorList
+     *            the detectors of the pass
+     * @return for each detector, the detector as a CacheableFirstPassDetector,
+     *         or null if it isn't one
+     */
+    static CacheableFirstPassDetector[] findCacheableDetectors(Detector2[] detectorList) {
+        CacheableFirstPassDetector[] result = new CacheableFirstPassDetector[detectorList.length];
+        for (int i = 0; i < detectorList.length; i++) {
+            Object detector = detectorList[i];
+            if (detector instanceof DetectorToDetector2Adapter) {
+                detector = ((DetectorToDetector2Adapter) detector).getDetector();
+            }
+            if (detector instanceof CacheableFirstPassDetector) {
+                result[i] = (CacheableFirstPassDetector) detector;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Look up what was computed for classes in a pass of an earlier run. This
+     * also computes the keys under which the results of this pass are stored,
+     * so for passes after the first it must be called after the first pass
+     * has finished.
+     *
+     * @param passCount
+     *            number of the pass
+     * @param classes
+     *            the classes
+     * @return the results of the classes found in the cache
+     */
+    Map<ClassDescriptor, ClassResult> lookup(int passCount, Collection<ClassDescriptor> classes) {
+        if (passCount != currentPass) {
+            currentPass = passCount;
+            keys.clear();
+            factsDigests.clear();
+        }
+        long startTime = System.currentTimeMillis();
+        Map<ClassDescriptor, ClassResult> result = new HashMap<ClassDescriptor, ClassResult>();
+        for (ClassDescriptor classDescriptor : classes) {
+            byte[] key = computeKey(classDescriptor);
+            keys.put(classDescriptor, key);
+            ClassResult classResult = read(getFile(key));
+            if (classResult != null) {
+                result.put(classDescriptor, classResult);
+            }
+        }
+        if (DEBUG) {
+            System.out.printf("Analysis result cache: pass %d, %d of %d classes found in %d ms%n", passCount, result.size(),
+                    classes.size(), System.currentTimeMillis() - startTime);
+        }
+        return result;
+    }
+
+    /**
+     * Save what was computed for a class in the current pass.
+     *
+     * @param classDescriptor
+     *            the class, which must have been looked up in this pass
+     * @param result
+     *            warnings reported by the stateless detectors, or the
+     *            contributions of the cacheable first pass detectors
+     */
+    void store(ClassDescriptor classDescriptor, ClassResult result) {
+        byte[] key = keys.get(classDescriptor);
+        if (key == null) {
+            throw new IllegalStateException(classDescriptor + " wasn't looked up in pass " + currentPass);
+        }
+        File file = getFile(key);
+        File temp = new File(directory, file.getName() + ".tmp" + Thread.currentThread().getId());
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp))));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeObject(result);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                // Another FindBugs process may have written it meanwhile
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new FileNotFoundException("Can't rename " + temp + " to " + file);
+                }
+            }
+        } catch (IOException e) {
+            temp.delete();
+            logError("Couldn't write analysis result cache entry " + file, e);
+        }
+    }
+
+    /**
+     * Delete the entries which haven't been used for too long, and then the
+     * least recently used ones while the cache is too big.
+     */
+    void prune() {
+        prune(directory, System.currentTimeMillis() - MAX_AGE_DAYS * 24L * 60 * 60 * 1000, MAX_SIZE_MB * 1024L * 1024);
+    }
+
+    /**
+     * Delete the entries of a cache directory last used before a given time,
+     * and then the least recently used ones while the others take more than a
+     * given size.
+     *
+     * @param directory
+     *            the cache directory
+     * @param oldest
+     *            time of the oldest entries to keep
+     * @param maxSize
+     *            total size of the entries to keep, in bytes
+     * @return the number of entries deleted
+     */
+    static int prune(File directory, long oldest, long maxSize) {
+        File[] entries = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(SUFFIX);
+            }
+        });
+        if (entries == null) {
+            return 0;
+        }
+        final Map<File, Long> lastModified = new HashMap<File, Long>();
+        for (File entry : entries) {
+            lastModified.put(entry, entry.lastModified());
+        }
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return lastModified.get(f2).compareTo(lastModified.get(f1));
+            }
+        });
+        int deleted = 0;
+        long size = 0;
+        for (File entry : entries) {
+            size += entry.length();
+            if ((lastModified.get(entry) < oldest || size > maxSize) && entry.delete()) {
+                deleted++;
+            }
+        }
+        if (DEBUG) {
+            System.out.printf("Analysis result cache: deleted %d of %d entries%n", deleted, entries.length);
+        }
+        return deleted;
+    }
+
+    /**
+     * BugReporter which passes on all warnings, and records those of the
+     * detector being applied to a class.
+     */
+    static final class RecordingBugReporter extends DelegatingBugReporter {
+        private ClassResult recording;
+
+        private int detectorIndex;
+
+        RecordingBugReporter(BugReporter delegate) {
+            super(delegate);
+        }
+
+        void startRecording(ClassResult result, int detectorIndex) {
+            this.recording = result;
+            this.detectorIndex = detectorIndex;
+        }
+
+        void stopRecording() {
+            recording = null;
+        }
+
+        @Override
+        public void reportBug(@Nonnull BugInstance bugInstance) {
+            if (recording != null) {
+                recording.add(detectorIndex, bugInstance);
+            }
+            super.reportBug(bugInstance);
+        }
+    }
+
+    private @CheckForNull ClassResult read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+            try {
+                if (in.readInt() != FORMAT_VERSION) {
+                    return null;
+                }
+                ClassResult result = (ClassResult) in.readObject();
+                // Entries are pruned by the time they were last used
+                file.setLastModified(System.currentTimeMillis());
+                return result;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logError("Couldn't read analysis result cache entry " + file, e);
+        } catch (ClassNotFoundException e) {
+            logError("Couldn't read analysis result cache entry " + file, e);
+        } catch (ClassCastException e) {
+            logError("Couldn't read analysis result cache entry " + file, e);
+        }
+        return null;
+    }
+
+    private void logError(String message, Exception e) {
+        if (!errorLogged) {
+            errorLogged = true;
+            bugReporter.logError(message, e);
+        }
+    }
+
+    private File getFile(byte[] key) {
+        return new File(directory, ClassHash.hashToString(key) + SUFFIX);
+    }
+
+    private byte[] computeKey(ClassDescriptor classDescriptor) {
+        MessageDigest digest = Util.getMD5Digest();
+        digest.update(configurationDigest);
+        digest.update((byte) currentPass);
+        digest.update(classDescriptor.getClassName().getBytes(UTF8));
+        ClassDigest classDigest = getClassDigest(classDescriptor);
+        digest.update(classDigest.digest);
+
+        // The referenced classes and the supertypes of all of them
+        Set<ClassDescriptor> dependencies = new TreeSet<ClassDescriptor>(classDigest.referencedClasses);
+        for (ClassDescriptor c : classDigest.referencedClasses) {
+            dependencies.addAll(getSupertypes(c));
+        }
+        dependencies.addAll(getSupertypes(classDescriptor));
+        dependencies.remove(classDescriptor);
+        for (ClassDescriptor dependency : dependencies) {
+            digest.update(dependency.getClassName().getBytes(UTF8));
+            digest.update(programClasses.contains(dependency) ? getClassDigest(dependency).digest : MISSING);
+        }
+
+        // Subtypes of the class and of the classes it uses
+        Set<ClassDescriptor> overridable = new TreeSet<ClassDescriptor>(classDigest.referencedClasses);
+        overridable.removeAll(getSupertypes(classDescriptor));
+        overridable.remove(OBJECT);
+        overridable.add(classDescriptor);
+        for (ClassDescriptor c : overridable) {
+            Set<ClassDescriptor> s = subtypes.get(c);
+            if (s != null) {
+                for (ClassDescriptor subtype : s) {
+                    digest.update(subtype.getClassName().getBytes(UTF8));
+                    digest.update(getShapeDigest(subtype));
+                }
+            }
+        }
+
+        if (currentPass > 0) {
+            // The first pass has built the databases
+            digest.update(getFactsDigest(classDescriptor));
+            for (ClassDescriptor dependency : dependencies) {
+                digest.update(getFactsDigest(dependency));
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Get the supertypes of a class, not including the class itself. Classes
+     * which aren't analyzed have none.
+     */
+    private Set<ClassDescriptor> getSupertypes(ClassDescriptor classDescriptor) {
+        Set<ClassDescriptor> result = supertypes.get(classDescriptor);
+        if (result != null) {
+            return result;
+        }
+        result = new HashSet<ClassDescriptor>();
+        if (programClasses.contains(classDescriptor)) {
+            try {
+                XClass xclass = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+                List<ClassDescriptor> direct = new ArrayList<ClassDescriptor>(Arrays.asList(xclass.getInterfaceDescriptorList()));
+                if (xclass.getSuperclassDescriptor() != null) {
+                    direct.add(xclass.getSuperclassDescriptor());
+                }
+                // Mark the class, in case the hierarchy has a cycle
+                supertypes.put(classDescriptor, Collections.<ClassDescriptor> emptySet());
+                for (ClassDescriptor c : direct) {
+                    result.add(c);
+                    result.addAll(getSupertypes(c));
+                }
+                result.remove(classDescriptor);
+            } catch (CheckedAnalysisException e) {
+                // Covered by the class digest
+            }
+        }
+        supertypes.put(classDescriptor, result);
+        return result;
+    }
+
+    private ClassDigest getClassDigest(ClassDescriptor classDescriptor) {
+        ClassDigest result = classDigests.get(classDescriptor);
+        if (result == null) {
+            result = computeClassDigest(classDescriptor);
+            classDigests.put(classDescriptor, result);
+        }
+        return result;
+    }
+
+    private static ClassDigest computeClassDigest(ClassDescriptor classDescriptor) {
+        final List<ClassDescriptor> referencedClasses = new ArrayList<ClassDescriptor>();
+        try {
+            ClassData classData = Global.getAnalysisCache().getClassAnalysis(ClassData.class, classDescriptor);
+            byte[] data = classData.getData();
+            ClassParser parser = new ClassParser(new DataInputStream(new ByteArrayInputStream(data)), classDescriptor,
+                    classData.getCodeBaseEntry());
+            parser.parse(new ClassNameAndSuperclassInfo.Builder() {
+                @Override
+                public void setReferencedClassDescriptors(Collection<ClassDescriptor> referencedClassDescriptorList) {
+                    referencedClasses.addAll(referencedClassDescriptorList);
+                }
+            });
+            return new ClassDigest(Util.getMD5Digest().digest(data), referencedClasses);
+        } catch (CheckedAnalysisException e) {
+            return new ClassDigest(MISSING, Collections.<ClassDescriptor> emptyList());
+        }
+    }
+
+    private byte[] getFactsDigest(ClassDescriptor classDescriptor) {
+        byte[] result = factsDigests.get(classDescriptor);
+        if (result == null) {
+            result = computeFactsDigest(classDescriptor);
+            factsDigests.put(classDescriptor, result);
+        }
+        return result;
+    }
+
+    /**
+     * Compute a digest of the facts which the databases built by the first
+     * pass hold about a class and its members.
+     */
+    private byte[] computeFactsDigest(ClassDescriptor classDescriptor) {
+        if (!programClasses.contains(classDescriptor)) {
+            return MISSING;
+        }
+        XClass xclass;
+        try {
+            xclass = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+        } catch (CheckedAnalysisException e) {
+            return MISSING;
+        }
+        FieldSummary fieldSummary = AnalysisContext.currentAnalysisContext().getFieldSummary();
+        XFactory xFactory = AnalysisContext.currentXFactory();
+        NoSideEffectMethodsDatabase noSideEffectMethods = Global.getAnalysisCache().getOptionalDatabase(
+                NoSideEffectMethodsDatabase.class);
+
+        StringBuilder buf = new StringBuilder();
+        buf.append(xFactory.isReflectiveClass(classDescriptor)).append(' ')
+        .append(fieldSummary.callsOverriddenMethodsFromConstructor(classDescriptor)).append(' ')
+        .append(fieldSummary.callsOverriddenMethodsFromSuperConstructor(classDescriptor)).append('\n');
+        for (XField field : xclass.getXFields()) {
+            buf.append(field.getName()).append(' ').append(xFactory.isEmptyArrayField(field)).append(' ')
+            .append(fieldSummary.isWrittenOutsideOfConstructor(field)).append(' ').append(fieldSummary.getSummary(field))
+            .append('\n');
+        }
+        for (XMethod method : xclass.getXMethods()) {
+            buf.append(method.getName()).append(method.getSignature()).append(' ').append(xFactory.isCalled(method)).append(' ')
+            .append(xFactory.isFunctionshatMightBeMistakenForProcedures(method.getMethodDescriptor()));
+            if (noSideEffectMethods != null) {
+                buf.append(' ').append(noSideEffectMethods.status(method.getMethodDescriptor()));
+            }
+            XMethod superCall = fieldSummary.getSuperCall(method);
+            if (superCall != null) {
+                buf.append(' ').append(superCall);
+            }
+            Set<String> fieldsWritten = new TreeSet<String>();
+            for (XField field : fieldSummary.getFieldsWritten(method)) {
+                fieldsWritten.add(field.toString());
+            }
+            buf.append(' ').append(fieldsWritten).append('\n');
+        }
+        return Util.getMD5Digest().digest(buf.toString().getBytes(UTF8));
+    }
+
+    private static byte[] computeConfigurationDigest(ExecutionPlan executionPlan, AnalysisOptions analysisOptions) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(Version.RELEASE).append('\n');
+        for (Iterator<AnalysisPass> i = executionPlan.passIterator(); i.hasNext();) {
+            AnalysisPass p = i.next();
+            buf.append("pass").append('\n');
+            for (Iterator<DetectorFactory> j = p.iterator(); j.hasNext();) {
+                DetectorFactory factory = j.next();
+                Plugin plugin = factory.getPlugin();
+                buf.append(factory.getFullName()).append(' ').append(plugin.getPluginId()).append(' ')
+                .append(plugin.getVersion()).append('\n');
+            }
+        }
+        AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+        for (int i = 0; i < AnalysisFeatures.NUM_BOOLEAN_ANALYSIS_PROPERTIES; i++) {
+            buf.append(analysisContext.getBoolProperty(i) ? '1' : '0');
+        }
+        buf.append('\n').append(analysisOptions.relaxedReportingMode);
+        return Util.getMD5Digest().digest(buf.toString().getBytes(UTF8));
+    }
+
+    /**
+     * Get a digest of the ClassHash and access flags of a class, and the
+     * access flags of its methods.
+     */
+    private byte[] getShapeDigest(ClassDescriptor classDescriptor) {
+        byte[] result = shapeDigests.get(classDescriptor);
+        if (result != null) {
+            return result;
+        }
+        try {
+            XClass xclass = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+            Map<String, Integer> methodAccessFlags = new TreeMap<String, Integer>();
+            for (XMethod m : xclass.getXMethods()) {
+                methodAccessFlags.put(m.getName() + m.getSignature(), m.getAccessFlags());
+            }
+            String shape = ClassHash.hashToString(new ClassHash().computeHash(xclass).getClassHash()) + ' '
+                    + xclass.getAccessFlags() + ' ' + methodAccessFlags.values();
+            result = Util.getMD5Digest().digest(shape.getBytes(UTF8));
+        } catch (CheckedAnalysisException e) {
+            result = MISSING;
+        }
+        shapeDigests.put(classDescriptor, result);
+        return result;
+    }
+}
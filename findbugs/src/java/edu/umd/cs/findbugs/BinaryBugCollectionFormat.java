@@ -0,0 +1,135 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.WillNotClose;
+
+/**
+ * Constants of the binary BugCollection format, written by
+ * {@link BinaryBugCollectionOutput} and read by
+ * {@link BinaryBugCollectionReader}.
+ *
+ * <p>
+ * A binary file holds the same elements, attributes and text as the XML
+ * format, so that everything which can be read from or written to XML can
+ * be read from or written to a binary file. The layout is:
+ * </p>
+ *
+ * <pre>
+ *  header   magic, version
+ *  body     events: START name (ATTRIBUTE name value | INT_ATTRIBUTE name int)*,
+ *           TEXT text, CDATA text, END; terminated by END_OF_BODY
+ *  strings  count, (length, UTF-8 bytes)*
+ *  index    count, (class name, start offset, end offset)*
+ *  trailer  offset of strings, offset of index (0 if none), magic
+ * </pre>
+ *
+ * <p>
+ * Names, attribute values and text are numbers in the string table, in
+ * which each distinct string is stored once. Attribute values which are
+ * decimal integers (line numbers, bytecode offsets, priorities, ...) are
+ * stored as numbers. All numbers except the trailer offsets are varints;
+ * the trailer offsets are 8 byte big-endian longs.
+ * </p>
+ *
+ * <p>
+ * The optional class index lists the consecutive runs of BugInstances with
+ * the same primary class, so that the BugInstances of some classes can be
+ * read without decoding the others.
+ * </p>
+ */
+public final class BinaryBugCollectionFormat {
+
+    /** The extension of binary BugCollection files */
+    public static final String FILE_EXTENSION = ".fbb";
+
+    /** Whether the class index is written, by default */
+    public static final boolean CLASS_INDEX = SystemProperties.getBoolean("findbugs.binary.classIndex", true);
+
+    static final byte[] MAGIC = { 'F', 'B', 'B', 'C' };
+
+    static final int VERSION = 1;
+
+    static final int TRAILER_SIZE = 8 + 8 + MAGIC.length;
+
+    static final int END_OF_BODY = 0;
+
+    static final int START = 1;
+
+    static final int ATTRIBUTE = 2;
+
+    static final int INT_ATTRIBUTE = 3;
+
+    static final int TEXT = 4;
+
+    static final int CDATA = 5;
+
+    static final int END = 6;
+
+    private BinaryBugCollectionFormat() {
+    }
+
+    /**
+     * @param fileName
+     *            a file name
+     * @return true if the file name has the extension of binary BugCollection
+     *         files
+     */
+    public static boolean isBinaryFileName(String fileName) {
+        return fileName.endsWith(FILE_EXTENSION);
+    }
+
+    /**
+     * @param file
+     *            a file
+     * @return true if the file name has the extension of binary BugCollection
+     *         files
+     */
+    public static boolean isBinaryFile(File file) {
+        return isBinaryFileName(file.getName());
+    }
+
+    /**
+     * Check whether an input stream starts with the magic number of the binary
+     * format. The stream is reset to where it was.
+     *
+     * @param in
+     *            the input stream, which must support mark and reset
+     * @return true if the stream holds a binary BugCollection
+     */
+    public static boolean isBinary(@WillNotClose InputStream in) throws IOException {
+        assert in.markSupported();
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) {
+                if (in.read() != b) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
+
+import edu.umd.cs.findbugs.annotations.DischargesObligation;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.util.Strings;
+import edu.umd.cs.findbugs.xml.XMLAttributeList;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+
+/**
+ * XMLOutput writing the binary BugCollection format. Any XML written with an
+ * XMLOutput can be written this way; to write a BugCollection, pass an
+ * instance to {@link BugCollection#writeXML(XMLOutput)}.
+ *
+ * <p>
+ * The body of the file is written as the XML events arrive. The string table
+ * and the class index are kept in memory and written by {@link #finish()}.
+ * </p>
+ *
+ * @see BinaryBugCollectionFormat
+ * @see BinaryBugCollectionReader
+ */
+public class BinaryBugCollectionOutput implements XMLOutput {
+
+    /**
+     * A run of consecutive BugInstances with the same primary class.
+     */
+    private static class Block {
+        final int className;
+
+        final long start;
+
+        long end;
+
+        Block(int className, long start, long end) {
+            this.className = className;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final OutputStream out;
+
+    private final boolean classIndex;
+
+    private final HashMap<String, Integer> stringNumbers = new HashMap<String, Integer>();
+
+    private final List<String> strings = new ArrayList<String>();
+
+    private final List<Block> blocks = new ArrayList<Block>();
+
+    /** Number of bytes written */
+    private long position;
+
+    /** Number of open elements */
+    private int depth;
+
+    /** Offset of the BugInstance being written, or -1 */
+    private long bugInstanceStart = -1;
+
+    /** Class name of the first Class element of the BugInstance */
+    private @CheckForNull String firstClassName;
+
+    /** Class name of the first Class element of the BugInstance without role */
+    private @CheckForNull String primaryClassName;
+
+    /** True if a Class element of a BugInstance is being started */
+    private boolean inClassTag;
+
+    private @CheckForNull String className;
+
+    private boolean hasRole;
+
+    /**
+     * Constructor. The class index is written if the findbugs.binary.classIndex
+     * property isn't set to false.
+     *
+     * @param out
+     *            the output stream, closed by {@link #finish()}
+     */
+    public BinaryBugCollectionOutput(@WillCloseWhenClosed OutputStream out) throws IOException {
+        this(out, BinaryBugCollectionFormat.CLASS_INDEX);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *            the output stream, closed by {@link #finish()}
+     * @param classIndex
+     *            true if the class index should be written
+     */
+    public BinaryBugCollectionOutput(@WillCloseWhenClosed OutputStream out, boolean classIndex) throws IOException {
+        this.out = new BufferedOutputStream(out);
+        this.classIndex = classIndex;
+        writeBytes(BinaryBugCollectionFormat.MAGIC);
+        writeVarint(BinaryBugCollectionFormat.VERSION);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.xml.XMLOutput#beginDocument()
+     */
+    @Override
+    public void beginDocument() {
+        // The header is written by the constructor
+    }
+
+    @Override
+    public void openTag(String tagName) throws IOException {
+        startTag(tagName);
+        stopTag(false);
+    }
+
+    @Override
+    public void openTag(String tagName, XMLAttributeList attributeList) throws IOException {
+        startTag(tagName);
+        addAttributes(attributeList);
+        stopTag(false);
+    }
+
+    @Override
+    public void openCloseTag(String tagName) throws IOException {
+        startTag(tagName);
+        stopTag(true);
+    }
+
+    @Override
+    public void openCloseTag(String tagName, XMLAttributeList attributeList) throws IOException {
+        startTag(tagName);
+        addAttributes(attributeList);
+        stopTag(true);
+    }
+
+    private void addAttributes(XMLAttributeList attributeList) throws IOException {
+        for (Iterator<XMLAttributeList.NameValuePair> i = attributeList.iterator(); i.hasNext();) {
+            XMLAttributeList.NameValuePair pair = i.next();
+            addAttribute(pair.getName(), pair.getValue());
+        }
+    }
+
+    @Override
+    public void startTag(String tagName) throws IOException {
+        ++depth;
+        if (depth == 2 && "BugInstance".equals(tagName)) {
+            bugInstanceStart = position;
+            firstClassName = null;
+            primaryClassName = null;
+        } else if (depth == 3 && bugInstanceStart >= 0 && "Class".equals(tagName)) {
+            inClassTag = true;
+            className = null;
+            hasRole = false;
+        }
+        writeVarint(BinaryBugCollectionFormat.START);
+        writeString(tagName);
+    }
+
+    @Override
+    public void addAttribute(String name, String value) throws IOException {
+        if (inClassTag) {
+            if ("classname".equals(name)) {
+                className = value;
+            } else if ("role".equals(name)) {
+                hasRole = true;
+            }
+        }
+        if (isCanonicalLong(value)) {
+            writeVarint(BinaryBugCollectionFormat.INT_ATTRIBUTE);
+            writeString(name);
+            long n = Long.parseLong(value);
+            writeVarint((n << 1) ^ (n >> 63));
+        } else {
+            writeVarint(BinaryBugCollectionFormat.ATTRIBUTE);
+            writeString(name);
+            writeString(Strings.escapeInvalidXMLCharacters(value));
+        }
+    }
+
+    @Override
+    public void stopTag(boolean close) throws IOException {
+        if (inClassTag) {
+            inClassTag = false;
+            if (firstClassName == null) {
+                firstClassName = className;
+            }
+            if (primaryClassName == null && !hasRole) {
+                primaryClassName = className;
+            }
+        }
+        if (close) {
+            end();
+        }
+    }
+
+    @Override
+    public void closeTag(String tagName) throws IOException {
+        end();
+    }
+
+    private void end() throws IOException {
+        writeVarint(BinaryBugCollectionFormat.END);
+        if (depth == 2 && bugInstanceStart >= 0) {
+            endBugInstance();
+        }
+        --depth;
+    }
+
+    private void endBugInstance() {
+        // As BugInstance.getPrimaryClass()
+        String primaryClass = primaryClassName != null ? primaryClassName : firstClassName;
+        int number = stringNumber(primaryClass != null ? primaryClass : "");
+        Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        if (last != null && last.className == number && last.end == bugInstanceStart) {
+            last.end = position;
+        } else {
+            blocks.add(new Block(number, bugInstanceStart, position));
+        }
+        bugInstanceStart = -1;
+    }
+
+    @Override
+    public void writeText(String text) throws IOException {
+        writeVarint(BinaryBugCollectionFormat.TEXT);
+        writeString(Strings.escapeInvalidXMLCharacters(text));
+    }
+
+    @Override
+    public void writeCDATA(String cdata) throws IOException {
+        writeVarint(BinaryBugCollectionFormat.CDATA);
+        writeString(cdata);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.xml.XMLOutput#finish()
+     */
+    @Override
+    @DischargesObligation
+    public void finish() throws IOException {
+        try {
+            writeVarint(BinaryBugCollectionFormat.END_OF_BODY);
+
+            long stringsOffset = position;
+            writeVarint(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(UTF8.charset);
+                writeVarint(bytes.length);
+                writeBytes(bytes);
+            }
+
+            long indexOffset = 0;
+            if (classIndex) {
+                indexOffset = position;
+                writeVarint(blocks.size());
+                for (Block block : blocks) {
+                    writeVarint(block.className);
+                    writeVarint(block.start);
+                    writeVarint(block.end);
+                }
+            }
+
+            writeLong(stringsOffset);
+            writeLong(indexOffset);
+            writeBytes(BinaryBugCollectionFormat.MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    private int stringNumber(String s) {
+        Integer number = stringNumbers.get(s);
+        if (number == null) {
+            number = strings.size();
+            stringNumbers.put(s, number);
+            strings.add(s);
+        }
+        return number;
+    }
+
+    private void writeString(String s) throws IOException {
+        writeVarint(stringNumber(s));
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+            position++;
+        }
+        out.write((int) value);
+        position++;
+    }
+
+    private void writeLong(long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+        position += 8;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    /**
+     * @return true if the string is a decimal long written as Long.toString()
+     *         writes it, so that it can be stored as a number
+     */
+    static boolean isCanonicalLong(String s) {
+        int length = s.length();
+        int start = length > 0 && s.charAt(0) == '-' ? 1 : 0;
+        // 18 digits always fit in a long
+        if (length == start || length - start > 18) {
+            return false;
+        }
+        if (s.charAt(start) == '0') {
+            return length == 1;
+        }
+        for (int i = start; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
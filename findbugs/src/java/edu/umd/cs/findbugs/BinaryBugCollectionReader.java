@@ -0,0 +1,332 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillClose;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.io.IO;
+
+/**
+ * Reads the binary BugCollection format, reporting its contents as SAX
+ * events, so that the same ContentHandler (normally a
+ * {@link SAXBugCollectionHandler}) interprets binary and XML files.
+ *
+ * <p>
+ * The whole file is held in memory, which is cheap since the format is
+ * compact; strings are decoded when they are first used. If the file has a
+ * class index, {@link #setClassFilter(Collection)} skips the BugInstances of
+ * the other classes without decoding them.
+ * </p>
+ *
+ * @see BinaryBugCollectionFormat
+ * @see BinaryBugCollectionOutput
+ */
+public class BinaryBugCollectionReader {
+
+    private final byte[] data;
+
+    /** Offset of the next event */
+    private int pos;
+
+    private final int[] stringOffsets;
+
+    private final String[] strings;
+
+    private final char[][] stringChars;
+
+    private final int[] blockClassNames;
+
+    private final int[] blockStarts;
+
+    private final int[] blockEnds;
+
+    /** Index of the first block which doesn't start before pos */
+    private int nextBlock;
+
+    private @CheckForNull Set<String> classFilter;
+
+    private final ArrayList<String> elementStack = new ArrayList<String>();
+
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    /**
+     * Read a binary BugCollection from an input stream. The stream is read
+     * completely and closed.
+     *
+     * @param in
+     *            the input stream
+     */
+    public BinaryBugCollectionReader(@WillClose InputStream in) throws IOException {
+        this(IO.readAll(in));
+    }
+
+    /**
+     * Read a binary BugCollection from a byte array.
+     *
+     * @param data
+     *            the contents of a binary BugCollection file
+     */
+    public BinaryBugCollectionReader(byte[] data) throws IOException {
+        this.data = data;
+        int trailer = data.length - BinaryBugCollectionFormat.TRAILER_SIZE;
+        if (!hasMagic(0) || trailer < BinaryBugCollectionFormat.MAGIC.length || !hasMagic(trailer + 16)) {
+            throw new IOException("Not a binary BugCollection file");
+        }
+        pos = BinaryBugCollectionFormat.MAGIC.length;
+        int version = readInt();
+        if (version != BinaryBugCollectionFormat.VERSION) {
+            throw new IOException("Unsupported binary BugCollection version " + version);
+        }
+        int bodyStart = pos;
+
+        try {
+            pos = checkOffset(readLong(trailer), trailer);
+            int numStrings = readInt();
+            stringOffsets = new int[numStrings];
+            strings = new String[numStrings];
+            stringChars = new char[numStrings][];
+            for (int i = 0; i < numStrings; i++) {
+                stringOffsets[i] = pos;
+                pos = checkOffset(readInt() + (long) pos, trailer);
+            }
+
+            long indexOffset = readLong(trailer + 8);
+            int numBlocks = 0;
+            if (indexOffset != 0) {
+                pos = checkOffset(indexOffset, trailer);
+                numBlocks = readInt();
+            }
+            blockClassNames = new int[numBlocks];
+            blockStarts = new int[numBlocks];
+            blockEnds = new int[numBlocks];
+            for (int i = 0; i < numBlocks; i++) {
+                blockClassNames[i] = checkString(readInt());
+                blockStarts[i] = checkOffset(readLong(), trailer);
+                blockEnds[i] = checkOffset(readLong(), trailer);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw corrupt(e);
+        }
+        pos = bodyStart;
+    }
+
+    private boolean hasMagic(int offset) {
+        byte[] magic = BinaryBugCollectionFormat.MAGIC;
+        if (offset < 0 || offset + magic.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (data[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int checkOffset(long offset, int limit) throws IOException {
+        if (offset < 0 || offset > limit) {
+            throw new IOException("Corrupt binary BugCollection: offset " + offset + " out of range");
+        }
+        return (int) offset;
+    }
+
+    private int checkString(int number) throws IOException {
+        if (number < 0 || number >= strings.length) {
+            throw new IOException("Corrupt binary BugCollection: string " + number + " out of range");
+        }
+        return number;
+    }
+
+    private IOException corrupt(RuntimeException e) {
+        IOException result = new IOException("Corrupt binary BugCollection at offset " + pos);
+        result.initCause(e);
+        return result;
+    }
+
+    /**
+     * @return true if the file has a class index
+     */
+    public boolean hasClassIndex() {
+        return blockStarts.length > 0;
+    }
+
+    /**
+     * @return the primary classes of the BugInstances listed in the class
+     *         index
+     */
+    public Set<String> getIndexedClasses() {
+        HashSet<String> result = new HashSet<String>();
+        for (int className : blockClassNames) {
+            result.add(getString(className));
+        }
+        return result;
+    }
+
+    /**
+     * Only read the BugInstances whose primary class is one of the given
+     * classes. The elements other than BugInstances are always read. If the
+     * file has no class index, all BugInstances are read.
+     *
+     * @param classNames
+     *            the dotted names of the classes, or null to read all
+     *            BugInstances
+     */
+    public void setClassFilter(@CheckForNull Collection<String> classNames) {
+        classFilter = classNames == null ? null : Collections.unmodifiableSet(new HashSet<String>(classNames));
+    }
+
+    /**
+     * Report the whole file to a ContentHandler.
+     *
+     * @param handler
+     *            the ContentHandler
+     */
+    public void parse(ContentHandler handler) throws IOException, SAXException {
+        while (parseNext(handler)) {
+            // keep going
+        }
+    }
+
+    /**
+     * Report the next start tag, end tag or text to a ContentHandler.
+     *
+     * @param handler
+     *            the ContentHandler
+     * @return false if the end of the file has been reached
+     */
+    public boolean parseNext(ContentHandler handler) throws IOException, SAXException {
+        try {
+            skipFilteredBlocks();
+            int event = readInt();
+            switch (event) {
+            case BinaryBugCollectionFormat.END_OF_BODY:
+                pos--;
+                if (!elementStack.isEmpty()) {
+                    throw new IOException("Corrupt binary BugCollection: unexpected end of file");
+                }
+                return false;
+            case BinaryBugCollectionFormat.START:
+                String name = getString(readInt());
+                attributes.clear();
+                while (true) {
+                    int attributeEvent = data[pos];
+                    if (attributeEvent == BinaryBugCollectionFormat.ATTRIBUTE) {
+                        pos++;
+                        String attributeName = getString(readInt());
+                        attributes.addAttribute("", attributeName, attributeName, "CDATA", getString(readInt()));
+                    } else if (attributeEvent == BinaryBugCollectionFormat.INT_ATTRIBUTE) {
+                        pos++;
+                        String attributeName = getString(readInt());
+                        long n = readLong();
+                        n = (n >>> 1) ^ -(n & 1);
+                        attributes.addAttribute("", attributeName, attributeName, "CDATA", Long.toString(n));
+                    } else {
+                        break;
+                    }
+                }
+                elementStack.add(name);
+                handler.startElement("", name, name, attributes);
+                return true;
+            case BinaryBugCollectionFormat.TEXT:
+            case BinaryBugCollectionFormat.CDATA:
+                int number = checkString(readInt());
+                char[] chars = stringChars[number];
+                if (chars == null) {
+                    chars = getString(number).toCharArray();
+                    stringChars[number] = chars;
+                }
+                handler.characters(chars, 0, chars.length);
+                return true;
+            case BinaryBugCollectionFormat.END:
+                if (elementStack.isEmpty()) {
+                    throw new IOException("Corrupt binary BugCollection: unbalanced end tag at offset " + pos);
+                }
+                String endName = elementStack.remove(elementStack.size() - 1);
+                handler.endElement("", endName, endName);
+                return true;
+            default:
+                throw new IOException("Corrupt binary BugCollection: unknown event " + event + " at offset " + pos);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw corrupt(e);
+        }
+    }
+
+    private void skipFilteredBlocks() {
+        while (nextBlock < blockStarts.length && blockStarts[nextBlock] <= pos) {
+            if (blockStarts[nextBlock] == pos && classFilter != null
+                    && !classFilter.contains(getString(blockClassNames[nextBlock]))) {
+                pos = blockEnds[nextBlock];
+            }
+            nextBlock++;
+        }
+    }
+
+    private String getString(int number) {
+        String result = strings[number];
+        if (result == null) {
+            int savedPos = pos;
+            pos = stringOffsets[number];
+            int length = readInt();
+            result = new String(data, pos, length, UTF8.charset);
+            strings[number] = result;
+            pos = savedPos;
+        }
+        return result;
+    }
+
+    private int readInt() {
+        return (int) readLong();
+    }
+
+    private long readLong() {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            result |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return result;
+    }
+
+    private long readLong(int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (data[offset + i] & 0xff);
+        }
+        return result;
+    }
+}
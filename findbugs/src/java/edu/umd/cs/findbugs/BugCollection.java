@@ -35,6 +35,7 @@ import org.dom4j.Document;
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.cloud.Cloud;
+import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 import edu.umd.cs.findbugs.model.ClassFeatureSet;
 import edu.umd.cs.findbugs.xml.XMLOutput;
 
@@ -369,6 +370,44 @@ public interface BugCollection extends Iterable<BugInstance> {
 
     public BugInstance findBug(String instanceHash, String bugType, int lineNumber);
 
+    /**
+     * Find the BugInstances with given instance hash.
+     *
+     * @param instanceHash
+     *            the instance hash
+     * @return the BugInstances, in the order of the collection
+     */
+    public Collection<BugInstance> findBugsByInstanceHash(String instanceHash);
+
+    /**
+     * Find the BugInstances whose primary class is given class.
+     *
+     * @param className
+     *            the dotted name of the class
+     * @return the BugInstances, in the order of the collection
+     */
+    public Collection<BugInstance> findBugsByPrimaryClass(@DottedClassName String className);
+
+    /**
+     * Find the BugInstances of given bug type.
+     *
+     * @param bugType
+     *            the bug type, e.g. "NP_NULL_ON_SOME_PATH"
+     * @return the BugInstances, in the order of the collection
+     */
+    public Collection<BugInstance> findBugsByType(String bugType);
+
+    /**
+     * Find the BugInstances whose primary source line is in given source
+     * file.
+     *
+     * @param sourcePath
+     *            the path of the source file relative to the source
+     *            directory, e.g. "java/lang/Object.java"
+     * @return the BugInstances, in the order of the collection
+     */
+    public Collection<BugInstance> findBugsBySourcePath(String sourcePath);
+
     public boolean isApplySuppressions();
 
     public void setApplySuppressions(boolean applySuppressions);
@@ -22,6 +22,8 @@ package edu.umd.cs.findbugs;
 import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
@@ -140,8 +142,9 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
 
     private int instanceOccurrenceMax;
 
+    /** Not serializable; written as the detector class name */
     @CheckForNull
-    private DetectorFactory detectorFactory;
+    private transient DetectorFactory detectorFactory;
 
     private final AtomicReference<XmlProps> xmlProps;
 
@@ -248,6 +251,19 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
         }
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(detectorFactory != null ? detectorFactory.getFullName() : null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        String detectorName = (String) in.readObject();
+        if (detectorName != null) {
+            detectorFactory = DetectorFactoryCollection.instance().getFactoryByClassName(detectorName);
+        }
+    }
+
     /**
      * Create a new BugInstance. This is the constructor that should be used by
      * Detectors.
@@ -2356,7 +2372,9 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
             annotation.writeXML(xmlOutput, addMessages, primaryAnnotations.containsKey(annotation));
         }
         if (!foundSourceAnnotation && addMessages) {
-            SourceLineAnnotation synth = getPrimarySourceLineAnnotation();
+            // Copy, as the primary source lines may be shared with other
+            // BugInstances
+            SourceLineAnnotation synth = (SourceLineAnnotation) getPrimarySourceLineAnnotation().clone();
             synth.setSynthetic(true);
             synth.writeXML(xmlOutput, addMessages, false);
         }
@@ -0,0 +1,150 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
+
+/**
+ * Secondary indexes of the BugInstances of a {@link SortedBugCollection}: by
+ * instance hash, primary class, bug type and source path. Each index maps a
+ * key to the BugInstance with that key or, if there are several, to a
+ * TreeSet of them ordered like the collection, so that lookups return them in
+ * the order of the collection.
+ *
+ * <p>
+ * As for the TreeSet of the collection, BugInstances must not be changed in
+ * ways that affect their keys while they are indexed.
+ * </p>
+ */
+final class BugInstanceIndex {
+
+    private final Comparator<BugInstance> comparator;
+
+    private final Map<String, Object> byInstanceHash = new HashMap<String, Object>();
+
+    private final Map<String, Object> byPrimaryClass = new HashMap<String, Object>();
+
+    private final Map<String, Object> byType = new HashMap<String, Object>();
+
+    private final Map<String, Object> bySourcePath = new HashMap<String, Object>();
+
+    BugInstanceIndex(Comparator<BugInstance> comparator, Iterable<BugInstance> bugs) {
+        this.comparator = comparator;
+        for (BugInstance bug : bugs) {
+            add(bug);
+        }
+    }
+
+    void add(BugInstance bug) {
+        put(byInstanceHash, bug.getInstanceHash(), bug);
+        put(byPrimaryClass, primaryClass(bug), bug);
+        put(byType, bug.getType(), bug);
+        put(bySourcePath, bug.getPrimarySourceLineAnnotation().getSourcePath(), bug);
+    }
+
+    void remove(BugInstance bug) {
+        remove(byInstanceHash, bug.getInstanceHash(), bug);
+        remove(byPrimaryClass, primaryClass(bug), bug);
+        remove(byType, bug.getType(), bug);
+        remove(bySourcePath, bug.getPrimarySourceLineAnnotation().getSourcePath(), bug);
+    }
+
+    List<BugInstance> getByInstanceHash(String instanceHash) {
+        return get(byInstanceHash, instanceHash);
+    }
+
+    List<BugInstance> getByPrimaryClass(@DottedClassName String className) {
+        return get(byPrimaryClass, className);
+    }
+
+    List<BugInstance> getByType(String bugType) {
+        return get(byType, bugType);
+    }
+
+    List<BugInstance> getBySourcePath(String sourcePath) {
+        return get(bySourcePath, sourcePath);
+    }
+
+    private static @CheckForNull String primaryClass(BugInstance bug) {
+        ClassAnnotation primaryClass = bug.getPrimaryClass();
+        return primaryClass == null ? null : primaryClass.getClassName();
+    }
+
+    private void put(Map<String, Object> index, @CheckForNull String key, BugInstance bug) {
+        if (key == null) {
+            return;
+        }
+        Object value = index.get(key);
+        if (value == null) {
+            index.put(key, bug);
+        } else if (value instanceof BugInstance) {
+            TreeSet<BugInstance> bugs = new TreeSet<BugInstance>(comparator);
+            bugs.add((BugInstance) value);
+            bugs.add(bug);
+            index.put(key, bugs);
+        } else {
+            asSet(value).add(bug);
+        }
+    }
+
+    private void remove(Map<String, Object> index, @CheckForNull String key, BugInstance bug) {
+        if (key == null) {
+            return;
+        }
+        Object value = index.get(key);
+        if (value instanceof BugInstance) {
+            if (comparator.compare((BugInstance) value, bug) == 0) {
+                index.remove(key);
+            }
+        } else if (value != null) {
+            TreeSet<BugInstance> bugs = asSet(value);
+            bugs.remove(bug);
+            if (bugs.size() == 1) {
+                index.put(key, bugs.first());
+            }
+        }
+    }
+
+    private static List<BugInstance> get(Map<String, Object> index, @CheckForNull String key) {
+        Object value = index.get(key);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (value instanceof BugInstance) {
+            return Collections.singletonList((BugInstance) value);
+        }
+        return new ArrayList<BugInstance>(asSet(value));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TreeSet<BugInstance> asSet(Object value) {
+        return (TreeSet<BugInstance>) value;
+    }
+}
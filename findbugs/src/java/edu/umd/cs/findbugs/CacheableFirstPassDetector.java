@@ -0,0 +1,64 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.Serializable;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+
+/**
+ * A detector of the first pass whose contribution to the databases, for each
+ * class, can be kept in the analysis result cache. In a later run, the
+ * contribution is added back instead of visiting the class again.
+ *
+ * <p>
+ * The contribution of a class may depend only on the class, the classes it
+ * references and their supertypes, and the members of the subtypes of the
+ * class and of the classes it references; that is what the cache entries are
+ * keyed by.
+ * </p>
+ *
+ * @see AnalysisResultCache
+ */
+public interface CacheableFirstPassDetector {
+    /**
+     * Get what visiting a class added to the databases. Called right after
+     * the class is visited.
+     *
+     * @param classDescriptor
+     *            the class
+     * @return the contribution, or null if it can't be kept
+     */
+    @CheckForNull
+    Serializable getContribution(ClassDescriptor classDescriptor);
+
+    /**
+     * Add what visiting a class added to the databases in an earlier run.
+     * Called instead of visiting the class.
+     *
+     * @param classDescriptor
+     *            the class
+     * @param contribution
+     *            the contribution returned by getContribution()
+     */
+    void addContribution(ClassDescriptor classDescriptor, Serializable contribution);
+}
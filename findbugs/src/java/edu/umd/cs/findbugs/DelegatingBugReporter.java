@@ -22,6 +22,7 @@ package edu.umd.cs.findbugs;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+import edu.umd.cs.findbugs.ba.AnalysisBudgetExceededException;
 import edu.umd.cs.findbugs.ba.MethodUnprofitableException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
@@ -106,7 +107,7 @@ public class DelegatingBugReporter implements BugReporter {
 
     @Override
     public void logError(String message, Throwable e) {
-        if (e instanceof MethodUnprofitableException) {
+        if (e instanceof MethodUnprofitableException || e instanceof AnalysisBudgetExceededException) {
             return;
         }
         delegate.logError(message, e);
@@ -45,6 +45,13 @@ public class DetectorToDetector2Adapter implements Detector2 {
         this.detector = detector;
     }
 
+    /**
+     * @return the adapted Detector
+     */
+    public Detector getDetector() {
+        return detector;
+    }
+
     /*
      * (non-Javadoc)
      *
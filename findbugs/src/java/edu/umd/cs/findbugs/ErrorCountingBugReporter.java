@@ -18,6 +18,7 @@
  */
 package edu.umd.cs.findbugs;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -28,9 +29,10 @@ import java.util.Set;
 public class ErrorCountingBugReporter extends DelegatingBugReporter {
     private int bugCount;
 
-    private final HashSet<String> errors = new HashSet<String>();
+    // Errors may be logged by analysis worker threads
+    private final Set<String> errors = Collections.synchronizedSet(new HashSet<String>());
 
-    private final Set<String> missingClassSet = new HashSet<String>();
+    private final Set<String> missingClassSet = Collections.synchronizedSet(new HashSet<String>());
 
     public ErrorCountingBugReporter(BugReporter realBugReporter) {
         super(realBugReporter);
@@ -92,15 +92,15 @@ public class FieldAnnotation extends PackageMemberAnnotation {
             assert false : "signatures should not be dotted: " + fieldSig;
         fieldSig = fieldSig.replace('.', '/');
         }
-        this.fieldName = fieldName;
-        this.fieldSig = fieldSig;
+        this.fieldName = DescriptorFactory.canonicalizeString(fieldName);
+        this.fieldSig = DescriptorFactory.canonicalizeString(fieldSig);
         this.isStatic = isStatic;
     }
 
     public FieldAnnotation(@DottedClassName String className, String fieldName, String fieldSig, String fieldSourceSig,
             boolean isStatic) {
         this(className, fieldName, fieldSig, isStatic);
-        this.fieldSourceSig = fieldSourceSig;
+        this.fieldSourceSig = DescriptorFactory.canonicalizeString(fieldSourceSig);
     }
 
     /**
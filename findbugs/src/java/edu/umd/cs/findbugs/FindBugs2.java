@@ -19,11 +19,14 @@
 
 package edu.umd.cs.findbugs;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -40,12 +43,15 @@ import org.apache.bcel.classfile.ClassFormatException;
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.AnalysisFeatures;
 import edu.umd.cs.findbugs.ba.ObjectTypeFactory;
 import edu.umd.cs.findbugs.ba.SourceInfoMap;
 import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.ba.XFactory;
+import edu.umd.cs.findbugs.ba.ch.ClassHierarchyCallGraph;
+import edu.umd.cs.findbugs.ba.ch.SummaryScheduler;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierAnnotation;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierApplications;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierValue;
@@ -93,6 +99,9 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private static final boolean SCREEN_FIRST_PASS_CLASSES = SystemProperties.getBoolean("findbugs.screenFirstPass");
 
+    /** Use the thread-safe analysis cache even when analyzing with a single thread */
+    private static final boolean CONCURRENT_ANALYSIS_CACHE = SystemProperties.getBoolean("findbugs.concurrentAnalysisCache");
+
     public static final String PROP_FINDBUGS_HOST_APP = "findbugs.hostApp";
     public static final String PROP_FINDBUGS_HOST_APP_VERSION = "findbugs.hostAppVersion";
 
@@ -114,6 +123,15 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private Collection<ClassDescriptor> referencedClassSet;
 
+    /** Application classes to reanalyze in incremental analysis, or null */
+    private List<ClassDescriptor> reanalyzedClassList;
+
+    /** Classes whose warnings are reported in incremental analysis, or null */
+    private Set<ClassDescriptor> reportedClassSet;
+
+    /** Results of the previous analysis in incremental analysis, or null */
+    private SortedBugCollection previousResults;
+
     private DetectorFactoryCollection detectorFactoryCollection;
 
     private ExecutionPlan executionPlan;
@@ -221,6 +239,11 @@ public class FindBugs2 implements IFindBugsEngine {
                 // Build set of classes referenced by application classes
                 buildReferencedClassSet();
 
+                // Only reanalyze classes affected by a change
+                if (analysisOptions.incrementalBaseline != null) {
+                    findChangedAppClasses();
+                }
+
                 // Create BCEL compatibility layer
                 setAppClassList(appClassList);
 
@@ -342,6 +365,9 @@ public class FindBugs2 implements IFindBugsEngine {
         if (referencedClassSet != null) {
             referencedClassSet.clear();
         }
+        reanalyzedClassList = null;
+        reportedClassSet = null;
+        previousResults = null;
         analysisOptions.analysisFeatureSettingList = null;
         bugReporter = null;
         classFactory = null;
@@ -575,6 +601,25 @@ public class FindBugs2 implements IFindBugsEngine {
         this.analysisOptions.noClassOk = noClassOk;
     }
 
+    @Override
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+        }
+        this.analysisOptions.threads = threads;
+    }
+
+    @Override
+    public void setAnalysisResultCacheDirectory(String directory) {
+        this.analysisOptions.analysisResultCacheDir = directory;
+    }
+
+    @Override
+    public void setIncrementalAnalysis(String previousResults, Collection<String> changedClasses) {
+        this.analysisOptions.incrementalBaseline = previousResults;
+        this.analysisOptions.changedClasses = changedClasses;
+    }
+
     /**
      * Create the analysis cache object and register it for current execution thread.
      * <p>
@@ -585,7 +630,12 @@ public class FindBugs2 implements IFindBugsEngine {
      *             if error occurs registering analysis engines in a plugin
      */
     protected IAnalysisCache createAnalysisCache() throws IOException {
-        IAnalysisCache analysisCache = ClassFactory.instance().createAnalysisCache(classPath, bugReporter);
+        IAnalysisCache analysisCache;
+        if (analysisOptions.threads > 1 || CONCURRENT_ANALYSIS_CACHE) {
+            analysisCache = ClassFactory.instance().createConcurrentAnalysisCache(classPath, bugReporter);
+        } else {
+            analysisCache = ClassFactory.instance().createAnalysisCache(classPath, bugReporter);
+        }
 
         // Register the "built-in" analysis engines
         registerBuiltInAnalysisEngines(analysisCache);
@@ -673,6 +723,7 @@ public class FindBugs2 implements IFindBugsEngine {
         }
 
         builder.scanNestedArchives(analysisOptions.scanNestedArchives);
+        builder.setThreads(analysisOptions.threads);
 
         builder.build(classPath, progress);
 
@@ -830,6 +881,193 @@ public class FindBugs2 implements IFindBugsEngine {
         }
     }
 
+    /**
+     * Find the application classes which must be reanalyzed in incremental
+     * analysis. Warnings are reported again for the changed classes and the
+     * classes which use (call, extend or implement) them. So that detectors
+     * looking at how a class is used by other classes see all these uses, the
+     * application classes using or used by those classes are analyzed as
+     * well. The first pass still looks at all referenced classes, since the
+     * databases it builds (e.g., which fields are written) need the whole
+     * application.
+     */
+    private void findChangedAppClasses() throws IOException, InterruptedException {
+        previousResults = new SortedBugCollection();
+        try {
+            previousResults.readXML(analysisOptions.incrementalBaseline);
+        } catch (DocumentException e) {
+            IOException ioe = new IOException("Couldn't read previous results from " + analysisOptions.incrementalBaseline);
+            ioe.initCause(e);
+            throw ioe;
+        }
+
+        Set<ClassDescriptor> changed = findChangedClasses(analysisOptions.changedClasses, appClassList);
+
+        // Classes each application class depends on
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        Map<ClassDescriptor, Collection<ClassDescriptor>> dependencies = new HashMap<ClassDescriptor, Collection<ClassDescriptor>>();
+        for (ClassDescriptor classDesc : appClassList) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            try {
+                XClass xclass = analysisCache.getClassAnalysis(XClass.class, classDesc);
+                Set<ClassDescriptor> used = new HashSet<ClassDescriptor>(xclass.getCalledClassDescriptors());
+                if (xclass.getInterfaceDescriptorList() != null) {
+                    used.addAll(Arrays.asList(xclass.getInterfaceDescriptorList()));
+                }
+                if (xclass.getSuperclassDescriptor() != null) {
+                    used.add(xclass.getSuperclassDescriptor());
+                }
+                dependencies.put(classDesc, used);
+            } catch (CheckedAnalysisException e) {
+                bugReporter.logError("Error scanning " + classDesc + " for changed classes", e);
+                changed.add(classDesc);
+            }
+        }
+
+        reportedClassSet = addUsingClasses(changed, dependencies);
+        reanalyzedClassList = findReanalyzedClasses(reportedClassSet, dependencies, appClassList);
+
+        if (PROGRESS) {
+            System.out.println(changed.size() + " changed classes, reporting on " + reportedClassSet.size() + " and reanalyzing "
+                    + reanalyzedClassList.size() + " of " + appClassList.size() + " classes");
+        }
+    }
+
+    /**
+     * Find the application classes named by the changed classes given by the
+     * user, as class names or as class file names (possibly with a path).
+     */
+    static Set<ClassDescriptor> findChangedClasses(Collection<String> changedClasses, Collection<ClassDescriptor> appClassList) {
+        Set<String> changedNames = new HashSet<String>();
+        for (String name : changedClasses) {
+            name = name.replace('\\', '/');
+            changedNames.add(name);
+            if (name.endsWith(".class")) {
+                for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+                    changedNames.add(name.substring(i + 1));
+                }
+            }
+        }
+        Set<ClassDescriptor> changed = new HashSet<ClassDescriptor>();
+        for (ClassDescriptor classDesc : appClassList) {
+            if (changedNames.contains(classDesc.toDottedClassName()) || changedNames.contains(classDesc.toResourceName())) {
+                changed.add(classDesc);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the application classes to reanalyze so that the given reported
+     *         classes see all their uses: the reported classes, the classes
+     *         using them, and the application classes they use, in the order
+     *         of the application class list
+     */
+    static List<ClassDescriptor> findReanalyzedClasses(Set<ClassDescriptor> reportedClassSet,
+            Map<ClassDescriptor, Collection<ClassDescriptor>> dependencies, List<ClassDescriptor> appClassList) {
+        Set<ClassDescriptor> reanalyzed = addUsingClasses(reportedClassSet, dependencies);
+        for (ClassDescriptor classDesc : reportedClassSet) {
+            Collection<ClassDescriptor> used = dependencies.get(classDesc);
+            if (used != null) {
+                for (ClassDescriptor usedClass : used) {
+                    if (dependencies.containsKey(usedClass)) {
+                        reanalyzed.add(usedClass);
+                    }
+                }
+            }
+        }
+        List<ClassDescriptor> result = new ArrayList<ClassDescriptor>();
+        for (ClassDescriptor classDesc : appClassList) {
+            if (reanalyzed.contains(classDesc)) {
+                result.add(classDesc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the given classes, and the application classes depending on
+     *         one of them
+     */
+    static Set<ClassDescriptor> addUsingClasses(Set<ClassDescriptor> classes,
+            Map<ClassDescriptor, Collection<ClassDescriptor>> dependencies) {
+        Set<ClassDescriptor> result = new HashSet<ClassDescriptor>(classes);
+        for (Map.Entry<ClassDescriptor, Collection<ClassDescriptor>> e : dependencies.entrySet()) {
+            if (!Collections.disjoint(e.getValue(), classes)) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Report the warnings of the previous analysis in application classes
+     * whose warnings were not reported again.
+     */
+    private void reportPreviousResults() {
+        for (BugInstance bug : selectPreviousResults(previousResults.getCollection(), appClassList, reportedClassSet)) {
+            bugReporter.reportBug(bug);
+        }
+    }
+
+    /**
+     * Select the warnings of the previous analysis which still hold: those in
+     * application classes whose warnings were not reported again. Warnings in
+     * classes which no longer exist are dropped. A warning without a class
+     * annotation belongs to the class of its method or field; if it has
+     * neither, it is dropped too, since the detectors report it again if it
+     * still holds.
+     */
+    static List<BugInstance> selectPreviousResults(Collection<BugInstance> previousResults, Collection<ClassDescriptor> appClassList,
+            Collection<ClassDescriptor> reportedClassSet) {
+        Set<String> appClassNames = new HashSet<String>();
+        for (ClassDescriptor classDesc : appClassList) {
+            appClassNames.add(classDesc.toDottedClassName());
+        }
+        for (ClassDescriptor classDesc : reportedClassSet) {
+            appClassNames.remove(classDesc.toDottedClassName());
+        }
+        List<BugInstance> result = new ArrayList<BugInstance>();
+        for (BugInstance bug : previousResults) {
+            PackageMemberAnnotation owner = bug.getPrimaryClass();
+            if (owner == null) {
+                owner = bug.getPrimaryMethod();
+            }
+            if (owner == null) {
+                owner = bug.getPrimaryField();
+            }
+            if (owner != null && appClassNames.contains(owner.getClassName())) {
+                result.add(bug);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bug reporter dropping the warnings in classes which were only analyzed
+     * to see how they use the classes whose warnings are reported again.
+     */
+    private static class IncrementalBugReporter extends DelegatingBugReporter {
+        private final Set<String> reportedClassNames = new HashSet<String>();
+
+        IncrementalBugReporter(BugReporter delegate, Collection<ClassDescriptor> reportedClasses) {
+            super(delegate);
+            for (ClassDescriptor classDesc : reportedClasses) {
+                reportedClassNames.add(classDesc.toDottedClassName());
+            }
+        }
+
+        @Override
+        public void reportBug(@Nonnull BugInstance bugInstance) {
+            ClassAnnotation primaryClass = bugInstance.getPrimaryClass();
+            if (primaryClass == null || reportedClassNames.contains(primaryClass.getClassName())) {
+                super.reportBug(bugInstance);
+            }
+        }
+    }
+
     public List<ClassDescriptor> sortByCallGraph(Collection<ClassDescriptor> classList, OutEdges<ClassDescriptor> outEdges) {
         List<ClassDescriptor> evaluationOrder = edu.umd.cs.findbugs.util.TopologicalSort.sortByCallGraph(classList, outEdges);
         edu.umd.cs.findbugs.util.TopologicalSort.countBadEdges(evaluationOrder, outEdges);
@@ -837,6 +1075,58 @@ public class FindBugs2 implements IFindBugsEngine {
 
     }
 
+    /**
+     * Order classes bottom-up over the strongly connected components of the
+     * class hierarchy call graph, so the methods a class calls are analyzed
+     * before it unless the calls are recursive.
+     */
+    private static List<ClassDescriptor> sortBottomUp(Collection<ClassDescriptor> classList) {
+        ClassHierarchyCallGraph.Graph graph = AnalysisContext.currentAnalysisContext().getClassHierarchyCallGraph().getGraph();
+        List<ClassDescriptor> classes = new ArrayList<ClassDescriptor>(classList);
+        Map<ClassDescriptor, Integer> classId = new HashMap<ClassDescriptor, Integer>();
+        for (int i = 0; i < classes.size(); i++) {
+            classId.put(classes.get(i), i);
+        }
+        List<Set<Integer>> calledClasses = new ArrayList<Set<Integer>>(classes.size());
+        for (int i = 0; i < classes.size(); i++) {
+            calledClasses.add(new LinkedHashSet<Integer>());
+        }
+        for (int m = 0; m < graph.getNumApplicationMethods(); m++) {
+            Integer caller = classId.get(graph.getMethod(m).getClassDescriptor());
+            if (caller == null) {
+                continue;
+            }
+            for (int i = 0; i < graph.getNumCallees(m); i++) {
+                Integer callee = classId.get(graph.getMethod(graph.getCallee(m, i)).getClassDescriptor());
+                if (callee != null && !callee.equals(caller)) {
+                    calledClasses.get(caller).add(callee);
+                }
+            }
+        }
+        int numEdges = 0;
+        for (Set<Integer> called : calledClasses) {
+            numEdges += called.size();
+        }
+        int[] calleeStart = new int[classes.size() + 1];
+        int[] callee = new int[numEdges];
+        numEdges = 0;
+        for (int i = 0; i < classes.size(); i++) {
+            for (int c : calledClasses.get(i)) {
+                callee[numEdges++] = c;
+            }
+            calleeStart[i + 1] = numEdges;
+        }
+
+        SummaryScheduler scheduler = new SummaryScheduler(classes.size(), calleeStart, callee);
+        List<ClassDescriptor> evaluationOrder = new ArrayList<ClassDescriptor>(classes.size());
+        for (int c = 0; c < scheduler.getNumComponents(); c++) {
+            for (int i = 0; i < scheduler.getComponentSize(c); i++) {
+                evaluationOrder.add(classes.get(scheduler.getComponentMethod(c, i)));
+            }
+        }
+        return evaluationOrder;
+    }
+
     public static void clearAnalysisContext() {
         AnalysisContext.removeCurrentAnalysisContext();
     }
@@ -955,10 +1245,11 @@ public class FindBugs2 implements IFindBugsEngine {
             if (executionPlan.getNumPasses() == 0) {
                 throw new AssertionError("no analysis passes");
             }
+            List<ClassDescriptor> reportingClassList = reanalyzedClassList != null ? reanalyzedClassList : appClassList;
             int[] classesPerPass = new int[executionPlan.getNumPasses()];
             classesPerPass[0] = referencedClassSet.size();
             for (int i = 0; i < classesPerPass.length; i++) {
-                classesPerPass[i] = i == 0 ? referencedClassSet.size() : appClassList.size();
+                classesPerPass[i] = i == 0 ? referencedClassSet.size() : reportingClassList.size();
             }
             progress.predictPassCount(classesPerPass);
             XFactory factory = AnalysisContext.currentXFactory();
@@ -982,6 +1273,20 @@ public class FindBugs2 implements IFindBugsEngine {
 
             long startTime = System.currentTimeMillis();
             bugReporter.getProjectStats().setReferencedClasses(referencedClassSet.size());
+
+            // In incremental analysis, only report warnings in classes whose
+            // previous warnings are replaced
+            BugReporter detectorBugReporter = bugReporter;
+            AnalysisBudget budget = AnalysisBudget.fromSystemProperties(bugReporter.getProjectStats());
+            AnalysisContext.currentAnalysisContext().setAnalysisBudget(budget);
+            if (reportedClassSet != null) {
+                detectorBugReporter = new IncrementalBugReporter(bugReporter, reportedClassSet);
+            }
+            AnalysisResultCache analysisResultCache = null;
+            if (analysisOptions.analysisResultCacheDir != null) {
+                analysisResultCache = AnalysisResultCache.open(new File(analysisOptions.analysisResultCacheDir), executionPlan,
+                        referencedClassSet, analysisOptions, bugReporter);
+            }
             for (Iterator<AnalysisPass> passIterator = executionPlan.passIterator(); passIterator.hasNext();) {
                 AnalysisPass pass = passIterator.next();
                 yourkitController.advanceGeneration("Pass " + passCount);
@@ -989,15 +1294,21 @@ public class FindBugs2 implements IFindBugsEngine {
                 // gathers information about referenced classes.
                 boolean isNonReportingFirstPass = multiplePasses && passCount == 0;
 
-                // Instantiate the detectors
-                Detector2[] detectorList = pass.instantiateDetector2sInPass(bugReporter);
+                // Instantiate the detectors. If results are cached,
+                // record the warnings they report.
+                AnalysisResultCache.RecordingBugReporter recordingBugReporter = null;
+                if (!isNonReportingFirstPass && analysisResultCache != null) {
+                    recordingBugReporter = new AnalysisResultCache.RecordingBugReporter(detectorBugReporter);
+                }
+                Detector2[] detectorList = pass.instantiateDetector2sInPass(recordingBugReporter != null ? recordingBugReporter
+                        : detectorBugReporter);
 
                 // If there are multiple passes, then on the first pass,
                 // we apply detectors to all classes referenced by the
                 // application classes.
                 // On subsequent passes, we apply detector only to application
                 // classes.
-                Collection<ClassDescriptor> classCollection = (isNonReportingFirstPass) ? referencedClassSet : appClassList;
+                Collection<ClassDescriptor> classCollection = (isNonReportingFirstPass) ? referencedClassSet : reportingClassList;
                 AnalysisContext.currentXFactory().canonicalizeAll();
                 if (PROGRESS || LIST_ORDER) {
                     System.out.printf("%6d : Pass %d: %d classes%n", (System.currentTimeMillis() - startTime)/1000, passCount,  classCollection.size());
@@ -1022,6 +1333,11 @@ public class FindBugs2 implements IFindBugsEngine {
                     };
 
                     classCollection = sortByCallGraph(classCollection, outEdges);
+                } else if (AnalysisContext.currentAnalysisContext().getBoolProperty(
+                        FindBugsAnalysisFeatures.INTERPROCEDURAL_ANALYSIS)) {
+                    // Interprocedural summaries are computed in the first
+                    // pass: analyze callees before their callers
+                    classCollection = sortBottomUp(classCollection);
                 }
                 if (LIST_ORDER) {
                     System.out.println("Analysis order:");
@@ -1036,95 +1352,193 @@ public class FindBugs2 implements IFindBugsEngine {
                 int count = 0;
                 Global.getAnalysisCache().purgeAllMethodAnalysis();
                 Global.getAnalysisCache().purgeClassAnalysis(FBClassReader.class);
-                for (ClassDescriptor classDescriptor : classCollection) {
-                    long classStartNanoTime = 0;
-                    if (PROGRESS) {
-                        classStartNanoTime = System.nanoTime();
-                        System.out.printf("%6d %d/%d  %d/%d %s%n", (System.currentTimeMillis() - startTime)/1000,
-                                passCount, executionPlan.getNumPasses(), count,
-                                classCollection.size(), classDescriptor);
-                    }
-                    count++;
-                    if (!isNonReportingFirstPass && count % 1000 == 0) {
-                        yourkitController.advanceGeneration(String.format("Pass %d.%02d", passCount, count/1000));
-                    }
 
-
-                    // Check to see if class is excluded by the class screener.
-                    // In general, we do not want to screen classes from the
-                    // first pass, even if they would otherwise be excluded.
-                    if ((SCREEN_FIRST_PASS_CLASSES || !isNonReportingFirstPass)
-                            && !classScreener.matches(classDescriptor.toResourceName())) {
-                        if (DEBUG) {
-                            System.out.println("*** Excluded by class screener");
+                // Warnings of stateless detectors may be taken from the
+                // result cache. With several threads, stateless detectors
+                // are applied to the other classes by worker threads,
+                // ahead of this loop.
+                boolean[] statelessDetectors = ParallelAnalysisPass.findStatelessDetectors(pass);
+                AnalysisBudget.Degradation[] droppedAt = ParallelAnalysisPass.findDroppedAt(pass);
+                if (budget != null) {
+                    budget.startPass();
+                }
+                // In the first pass, the contributions of some detectors to
+                // the databases may be taken from the result cache
+                AnalysisResultCache resultCache = null;
+                Map<ClassDescriptor, ParallelAnalysisPass.ClassResult> cachedResults = Collections.emptyMap();
+                CacheableFirstPassDetector[] cacheableDetectors = new CacheableFirstPassDetector[detectorList.length];
+                if (isNonReportingFirstPass && analysisResultCache != null) {
+                    cacheableDetectors = AnalysisResultCache.findCacheableDetectors(detectorList);
+                    for (CacheableFirstPassDetector detector : cacheableDetectors) {
+                        if (detector != null) {
+                            resultCache = analysisResultCache;
+                            cachedResults = resultCache.lookup(passCount, classCollection);
+                            break;
                         }
-                        continue;
                     }
-                    boolean isHuge = currentAnalysisContext.isTooBig(classDescriptor);
-                    if (isHuge && currentAnalysisContext.isApplicationClass(classDescriptor)) {
-                        bugReporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
-                        .addClass(classDescriptor));
+                }
+                ParallelAnalysisPass parallelPass = null;
+                if (!isNonReportingFirstPass && (analysisOptions.threads > 1 || recordingBugReporter != null)) {
+                    List<ClassDescriptor> screenedClasses = new ArrayList<ClassDescriptor>(classCollection.size());
+                    for (ClassDescriptor classDescriptor : classCollection) {
+                        if (classScreener.matches(classDescriptor.toResourceName())) {
+                            screenedClasses.add(classDescriptor);
+                        }
                     }
-                    currentClassName = ClassName.toDottedClassName(classDescriptor.getClassName());
-                    notifyClassObservers(classDescriptor);
-                    profiler.startContext(currentClassName);
-                    currentAnalysisContext.setClassBeingAnalyzed(classDescriptor);
-
-                    try {
-                        for (Detector2 detector : detectorList) {
-                            if (Thread.interrupted()) {
-                                throw new InterruptedException();
-                            }
-                            if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
-                                continue;
+                    resultCache = analysisResultCache;
+                    if (resultCache != null) {
+                        cachedResults = resultCache.lookup(passCount, screenedClasses);
+                        List<ClassDescriptor> uncachedClasses = new ArrayList<ClassDescriptor>();
+                        for (ClassDescriptor classDescriptor : screenedClasses) {
+                            if (!cachedResults.containsKey(classDescriptor)) {
+                                uncachedClasses.add(classDescriptor);
                             }
+                        }
+                        screenedClasses = uncachedClasses;
+                        if (PROGRESS) {
+                            System.out.printf("Analysis result cache: %d of %d classes found%n", cachedResults.size(),
+                                    cachedResults.size() + uncachedClasses.size());
+                        }
+                    }
+                    if (analysisOptions.threads > 1) {
+                        parallelPass = ParallelAnalysisPass.create(pass, detectorBugReporter, screenedClasses, analysisOptions.threads);
+                    }
+                }
+                try {
+                    for (ClassDescriptor classDescriptor : classCollection) {
+                        long classStartNanoTime = 0;
+                        if (PROGRESS) {
+                            classStartNanoTime = System.nanoTime();
+                            System.out.printf("%6d %d/%d  %d/%d %s%n", (System.currentTimeMillis() - startTime)/1000,
+                                    passCount, executionPlan.getNumPasses(), count,
+                                    classCollection.size(), classDescriptor);
+                        }
+                        count++;
+                        if (!isNonReportingFirstPass && count % 1000 == 0) {
+                            yourkitController.advanceGeneration(String.format("Pass %d.%02d", passCount, count/1000));
+                        }
+
+
+                        // Check to see if class is excluded by the class screener.
+                        // In general, we do not want to screen classes from the
+                        // first pass, even if they would otherwise be excluded.
+                        if ((SCREEN_FIRST_PASS_CLASSES || !isNonReportingFirstPass)
+                                && !classScreener.matches(classDescriptor.toResourceName())) {
                             if (DEBUG) {
-                                System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
-                                // System.out.println("foo: " +
-                                // NonReportingDetector.class.isAssignableFrom(detector.getClass())
-                                // + ", bar: " + detector.getClass().getName());
-                            }
-                            try {
-                                profiler.start(detector.getClass());
-                                detector.visitClass(classDescriptor);
-                            } catch (ClassFormatException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } catch (MissingClassException e) {
-                                Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
-                            } catch (CheckedAnalysisException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } catch (RuntimeException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } finally {
-                                profiler.end(detector.getClass());
+                                System.out.println("*** Excluded by class screener");
                             }
+                            continue;
+                        }
+                        boolean isHuge = currentAnalysisContext.isTooBig(classDescriptor);
+                        if (isHuge && budget == null && currentAnalysisContext.isApplicationClass(classDescriptor)) {
+                            detectorBugReporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
+                            .addClass(classDescriptor));
+                        }
+                        currentClassName = ClassName.toDottedClassName(classDescriptor.getClassName());
+                        notifyClassObservers(classDescriptor);
+                        profiler.startContext(currentClassName);
+                        currentAnalysisContext.setClassBeingAnalyzed(classDescriptor);
+                        if (budget != null) {
+                            budget.startClass(classDescriptor, isHuge, count - 1, classCollection.size());
                         }
-                    } finally {
 
-                        progress.finishClass();
-                        profiler.endContext(currentClassName);
-                        currentAnalysisContext.clearClassBeingAnalyzed();
-                        if (PROGRESS) {
-                            long usecs = (System.nanoTime() - classStartNanoTime)/1000;
-                            if (usecs > 15000) {
-                                int classSize = currentAnalysisContext.getClassSize(classDescriptor);
-                                long speed = usecs /classSize;
-                                if (speed > 15) {
-                                    System.out.printf("  %6d usecs/byte  %6d msec  %6d bytes  %d pass %s%n", speed, usecs/1000, classSize, passCount,
-                                            classDescriptor);
+                        try {
+                            ParallelAnalysisPass.ClassResult cachedResult = cachedResults.get(classDescriptor);
+                            ParallelAnalysisPass.ClassResult parallelResult = isNonReportingFirstPass ? null : cachedResult;
+                            if (parallelResult == null && parallelPass != null) {
+                                parallelResult = parallelPass.take(classDescriptor);
+                            }
+                            ParallelAnalysisPass.ClassResult recordedResult = null;
+                            if (parallelResult == null && cachedResult == null && resultCache != null) {
+                                recordedResult = new ParallelAnalysisPass.ClassResult(detectorList.length);
+                            }
+                            for (int i = 0; i < detectorList.length; i++) {
+                                Detector2 detector = detectorList[i];
+                                if (Thread.interrupted()) {
+                                    throw new InterruptedException();
+                                }
+                                if (parallelResult != null && statelessDetectors[i]) {
+                                    parallelResult.replay(i, detectorBugReporter);
+                                    continue;
+                                }
+                                if (budget != null ? !budget.allows(droppedAt[i]) : isHuge
+                                        && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+                                    continue;
+                                }
+                                if (cachedResult != null && cacheableDetectors[i] != null
+                                        && cachedResult.getContribution(i) != null) {
+                                    cacheableDetectors[i].addContribution(classDescriptor, cachedResult.getContribution(i));
+                                    continue;
+                                }
+                                if (recordingBugReporter != null && recordedResult != null && statelessDetectors[i]) {
+                                    recordingBugReporter.startRecording(recordedResult, i);
                                 }
+                                if (DEBUG) {
+                                    System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
+                                    // System.out.println("foo: " +
+                                    // NonReportingDetector.class.isAssignableFrom(detector.getClass())
+                                    // + ", bar: " + detector.getClass().getName());
+                                }
+                                try {
+                                    profiler.start(detector.getClass());
+                                    detector.visitClass(classDescriptor);
+                                    if (recordedResult != null && cacheableDetectors[i] != null) {
+                                        recordedResult.setContribution(i, cacheableDetectors[i].getContribution(classDescriptor));
+                                    }
+                                } catch (ClassFormatException e) {
+                                    logRecoverableException(classDescriptor, detector, e);
+                                } catch (MissingClassException e) {
+                                    Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
+                                } catch (CheckedAnalysisException e) {
+                                    logRecoverableException(classDescriptor, detector, e);
+                                } catch (RuntimeException e) {
+                                    logRecoverableException(classDescriptor, detector, e);
+                                } finally {
+                                    profiler.end(detector.getClass());
+                                    if (recordingBugReporter != null) {
+                                        recordingBugReporter.stopRecording();
+                                    }
+                                }
+                            }
+                            if (resultCache != null && cachedResult == null) {
+                                resultCache.store(classDescriptor, parallelResult != null ? parallelResult : recordedResult);
                             }
+                        } finally {
+                            if (budget != null) {
+                                budget.endClass();
+                            }
+                            progress.finishClass();
+                            profiler.endContext(currentClassName);
+                            currentAnalysisContext.clearClassBeingAnalyzed();
+                            if (PROGRESS) {
+                                long usecs = (System.nanoTime() - classStartNanoTime)/1000;
+                                if (usecs > 15000) {
+                                    int classSize = currentAnalysisContext.getClassSize(classDescriptor);
+                                    long speed = usecs /classSize;
+                                    if (speed > 15) {
+                                        System.out.printf("  %6d usecs/byte  %6d msec  %6d bytes  %d pass %s%n", speed, usecs/1000, classSize, passCount,
+                                                classDescriptor);
+                                    }
+                                }
 
+                            }
                         }
                     }
-                }
 
-                if (!passIterator.hasNext()) {
-                    yourkitController.captureMemorySnapshot();
-                }
-                // Call finishPass on each detector
-                for (Detector2 detector : detectorList) {
-                    detector.finishPass();
+                    if (!passIterator.hasNext()) {
+                        yourkitController.captureMemorySnapshot();
+                    }
+                    // Call finishPass on each detector
+                    for (Detector2 detector : detectorList) {
+                        detector.finishPass();
+                    }
+                    if (parallelPass != null) {
+                        parallelPass.finishPass();
+                    }
+                } finally {
+                    if (parallelPass != null) {
+                        parallelPass.dispose();
+                    }
                 }
 
                 progress.finishPerClassAnalysis();
@@ -1132,6 +1546,12 @@ public class FindBugs2 implements IFindBugsEngine {
                 passCount++;
             }
 
+            if (analysisResultCache != null) {
+                analysisResultCache.prune();
+            }
+            if (previousResults != null) {
+                reportPreviousResults();
+            }
 
         } finally {
 
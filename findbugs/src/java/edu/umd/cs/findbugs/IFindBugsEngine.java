@@ -20,6 +20,7 @@
 package edu.umd.cs.findbugs;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Set;
 
 import org.dom4j.DocumentException;
@@ -274,6 +275,41 @@ public interface IFindBugsEngine {
      */
     public void setNoClassOk(boolean noClassOk);
 
+    /**
+     * Set the number of threads used to analyze application classes.
+     * Detectors which keep no state between classes are applied to classes
+     * concurrently; all others still see the classes in order on the
+     * analysis thread. Reported warnings are the same as for a single
+     * thread.
+     *
+     * @param threads
+     *            number of analysis threads, 1 for sequential analysis
+     */
+    public void setThreads(int threads);
+
+    /**
+     * Set the directory in which the warnings reported for each class, and
+     * what the first pass learned from it, are kept between runs. Classes
+     * which did not change, and whose dependencies did not change, are not
+     * visited again by stateless and cacheable first pass detectors.
+     *
+     * @param directory
+     *            the cache directory, or null for no cache
+     */
+    public void setAnalysisResultCacheDirectory(String directory);
+
+    /**
+     * Only reanalyze the classes affected by a change: the changed classes,
+     * and the application classes which call, extend or implement them. The
+     * warnings of the previous analysis are kept for all other classes.
+     *
+     * @param previousResults
+     *            XML results of the previous analysis of the project
+     * @param changedClasses
+     *            names of the changed classes (or of their class files)
+     */
+    public void setIncrementalAnalysis(String previousResults, Collection<String> changedClasses);
+
     /**
      * Set the DetectorFactoryCollection from which plugins/detectors may be
      * accessed.
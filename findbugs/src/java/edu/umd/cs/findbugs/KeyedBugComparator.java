@@ -0,0 +1,44 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.Comparator;
+
+/**
+ * A comparator of BugInstances which can summarize the parts of a
+ * BugInstance it compares as a key. BugInstances which compare as equal must
+ * have equal keys; BugInstances with equal keys may still compare as
+ * different. This allows BugInstances to be matched by hashing their keys,
+ * comparing only BugInstances with the same key.
+ *
+ * @see edu.umd.cs.findbugs.workflow.Update
+ */
+public interface KeyedBugComparator extends Comparator<BugInstance> {
+
+    /**
+     * Get the match key of a BugInstance.
+     *
+     * @param bug
+     *            the BugInstance
+     * @return the key
+     */
+    public String getMatchKey(BugInstance bug);
+
+}
@@ -102,12 +102,12 @@ public class MethodAnnotation extends PackageMemberAnnotation {
      */
     public MethodAnnotation(@DottedClassName String className, String methodName, String methodSig, boolean isStatic) {
         super(className, DEFAULT_ROLE);
-        this.methodName = methodName;
+        this.methodName = DescriptorFactory.canonicalizeString(methodName);
         if (methodSig.indexOf('.') >= 0) {
             assert false : "signatures should not be dotted: " + methodSig;
         methodSig = methodSig.replace('.', '/');
         }
-        this.methodSig = methodSig;
+        this.methodSig = DescriptorFactory.canonicalizeString(methodSig);
         this.isStatic = isStatic;
         fullMethod = null;
         sourceLines = null;
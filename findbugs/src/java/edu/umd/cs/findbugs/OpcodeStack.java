@@ -26,11 +26,15 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -118,12 +122,29 @@ public class OpcodeStack implements Constants2 {
     public @interface CustomUserValue {
     }
 
+    /** You can put this annotation on a OpcodeStack detector
+     * to indicate that it modifies the stack, e.g. with {@link #replaceTop(Item)}.
+     * Such detectors simulate the opcode stack themselves rather than reading
+     * the stack states shared by the other detectors. Detectors calling
+     * replace() or replaceTop() without it are treated as if they had it, and
+     * a warning is printed when their plugin is loaded.
+     *
+     * @see OpcodeStack.StackStates
+     */
+    @Documented
+    @Target({ElementType.TYPE, ElementType.PACKAGE})
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface ModifiesStack {
+    }
+
     private static final String JAVA_UTIL_ARRAYS_ARRAY_LIST = "Ljava/util/Arrays$ArrayList;";
 
     private static final boolean DEBUG = SystemProperties.getBoolean("ocstack.debug");
 
     private static final boolean DEBUG2 = DEBUG;
 
+    private static final boolean UNSHARED_STACK_STATES = SystemProperties.getBoolean("findbugs.opcodeStack.unshared");
+
     @StaticConstant
     static final HashMap<String, String> boxedTypes = new HashMap<String, String>();
 
@@ -133,6 +154,18 @@ public class OpcodeStack implements Constants2 {
 
     private final List<Integer> lastUpdate;
 
+    /** The states being replayed, or null if the stack is simulated */
+    private StackStates replay;
+
+    /** The step of the replayed states the stack is in */
+    private int replayStep;
+
+    /** The instruction the stack is at in the replayed states */
+    private int replayInstruction;
+
+    /** The states being recorded, or null */
+    private StackStates.Builder recording;
+
     private boolean top;
 
     static class HttpParameterInjection {
@@ -378,6 +411,14 @@ public class OpcodeStack implements Constants2 {
         }
 
 
+        /**
+         * @return true if this item and the given one are equal and have the
+         *         same pc, i.e. a detector can't tell them apart
+         */
+        boolean sameState(OpcodeStack.Item that) {
+            return this.equals(that) && this.pc == that.pc;
+        }
+
         public boolean sameValue(OpcodeStack.Item that) {
 
             return this.equals(that) && (this.registerNumber != -1 && this.registerNumber == that.registerNumber || this.fieldLoadedFromRegister != -1);
@@ -1085,6 +1126,9 @@ public class OpcodeStack implements Constants2 {
     }
 
     public boolean hasIncomingBranches(int pc) {
+        if (replay != null) {
+            return replay.isJumpTarget(pc, replayStep);
+        }
         return jumpEntryLocations.get(pc) && jumpEntries.get(pc) != null;
 
     }
@@ -1101,6 +1145,9 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void mergeJumps(DismantleBytecode dbc) {
+        if (replay != null) {
+            return;
+        }
         if (!needToMerge) {
             return;
         }
@@ -1232,6 +1279,10 @@ public class OpcodeStack implements Constants2 {
     }
 
     public int getLastUpdate(int reg) {
+        if (replay != null) {
+            int[] replayLastUpdate = replay.lastUpdates[replayStep];
+            return reg < replayLastUpdate.length ? replayLastUpdate[reg] : 0;
+        }
         if (lastUpdate.size() <= reg) {
             return 0;
         }
@@ -1239,10 +1290,17 @@ public class OpcodeStack implements Constants2 {
     }
 
     public int getNumLastUpdates() {
+        if (replay != null) {
+            return replay.lastUpdates[replayStep].length;
+        }
         return lastUpdate.size();
     }
 
     public void sawOpcode(DismantleBytecode dbc, int seen) {
+        if (replay != null) {
+            replayTo(2 * replayInstruction(dbc.getPC()) + 2);
+            return;
+        }
         int register;
         String signature;
         Item it, it2;
@@ -2150,6 +2208,10 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void precomputation(DismantleBytecode dbc) {
+        if (replay != null) {
+            replayTo(2 * replayInstruction(dbc.getPC()) + 1);
+            return;
+        }
         if (registerTestedFoundToBeNonnegative >= 0) {
             for (int i = 0; i < stack.size(); i++) {
                 Item item = stack.get(i);
@@ -2900,7 +2962,268 @@ public class OpcodeStack implements Constants2 {
         }
     }
 
+    /**
+     * The states of the opcode stack at every instruction of a method, as
+     * seen by an OpcodeStackDetector: for each instruction, the state after
+     * {@link OpcodeStack#precomputation(DismantleBytecode)} (seen in
+     * sawOpcode()) and the state after
+     * {@link OpcodeStack#sawOpcode(DismantleBytecode, int)} (seen in
+     * afterOpcode()). The states are computed once per method by
+     * {@link StackStatesFactory}, and OpcodeStackDetectors replay them rather
+     * than simulating the stack themselves.
+     *
+     * <p>
+     * The states must not be modified. Items are copied when they are
+     * recorded, and again when a replaying stack hands them out, since Items
+     * are mutable and detectors such as FieldItemSummary keep and modify the
+     * items they get. The arrays of stack items, local values and last
+     * updates are shared between consecutive states which don't change them.
+     * </p>
+     */
+    public static class StackStates {
+        private static final Item[] NO_ITEMS = new Item[0];
+
+        private static final int[] NO_UPDATES = new int[0];
+
+        final Code code;
+
+        /** The pc of each instruction, in order */
+        final int[] pcs;
+
+        /**
+         * Indexed by step: step 0 is the method entry, steps 2i+1 and 2i+2
+         * are the states before and after instruction i
+         */
+        final Item[][] stacks;
+
+        final Item[][] locals;
+
+        final int[][] lastUpdates;
+
+        final BitSet tops;
+
+        /** Jump targets, sorted, and the step at which each became one */
+        private final int[] jumpTargets;
+
+        private final int[] jumpTargetSteps;
+
+        private StackStates(Builder builder) {
+            this.code = builder.code;
+            int numSteps = builder.stacks.size();
+            this.pcs = new int[builder.numInstructions];
+            System.arraycopy(builder.pcs, 0, pcs, 0, pcs.length);
+            this.stacks = builder.stacks.toArray(new Item[numSteps][]);
+            this.locals = builder.locals.toArray(new Item[numSteps][]);
+            this.lastUpdates = builder.lastUpdates.toArray(new int[numSteps][]);
+            this.tops = builder.tops;
+            int numTargets = builder.jumpTargetSteps.size();
+            this.jumpTargets = new int[numTargets];
+            this.jumpTargetSteps = new int[numTargets];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> e : new TreeMap<Integer, Integer>(builder.jumpTargetSteps).entrySet()) {
+                jumpTargets[i] = e.getKey();
+                jumpTargetSteps[i] = e.getValue();
+                i++;
+            }
+        }
+
+        /**
+         * @return the number of instructions the states are recorded for
+         */
+        public int getNumInstructions() {
+            return pcs.length;
+        }
+
+        boolean isJumpTarget(int pc, int step) {
+            int i = Arrays.binarySearch(jumpTargets, pc);
+            return i >= 0 && jumpTargetSteps[i] <= step;
+        }
+
+        /**
+         * Records the states of an OpcodeStack as it is simulated.
+         */
+        static class Builder {
+            final Code code;
+
+            int[] pcs = new int[16];
+
+            int numInstructions;
+
+            final List<Item[]> stacks = new ArrayList<Item[]>();
+
+            final List<Item[]> locals = new ArrayList<Item[]>();
+
+            final List<int[]> lastUpdates = new ArrayList<int[]>();
+
+            final BitSet tops = new BitSet();
+
+            final Map<Integer, Integer> jumpTargetSteps = new HashMap<Integer, Integer>();
+
+            /** The latest copy of each item seen */
+            private final IdentityHashMap<Item, Item> copies = new IdentityHashMap<Item, Item>();
+
+            Builder(Code code) {
+                this.code = code;
+            }
+
+            void entry(OpcodeStack stack) {
+                for (int i = stack.jumpEntryLocations.nextSetBit(0); i >= 0; i = stack.jumpEntryLocations.nextSetBit(i + 1)) {
+                    jumpTargetSteps.put(i, 0);
+                }
+                record(stack);
+            }
+
+            void before(OpcodeStack stack, int pc) {
+                if (numInstructions == pcs.length) {
+                    pcs = Arrays.copyOf(pcs, 2 * pcs.length);
+                }
+                pcs[numInstructions++] = pc;
+                record(stack);
+            }
+
+            void after(OpcodeStack stack) {
+                record(stack);
+            }
+
+            void jumpTargetAdded(int target) {
+                if (!jumpTargetSteps.containsKey(target)) {
+                    // visible from the state being recorded
+                    jumpTargetSteps.put(target, stacks.size());
+                }
+            }
+
+            private void record(OpcodeStack stack) {
+                int step = stacks.size();
+                stacks.add(copy(stack.stack, step == 0 ? null : stacks.get(step - 1)));
+                locals.add(copy(stack.lvValues, step == 0 ? null : locals.get(step - 1)));
+                lastUpdates.add(copy(stack.lastUpdate, step == 0 ? null : lastUpdates.get(step - 1)));
+                if (stack.top) {
+                    tops.set(step);
+                }
+            }
+
+            private Item[] copy(List<Item> items, @CheckForNull Item[] previous) {
+                int size = items.size();
+                if (size == 0) {
+                    return NO_ITEMS;
+                }
+                Item[] result = new Item[size];
+                boolean same = previous != null && previous.length == size;
+                for (int i = 0; i < size; i++) {
+                    result[i] = copy(items.get(i));
+                    same = same && result[i] == previous[i];
+                }
+                return same ? previous : result;
+            }
+
+            private Item copy(@CheckForNull Item item) {
+                if (item == null) {
+                    return null;
+                }
+                Item copy = copies.get(item);
+                if (copy == null || !copy.sameState(item)) {
+                    copy = new Item(item);
+                    copies.put(item, copy);
+                }
+                return copy;
+            }
+
+            private int[] copy(List<Integer> updates, @CheckForNull int[] previous) {
+                int size = updates.size();
+                if (size == 0) {
+                    return NO_UPDATES;
+                }
+                boolean same = previous != null && previous.length == size;
+                for (int i = 0; same && i < size; i++) {
+                    same = previous[i] == updates.get(i).intValue();
+                }
+                if (same) {
+                    return previous;
+                }
+                int[] result = new int[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = updates.get(i).intValue();
+                }
+                return result;
+            }
+
+            StackStates build() {
+                return new StackStates(this);
+            }
+        }
+    }
+
+    /**
+     * Analysis engine computing the {@link StackStates} of a method, by
+     * simulating the opcode stack the way an OpcodeStackDetector does.
+     */
+    public static class StackStatesFactory extends edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory<StackStates> {
+
+        public StackStatesFactory() {
+            super("Opcode stack states", StackStates.class);
+        }
+
+        @Override
+        public @CheckForNull StackStates analyze(IAnalysisCache analysisCache, MethodDescriptor descriptor) throws CheckedAnalysisException {
+            Method method = analysisCache.getMethodAnalysis(Method.class, descriptor);
+            JavaClass jclass = getJavaClass(analysisCache, descriptor.getClassDescriptor());
+            Code code = method.getCode();
+            if (code == null) {
+                return null;
+            }
+
+            StackStateComputation computation = new StackStateComputation(descriptor, code);
+            computation.setupVisitorForClass(jclass);
+            try {
+                computation.doVisitMethod(method);
+            } catch (RuntimeException e) {
+                // The detectors will simulate the stack, and fail, themselves
+                return null;
+            }
+            return computation.states.build();
+        }
+
+        static class StackStateComputation extends BytecodeScanningDetector {
+            final MethodDescriptor descriptor;
+
+            final OpcodeStack stack = new OpcodeStack();
+
+            final StackStates.Builder states;
+
+            private StackStateComputation(MethodDescriptor descriptor, Code code) {
+                this.descriptor = descriptor;
+                this.states = new StackStates.Builder(code);
+            }
+
+            @Override
+            public final void visitCode(Code obj) {
+                if (!getMethodDescriptor().equals(descriptor)) {
+                    throw new IllegalStateException();
+                }
+                stack.v = this;
+                stack.initialize();
+                stack.resetForMethodEntry0(this);
+                stack.learnFrom(stack.getJumpInfo());
+                stack.recording = states;
+                states.entry(stack);
+                super.visitCode(obj);
+                stack.recording = null;
+            }
+
+            @Override
+            public void sawOpcode(int seen) {
+                stack.precomputation(this);
+                states.before(stack, getPC());
+                stack.sawOpcode(this, seen);
+                states.after(stack);
+            }
+        }
+    }
+
     public boolean isJumpTarget(int pc) {
+        if (replay != null) {
+            return replay.isJumpTarget(pc, replayStep);
+        }
         return jumpEntryLocations.get(pc);
     }
 
@@ -2914,6 +3237,9 @@ public class OpcodeStack implements Constants2 {
         }
         List<Item> atTarget = jumpEntries.get(Integer.valueOf(target));
         if (atTarget == null) {
+            if (recording != null) {
+                recording.jumpTargetAdded(target);
+            }
             setJumpInfoChangedByBackwardBranch("new target", from, target);
             setJumpInfoChangedByNewTarget();
             jumpEntries.put(Integer.valueOf(target), new ArrayList<Item>(lvValues));
@@ -2949,6 +3275,11 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void initialize() {
+        if (replay != null) {
+            replay = null;
+            stack = new ArrayList<Item>();
+            lvValues = new ArrayList<Item>();
+        }
         setTop(false);
         jumpEntries.clear();
         jumpStackEntries.clear();
@@ -2976,6 +3307,15 @@ public class OpcodeStack implements Constants2 {
             if (visitor instanceof OpcodeStackDetector.WithCustomJumpInfo) {
                 jump = ((OpcodeStackDetector.WithCustomJumpInfo) visitor).customJumpInfo();
             } else if ((visitor instanceof OpcodeStackDetector) && !((OpcodeStackDetector)visitor).isUsingCustomUserValue()) {
+                if (!UNSHARED_STACK_STATES && !((OpcodeStackDetector) visitor).isModifyingStack()) {
+                    StackStates states = getStackStates();
+                    if (states != null && states.code == code) {
+                        replay = states;
+                        replayInstruction = -1;
+                        replayTo(0);
+                        return result;
+                    }
+                }
                 jump = getJumpInfo();
             } else {
                 jump = getJumpInfoFromStackMap();
@@ -3011,6 +3351,50 @@ public class OpcodeStack implements Constants2 {
             return null;
         }
     }
+    private StackStates getStackStates() {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        if (analysisCache == null) {
+            return null;
+        }
+        try {
+            return analysisCache.getMethodAnalysis(StackStates.class, v.getMethodDescriptor());
+        } catch (CheckedAnalysisException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the index of the instruction at the given pc in the replayed
+     * states. The instructions are normally visited in order, so the next one
+     * is tried first.
+     */
+    private int replayInstruction(int pc) {
+        int[] pcs = replay.pcs;
+        int next = replayInstruction + 1;
+        if (next < pcs.length && pcs[next] == pc) {
+            replayInstruction = next;
+        } else if (replayInstruction < 0 || pcs[replayInstruction] != pc) {
+            replayInstruction = Arrays.binarySearch(pcs, pc);
+            if (replayInstruction < 0) {
+                throw new IllegalStateException("No opcode stack state at pc " + pc + " in " + v.getFullyQualifiedMethodName());
+            }
+        }
+        return replayInstruction;
+    }
+
+    private void replayTo(int step) {
+        Item[] stackState = replay.stacks[step];
+        if (step == 0 || stackState != replay.stacks[replayStep]) {
+            stack = Collections.unmodifiableList(Arrays.asList(stackState));
+        }
+        Item[] localState = replay.locals[step];
+        if (step == 0 || localState != replay.locals[replayStep]) {
+            lvValues = Collections.unmodifiableList(Arrays.asList(localState));
+        }
+        top = replay.tops.get(step);
+        replayStep = step;
+    }
+
     private JumpInfoFromStackMap getJumpInfoFromStackMap() {
         IAnalysisCache analysisCache = Global.getAnalysisCache();
         XMethod xMethod = XFactory.createXMethod(v.getThisClass(), v.getMethod());
@@ -3107,7 +3491,12 @@ public class OpcodeStack implements Constants2 {
         int tos = stack.size() - 1;
         int pos = tos - stackOffset;
         try {
-            return stack.get(pos);
+            Item item = stack.get(pos);
+            if (replay != null) {
+                // Don't hand out the shared state
+                return new Item(item);
+            }
+            return item;
         } catch (ArrayIndexOutOfBoundsException e) {
             throw new ArrayIndexOutOfBoundsException("Requested item at offset " + stackOffset + " in a stack of size "
                     + stack.size() + ", made request for position " + pos);
@@ -3119,6 +3508,9 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void replace(int stackOffset, Item value) {
+        if (replay != null) {
+            throw new IllegalStateException("Detectors which modify the opcode stack should be annotated with @OpcodeStack.ModifiesStack");
+        }
         if (stackOffset < 0 || stackOffset >= stack.size()) {
             AnalysisContext.logError("Can't get replace stack offset " + stackOffset + " from " + stack.toString() + " @ " + v.getPC()
                     + " in " + v.getFullyQualifiedMethodName(), new IllegalArgumentException(stackOffset
@@ -3133,6 +3525,9 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void replaceTop(Item newTop) {
+        if (replay != null) {
+            throw new IllegalStateException("Detectors which modify the opcode stack should be annotated with @OpcodeStack.ModifiesStack");
+        }
         pop();
         push(newTop);
     }
@@ -3561,6 +3956,9 @@ public class OpcodeStack implements Constants2 {
 
         Item item = lvValues.get(index);
         if (item != null) {
+            if (replay != null) {
+                return new Item(item);
+            }
             return item;
         }
 
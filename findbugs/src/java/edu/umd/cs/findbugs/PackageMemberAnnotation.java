@@ -77,7 +77,7 @@ public abstract class PackageMemberAnnotation extends BugAnnotationWithSourceLin
         className = className.replace('/', '.');
         }
         this.className = DescriptorFactory.canonicalizeString(className);
-        this.sourceFileName = sourceFileName;
+        this.sourceFileName = DescriptorFactory.canonicalizeString(sourceFileName);
         if (description != null) {
             description = description.intern();
         }
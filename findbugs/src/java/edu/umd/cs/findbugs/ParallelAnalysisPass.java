@@ -0,0 +1,482 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.apache.bcel.classfile.ClassFormatException;
+
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.MissingClassException;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.impl.ConcurrentAnalysisCache;
+import edu.umd.cs.findbugs.log.Profiler;
+import edu.umd.cs.findbugs.plan.AnalysisPass;
+
+/**
+ * Applies the stateless detectors of an analysis pass to classes on a pool of
+ * worker threads, ahead of the analysis thread.
+ *
+ * <p>
+ * Only detectors implementing {@link StatelessDetector} are run by the
+ * workers; each worker thread has its own instances of them. The warnings
+ * they report are buffered per class and per detector, and are handed to the
+ * real BugReporter by {@link ClassResult#replay(int, BugReporter)} when the
+ * analysis thread reaches the detector for that class. So the warnings (and
+ * their order) are the same as in a sequential analysis.
+ * </p>
+ *
+ * @see FindBugs2
+ */
+final class ParallelAnalysisPass {
+
+    /** Number of classes each worker may be ahead of the analysis thread */
+    private static final int CLASSES_IN_FLIGHT_PER_THREAD = 4;
+
+    private final List<DetectorFactory> factories;
+
+    private final boolean[] sharded;
+
+    private final AnalysisBudget.Degradation[] droppedAt;
+
+    private final BugReporter bugReporter;
+
+    private final Profiler profiler;
+
+    private final AnalysisContext analysisContext;
+
+    private final ExecutorService executor;
+
+    private final int maxInFlight;
+
+    private final Iterator<ClassDescriptor> toSubmit;
+
+    private final LinkedList<PendingClass> inFlight = new LinkedList<PendingClass>();
+
+    /** Detectors of each worker thread, for calling finishPass() */
+    private final List<Worker> workers = Collections.synchronizedList(new ArrayList<Worker>());
+
+    private final ThreadLocal<Worker> currentWorker = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            Worker worker = new Worker();
+            workers.add(worker);
+            return worker;
+        }
+    };
+
+    /**
+     * Create a parallel pass, if any detector in the pass can be run
+     * concurrently.
+     *
+     * @param pass
+     *            the analysis pass
+     * @param bugReporter
+     *            the BugReporter warnings are replayed to
+     * @param classes
+     *            the classes the pass will analyze, in analysis order
+     * @param threads
+     *            number of worker threads
+     * @return the parallel pass, or null if the pass has no stateless
+     *         detectors, or the analysis cache can't be shared by threads
+     */
+    static ParallelAnalysisPass create(AnalysisPass pass, BugReporter bugReporter, Collection<ClassDescriptor> classes,
+            int threads) {
+        if (!(Global.getAnalysisCache() instanceof ConcurrentAnalysisCache)) {
+            // E.g. a subclass of FindBugs2 creating its own analysis cache
+            return null;
+        }
+        List<DetectorFactory> factories = new ArrayList<DetectorFactory>();
+        for (Iterator<DetectorFactory> i = pass.iterator(); i.hasNext();) {
+            factories.add(i.next());
+        }
+        boolean[] sharded = findStatelessDetectors(pass);
+        boolean any = false;
+        for (boolean b : sharded) {
+            any |= b;
+        }
+        if (!any) {
+            return null;
+        }
+        return new ParallelAnalysisPass(factories, sharded, findDroppedAt(pass), bugReporter, classes, threads);
+    }
+
+    /**
+     * Find the detectors of a pass which keep no state between classes, and
+     * so may be applied to classes in any order. A stateless detector
+     * constrained to be applied after a detector which isn't (by an
+     * intra-pass ordering constraint) isn't either, since the workers run
+     * ahead of the analysis thread.
+     *
+     * @param pass
+     *            the analysis pass
+     * @return for each detector of the pass, whether it can be applied by the
+     *         worker threads
+     */
+    static boolean[] findStatelessDetectors(AnalysisPass pass) {
+        List<Boolean> stateless = new ArrayList<Boolean>();
+        Set<DetectorFactory> sequential = new HashSet<DetectorFactory>();
+        // The pass is sorted, so constrained detectors come later
+        for (Iterator<DetectorFactory> i = pass.iterator(); i.hasNext();) {
+            DetectorFactory factory = i.next();
+            boolean sharded = factory.isDetectorClassSubtypeOf(StatelessDetector.class);
+            for (DetectorFactory earlier : pass.getEarlierDetectors(factory)) {
+                if (sequential.contains(earlier)) {
+                    sharded = false;
+                }
+            }
+            if (!sharded) {
+                sequential.add(factory);
+            }
+            stateless.add(sharded);
+        }
+        boolean[] result = new boolean[stateless.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = stateless.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Find the degradation of the analysis at which each detector of a pass
+     * is no longer applied when an {@link AnalysisBudget} runs out:
+     * interprocedural first pass detectors are dropped first, then slow
+     * detectors; the others are always applied.
+     *
+     * @param pass
+     *            the analysis pass
+     * @return for each detector of the pass, the degradation at which it is
+     *         dropped, or null if it is always applied
+     */
+    static AnalysisBudget.Degradation[] findDroppedAt(AnalysisPass pass) {
+        List<AnalysisBudget.Degradation> droppedAt = new ArrayList<AnalysisBudget.Degradation>();
+        for (Iterator<DetectorFactory> i = pass.iterator(); i.hasNext();) {
+            DetectorFactory factory = i.next();
+            if (factory.isDetectorClassSubtypeOf(InterproceduralFirstPassDetector.class)) {
+                droppedAt.add(AnalysisBudget.Degradation.NO_INTERPROCEDURAL);
+            } else if ("slow".equals(factory.getSpeed())) {
+                droppedAt.add(AnalysisBudget.Degradation.NO_EXPENSIVE_DATAFLOW);
+            } else {
+                droppedAt.add(null);
+            }
+        }
+        return droppedAt.toArray(new AnalysisBudget.Degradation[droppedAt.size()]);
+    }
+
+    private ParallelAnalysisPass(List<DetectorFactory> factories, boolean[] sharded, AnalysisBudget.Degradation[] droppedAt,
+            BugReporter bugReporter, Collection<ClassDescriptor> classes, int threads) {
+        this.factories = factories;
+        this.sharded = sharded;
+        this.droppedAt = droppedAt;
+        this.bugReporter = bugReporter;
+        this.profiler = bugReporter.getProjectStats().getProfiler();
+        this.analysisContext = AnalysisContext.currentAnalysisContext();
+        this.maxInFlight = threads * CLASSES_IN_FLIGHT_PER_THREAD;
+        this.toSubmit = classes.iterator();
+        // Worker threads are started from the analysis thread,
+        // so they inherit the analysis cache and context
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "FindBugs worker " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Wait for the worker threads to finish analyzing a class. Classes must be
+     * taken in the order of the collection given to
+     * {@link #create(AnalysisPass, BugReporter, Collection, int)}.
+     *
+     * @param classDescriptor
+     *            the class
+     * @return the warnings the stateless detectors reported for the class
+     * @throws InterruptedException
+     */
+    ClassResult take(ClassDescriptor classDescriptor) throws InterruptedException {
+        while (inFlight.size() < maxInFlight && toSubmit.hasNext()) {
+            final ClassDescriptor next = toSubmit.next();
+            Future<ClassResult> future = executor.submit(new Callable<ClassResult>() {
+                @Override
+                public ClassResult call() throws InterruptedException {
+                    return currentWorker.get().analyze(next);
+                }
+            });
+            inFlight.add(new PendingClass(next, future));
+        }
+        PendingClass pending = inFlight.poll();
+        if (pending == null || !pending.classDescriptor.equals(classDescriptor)) {
+            throw new IllegalStateException("Class " + classDescriptor + " taken out of order");
+        }
+        try {
+            return pending.future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Unexpected exception analyzing " + classDescriptor, cause);
+        }
+    }
+
+    /**
+     * Stop the worker threads and call finishPass() on their detectors. Must
+     * be called after all classes have been taken.
+     *
+     * @throws InterruptedException
+     */
+    void finishPass() throws InterruptedException {
+        executor.shutdown();
+        while (!executor.isTerminated()) {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        synchronized (workers) {
+            for (Worker worker : workers) {
+                worker.reporter.buffer = null;
+                for (Detector2 detector : worker.detectors) {
+                    if (detector != null) {
+                        detector.finishPass();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Abandon the pass, interrupting the worker threads.
+     */
+    void dispose() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Warnings reported for one class by the stateless detectors, and the
+     * contributions of first pass detectors which can be cached.
+     */
+    static final class ClassResult implements Serializable {
+        private static final long serialVersionUID = 2L;
+
+        private final ArrayList<List<BugInstance>> bugs;
+
+        private final Serializable[] contributions;
+
+        ClassResult(int numDetectors) {
+            bugs = new ArrayList<List<BugInstance>>(Collections.<List<BugInstance>> nCopies(numDetectors, null));
+            contributions = new Serializable[numDetectors];
+        }
+
+        /**
+         * Record the contribution of a {@link CacheableFirstPassDetector}.
+         *
+         * @param detectorIndex
+         *            index of the detector in the pass
+         * @param contribution
+         *            the contribution
+         */
+        void setContribution(int detectorIndex, Serializable contribution) {
+            contributions[detectorIndex] = contribution;
+        }
+
+        /**
+         * @param detectorIndex
+         *            index of the detector in the pass
+         * @return the contribution of the detector, or null if none was
+         *         recorded
+         */
+        Serializable getContribution(int detectorIndex) {
+            return contributions[detectorIndex];
+        }
+
+        /**
+         * Record a warning reported by a detector.
+         *
+         * @param detectorIndex
+         *            index of the detector in the pass
+         * @param bugInstance
+         *            the warning
+         */
+        void add(int detectorIndex, BugInstance bugInstance) {
+            List<BugInstance> reported = bugs.get(detectorIndex);
+            if (reported == null) {
+                reported = new ArrayList<BugInstance>();
+                bugs.set(detectorIndex, reported);
+            }
+            reported.add(bugInstance);
+        }
+
+        /**
+         * Report the warnings of one detector to the given BugReporter.
+         *
+         * @param detectorIndex
+         *            index of the detector in the pass
+         * @param bugReporter
+         *            the BugReporter
+         */
+        void replay(int detectorIndex, BugReporter bugReporter) {
+            List<BugInstance> reported = bugs.get(detectorIndex);
+            if (reported == null) {
+                return;
+            }
+            for (BugInstance bugInstance : reported) {
+                bugReporter.reportBug(bugInstance);
+            }
+        }
+    }
+
+    private static final class PendingClass {
+        final ClassDescriptor classDescriptor;
+
+        final Future<ClassResult> future;
+
+        PendingClass(ClassDescriptor classDescriptor, Future<ClassResult> future) {
+            this.classDescriptor = classDescriptor;
+            this.future = future;
+        }
+    }
+
+    /**
+     * BugReporter for the detectors of a worker thread. While a class is being
+     * analyzed, warnings are collected in a buffer; everything else goes
+     * straight to the real BugReporter. (Warnings reported from finishPass()
+     * are not buffered, since it is called on the analysis thread.)
+     */
+    private static final class BufferingBugReporter extends DelegatingBugReporter {
+        List<BugInstance> buffer;
+
+        BufferingBugReporter(BugReporter delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void reportBug(@Nonnull BugInstance bugInstance) {
+            if (buffer != null) {
+                buffer.add(bugInstance);
+            } else {
+                super.reportBug(bugInstance);
+            }
+        }
+    }
+
+    /**
+     * Detector instances of one worker thread.
+     */
+    private final class Worker {
+        final BufferingBugReporter reporter = new BufferingBugReporter(bugReporter);
+
+        final Detector2[] detectors = new Detector2[factories.size()];
+
+        ClassResult analyze(ClassDescriptor classDescriptor) throws InterruptedException {
+            ClassResult result = new ClassResult(detectors.length);
+            boolean isHuge = analysisContext.isTooBig(classDescriptor);
+            AnalysisBudget budget = analysisContext.getAnalysisBudget();
+            String className = classDescriptor.toDottedClassName();
+            profiler.startContext(className);
+            analysisContext.setClassBeingAnalyzed(classDescriptor);
+            if (budget != null) {
+                budget.startClass(classDescriptor, isHuge, -1, 0);
+            }
+            try {
+                analyze(classDescriptor, result, isHuge, budget);
+            } finally {
+                if (budget != null) {
+                    budget.endClass();
+                }
+                analysisContext.clearClassBeingAnalyzed();
+                profiler.endContext(className);
+            }
+            return result;
+        }
+
+        private void analyze(ClassDescriptor classDescriptor, ClassResult result, boolean isHuge, AnalysisBudget budget)
+                throws InterruptedException {
+            for (int i = 0; i < detectors.length; i++) {
+                if (!sharded[i]) {
+                    continue;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Detector2 detector = detectors[i];
+                if (detector == null) {
+                    detector = factories.get(i).createDetector2(reporter);
+                    detectors[i] = detector;
+                }
+                if (budget != null ? !budget.allows(droppedAt[i]) : isHuge
+                        && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+                    continue;
+                }
+                List<BugInstance> reported = new ArrayList<BugInstance>();
+                reporter.buffer = reported;
+                try {
+                    profiler.start(detector.getClass());
+                    detector.visitClass(classDescriptor);
+                } catch (ClassFormatException e) {
+                    logRecoverableException(classDescriptor, detector, e);
+                } catch (MissingClassException e) {
+                    Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
+                } catch (CheckedAnalysisException e) {
+                    logRecoverableException(classDescriptor, detector, e);
+                } catch (RuntimeException e) {
+                    logRecoverableException(classDescriptor, detector, e);
+                } finally {
+                    profiler.end(detector.getClass());
+                    reporter.buffer = null;
+                }
+                if (!reported.isEmpty()) {
+                    result.bugs.set(i, reported);
+                }
+            }
+        }
+
+        private void logRecoverableException(ClassDescriptor classDescriptor, Detector2 detector, Throwable e) {
+            bugReporter.logError("Exception analyzing " + classDescriptor.toDottedClassName() + " using detector "
+                    + detector.getDetectorClassName(), e);
+        }
+    }
+}
@@ -63,6 +63,7 @@ import org.dom4j.Node;
 import org.dom4j.io.SAXReader;
 
 import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
 import edu.umd.cs.findbugs.charsets.UTF8;
 import edu.umd.cs.findbugs.classfile.IAnalysisEngineRegistrar;
 import edu.umd.cs.findbugs.cloud.Cloud;
@@ -644,6 +645,27 @@ public class PluginLoader {
         }
     }
 
+    /**
+     * Detectors which modify the opcode stack should say so, since the others
+     * are given stack states shared with other detectors. Those which don't
+     * are made to simulate the stack themselves anyway, as
+     * {@link OpcodeStackDetector#isModifyingStack()} reports them as
+     * modifying it.
+     */
+    private static void checkStackModification(Class<?> detectorClass) {
+        String caller;
+        try {
+            caller = OpcodeStackDetector.findUnannotatedStackModification(detectorClass);
+        } catch (IOException e) {
+            // Can't tell; the detector is treated as modifying the stack
+            return;
+        }
+        if (caller != null) {
+            System.err.println("Warning: " + caller + " modifies the opcode stack, but " + detectorClass.getName()
+                    + " isn't annotated with @OpcodeStack.ModifiesStack");
+        }
+    }
+
     private Plugin init() throws PluginException {
         if (DEBUG) {
             System.out.println("Loading plugin from " + loadedFrom);
@@ -821,6 +843,9 @@ public class PluginLoader {
                     if (!Detector.class.isAssignableFrom(detectorClass) && !Detector2.class.isAssignableFrom(detectorClass)) {
                         throw new PluginException("Class " + className + " does not implement Detector or Detector2");
                     }
+                    if (OpcodeStackDetector.class.isAssignableFrom(detectorClass)) {
+                        checkStackModification(detectorClass);
+                    }
                 }
                 DetectorFactory factory = new DetectorFactory(plugin, className, detectorClass, !"true".equals(disabled), speed,
                         reports, requireJRE);
@@ -31,6 +31,7 @@ import java.io.Writer;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -94,6 +95,8 @@ public class ProjectStats implements XMLWriteable, Cloneable {
 
     private final Profiler profiler;
 
+    private final SortedMap<String, SkippedAnalysis> skippedAnalysisMap;
+
     @Override
     public String toString() {
         StringBuilder buf = new StringBuilder();
@@ -115,6 +118,7 @@ public class ProjectStats implements XMLWriteable, Cloneable {
         this.analysisTimestamp = new Date();
         this.baseFootprint = new Footprint();
         this.profiler = new Profiler();
+        this.skippedAnalysisMap = new TreeMap<String, SkippedAnalysis>();
     }
 
     public boolean hasClassStats() {
@@ -457,6 +461,10 @@ public class ProjectStats implements XMLWriteable, Cloneable {
             }
         }
 
+        for (SkippedAnalysis skipped : getSkippedAnalyses()) {
+            skipped.writeXML(xmlOutput);
+        }
+
         getProfiler().writeXML(xmlOutput);
         xmlOutput.closeTag("FindBugsSummary");
     }
@@ -590,6 +598,40 @@ public class ProjectStats implements XMLWriteable, Cloneable {
                 packageStatsMap.put(key, pkgStats2);
             }
         }
+
+        for (SkippedAnalysis skipped : stats2.getSkippedAnalyses()) {
+            addSkippedAnalysis(skipped);
+        }
+    }
+
+    /**
+     * Record analysis which was degraded because an analysis budget ran out.
+     * If analysis of the same class or method was already recorded, the two
+     * are merged.
+     *
+     * @param skipped
+     *            the skipped analysis
+     */
+    public void addSkippedAnalysis(SkippedAnalysis skipped) {
+        synchronized (skippedAnalysisMap) {
+            SkippedAnalysis existing = skippedAnalysisMap.get(skipped.getKey());
+            if (existing == null) {
+                skippedAnalysisMap.put(skipped.getKey(), new SkippedAnalysis(skipped.getClassName(), skipped.getMethod(),
+                        skipped.getDegradation(), skipped.getReason(), skipped.getSkippedDetectors()));
+            } else {
+                existing.merge(skipped);
+            }
+        }
+    }
+
+    /**
+     * @return the analysis which was degraded because an analysis budget ran
+     *         out, sorted by class and method
+     */
+    public Collection<SkippedAnalysis> getSkippedAnalyses() {
+        synchronized (skippedAnalysisMap) {
+            return new ArrayList<SkippedAnalysis>(skippedAnalysisMap.values());
+        }
     }
 
     /**
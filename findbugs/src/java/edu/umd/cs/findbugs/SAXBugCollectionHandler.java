@@ -40,6 +40,7 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
 import edu.umd.cs.findbugs.filter.AndMatcher;
 import edu.umd.cs.findbugs.filter.BugMatcher;
 import edu.umd.cs.findbugs.filter.ClassMatcher;
@@ -94,6 +95,8 @@ public class SAXBugCollectionHandler extends DefaultHandler {
 
     private final MapCache<String, String> cache = new MapCache<String, String>(2000);
 
+    private final SourceLineAnnotationCache sourceLineCache = new SourceLineAnnotationCache(10000);
+
     private final ArrayList<String> elementStack;
 
     private final StringBuilder textBuffer;
@@ -339,7 +342,8 @@ public class SAXBugCollectionHandler extends DefaultHandler {
                     if ("SourceLine".equals(qName)) {
                         // package member elements can contain nested SourceLine
                         // elements.
-                        bugAnnotationWithSourceLines.setSourceLines(createSourceLineAnnotation(qName, attributes));
+                        bugAnnotationWithSourceLines.setSourceLines(sourceLineCache.canonicalize(createSourceLineAnnotation(
+                                qName, attributes)));
                     }
                 } else if (BugCollection.ERRORS_ELEMENT_NAME.equals(outerElement)) {
                     if (BugCollection.ANALYSIS_ERROR_ELEMENT_NAME.equals(qName) || BugCollection.ERROR_ELEMENT_NAME.equals(qName)) {
@@ -354,6 +358,23 @@ public class SAXBugCollectionHandler extends DefaultHandler {
                     int size = Integer.parseInt(getRequiredAttribute(attributes, "total_size", qName));
                     bugCollection.getProjectStats().putPackageStats(packageName, numClasses, size);
 
+                } else if ("FindBugsSummary".equals(outerElement) && SkippedAnalysis.ELEMENT_NAME.equals(qName)) {
+                    BugCollection bugCollection = this.bugCollection;
+                    assert bugCollection != null;
+                    String className = getRequiredAttribute(attributes, "class", qName);
+                    String method = getOptionalAttribute(attributes, "method");
+                    try {
+                        AnalysisBudget.Degradation degradation = AnalysisBudget.Degradation.valueOf(getRequiredAttribute(
+                                attributes, "degradation", qName));
+                        AnalysisBudget.Reason reason = AnalysisBudget.Reason.valueOf(getRequiredAttribute(attributes, "reason",
+                                qName));
+                        int skippedDetectors = Integer.parseInt(getRequiredAttribute(attributes, "skippedDetectors", qName));
+                        bugCollection.getProjectStats().addSkippedAnalysis(
+                                new SkippedAnalysis(className, method, degradation, reason, skippedDetectors));
+                    } catch (IllegalArgumentException e) {
+                        throw new SAXException("Invalid " + qName + " element for " + className, e);
+                    }
+
                 } else if ("PackageStats".equals(outerElement)) {
                     BugCollection bugCollection = this.bugCollection;
                     assert bugCollection != null;
@@ -754,7 +775,7 @@ public class SAXBugCollectionHandler extends DefaultHandler {
                 BugCollection bugCollection = this.bugCollection;
                 assert bugCollection != null;
                 if ("BugInstance".equals(qName)) {
-                    bugCollection.add(bugInstance, false);
+                    bugInstanceRead(bugCollection, bugInstance);
                 }
             } else if (PROJECT.equals(outerElement)) {
                 Project project = this.project;
@@ -816,6 +837,20 @@ public class SAXBugCollectionHandler extends DefaultHandler {
         elementStack.remove(elementStack.size() - 1);
     }
 
+    /**
+     * Called when a BugInstance has been read. By default, it is added to the
+     * BugCollection; subclasses may handle it differently, e.g., to process
+     * the BugInstances of a file one at a time.
+     *
+     * @param bugCollection
+     *            the BugCollection being read
+     * @param bugInstance
+     *            the BugInstance
+     */
+    protected void bugInstanceRead(BugCollection bugCollection, BugInstance bugInstance) {
+        bugCollection.add(bugInstance, false);
+    }
+
     private String makeAbsolute(String possiblyRelativePath) {
         if (possiblyRelativePath.contains("://") || possiblyRelativePath.startsWith("http:")
                 || possiblyRelativePath.startsWith("https:") || possiblyRelativePath.startsWith("file:")) {
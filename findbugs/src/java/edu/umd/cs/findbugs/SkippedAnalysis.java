@@ -0,0 +1,155 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.IOException;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+import edu.umd.cs.findbugs.xml.XMLWriteable;
+
+/**
+ * Analysis of a class or method which was degraded because an
+ * {@link AnalysisBudget analysis budget} ran out.
+ */
+public class SkippedAnalysis implements XMLWriteable, Comparable<SkippedAnalysis> {
+    public static final String ELEMENT_NAME = "SkippedAnalysis";
+
+    private final String className;
+
+    private final @CheckForNull String method;
+
+    private AnalysisBudget.Degradation degradation;
+
+    private AnalysisBudget.Reason reason;
+
+    private int skippedDetectors;
+
+    /**
+     * Constructor.
+     *
+     * @param className
+     *            dotted name of the class
+     * @param method
+     *            name and signature of the method, or null if the whole
+     *            class was degraded
+     * @param degradation
+     *            how far the analysis was degraded
+     * @param reason
+     *            the budget which ran out
+     * @param skippedDetectors
+     *            number of detectors which were not applied to the class
+     */
+    public SkippedAnalysis(String className, @CheckForNull String method, AnalysisBudget.Degradation degradation,
+            AnalysisBudget.Reason reason, int skippedDetectors) {
+        this.className = className;
+        this.method = method;
+        this.degradation = degradation;
+        this.reason = reason;
+        this.skippedDetectors = skippedDetectors;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public @CheckForNull String getMethod() {
+        return method;
+    }
+
+    public AnalysisBudget.Degradation getDegradation() {
+        return degradation;
+    }
+
+    public AnalysisBudget.Reason getReason() {
+        return reason;
+    }
+
+    public int getSkippedDetectors() {
+        return skippedDetectors;
+    }
+
+    /**
+     * @return the key identifying the class or method
+     */
+    public String getKey() {
+        return method == null ? className : className + "." + method;
+    }
+
+    /**
+     * Merge the analysis of the same class or method skipped in another pass
+     * or run: the larger degradation is kept, and the skipped detectors are
+     * added up.
+     */
+    void merge(SkippedAnalysis other) {
+        if (other.degradation.compareTo(degradation) > 0) {
+            degradation = other.degradation;
+            reason = other.reason;
+        }
+        skippedDetectors += other.skippedDetectors;
+    }
+
+    @Override
+    public int compareTo(SkippedAnalysis o) {
+        return getKey().compareTo(o.getKey());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SkippedAnalysis)) {
+            return false;
+        }
+        SkippedAnalysis other = (SkippedAnalysis) o;
+        return getKey().equals(other.getKey()) && degradation == other.degradation && reason == other.reason
+                && skippedDetectors == other.skippedDetectors;
+    }
+
+    @Override
+    public int hashCode() {
+        return getKey().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getKey() + ": " + degradation + " (" + reason + ")";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.xml.XMLWriteable#writeXML(edu.umd.cs.findbugs.xml
+     * .XMLOutput)
+     */
+    @Override
+    public void writeXML(XMLOutput xmlOutput) throws IOException {
+        xmlOutput.startTag(ELEMENT_NAME);
+        xmlOutput.addAttribute("class", className);
+        if (method != null) {
+            xmlOutput.addAttribute("method", method);
+        }
+        xmlOutput.addAttribute("degradation", degradation.name());
+        xmlOutput.addAttribute("reason", reason.name());
+        xmlOutput.addAttribute("skippedDetectors", String.valueOf(skippedDetectors));
+        xmlOutput.stopTag(true);
+    }
+}
@@ -29,7 +29,7 @@ import edu.umd.cs.findbugs.model.IdentityClassNameRewriter;
  *
  * @author David Hovemeyer
  */
-public class SloppyBugComparator implements WarningComparator {
+public class SloppyBugComparator implements WarningComparator, KeyedBugComparator {
 
     private static final boolean DEBUG = SystemProperties.getBoolean("sloppyComparator.debug");
 
@@ -158,6 +158,20 @@ public class SloppyBugComparator implements WarningComparator {
         return 0;
     }
 
+    /**
+     * Get the match key of a BugInstance: its abbrev and its (rewritten)
+     * primary class.
+     */
+    @Override
+    public String getMatchKey(BugInstance bug) {
+        String abbrev = bug.getBugPattern().getAbbrev();
+        ClassAnnotation primaryClass = bug.getPrimaryClass();
+        if (primaryClass == null) {
+            return abbrev;
+        }
+        return abbrev + '\0' + classNameRewriter.rewriteClassName(primaryClass.getClassName());
+    }
+
     /*
     private static String getAbbrevFromBugType(String type) {
         int bar = type.indexOf('_');
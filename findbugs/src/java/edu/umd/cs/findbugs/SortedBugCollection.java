@@ -20,6 +20,7 @@
 package edu.umd.cs.findbugs;
 
 import java.awt.GraphicsEnvironment;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -72,6 +73,7 @@ import edu.umd.cs.findbugs.ba.MissingClassException;
 import edu.umd.cs.findbugs.charsets.UTF8;
 import edu.umd.cs.findbugs.cloud.Cloud;
 import edu.umd.cs.findbugs.cloud.CloudFactory;
+import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 import edu.umd.cs.findbugs.log.Profiler;
 import edu.umd.cs.findbugs.model.ClassFeatureSet;
 import edu.umd.cs.findbugs.util.Util;
@@ -123,6 +125,9 @@ public class SortedBugCollection implements BugCollection {
 
     private final TreeSet<BugInstance> bugSet;
 
+    /** Secondary indexes of bugSet, built when they are first needed */
+    private @CheckForNull BugInstanceIndex bugIndex;
+
     private final LinkedHashSet<AnalysisError> errorList;
 
     private final TreeSet<String> missingClassSet;
@@ -379,7 +384,17 @@ public class SortedBugCollection implements BugCollection {
 
     private void doReadXML(@WillClose InputStream in, @CheckForNull File base) throws IOException, DocumentException {
         try {
-            checkInputStream(in);
+            boolean markSupported = in.markSupported();
+            if (!markSupported) {
+                in = new BufferedInputStream(in);
+            }
+            if (BinaryBugCollectionFormat.isBinary(in)) {
+                doReadBinary(in, base);
+                return;
+            }
+            if (markSupported) {
+                checkInputStream(in);
+            }
             Reader reader = Util.getReader(in);
             doReadXML(reader, base);
         } catch (RuntimeException e) {
@@ -433,13 +448,40 @@ public class SortedBugCollection implements BugCollection {
     }
 
 
+    /**
+     * Read the binary BugCollection format, as written by
+     * {@link #writeBinary(OutputStream)}, from given input stream.
+     */
+    private void doReadBinary(@WillClose InputStream in, @CheckForNull File base) throws IOException, DocumentException {
+        timeStartedLoading = System.currentTimeMillis();
+
+        SAXBugCollectionHandler handler = new SAXBugCollectionHandler(this, base);
+        Profiler profiler = getProjectStats().getProfiler();
+        profiler.start(handler.getClass());
+        try {
+            new BinaryBugCollectionReader(in).parse(handler);
+        } catch (SAXException e) {
+            if (base != null) {
+                throw new DocumentException("Sax error while parsing " + base, e);
+            }
+            throw new DocumentException("Sax error ", e);
+        } finally {
+            profiler.end(handler.getClass());
+        }
+        timeFinishedLoading = System.currentTimeMillis();
+        bugsPopulated();
+        // Presumably, project is now up-to-date
+        project.setModified(false);
+    }
+
     @Override
     public void writeXML(OutputStream out) throws IOException {
         writeXML(UTF8.writer(out));
     }
 
     /**
-     * Write this BugCollection to a file as XML.
+     * Write this BugCollection to a file as XML, or in the binary format if
+     * the file name ends with {@link BinaryBugCollectionFormat#FILE_EXTENSION}.
      *
      * @param fileName
      *            the file to write to
@@ -447,6 +489,10 @@ public class SortedBugCollection implements BugCollection {
     @Override
     public void writeXML(String fileName) throws IOException {
         OutputStream out = new FileOutputStream(fileName);
+        if (BinaryBugCollectionFormat.isBinaryFileName(fileName)) {
+            writeBinary(out);
+            return;
+        }
         if (fileName.endsWith(".gz")) {
             out = new GZIPOutputStream(out);
         }
@@ -454,19 +500,49 @@ public class SortedBugCollection implements BugCollection {
     }
 
     /**
-     * Write this BugCollection to a file as XML.
+     * Write this BugCollection to a file as XML, or in the binary format if
+     * the file name ends with {@link BinaryBugCollectionFormat#FILE_EXTENSION}.
      *
      * @param file
      *            the file to write to
      */
     public void writeXML(File file) throws IOException {
         OutputStream out = new FileOutputStream(file);
+        if (BinaryBugCollectionFormat.isBinaryFile(file)) {
+            writeBinary(out);
+            return;
+        }
         if (file.getName().endsWith(".gz")) {
             out = new GZIPOutputStream(out);
         }
         writeXML(out);
     }
 
+    /**
+     * Write the BugCollection to given output stream in the binary format.
+     * Binary files hold the same information as XML files, and can be read by
+     * all of the readXML methods. The output stream will be closed, even if an
+     * exception is thrown.
+     *
+     * @param out
+     *            the OutputStream to write to
+     * @see BinaryBugCollectionFormat
+     */
+    public void writeBinary(@WillClose OutputStream out) throws IOException {
+        XMLOutput xmlOutput;
+        try {
+            prepareToWrite();
+            xmlOutput = new BinaryBugCollectionOutput(out);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        } catch (RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        writeXML(xmlOutput);
+    }
+
     /**
      * Convert the BugCollection into a dom4j Document object.
      *
@@ -498,11 +574,26 @@ public class SortedBugCollection implements BugCollection {
      */
     @Override
     public void writeXML(@WillClose Writer out) throws IOException {
-        assert project != null;
-        bugsPopulated();
         XMLOutput xmlOutput;
         // if (project == null) throw new NullPointerException("No project");
 
+        if (prepareToWrite()) {
+            xmlOutput = new OutputStreamXMLOutput(out, "http://findbugs.sourceforge.net/xsl/default.xsl");
+        } else {
+            xmlOutput = new OutputStreamXMLOutput(out);
+        }
+
+        writeXML(xmlOutput);
+    }
+
+    /**
+     * Get the BugInstances and the cloud ready to be written.
+     *
+     * @return true if the cloud was synchronized for writing messages
+     */
+    private boolean prepareToWrite() {
+        assert project != null;
+        bugsPopulated();
 
         if (withMessages && cloud != null) {
             cloud.bugsPopulated();
@@ -513,12 +604,9 @@ public class SortedBugCollection implements BugCollection {
                 LOGGER.info("Cloud token specified - uploading new issues, if necessary...");
                 cloud.waitUntilNewIssuesUploaded();
             }
-            xmlOutput = new OutputStreamXMLOutput(out, "http://findbugs.sourceforge.net/xsl/default.xsl");
-        } else {
-            xmlOutput = new OutputStreamXMLOutput(out);
+            return true;
         }
-
-        writeXML(xmlOutput);
+        return false;
     }
 
     @Override
@@ -627,17 +715,32 @@ public class SortedBugCollection implements BugCollection {
 
     @Override
     public void writeEpilogue(XMLOutput xmlOutput) throws IOException {
+        writeEpilogue(xmlOutput, getCollection(), !earlyStats);
+    }
+
+    /**
+     * Write the elements following the BugInstances.
+     *
+     * @param xmlOutput
+     *            the XMLOutput object
+     * @param reportedBugs
+     *            BugInstances whose bug patterns, codes and categories are
+     *            described, if messages are written
+     * @param withStats
+     *            true if the statistics should be written
+     */
+    void writeEpilogue(XMLOutput xmlOutput, Collection<BugInstance> reportedBugs, boolean withStats) throws IOException {
         if (withMessages) {
-            writeBugCategories(xmlOutput);
-            writeBugPatterns(xmlOutput);
-            writeBugCodes(xmlOutput);
+            writeBugCategories(xmlOutput, reportedBugs);
+            writeBugPatterns(xmlOutput, reportedBugs);
+            writeBugCodes(xmlOutput, reportedBugs);
         }
         // Errors, missing classes
         if (!minimalXML) {
             emitErrors(xmlOutput);
         }
 
-        if (!earlyStats && !minimalXML) {
+        if (withStats && !minimalXML) {
             // Statistics
             getProjectStats().writeXML(xmlOutput, withMessages);
         }
@@ -678,11 +781,10 @@ public class SortedBugCollection implements BugCollection {
         xmlOutput.closeTag(ROOT_ELEMENT_NAME);
     }
 
-    private void writeBugPatterns(XMLOutput xmlOutput) throws IOException {
+    private void writeBugPatterns(XMLOutput xmlOutput, Collection<BugInstance> reportedBugs) throws IOException {
         // Find bug types reported
         Set<String> bugTypeSet = new HashSet<String>();
-        for (Iterator<BugInstance> i = iterator(); i.hasNext();) {
-            BugInstance bugInstance = i.next();
+        for (BugInstance bugInstance : reportedBugs) {
             BugPattern bugPattern = bugInstance.getBugPattern();
             bugTypeSet.add(bugPattern.getType());
         }
@@ -714,11 +816,10 @@ public class SortedBugCollection implements BugCollection {
         }
     }
 
-    private void writeBugCodes(XMLOutput xmlOutput) throws IOException {
+    private void writeBugCodes(XMLOutput xmlOutput, Collection<BugInstance> reportedBugs) throws IOException {
         // Find bug codes reported
         Set<String> bugCodeSet = new HashSet<String>();
-        for (Iterator<BugInstance> i = iterator(); i.hasNext();) {
-            BugInstance bugInstance = i.next();
+        for (BugInstance bugInstance : reportedBugs) {
             String bugCode = bugInstance.getAbbrev();
             if (bugCode != null) {
                 bugCodeSet.add(bugCode);
@@ -747,11 +848,10 @@ public class SortedBugCollection implements BugCollection {
         }
     }
 
-    private void writeBugCategories(XMLOutput xmlOutput) throws IOException {
+    private void writeBugCategories(XMLOutput xmlOutput, Collection<BugInstance> reportedBugs) throws IOException {
         // Find bug categories reported
         Set<String> bugCatSet = new HashSet<String>();
-        for (Iterator<BugInstance> i = iterator(); i.hasNext();) {
-            BugInstance bugInstance = i.next();
+        for (BugInstance bugInstance : reportedBugs) {
             BugPattern bugPattern = bugInstance.getBugPattern();
             bugCatSet.add(bugPattern.getCategory());
         }
@@ -890,11 +990,24 @@ public class SortedBugCollection implements BugCollection {
         }
     }
 
-    public static class BugInstanceComparator implements Comparator<BugInstance> {
+    public static class BugInstanceComparator implements KeyedBugComparator {
 
         private BugInstanceComparator() {
         }
 
+        /**
+         * Get the match key of a BugInstance: its primary class, type and
+         * priority.
+         */
+        @Override
+        public String getMatchKey(BugInstance bug) {
+            ClassAnnotation primaryClass = bug.getPrimaryClass();
+            if (primaryClass == null) {
+                throw new IllegalStateException("null class annotation: " + primaryClass);
+            }
+            return primaryClass.getClassName() + '\0' + bug.getType() + '\0' + bug.getPriority();
+        }
+
         @Override
         public int compare(BugInstance lhs, BugInstance rhs) {
             ClassAnnotation lca = lhs.getPrimaryClass();
@@ -1021,7 +1134,13 @@ public class SortedBugCollection implements BugCollection {
         if (!bugInstance.isDead()) {
             projectStats.addBug(bugInstance);
         }
-        return bugSet.add(bugInstance);
+        if (!bugSet.add(bugInstance)) {
+            return false;
+        }
+        if (bugIndex != null) {
+            bugIndex.add(bugInstance);
+        }
+        return true;
     }
 
     private void invalidateHashes() {
@@ -1030,12 +1149,68 @@ public class SortedBugCollection implements BugCollection {
 
     public boolean remove(BugInstance bugInstance) {
         invalidateHashes();
-        return bugSet.remove(bugInstance);
+        BugInstance removed = bugSet.ceiling(bugInstance);
+        if (removed == null || comparator.compare(removed, bugInstance) != 0) {
+            return false;
+        }
+        bugSet.remove(removed);
+        if (bugIndex != null) {
+            bugIndex.remove(removed);
+        }
+        return true;
     }
 
     @Override
     public Iterator<BugInstance> iterator() {
-        return bugSet.iterator();
+        final Iterator<BugInstance> i = bugSet.iterator();
+        return new Iterator<BugInstance>() {
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            @Override
+            public BugInstance next() {
+                return i.next();
+            }
+
+            @Override
+            public void remove() {
+                i.remove();
+                invalidateHashes();
+                // Rebuilt when needed
+                bugIndex = null;
+            }
+        };
+    }
+
+    private BugInstanceIndex getBugIndex() {
+        BugInstanceIndex index = bugIndex;
+        if (index == null) {
+            index = new BugInstanceIndex(comparator, bugSet);
+            bugIndex = index;
+        }
+        return index;
+    }
+
+    @Override
+    public Collection<BugInstance> findBugsByInstanceHash(String instanceHash) {
+        return getBugIndex().getByInstanceHash(instanceHash);
+    }
+
+    @Override
+    public Collection<BugInstance> findBugsByPrimaryClass(@DottedClassName String className) {
+        return getBugIndex().getByPrimaryClass(className);
+    }
+
+    @Override
+    public Collection<BugInstance> findBugsByType(String bugType) {
+        return getBugIndex().getByType(bugType);
+    }
+
+    @Override
+    public Collection<BugInstance> findBugsBySourcePath(String sourcePath) {
+        return getBugIndex().getBySourcePath(sourcePath);
     }
 
     @Override
@@ -1132,12 +1307,8 @@ public class SortedBugCollection implements BugCollection {
     @Override
     @Deprecated
     public BugInstance lookupFromUniqueId(String uniqueId) {
-        for (BugInstance bug : bugSet) {
-            if (bug.getInstanceHash().equals(uniqueId)) {
-                return bug;
-            }
-        }
-        return null;
+        Iterator<BugInstance> i = findBugsByInstanceHash(uniqueId).iterator();
+        return i.hasNext() ? i.next() : null;
     }
 
     /** Returns whether this bug collection contains results from multiple analysis runs,
@@ -1198,6 +1369,7 @@ public class SortedBugCollection implements BugCollection {
 
     public void clearBugInstances() {
         bugSet.clear();
+        bugIndex = null;
         invalidateHashes();
     }
 
@@ -1295,8 +1467,8 @@ public class SortedBugCollection implements BugCollection {
 
     @Override
     public BugInstance findBug(String instanceHash, String bugType, int lineNumber) {
-        for (BugInstance bug : bugSet) {
-            if (bug.getInstanceHash().equals(instanceHash) && bug.getBugPattern().getType().equals(bugType)
+        for (BugInstance bug : findBugsByInstanceHash(instanceHash)) {
+            if (bug.getBugPattern().getType().equals(bugType)
                     && bug.getPrimarySourceLineAnnotation().getStartLine() == lineNumber) {
                 return bug;
             }
@@ -1401,6 +1573,13 @@ public class SortedBugCollection implements BugCollection {
         this.minimalXML = minimalXML;
     }
 
+    /**
+     * @return true if the statistics are written before the BugInstances
+     */
+    boolean isEarlyStats() {
+        return earlyStats && !minimalXML;
+    }
+
     public void setDoNotUseCloud(boolean b) {
         this.shouldNotUsePlugin = b;
     }
@@ -21,6 +21,7 @@ package edu.umd.cs.findbugs;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.Objects;
 
 import javax.annotation.CheckForNull;
@@ -44,6 +45,7 @@ import edu.umd.cs.findbugs.ba.SourceInfoMap;
 import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.ba.XMethod;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
@@ -91,7 +93,11 @@ public class SourceLineAnnotation implements BugAnnotation {
 
     public static final char CANONICAL_PACKAGE_SEPARATOR = '/';
 
-    private String description;
+    /**
+     * The role of this annotation, or a WideBytecodeRange with the role and
+     * the bytecode offsets if they don't fit in bytecodeRange.
+     */
+    private Object description;
 
     final private @DottedClassName String className;
 
@@ -101,9 +107,12 @@ public class SourceLineAnnotation implements BugAnnotation {
 
     final private int endLine;
 
-    final private int startBytecode;
-
-    final private int endBytecode;
+    /**
+     * The start and end bytecode offsets, each plus one, in the high and low
+     * 16 bits. A method has less than 65536 bytes of code, so this holds every
+     * offset it can have and -1 for unknown.
+     */
+    final private int bytecodeRange;
 
     private boolean synthetic;
 
@@ -137,13 +146,43 @@ public class SourceLineAnnotation implements BugAnnotation {
             int startBytecode, int endBytecode) {
         Objects.requireNonNull(className, "class name is null");
         Objects.requireNonNull(sourceFile, "source file is null");
-        this.description = DEFAULT_ROLE;
-        this.className = className;
-        this.sourceFile = sourceFile;
+        this.className = DescriptorFactory.canonicalizeString(className);
+        this.sourceFile = DescriptorFactory.canonicalizeString(sourceFile);
         this.startLine = startLine;
         this.endLine = endLine;
-        this.startBytecode = startBytecode;
-        this.endBytecode = endBytecode;
+        if (fitsInBytecodeRange(startBytecode) && fitsInBytecodeRange(endBytecode)) {
+            this.description = DEFAULT_ROLE;
+            this.bytecodeRange = ((startBytecode + 1) << 16) | (endBytecode + 1);
+        } else {
+            // Only possible for offsets read from XML
+            this.description = new WideBytecodeRange(DEFAULT_ROLE, startBytecode, endBytecode);
+            this.bytecodeRange = 0;
+        }
+    }
+
+    private static boolean fitsInBytecodeRange(int pc) {
+        return pc >= -1 && pc <= 0xfffe;
+    }
+
+    /**
+     * The role and bytecode offsets of an annotation whose offsets don't fit
+     * in 16 bits. It is replaced, not modified, when the role changes, since
+     * clones share it.
+     */
+    private static final class WideBytecodeRange implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String description;
+
+        final int startBytecode;
+
+        final int endBytecode;
+
+        WideBytecodeRange(String description, int startBytecode, int endBytecode) {
+            this.description = description;
+            this.startBytecode = startBytecode;
+            this.endBytecode = endBytecode;
+        }
     }
 
     @Override
@@ -654,7 +693,7 @@ public class SourceLineAnnotation implements BugAnnotation {
      *            the source file name
      */
     public void setSourceFile(String sourceFile) {
-        this.sourceFile = sourceFile;
+        this.sourceFile = DescriptorFactory.canonicalizeString(sourceFile);
     }
 
     /**
@@ -692,14 +731,20 @@ public class SourceLineAnnotation implements BugAnnotation {
      * Get start bytecode (inclusive).
      */
     public int getStartBytecode() {
-        return startBytecode;
+        if (description instanceof WideBytecodeRange) {
+            return ((WideBytecodeRange) description).startBytecode;
+        }
+        return (bytecodeRange >>> 16) - 1;
     }
 
     /**
      * Get end bytecode (inclusive).
      */
     public int getEndBytecode() {
-        return endBytecode;
+        if (description instanceof WideBytecodeRange) {
+            return ((WideBytecodeRange) description).endBytecode;
+        }
+        return (bytecodeRange & 0xffff) - 1;
     }
 
     /**
@@ -770,17 +815,24 @@ public class SourceLineAnnotation implements BugAnnotation {
 
     @Override
     public String getDescription() {
-        return description;
+        if (description instanceof WideBytecodeRange) {
+            return ((WideBytecodeRange) description).description;
+        }
+        return (String) description;
     }
 
     @Override
     public void setDescription(String description) {
-        this.description = description.intern();
+        if (this.description instanceof WideBytecodeRange) {
+            this.description = new WideBytecodeRange(description.intern(), getStartBytecode(), getEndBytecode());
+        } else {
+            this.description = description.intern();
+        }
     }
 
     @Override
     public String toString() {
-        String desc = description;
+        String desc = getDescription();
         if (DEFAULT_ROLE.equals(desc) && isUnknown()) {
             desc = DEFAULT_ROLE_UNKNOWN_LINE;
         }
@@ -813,11 +865,11 @@ public class SourceLineAnnotation implements BugAnnotation {
         if (cmp != 0) {
             return cmp;
         }
-        cmp = startBytecode - other.startBytecode;
+        cmp = getStartBytecode() - other.getStartBytecode();
         if (cmp != 0) {
             return cmp;
         }
-        return endBytecode - other.endBytecode;
+        return getEndBytecode() - other.getEndBytecode();
     }
 
     @Override
@@ -825,7 +877,7 @@ public class SourceLineAnnotation implements BugAnnotation {
         if (startLine != -1) {
             return className.hashCode() + startLine + 3 * endLine + getDescription().hashCode();
         }
-        return className.hashCode() + startBytecode + 3 * endBytecode + getDescription().hashCode();
+        return className.hashCode() + getStartBytecode() + 3 * getEndBytecode() + getDescription().hashCode();
     }
 
     @Override
@@ -840,7 +892,8 @@ public class SourceLineAnnotation implements BugAnnotation {
         if (startLine != -1) {
             return className.equals(other.className) && startLine == other.startLine && endLine == other.endLine;
         }
-        return className.equals(other.className) && startBytecode == other.startBytecode && endBytecode == other.endBytecode;
+        return className.equals(other.className) && getStartBytecode() == other.getStartBytecode()
+                && getEndBytecode() == other.getEndBytecode();
 
     }
 
@@ -0,0 +1,101 @@
+/*
+ * FindBugs - Find bugs in Java programs
+ * Copyright (C) 2003-2008, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import edu.umd.cs.findbugs.util.MapCache;
+
+/**
+ * Flyweight cache for the SourceLineAnnotations of classes, methods and
+ * fields. The same method or class is annotated by many BugInstances; when
+ * they are loaded, they share one SourceLineAnnotation instead of each having
+ * a copy.
+ *
+ * <p>
+ * Unlike {@link SourceLineAnnotation#equals(Object)}, annotations are only
+ * shared if all their properties are the same. The shared annotations must not
+ * be modified. The cache holds the most recently used annotations, so memory
+ * stays bounded when BugInstances are streamed.
+ * </p>
+ */
+class SourceLineAnnotationCache {
+
+    private static final class Key {
+        final SourceLineAnnotation annotation;
+
+        final int hashCode;
+
+        Key(SourceLineAnnotation a) {
+            this.annotation = a;
+            int h = a.getClassName().hashCode();
+            h = 31 * h + a.getSourceFile().hashCode();
+            h = 31 * h + a.getStartLine();
+            h = 31 * h + a.getEndLine();
+            h = 31 * h + a.getStartBytecode();
+            h = 31 * h + a.getEndBytecode();
+            this.hashCode = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            SourceLineAnnotation a = annotation;
+            SourceLineAnnotation b = ((Key) o).annotation;
+            return hashCode == ((Key) o).hashCode && a.getClassName().equals(b.getClassName())
+                    && a.getSourceFile().equals(b.getSourceFile()) && a.getStartLine() == b.getStartLine()
+                    && a.getEndLine() == b.getEndLine() && a.getStartBytecode() == b.getStartBytecode()
+                    && a.getEndBytecode() == b.getEndBytecode() && a.isSynthetic() == b.isSynthetic()
+                    && a.getDescription().equals(b.getDescription());
+        }
+    }
+
+    private final MapCache<Key, SourceLineAnnotation> cache;
+
+    /**
+     * @param maxSize
+     *            the maximum number of annotations held
+     */
+    SourceLineAnnotationCache(int maxSize) {
+        cache = new MapCache<Key, SourceLineAnnotation>(maxSize);
+    }
+
+    /**
+     * Get the shared instance of a SourceLineAnnotation.
+     *
+     * @param annotation
+     *            a SourceLineAnnotation which won't be modified
+     * @return an equal SourceLineAnnotation seen earlier, or the given one
+     */
+    SourceLineAnnotation canonicalize(SourceLineAnnotation annotation) {
+        Key key = new Key(annotation);
+        SourceLineAnnotation result = cache.get(key);
+        if (result != null) {
+            return result;
+        }
+        cache.put(key, annotation);
+        return annotation;
+    }
+}
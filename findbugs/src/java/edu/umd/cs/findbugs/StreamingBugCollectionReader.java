@@ -0,0 +1,285 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.dom4j.DocumentException;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Reads the BugInstances of a BugCollection XML file one at a time, so that
+ * files of any size can be processed in constant memory. Everything else in
+ * the file (the project, the analysis errors, the statistics, the history,
+ * ...) is read into a SortedBugCollection, whose BugInstances stay empty.
+ *
+ * <p>
+ * The file is parsed with a StAX pull parser, whose events are fed to a
+ * {@link SAXBugCollectionHandler}, so the file is interpreted exactly as by
+ * {@link SortedBugCollection#readXML(File)}. The bug counts of the
+ * ProjectStats are not updated.
+ * </p>
+ *
+ * <p>
+ * Binary BugCollection files are read with a {@link BinaryBugCollectionReader}
+ * instead. It holds the file in memory, which is still much smaller than the
+ * BugInstances read from it.
+ * </p>
+ *
+ * <p>
+ * Metadata which precedes the BugInstances in the file, such as the project
+ * and the sequence number, is available as soon as the reader is created.
+ * Metadata which follows them is complete once {@link #readBugInstance()}
+ * has returned the last BugInstance.
+ * </p>
+ *
+ * @see StreamingBugCollectionWriter
+ */
+public class StreamingBugCollectionReader implements Closeable {
+
+    private final SortedBugCollection bugCollection;
+
+    private final @CheckForNull File base;
+
+    private final @CheckForNull Reader reader;
+
+    private final @CheckForNull XMLStreamReader xmlReader;
+
+    private final @CheckForNull BinaryBugCollectionReader binaryReader;
+
+    private final SAXBugCollectionHandler handler;
+
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    /** The BugInstance read ahead, or null */
+    private BugInstance next;
+
+    /**
+     * Open a BugCollection XML file, which may be compressed with gzip, or a
+     * binary BugCollection file.
+     *
+     * @param bugCollection
+     *            the SortedBugCollection to read everything but the
+     *            BugInstances into
+     * @param file
+     *            the file
+     */
+    public StreamingBugCollectionReader(SortedBugCollection bugCollection, File file) throws IOException, DocumentException {
+        this(bugCollection, bugCollection.wrapGzip(new FileInputStream(file), file), file);
+        bugCollection.getProject().setCurrentWorkingDirectory(file.getParentFile());
+    }
+
+    /**
+     * Read BugCollection XML or a binary BugCollection from an input stream.
+     * The stream is closed when the reader is closed.
+     *
+     * @param bugCollection
+     *            the SortedBugCollection to read everything but the
+     *            BugInstances into
+     * @param in
+     *            the input stream
+     * @param base
+     *            the file the input stream is read from, to resolve relative
+     *            paths of the project, or null
+     */
+    public StreamingBugCollectionReader(SortedBugCollection bugCollection, @WillCloseWhenClosed InputStream in,
+            @CheckForNull File base) throws IOException, DocumentException {
+        this.bugCollection = bugCollection;
+        this.base = base;
+        this.handler = new SAXBugCollectionHandler(bugCollection, base) {
+            @Override
+            protected void bugInstanceRead(BugCollection collection, BugInstance bugInstance) {
+                next = bugInstance;
+            }
+        };
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        boolean binary;
+        try {
+            binary = BinaryBugCollectionFormat.isBinary(in);
+        } catch (IOException e) {
+            Util.closeSilently(in);
+            throw e;
+        }
+        if (binary) {
+            this.reader = null;
+            this.xmlReader = null;
+            this.binaryReader = new BinaryBugCollectionReader(in);
+        } else {
+            this.reader = Util.getReader(in);
+            this.binaryReader = null;
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            try {
+                xmlReader = factory.createXMLStreamReader(reader);
+            } catch (XMLStreamException e) {
+                Util.closeSilently(reader);
+                throw newDocumentException(e);
+            }
+        }
+        try {
+            readAhead();
+        } catch (DocumentException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the SortedBugCollection everything but the BugInstances is read
+     *         into
+     */
+    public SortedBugCollection getBugCollection() {
+        return bugCollection;
+    }
+
+    /**
+     * Read the next BugInstance.
+     *
+     * @return the next BugInstance, or null if all BugInstances have been
+     *         read
+     */
+    public @CheckForNull BugInstance readBugInstance() throws DocumentException {
+        BugInstance result = next;
+        if (result != null) {
+            next = null;
+            readAhead();
+        }
+        return result;
+    }
+
+    /**
+     * Parse until the next BugInstance has been read, or to the end of the
+     * file.
+     */
+    private void readAhead() throws DocumentException {
+        if (binaryReader != null) {
+            readAheadBinary(binaryReader);
+            return;
+        }
+        XMLStreamReader xmlReader = this.xmlReader;
+        assert xmlReader != null;
+        try {
+            while (next == null && xmlReader.hasNext()) {
+                switch (xmlReader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    attributes.clear();
+                    for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+                        String name = qualifiedName(xmlReader.getAttributeName(i));
+                        attributes.addAttribute("", name, name, "CDATA", xmlReader.getAttributeValue(i));
+                    }
+                    handler.startElement("", xmlReader.getLocalName(), qualifiedName(xmlReader.getName()), attributes);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    handler.endElement("", xmlReader.getLocalName(), qualifiedName(xmlReader.getName()));
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    handler.characters(xmlReader.getTextCharacters(), xmlReader.getTextStart(), xmlReader.getTextLength());
+                    break;
+                default:
+                    break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw newDocumentException(e);
+        } catch (SAXException e) {
+            if (base != null) {
+                throw new DocumentException("Sax error while parsing " + base, e);
+            }
+            throw new DocumentException("Sax error ", e);
+        }
+    }
+
+    private void readAheadBinary(BinaryBugCollectionReader binaryReader) throws DocumentException {
+        try {
+            while (next == null && binaryReader.parseNext(handler)) {
+                // keep going
+            }
+        } catch (IOException e) {
+            if (base != null) {
+                throw new DocumentException("Error reading " + base, e);
+            }
+            throw new DocumentException("Error reading binary BugCollection", e);
+        } catch (SAXException e) {
+            if (base != null) {
+                throw new DocumentException("Sax error while parsing " + base, e);
+            }
+            throw new DocumentException("Sax error ", e);
+        }
+    }
+
+    private static String qualifiedName(QName name) {
+        String prefix = name.getPrefix();
+        if (prefix == null || prefix.length() == 0) {
+            return name.getLocalPart();
+        }
+        return prefix + ":" + name.getLocalPart();
+    }
+
+    private DocumentException newDocumentException(XMLStreamException e) {
+        Location location = e.getLocation();
+        String where = location == null ? "" : " at line " + location.getLineNumber() + " : " + location.getColumnNumber();
+        if (base != null) {
+            return new DocumentException("Parse error" + where + " of " + base, e);
+        }
+        return new DocumentException("Parse error" + where, e);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        if (xmlReader == null || reader == null) {
+            // The binary reader has already closed the input stream
+            return;
+        }
+        try {
+            xmlReader.close();
+        } catch (XMLStreamException e) {
+            assert true;
+        } finally {
+            reader.close();
+        }
+    }
+}
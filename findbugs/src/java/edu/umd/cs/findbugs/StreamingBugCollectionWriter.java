@@ -0,0 +1,178 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.WillCloseWhenClosed;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.xml.OutputStreamXMLOutput;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+
+/**
+ * Writes BugCollection XML one BugInstance at a time, so that files of any
+ * size can be written in constant memory. Everything but the BugInstances is
+ * taken from a SortedBugCollection, whose own BugInstances are not written.
+ * Writing a BugInstance is equivalent to adding it to the SortedBugCollection
+ * (without updating its first version) and writing the collection with
+ * {@link SortedBugCollection#writeXML(XMLOutput)}, except that:
+ * <ul>
+ * <li>the BugInstances are written in the order they are given, rather than
+ * sorted,</li>
+ * <li>the statistics are always written after the BugInstances, and</li>
+ * <li>when messages are written, the instance occurrence numbers of the
+ * BugInstances are not recomputed, and no FileStats are written, since
+ * these depend on all the BugInstances.</li>
+ * </ul>
+ *
+ * <p>
+ * The prologue is written with the first BugInstance, so the metadata
+ * preceding the BugInstances (the project, the sequence number, ...) must be
+ * complete by then; the other metadata must be complete when
+ * {@link #finish()} is called.
+ * </p>
+ *
+ * @see StreamingBugCollectionReader
+ */
+public class StreamingBugCollectionWriter {
+
+    private final SortedBugCollection bugCollection;
+
+    private final XMLOutput xmlOutput;
+
+    private boolean prologueWritten;
+
+    /** One BugInstance of each bug type written, to describe the types */
+    private final Map<String, BugInstance> bugTypes = new HashMap<String, BugInstance>();
+
+    /**
+     * Constructor.
+     *
+     * @param bugCollection
+     *            the SortedBugCollection to take everything but the
+     *            BugInstances from
+     * @param xmlOutput
+     *            the XMLOutput to write to; it is finished by
+     *            {@link #finish()}
+     */
+    public StreamingBugCollectionWriter(SortedBugCollection bugCollection, @WillCloseWhenClosed XMLOutput xmlOutput) {
+        this.bugCollection = bugCollection;
+        this.xmlOutput = xmlOutput;
+    }
+
+    /**
+     * Write to an output stream.
+     *
+     * @param bugCollection
+     *            the SortedBugCollection to take everything but the
+     *            BugInstances from
+     * @param out
+     *            the output stream, which is closed by {@link #finish()}
+     */
+    public StreamingBugCollectionWriter(SortedBugCollection bugCollection, @WillCloseWhenClosed OutputStream out) {
+        this(bugCollection, new OutputStreamXMLOutput(UTF8.writer(out)));
+    }
+
+    /**
+     * Write to a file, compressed with gzip if its name ends with ".gz", or
+     * in the binary format if its name ends with
+     * {@link BinaryBugCollectionFormat#FILE_EXTENSION}.
+     *
+     * @param bugCollection
+     *            the SortedBugCollection to take everything but the
+     *            BugInstances from
+     * @param fileName
+     *            the name of the file
+     */
+    public StreamingBugCollectionWriter(SortedBugCollection bugCollection, String fileName) throws IOException {
+        this(bugCollection, createXMLOutput(fileName));
+    }
+
+    private static XMLOutput createXMLOutput(String fileName) throws IOException {
+        OutputStream out = new FileOutputStream(fileName);
+        if (BinaryBugCollectionFormat.isBinaryFileName(fileName)) {
+            return new BinaryBugCollectionOutput(out);
+        }
+        if (fileName.endsWith(".gz")) {
+            out = new GZIPOutputStream(out);
+        }
+        return new OutputStreamXMLOutput(UTF8.writer(out));
+    }
+
+    /**
+     * Write a BugInstance. Unless it is dead, it is counted in the
+     * ProjectStats of the SortedBugCollection.
+     *
+     * @param bugInstance
+     *            the BugInstance
+     */
+    public void writeBugInstance(BugInstance bugInstance) throws IOException {
+        if (!bugInstance.isDead()) {
+            bugCollection.getProjectStats().addBug(bugInstance);
+        }
+        writeCountedBugInstance(bugInstance);
+    }
+
+    /**
+     * Write a BugInstance which is counted in the ProjectStats of the
+     * SortedBugCollection already.
+     *
+     * @param bugInstance
+     *            the BugInstance
+     */
+    public void writeCountedBugInstance(BugInstance bugInstance) throws IOException {
+        writePrologue();
+        if (bugCollection.isApplySuppressions() && bugCollection.getProject().getSuppressionFilter().match(bugInstance)) {
+            return;
+        }
+        if (!bugTypes.containsKey(bugInstance.getType())) {
+            bugTypes.put(bugInstance.getType(), bugInstance);
+        }
+        bugInstance.writeXML(xmlOutput, bugCollection, bugCollection.getWithMessages());
+    }
+
+    private void writePrologue() throws IOException {
+        if (!prologueWritten) {
+            prologueWritten = true;
+            bugCollection.writePrologue(xmlOutput);
+            if (bugCollection.isEarlyStats()) {
+                bugCollection.getProjectStats().writeXML(xmlOutput, bugCollection.getWithMessages());
+            }
+        }
+    }
+
+    /**
+     * Write the rest of the BugCollection and finish the XMLOutput.
+     */
+    public void finish() throws IOException {
+        try {
+            writePrologue();
+            bugCollection.writeEpilogue(xmlOutput, bugTypes.values(), !bugCollection.isEarlyStats());
+        } finally {
+            xmlOutput.finish();
+        }
+    }
+}
@@ -27,9 +27,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -110,6 +112,14 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
     private boolean noClassOk = false;
 
+    private int threads = 1;
+
+    private String analysisResultCacheDir;
+
+    private String incrementalBaseline;
+
+    private List<String> changedClasses;
+
     private int priorityThreshold = Detector.NORMAL_PRIORITY;
 
     private int rankThreshold = SystemProperties.getInt("findbugs.maxRank", BugRanker.VISIBLE_RANK_MAX);
@@ -185,6 +195,10 @@ public class TextUICommandLine extends FindBugsCommandLine {
         addOption("-output", "filename", "Save output in named file");
         makeOptionUnlisted("-outputFile");
         addSwitchWithOptionalExtraPart("-nested", "true|false", "analyze nested jar/zip archives (default=true)");
+        addOption("-threads", "n", "apply stateless detectors to classes using n threads (experimental, default=1)");
+        addOption("-resultCache", "directory", "keep analysis results in directory, to skip reanalyzing unchanged classes (experimental)");
+        addOption("-incremental", "previous results", "reanalyze only classes affected by -changedClasses, keeping other warnings from previous xml results (experimental)");
+        addOption("-changedClasses", "filepath", "read names of changed classes or class files from a designated file, one per line");
 
         startOptionGroup("Output filtering options:");
         addOption("-bugCategories", "cat1[,cat2...]", "only report bugs in given categories");
@@ -432,6 +446,17 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         } else if ("-maxRank".equals(option)) {
             this.rankThreshold = Integer.parseInt(argument);
+        } else if ("-resultCache".equals(option)) {
+            analysisResultCacheDir = argument;
+        } else if ("-incremental".equals(option)) {
+            incrementalBaseline = argument;
+        } else if ("-changedClasses".equals(option)) {
+            handleChangedClassesFromFile(argument);
+        } else if ("-threads".equals(option)) {
+            threads = Integer.parseInt(argument);
+            if (threads < 1) {
+                throw new IllegalArgumentException("-threads requires a positive number of threads");
+            }
         } else if ("-projectName".equals(option)) {
             this.projectName = argument;
         } else if ("-release".equals(option)) {
@@ -707,6 +732,14 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         findBugs.setScanNestedArchives(scanNestedArchives);
         findBugs.setNoClassOk(noClassOk);
+        findBugs.setThreads(threads);
+        findBugs.setAnalysisResultCacheDirectory(analysisResultCacheDir);
+        if (incrementalBaseline != null || changedClasses != null) {
+            if (incrementalBaseline == null || changedClasses == null) {
+                throw new IllegalArgumentException("-incremental and -changedClasses must be used together");
+            }
+            findBugs.setIncrementalAnalysis(incrementalBaseline, changedClasses);
+        }
 
         findBugs.setBugReporterDecorators(enabledBugReporterDecorators, disabledBugReporterDecorators);
         if (applySuppression) {
@@ -760,6 +793,31 @@ public class TextUICommandLine extends FindBugsCommandLine {
         }
     }
 
+    /**
+     * Handle -changedClasses command line option by reading the names of
+     * changed classes (or class files) from a file.
+     *
+     * @throws IOException
+     */
+    private void handleChangedClassesFromFile(String filePath) throws IOException {
+        changedClasses = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(UTF8.fileReader(filePath));
+        try {
+            while (true) {
+                String s = in.readLine();
+                if (s == null) {
+                    break;
+                }
+                s = s.trim();
+                if (s.length() > 0) {
+                    changedClasses.add(s);
+                }
+            }
+        } finally {
+            Util.closeSilently(in);
+        }
+    }
+
     /**
      * Handle -analyzeFromFile command line option by reading jar file names
      * from a file and adding them to the project.
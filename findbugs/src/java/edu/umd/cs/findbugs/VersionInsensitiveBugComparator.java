@@ -30,7 +30,7 @@ import edu.umd.cs.findbugs.model.IdentityClassNameRewriter;
  * Compare bug instances by only those criteria which we would expect to remain
  * constant between versions.
  */
-public class VersionInsensitiveBugComparator implements WarningComparator {
+public class VersionInsensitiveBugComparator implements WarningComparator, KeyedBugComparator {
 
     private ClassNameRewriter classNameRewriter = IdentityClassNameRewriter.instance();
 
@@ -262,6 +262,52 @@ public class VersionInsensitiveBugComparator implements WarningComparator {
         }
     }
 
+    /**
+     * Get the match key of a BugInstance: its abbrev, type and priority as far
+     * as they are compared, and its significant annotations other than local
+     * variables, which {@link #compare(BugInstance, BugInstance)} may skip or
+     * match by wildcard. Class names are rewritten as when comparing.
+     */
+    @Override
+    public String getMatchKey(BugInstance bug) {
+        BugPattern pattern = bug.getBugPattern();
+        StringBuilder key = new StringBuilder(pattern.getAbbrev());
+        if (isExactBugPatternMatch()) {
+            key.append('\0').append(pattern.getType());
+        }
+        if (comparePriorities) {
+            key.append('\0').append(bug.getPriority());
+        }
+        for (Iterator<BugAnnotation> i = bug.annotationIterator(); i.hasNext();) {
+            BugAnnotation annotation = i.next();
+            if (isBoring(annotation) || annotation instanceof LocalVariableAnnotation) {
+                continue;
+            }
+            Class<? extends BugAnnotation> annotationClass = annotation.getClass();
+            key.append('\0').append(annotationClass.getName()).append('\0');
+            if (annotationClass == ClassAnnotation.class) {
+                key.append(classNameRewriter.rewriteClassName(((ClassAnnotation) annotation).getClassName()));
+            } else if (annotationClass == MethodAnnotation.class) {
+                MethodAnnotation method = ClassNameRewriterUtil.convertMethodAnnotation(classNameRewriter,
+                        (MethodAnnotation) annotation);
+                key.append(method.getClassName()).append('.').append(method.getMethodName()).append(method.getMethodSignature());
+            } else if (annotationClass == FieldAnnotation.class) {
+                FieldAnnotation field = ClassNameRewriterUtil.convertFieldAnnotation(classNameRewriter,
+                        (FieldAnnotation) annotation);
+                key.append(field.getClassName()).append('.').append(field.getFieldName()).append(' ')
+                .append(field.getFieldSignature());
+            } else if (annotationClass == StringAnnotation.class) {
+                key.append(((StringAnnotation) annotation).getValue());
+            } else if (annotationClass == TypeAnnotation.class) {
+                key.append(ClassNameRewriterUtil.rewriteSignature(classNameRewriter,
+                        ((TypeAnnotation) annotation).getTypeDescriptor()));
+            } else if (annotationClass == IntAnnotation.class) {
+                key.append(((IntAnnotation) annotation).getValue());
+            }
+        }
+        return key.toString();
+    }
+
     private boolean interestingNext(Iterator<BugAnnotation> i) {
         while (i.hasNext()) {
             BugAnnotation a = i.next();
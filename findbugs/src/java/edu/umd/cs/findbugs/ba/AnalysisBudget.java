@@ -0,0 +1,408 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2005, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.ba;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.bcel.generic.MethodGen;
+
+import edu.umd.cs.findbugs.ProjectStats;
+import edu.umd.cs.findbugs.SkippedAnalysis;
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.util.ClassName;
+
+/**
+ * Time and iteration budgets for the analysis of each method, each class and
+ * the whole run. When a budget runs out, the analysis degrades step by step
+ * rather than stopping: first the interprocedural analyses are dropped, then
+ * the slow detectors, which rely on expensive dataflow analyses. The other
+ * detectors are always applied, since some of them collect facts about all
+ * classes and would report false warnings if classes were left out. Classes
+ * which are {@link AnalysisContext#isTooBig(ClassDescriptor) too big} start
+ * out degraded, instead of being skipped as they are when there are no
+ * budgets. What was skipped is recorded in the {@link ProjectStats}.
+ *
+ * <p>
+ * The budgets are set with system properties; a budget of 0 means no limit:
+ * </p>
+ * <ul>
+ * <li>findbugs.budget.method.ms: time spent in dataflow analyses of a method</li>
+ * <li>findbugs.budget.method.iterations: basic block visits by the dataflow
+ * analyses of a method</li>
+ * <li>findbugs.budget.class.ms: time spent by the detectors on a class; each
+ * time the budget runs out, the class is degraded by one more step</li>
+ * <li>findbugs.budget.run.ms: time for the whole analysis; classes are
+ * degraded when the analysis is projected to miss this deadline, and no more
+ * dataflow analyses are executed once it is missed</li>
+ * </ul>
+ *
+ * <p>
+ * When a method's budget runs out, the dataflow analysis being executed and
+ * any later dataflow analysis of the method fail with an
+ * {@link AnalysisBudgetExceededException}, which the bug reporters don't
+ * report as errors.
+ * </p>
+ */
+public class AnalysisBudget {
+
+    /**
+     * The steps in which the analysis of a class is degraded, in order.
+     */
+    public enum Degradation {
+        /** Everything is analyzed */
+        NONE,
+        /** Interprocedural first pass detectors are not applied */
+        NO_INTERPROCEDURAL,
+        /** In addition, slow detectors are not applied */
+        NO_EXPENSIVE_DATAFLOW;
+
+        Degradation next() {
+            return this == NO_EXPENSIVE_DATAFLOW ? this : values()[ordinal() + 1];
+        }
+    }
+
+    /**
+     * Why analysis was skipped.
+     */
+    public enum Reason {
+        CLASS_SIZE, CLASS_TIME, RUN_TIME, METHOD_TIME, METHOD_ITERATIONS
+    }
+
+    public static final String METHOD_MILLIS_PROPERTY = "findbugs.budget.method.ms";
+
+    public static final String METHOD_ITERATIONS_PROPERTY = "findbugs.budget.method.iterations";
+
+    public static final String CLASS_MILLIS_PROPERTY = "findbugs.budget.class.ms";
+
+    public static final String RUN_MILLIS_PROPERTY = "findbugs.budget.run.ms";
+
+    /** Number of classes analyzed before the run time is projected */
+    private static final int MIN_CLASSES_FOR_PROJECTION = 10;
+
+    /** Number of basic block visits between checks of the time */
+    private static final int VISITS_PER_TIME_CHECK = 64;
+
+    private final ProjectStats stats;
+
+    private final long methodNanos;
+
+    private final int methodIterations;
+
+    private final long classNanos;
+
+    private final long runNanos;
+
+    private final long runStart;
+
+    private volatile long passStart;
+
+    /** Degradation of classes projected from the run deadline */
+    private volatile Degradation runDegradation = Degradation.NONE;
+
+    private final ThreadLocal<ClassBudget> currentClass = new ThreadLocal<ClassBudget>();
+
+    /**
+     * Constructor.
+     *
+     * @param stats
+     *            the ProjectStats in which to record skipped analysis
+     * @param methodMillis
+     *            time budget of each method, or 0
+     * @param methodIterations
+     *            iteration budget of each method, or 0
+     * @param classMillis
+     *            time budget of each class, or 0
+     * @param runMillis
+     *            time budget of the run, or 0
+     */
+    public AnalysisBudget(ProjectStats stats, long methodMillis, int methodIterations, long classMillis, long runMillis) {
+        this.stats = stats;
+        this.methodNanos = methodMillis * 1000000L;
+        this.methodIterations = methodIterations;
+        this.classNanos = classMillis * 1000000L;
+        this.runNanos = runMillis * 1000000L;
+        this.runStart = System.nanoTime();
+        this.passStart = runStart;
+    }
+
+    /**
+     * Create the AnalysisBudget given by the system properties.
+     *
+     * @param stats
+     *            the ProjectStats in which to record skipped analysis
+     * @return the AnalysisBudget, or null if no budget is set
+     */
+    public static @CheckForNull AnalysisBudget fromSystemProperties(ProjectStats stats) {
+        long methodMillis = SystemProperties.getInt(METHOD_MILLIS_PROPERTY, 0);
+        int methodIterations = SystemProperties.getInt(METHOD_ITERATIONS_PROPERTY, 0);
+        long classMillis = SystemProperties.getInt(CLASS_MILLIS_PROPERTY, 0);
+        long runMillis = SystemProperties.getInt(RUN_MILLIS_PROPERTY, 0);
+        if (methodMillis <= 0 && methodIterations <= 0 && classMillis <= 0 && runMillis <= 0) {
+            return null;
+        }
+        return new AnalysisBudget(stats, Math.max(methodMillis, 0), Math.max(methodIterations, 0), Math.max(classMillis, 0),
+                Math.max(runMillis, 0));
+    }
+
+    /**
+     * Start an analysis pass. The time the rest of the pass will take is
+     * projected from the time taken by the classes analyzed so far in the
+     * pass.
+     */
+    public void startPass() {
+        passStart = System.nanoTime();
+    }
+
+    /**
+     * Start the analysis of a class by the calling thread.
+     *
+     * @param classDescriptor
+     *            the class
+     * @param isTooBig
+     *            true if the class is too big to be analyzed fully
+     * @param index
+     *            number of classes of the pass analyzed before this one, or
+     *            -1 if not known
+     * @param numClasses
+     *            number of classes in the pass
+     */
+    public void startClass(ClassDescriptor classDescriptor, boolean isTooBig, int index, int numClasses) {
+        long now = System.nanoTime();
+        if (runNanos > 0 && index >= MIN_CLASSES_FOR_PROJECTION) {
+            runDegradation = projectRunDegradation(now, index, numClasses);
+        }
+        ClassBudget budget = new ClassBudget(classDescriptor, now);
+        if (isTooBig) {
+            budget.degrade(Degradation.NO_EXPENSIVE_DATAFLOW, Reason.CLASS_SIZE);
+        }
+        budget.degrade(runDegradation, Reason.RUN_TIME);
+        currentClass.set(budget);
+    }
+
+    /**
+     * Degrade classes more the further the analysis is projected to overrun
+     * the run deadline.
+     */
+    private Degradation projectRunDegradation(long now, int index, int numClasses) {
+        long remaining = runNanos - (now - runStart);
+        if (remaining <= 0) {
+            return Degradation.NO_EXPENSIVE_DATAFLOW;
+        }
+        double projected = (double) (now - passStart) / index * (numClasses - index);
+        if (projected <= remaining) {
+            return Degradation.NONE;
+        } else if (projected <= 2 * remaining) {
+            return Degradation.NO_INTERPROCEDURAL;
+        }
+        return Degradation.NO_EXPENSIVE_DATAFLOW;
+    }
+
+    /**
+     * Should a detector be applied to the class being analyzed by the calling
+     * thread?
+     *
+     * @param droppedAt
+     *            the degradation at which the detector is no longer applied,
+     *            or null if it is always applied
+     * @return true if the detector should be applied
+     */
+    public boolean allows(@CheckForNull Degradation droppedAt) {
+        ClassBudget budget = currentClass.get();
+        if (droppedAt == null || budget == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (runNanos > 0 && now - runStart > runNanos) {
+            budget.degrade(Degradation.NO_EXPENSIVE_DATAFLOW, Reason.RUN_TIME);
+        }
+        if (classNanos > 0) {
+            Degradation byTime = Degradation.NONE;
+            for (long spent = now - budget.start; spent > classNanos && byTime != byTime.next(); spent -= classNanos) {
+                byTime = byTime.next();
+            }
+            budget.degrade(byTime, Reason.CLASS_TIME);
+        }
+        if (budget.degradation.compareTo(droppedAt) >= 0) {
+            budget.skippedDetectors++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finish the analysis of the class being analyzed by the calling thread,
+     * and record what was skipped.
+     */
+    public void endClass() {
+        ClassBudget budget = currentClass.get();
+        currentClass.remove();
+        if (budget != null && budget.degradation != Degradation.NONE
+                && (budget.skippedDetectors > 0 || budget.reason == Reason.CLASS_SIZE)) {
+            stats.addSkippedAnalysis(new SkippedAnalysis(budget.classDescriptor.toDottedClassName(), null,
+                    budget.degradation, budget.reason, budget.skippedDetectors));
+        }
+    }
+
+    /**
+     * Start the execution of a dataflow analysis.
+     *
+     * @param cfg
+     *            the CFG of the analyzed method
+     * @return the budget of the method, or null if it has none
+     * @throws AnalysisBudgetExceededException
+     *             if the budget of the method has run out
+     */
+    static @CheckForNull MethodBudget startDataflow(CFG cfg) throws AnalysisBudgetExceededException {
+        AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+        if (analysisContext == null) {
+            return null;
+        }
+        AnalysisBudget analysisBudget = analysisContext.getAnalysisBudget();
+        if (analysisBudget == null || analysisBudget.methodNanos == 0 && analysisBudget.methodIterations == 0
+                && analysisBudget.runNanos == 0) {
+            return null;
+        }
+        ClassBudget classBudget = analysisBudget.currentClass.get();
+        MethodGen methodGen = cfg.getMethodGen();
+        if (classBudget == null || methodGen == null) {
+            return null;
+        }
+        // The method may belong to another class than the one being
+        // analyzed, e.g. when a detector analyzes a method it calls
+        MethodDescriptor method = DescriptorFactory.instance().getMethodDescriptor(
+                ClassName.toSlashedClassName(methodGen.getClassName()), methodGen.getName(), methodGen.getSignature(),
+                methodGen.isStatic());
+        MethodBudget budget = classBudget.methods.get(method);
+        if (budget == null) {
+            budget = analysisBudget.new MethodBudget(method);
+            classBudget.methods.put(method, budget);
+        }
+        budget.start();
+        return budget;
+    }
+
+    /**
+     * Budget state of the class being analyzed by a thread.
+     */
+    private static class ClassBudget {
+        final ClassDescriptor classDescriptor;
+
+        final long start;
+
+        Degradation degradation = Degradation.NONE;
+
+        Reason reason;
+
+        int skippedDetectors;
+
+        final Map<MethodDescriptor, MethodBudget> methods = new HashMap<MethodDescriptor, MethodBudget>();
+
+        ClassBudget(ClassDescriptor classDescriptor, long start) {
+            this.classDescriptor = classDescriptor;
+            this.start = start;
+        }
+
+        void degrade(Degradation d, Reason why) {
+            if (d.compareTo(degradation) > 0) {
+                degradation = d;
+                reason = why;
+            }
+        }
+    }
+
+    /**
+     * Budget state of a method analyzed during the analysis of a class by a
+     * thread.
+     */
+    class MethodBudget {
+        private final MethodDescriptor method;
+
+        private long spentNanos;
+
+        private long startedAt;
+
+        /** Number of dataflow executions in progress (they may nest) */
+        private int depth;
+
+        private int iterations;
+
+        private Reason exhausted;
+
+        MethodBudget(MethodDescriptor method) {
+            this.method = method;
+        }
+
+        void start() throws AnalysisBudgetExceededException {
+            if (exhausted != null) {
+                throw exceeded();
+            }
+            if (runNanos > 0 && System.nanoTime() - runStart > runNanos) {
+                exhaust(Reason.RUN_TIME);
+            }
+            if (depth++ == 0) {
+                startedAt = System.nanoTime();
+            }
+        }
+
+        /**
+         * Called by Dataflow for every visit of a basic block.
+         */
+        void visitBlock() throws AnalysisBudgetExceededException {
+            ++iterations;
+            if (methodIterations > 0 && iterations > methodIterations) {
+                exhaust(Reason.METHOD_ITERATIONS);
+            }
+            if (iterations % VISITS_PER_TIME_CHECK == 0) {
+                long now = System.nanoTime();
+                if (methodNanos > 0 && spentNanos + (now - startedAt) > methodNanos) {
+                    exhaust(Reason.METHOD_TIME);
+                }
+                if (runNanos > 0 && now - runStart > runNanos) {
+                    exhaust(Reason.RUN_TIME);
+                }
+            }
+        }
+
+        void end() {
+            if (--depth == 0) {
+                spentNanos += System.nanoTime() - startedAt;
+            }
+        }
+
+        private void exhaust(Reason why) throws AnalysisBudgetExceededException {
+            if (exhausted == null) {
+                exhausted = why;
+                stats.addSkippedAnalysis(new SkippedAnalysis(method.getClassDescriptor().toDottedClassName(), method.getName()
+                        + method.getSignature(), Degradation.NO_EXPENSIVE_DATAFLOW, why, 0));
+            }
+            throw exceeded();
+        }
+
+        private AnalysisBudgetExceededException exceeded() {
+            return new AnalysisBudgetExceededException(method.getClassDescriptor().toDottedClassName() + "." + method.getName()
+                    + method.getSignature(), exhausted);
+        }
+    }
+}
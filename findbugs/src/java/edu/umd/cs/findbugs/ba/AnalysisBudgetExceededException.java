@@ -0,0 +1,51 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2005, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.ba;
+
+/**
+ * Signals that a dataflow analysis was not executed, or was abandoned,
+ * because the analysis budget of the method ran out.
+ *
+ * @see AnalysisBudget
+ */
+public class AnalysisBudgetExceededException extends DataflowAnalysisException {
+    private static final long serialVersionUID = 1L;
+
+    private final AnalysisBudget.Reason reason;
+
+    /**
+     * Constructor.
+     *
+     * @param methodName
+     *            the fully qualified name of the method
+     * @param reason
+     *            the budget which ran out
+     */
+    public AnalysisBudgetExceededException(String methodName, AnalysisBudget.Reason reason) {
+        super("Analysis budget (" + reason + ") exceeded for " + methodName);
+        this.reason = reason;
+    }
+
+    /**
+     * @return the budget which ran out
+     */
+    public AnalysisBudget.Reason getReason() {
+        return reason;
+    }
+}
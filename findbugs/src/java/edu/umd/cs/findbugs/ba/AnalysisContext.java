@@ -26,6 +26,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -46,6 +47,7 @@ import edu.umd.cs.findbugs.SourceLineAnnotation;
 import edu.umd.cs.findbugs.SuppressionMatcher;
 import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.AnalysisFeatures.AnalysisFeature;
+import edu.umd.cs.findbugs.ba.ch.ClassHierarchyCallGraph;
 import edu.umd.cs.findbugs.ba.ch.Subtypes2;
 import edu.umd.cs.findbugs.ba.interproc.PropertyDatabase;
 import edu.umd.cs.findbugs.ba.interproc.PropertyDatabaseFormatException;
@@ -63,6 +65,7 @@ import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.classfile.analysis.ClassData;
 import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
+import edu.umd.cs.findbugs.classfile.analysis.MemberStore;
 import edu.umd.cs.findbugs.classfile.analysis.MethodInfo;
 import edu.umd.cs.findbugs.detect.UnreadFields;
 import edu.umd.cs.findbugs.detect.UnreadFieldsData;
@@ -90,6 +93,13 @@ public class AnalysisContext {
 
     public static final boolean IGNORE_BUILTIN_MODELS = SystemProperties.getBoolean("findbugs.ignoreBuiltinModels");
 
+    /**
+     * Write interprocedural databases in the binary format, which can be
+     * memory-mapped when they are read (see
+     * {@link edu.umd.cs.findbugs.ba.interproc.MappedPropertyTable})
+     */
+    public static final boolean WRITE_BINARY_DATABASES = SystemProperties.getBoolean("findbugs.binaryDatabases");
+
     public static final String DEFAULT_NONNULL_PARAM_DATABASE_FILENAME = "nonnullParam.db";
 
     public static final String DEFAULT_CHECK_FOR_NULL_PARAM_DATABASE_FILENAME = "checkForNullParam.db";
@@ -147,7 +157,12 @@ public class AnalysisContext {
 
     private ClassSummary classSummary;
 
-    private ClassDescriptor classBeingAnalyzed;
+    /** Class each thread is analyzing; analysis worker threads set their own */
+    private final ThreadLocal<ClassDescriptor> classBeingAnalyzed = new ThreadLocal<ClassDescriptor>();
+
+    private List<ClassDescriptor> appClassList = Collections.emptyList();
+
+    private AnalysisBudget analysisBudget;
 
     private FieldSummary fieldSummary;
 
@@ -203,15 +218,15 @@ public class AnalysisContext {
     }
 
     public ClassDescriptor getClassBeingAnalyzed() {
-        return classBeingAnalyzed;
+        return classBeingAnalyzed.get();
     }
 
     public void setClassBeingAnalyzed(@Nonnull ClassDescriptor classBeingAnalyzed) {
-        this.classBeingAnalyzed = classBeingAnalyzed;
+        this.classBeingAnalyzed.set(classBeingAnalyzed);
     }
 
     public void clearClassBeingAnalyzed() {
-        this.classBeingAnalyzed = null;
+        this.classBeingAnalyzed.remove();
     }
 
     public ClassSummary getClassSummary() {
@@ -505,6 +520,26 @@ public class AnalysisContext {
         return false;
     }
 
+    /**
+     * @return the budgets of the analysis, or null if the analysis has no
+     *         budgets
+     */
+    public @CheckForNull AnalysisBudget getAnalysisBudget() {
+        return analysisBudget;
+    }
+
+    /**
+     * Set the budgets of the analysis. When there are budgets, classes which
+     * are {@link #isTooBig(ClassDescriptor) too big} are degraded according
+     * to the budgets instead of being skipped.
+     *
+     * @param analysisBudget
+     *            the budgets, or null if the analysis has no budgets
+     */
+    public void setAnalysisBudget(@CheckForNull AnalysisBudget analysisBudget) {
+        this.analysisBudget = analysisBudget;
+    }
+
     /**
      * Lookup a class.
      * <em>Use this method instead of Repository.lookupClass().</em>
@@ -742,7 +777,8 @@ public class AnalysisContext {
     }
 
     /**
-     * Write an interprocedural property database.
+     * Write an interprocedural property database, in the binary format if the
+     * findbugs.binaryDatabases property is set.
      *
      * @param <DatabaseType>
      *            actual type of the database
@@ -765,7 +801,11 @@ public class AnalysisContext {
             if (DEBUG) {
                 System.out.println("Writing " + description + " to " + dbFile.getPath() + "...");
             }
-            database.writeToFile(dbFile.getPath());
+            if (WRITE_BINARY_DATABASES) {
+                database.writeBinaryToFile(dbFile.getPath());
+            } else {
+                database.writeToFile(dbFile.getPath());
+            }
         } catch (IOException e) {
             getLookupFailureCallback().logError("Error writing " + description, e);
         }
@@ -961,6 +1001,7 @@ public class AnalysisContext {
 
     public void setAppClassList(List<ClassDescriptor> appClassCollection) {
         // FIXME: we really should drive the progress callback here
+        appClassList = Collections.unmodifiableList(new ArrayList<ClassDescriptor>(appClassCollection));
         HashSet<ClassDescriptor> appSet = new HashSet<ClassDescriptor>(appClassCollection);
 
         Collection<ClassDescriptor> allClassDescriptors = new ArrayList<ClassDescriptor>(DescriptorFactory.instance()
@@ -978,6 +1019,11 @@ public class AnalysisContext {
                     getSubtypes2().addApplicationClass(xclass);
                 } else if (xclass instanceof ClassInfo) {
                     getSubtypes2().addClass(xclass);
+                    if (MemberStore.ENABLED) {
+                        // Members of classes which aren't analyzed are
+                        // materialized when they are looked up
+                        Global.getAnalysisCache().getDatabase(MemberStore.class).compact((ClassInfo) xclass);
+                    }
                 }
 
             } catch (Exception e) {
@@ -985,6 +1031,8 @@ public class AnalysisContext {
             }
         }
 
+        getSubtypes2().buildHierarchyIndex();
+
         if (true && Subtypes2.DEBUG) {
             System.out.println(getSubtypes2().getGraph().getNumVertices() + " vertices in inheritance graph");
         }
@@ -1022,6 +1070,21 @@ public class AnalysisContext {
         return Global.getAnalysisCache().getDatabase(Subtypes2.class);
     }
 
+    /**
+     * Get the database of resolved method calls and the class hierarchy call
+     * graph.
+     */
+    public ClassHierarchyCallGraph getClassHierarchyCallGraph() {
+        return Global.getAnalysisCache().getDatabase(ClassHierarchyCallGraph.class);
+    }
+
+    /**
+     * Get the application classes, as set by {@link #setAppClassList(List)}.
+     */
+    public List<ClassDescriptor> getAppClassList() {
+        return appClassList;
+    }
+
 
     public DirectlyRelevantTypeQualifiersDatabase getDirectlyRelevantTypeQualifiersDatabase() {
         return Global.getAnalysisCache().getDatabase(DirectlyRelevantTypeQualifiersDatabase.class);
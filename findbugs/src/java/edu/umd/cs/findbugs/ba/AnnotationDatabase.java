@@ -129,14 +129,18 @@ public class AnnotationDatabase<AnnotationEnum extends AnnotationEnumeration<Ann
             cache = cachedMaximal;
         }
 
-        if (cache.containsKey(o)) {
-            return cache.get(o);
+        synchronized (cache) {
+            if (cache.containsKey(o)) {
+                return cache.get(o);
+            }
         }
         AnnotationEnum n = getUncachedResolvedAnnotation(o, getMinimal);
         if (DEBUG) {
             System.out.println("TTT: " + o + " " + n);
         }
-        cache.put(o, n);
+        synchronized (cache) {
+            cache.put(o, n);
+        }
         return n;
     }
 
@@ -19,10 +19,12 @@
 
 package edu.umd.cs.findbugs.ba;
 
-import java.util.IdentityHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.deref.UnconditionalValueDerefAnalysis;
 import edu.umd.cs.findbugs.ba.deref.UnconditionalValueDerefSet;
 
@@ -38,23 +40,40 @@ import edu.umd.cs.findbugs.ba.deref.UnconditionalValueDerefSet;
  * @author David Hovemeyer
  */
 public abstract class BasicAbstractDataflowAnalysis<Fact> implements DataflowAnalysis<Fact> {
-    private final IdentityHashMap<BasicBlock, Fact> startFactMap;
+    /** Use the worklist solver for all analyses, for testing */
+    private static final boolean USE_WORKLIST_SOLVER = SystemProperties.getBoolean("dataflow.worklist");
 
-    private final IdentityHashMap<BasicBlock, Fact> resultFactMap;
+    /** Initial size of the fact arrays */
+    private static final int INITIAL_SIZE = 16;
+
+    /*
+     * Start and result facts, indexed by basic block label. The labels of the
+     * blocks of a CFG are small consecutive integers, so arrays are smaller
+     * and faster than maps keyed by block.
+     */
+    private Object[] startFacts;
+
+    private Object[] resultFacts;
 
     /**
      * Constructor.
      */
     public BasicAbstractDataflowAnalysis() {
-        this.startFactMap = new IdentityHashMap<BasicBlock, Fact>();
-        this.resultFactMap = new IdentityHashMap<BasicBlock, Fact>();
+        this.startFacts = new Object[INITIAL_SIZE];
+        this.resultFacts = new Object[INITIAL_SIZE];
     }
 
     /**
      * Get an iterator over the result facts.
      */
     public Iterator<Fact> resultFactIterator() {
-        return resultFactMap.values().iterator();
+        List<Fact> result = new ArrayList<Fact>();
+        for (Object fact : resultFacts) {
+            if (fact != null) {
+                result.add(asFact(fact));
+            }
+        }
+        return result.iterator();
     }
 
     /*
@@ -67,12 +86,30 @@ public abstract class BasicAbstractDataflowAnalysis<Fact> implements DataflowAna
 
     @Override
     public/* final */Fact getStartFact(BasicBlock block) {
-        return lookupOrCreateFact(startFactMap, block);
+        int label = block.getLabel();
+        if (label >= startFacts.length) {
+            startFacts = grow(startFacts, label);
+        }
+        Object fact = startFacts[label];
+        if (fact == null) {
+            fact = createFact();
+            startFacts[label] = fact;
+        }
+        return asFact(fact);
     }
 
     @Override
     public/* final */Fact getResultFact(BasicBlock block) {
-        return lookupOrCreateFact(resultFactMap, block);
+        int label = block.getLabel();
+        if (label >= resultFacts.length) {
+            resultFacts = grow(resultFacts, label);
+        }
+        Object fact = resultFacts[label];
+        if (fact == null) {
+            fact = createFact();
+            resultFacts[label] = fact;
+        }
+        return asFact(fact);
     }
 
     /**
@@ -146,6 +183,18 @@ public abstract class BasicAbstractDataflowAnalysis<Fact> implements DataflowAna
         return result;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.ba.DataflowAnalysis#useWorklistSolver()
+     */
+    @Override
+    public boolean useWorklistSolver() {
+        // Subclasses which don't depend on the block visiting order
+        // may override
+        return USE_WORKLIST_SOLVER;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -179,13 +228,13 @@ public abstract class BasicAbstractDataflowAnalysis<Fact> implements DataflowAna
         // Subclasses may override.
     }
 
-    private Fact lookupOrCreateFact(Map<BasicBlock, Fact> map, BasicBlock block) {
-        Fact fact = map.get(block);
-        if (fact == null) {
-            fact = createFact();
-            map.put(block, fact);
-        }
-        return fact;
+    private static Object[] grow(Object[] facts, int label) {
+        return Arrays.copyOf(facts, Math.max(label + 1, 2 * facts.length));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Fact asFact(Object fact) {
+        return (Fact) fact;
     }
 
     @Override
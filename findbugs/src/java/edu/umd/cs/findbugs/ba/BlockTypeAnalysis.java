@@ -82,6 +82,11 @@ public class BlockTypeAnalysis extends BasicAbstractDataflowAnalysis<BlockType>
         return new ReversePostOrder(cfg, dfs);
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public boolean same(BlockType fact1, BlockType fact2) {
         return fact1.sameAs(fact2);
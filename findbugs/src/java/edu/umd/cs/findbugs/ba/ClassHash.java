@@ -26,9 +26,12 @@ import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.bcel.classfile.Field;
@@ -204,6 +207,50 @@ public class ClassHash implements XMLWriteable, Comparable<ClassHash> {
         return this;
     }
 
+    /**
+     * Compute the hash of a class, but not of its methods, which would need
+     * their code. The hash is the same as that computed from the JavaClass.
+     *
+     * @param xclass
+     *            the class
+     * @return this object
+     */
+    public ClassHash computeHash(XClass xclass) {
+        this.className = xclass.getClassDescriptor().getDottedClassName();
+
+        List<ClassMember> methodList = new ArrayList<ClassMember>(xclass.getXMethods());
+        Collections.sort(methodList, MEMBER_COMPARATOR);
+        List<ClassMember> fieldList = new ArrayList<ClassMember>(xclass.getXFields());
+        Collections.sort(fieldList, MEMBER_COMPARATOR);
+
+        MessageDigest digest = Util.getMD5Digest();
+        CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
+        for (ClassMember method : methodList) {
+            work(digest, method.getName(), encoder);
+            work(digest, method.getSignature(), encoder);
+        }
+        for (ClassMember field : fieldList) {
+            work(digest, field.getName(), encoder);
+            work(digest, field.getSignature(), encoder);
+        }
+
+        classHash = digest.digest();
+
+        return this;
+    }
+
+    private static final Comparator<ClassMember> MEMBER_COMPARATOR = new Comparator<ClassMember>() {
+        @Override
+        public int compare(ClassMember o1, ClassMember o2) {
+            // sort by name, then signature
+            int cmp = o1.getName().compareTo(o2.getName());
+            if (cmp != 0) {
+                return cmp;
+            }
+            return o1.getSignature().compareTo(o2.getSignature());
+        }
+    };
+
     private static void work(MessageDigest digest, String s, CharsetEncoder encoder) {
         try {
             CharBuffer cbuf = CharBuffer.allocate(s.length());
@@ -0,0 +1,816 @@
+/*
+ * Bytecode Analysis Framework
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.bcel.generic.InstructionHandle;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Control flow graph of a method, built directly from the bytes of its class
+ * file. Unlike {@link CFG}, no BCEL MethodGen or InstructionHandles are
+ * created: blocks are numbered ranges of PCs, and edges are kept in int
+ * arrays, with the edge types of {@link EdgeTypes}.
+ *
+ * <p>
+ * Blocks are numbered in PC order; the entry block is block 0, starting at
+ * PC 0. An extra, empty exit block is the target of the
+ * {@link EdgeTypes#RETURN_EDGE} edges, and of the
+ * {@link EdgeTypes#UNHANDLED_EXCEPTION_EDGE} edges of blocks ending with
+ * athrow. Every block with an instruction in the range of an exception
+ * handler has a {@link EdgeTypes#HANDLED_EXCEPTION_EDGE} to the handler;
+ * unlike the edges of a refined {@link CFG}, these are not limited to
+ * instructions which can throw the handled exception. Methods using JSR/RET
+ * subroutines are not supported.
+ * </p>
+ *
+ * <p>
+ * The graph is immutable, so it can be shared by analyses running in
+ * parallel.
+ * </p>
+ *
+ * @see edu.umd.cs.findbugs.classfile.engine.asm.CompactCFGFactory
+ */
+public class CompactCFG implements EdgeTypes {
+
+    private final String methodName;
+
+    private final String methodSig;
+
+    private final int codeLength;
+
+    /** PCs of the instructions, in order. */
+    private final int[] instructionPC;
+
+    /**
+     * Start PC of each block, and the code length for the exit block; a block
+     * ends where the next one starts.
+     */
+    private final int[] blockStart;
+
+    /** Index in instructionPC of the first instruction of each block. */
+    private final int[] blockFirstInstruction;
+
+    /** Successors of block b are at [successorStart[b], successorStart[b+1]) */
+    private final int[] successorStart;
+
+    private final int[] successor;
+
+    private final int[] successorType;
+
+    private final int[] predecessorStart;
+
+    private final int[] predecessor;
+
+    private final int[] predecessorType;
+
+    private CompactCFG(String methodName, String methodSig, int codeLength, int[] instructionPC, int[] blockStart,
+            int[] blockFirstInstruction, int[] successorStart, int[] successor, int[] successorType) {
+        this.methodName = methodName;
+        this.methodSig = methodSig;
+        this.codeLength = codeLength;
+        this.instructionPC = instructionPC;
+        this.blockStart = blockStart;
+        this.blockFirstInstruction = blockFirstInstruction;
+        this.successorStart = successorStart;
+        this.successor = successor;
+        this.successorType = successorType;
+
+        // Invert the successor lists
+        int numBlocks = blockStart.length;
+        predecessorStart = new int[numBlocks + 1];
+        for (int target : successor) {
+            predecessorStart[target + 1]++;
+        }
+        for (int b = 0; b < numBlocks; b++) {
+            predecessorStart[b + 1] += predecessorStart[b];
+        }
+        predecessor = new int[successor.length];
+        predecessorType = new int[successor.length];
+        int[] next = Arrays.copyOf(predecessorStart, numBlocks);
+        for (int b = 0; b < numBlocks; b++) {
+            for (int e = successorStart[b]; e < successorStart[b + 1]; e++) {
+                int slot = next[successor[e]]++;
+                predecessor[slot] = b;
+                predecessorType[slot] = successorType[e];
+            }
+        }
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getMethodSig() {
+        return methodSig;
+    }
+
+    /**
+     * @return the length of the method's bytecode
+     */
+    public int getCodeLength() {
+        return codeLength;
+    }
+
+    /**
+     * @return the number of blocks, including the exit block
+     */
+    public int getNumBasicBlocks() {
+        return blockStart.length;
+    }
+
+    /**
+     * @return the number of edges
+     */
+    public int getNumEdges() {
+        return successor.length;
+    }
+
+    /**
+     * @return the entry block
+     */
+    public int getEntry() {
+        return 0;
+    }
+
+    /**
+     * @return the exit block
+     */
+    public int getExit() {
+        return blockStart.length - 1;
+    }
+
+    /**
+     * @return the PC of the first instruction of a block
+     */
+    public int getStartPC(int block) {
+        return blockStart[block];
+    }
+
+    /**
+     * @return the PC following the last instruction of a block
+     */
+    public int getEndPC(int block) {
+        return block == getExit() ? codeLength : blockStart[block + 1];
+    }
+
+    /**
+     * @return true if the block has no instructions
+     */
+    public boolean isEmpty(int block) {
+        return block == getExit();
+    }
+
+    /**
+     * @return the number of instructions in a block
+     */
+    public int getNumInstructions(int block) {
+        return blockFirstInstruction[block + 1] - blockFirstInstruction[block];
+    }
+
+    /**
+     * @return the PC of the i-th instruction of a block
+     */
+    public int getInstructionPC(int block, int i) {
+        return instructionPC[blockFirstInstruction[block] + i];
+    }
+
+    /**
+     * @return the PC of the last instruction of a non-empty block
+     */
+    public int getLastInstructionPC(int block) {
+        return instructionPC[blockFirstInstruction[block + 1] - 1];
+    }
+
+    /**
+     * Find the block containing an instruction.
+     *
+     * @param pc
+     *            the PC of the instruction
+     * @return the block, or -1 if pc is outside the method's code
+     */
+    public int getBlockContaining(int pc) {
+        if (pc < 0 || pc >= codeLength) {
+            return -1;
+        }
+        // The exit block is excluded from the search
+        int i = Arrays.binarySearch(blockStart, 0, blockStart.length - 1, pc);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    public int getNumSuccessors(int block) {
+        return successorStart[block + 1] - successorStart[block];
+    }
+
+    /**
+     * @return the i-th successor of a block
+     */
+    public int getSuccessor(int block, int i) {
+        return successor[successorStart[block] + i];
+    }
+
+    /**
+     * @return the type of the edge to the i-th successor of a block
+     */
+    public @Edge.Type
+    int getSuccessorEdgeType(int block, int i) {
+        return successorType[successorStart[block] + i];
+    }
+
+    public int getNumPredecessors(int block) {
+        return predecessorStart[block + 1] - predecessorStart[block];
+    }
+
+    /**
+     * @return the i-th predecessor of a block
+     */
+    public int getPredecessor(int block, int i) {
+        return predecessor[predecessorStart[block] + i];
+    }
+
+    /**
+     * @return the type of the edge from the i-th predecessor of a block
+     */
+    public @Edge.Type
+    int getPredecessorEdgeType(int block, int i) {
+        return predecessorType[predecessorStart[block] + i];
+    }
+
+    /**
+     * Get the first successor reached by an edge of the given type.
+     *
+     * @return the successor, or -1 if there is no such edge
+     */
+    public int getSuccessorWithEdgeType(int block, @Edge.Type int edgeType) {
+        for (int e = successorStart[block]; e < successorStart[block + 1]; e++) {
+            if (successorType[e] == edgeType) {
+                return successor[e];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the first predecessor reaching a block by an edge of the given type.
+     *
+     * @return the predecessor, or -1 if there is no such edge
+     */
+    public int getPredecessorWithEdgeType(int block, @Edge.Type int edgeType) {
+        for (int e = predecessorStart[block]; e < predecessorStart[block + 1]; e++) {
+            if (predecessorType[e] == edgeType) {
+                return predecessor[e];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @see CFG#getNumNonExceptionSucessors(BasicBlock)
+     */
+    public int getNumNonExceptionSuccessors(int block) {
+        int count = 0;
+        for (int e = successorStart[block]; e < successorStart[block + 1]; e++) {
+            if (!isExceptionEdge(successorType[e])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compute the blocks reachable from the entry block.
+     */
+    public BitSet getReachableBlocks() {
+        BitSet reached = new BitSet();
+        int[] stack = new int[getNumBasicBlocks()];
+        int top = 0;
+        stack[top++] = getEntry();
+        reached.set(getEntry());
+        while (top > 0) {
+            int block = stack[--top];
+            for (int e = successorStart[block]; e < successorStart[block + 1]; e++) {
+                int target = successor[e];
+                if (!reached.get(target)) {
+                    reached.set(target);
+                    stack[top++] = target;
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Map the blocks of the {@link CFG} of the same method to the blocks of
+     * this graph, so that an analysis of the shape of the control flow done
+     * on this graph can be used together with the dataflow analyses of the
+     * BCEL CFG. A block of the BCEL CFG, which also ends blocks at
+     * instructions which may throw, is inside one block of this graph, except
+     * where the CFG builder replaced a null check computing a boolean by a
+     * single {@link edu.umd.cs.findbugs.bcel.generic.NULL2Z} or
+     * {@link edu.umd.cs.findbugs.bcel.generic.NONNULL2Z} instruction: the
+     * BCEL block then spans the blocks of the check. A BCEL block maps to the
+     * block
+     * containing its first instruction, or, for an exception thrower block,
+     * the instruction which may throw. Instructions added by the CFG builder,
+     * which have no PC, are skipped. The entry and exit blocks map to the
+     * entry and exit blocks, and other blocks without instructions of the
+     * method to the block of their fall through successor.
+     *
+     * @param cfg
+     *            the BCEL CFG of the method
+     * @return the blocks of this graph indexed by BasicBlock label, with -1
+     *         for labels of blocks which are not in the CFG
+     */
+    public int[] mapBasicBlocks(CFG cfg) {
+        int maxLabel = -1;
+        for (BasicBlock block : cfg.blocks()) {
+            maxLabel = Math.max(maxLabel, block.getLabel());
+        }
+        int[] result = new int[maxLabel + 1];
+        Arrays.fill(result, -1);
+        for (BasicBlock block : cfg.blocks()) {
+            BasicBlock cur = block;
+            // Bounded in case of a cycle of empty blocks
+            for (int i = 0; cur != null && i <= maxLabel; i++) {
+                int pc = getFirstPC(cur);
+                if (cur == cfg.getEntry()) {
+                    result[block.getLabel()] = getEntry();
+                } else if (cur == cfg.getExit()) {
+                    result[block.getLabel()] = getExit();
+                } else if (pc >= 0) {
+                    result[block.getLabel()] = getBlockContaining(pc);
+                } else {
+                    cur = cfg.getSuccessorWithEdgeType(cur, FALL_THROUGH_EDGE);
+                    continue;
+                }
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the PC of the first instruction of the method in a BCEL block,
+     *         of the exception thrower if the block is empty, or -1
+     */
+    private static int getFirstPC(BasicBlock block) {
+        if (block.isEmpty()) {
+            return block.isExceptionThrower() ? block.getExceptionThrower().getPosition() : -1;
+        }
+        for (Iterator<InstructionHandle> i = block.instructionIterator(); i.hasNext();) {
+            int pc = i.next().getPosition();
+            if (pc >= 0) {
+                return pc;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isExceptionEdge(int edgeType) {
+        return edgeType == HANDLED_EXCEPTION_EDGE || edgeType == UNHANDLED_EXCEPTION_EDGE;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(methodName).append(methodSig).append('\n');
+        for (int b = 0; b < getNumBasicBlocks(); b++) {
+            buf.append(b == getExit() ? "exit" : "block " + b + " [" + getStartPC(b) + "," + getEndPC(b) + ")");
+            buf.append(" ->");
+            for (int i = 0; i < getNumSuccessors(b); i++) {
+                buf.append(' ').append(getSuccessor(b, i)).append(':').append(Edge.edgeTypeToString(getSuccessorEdgeType(b, i)));
+            }
+            buf.append('\n');
+        }
+        return buf.toString();
+    }
+
+    /*
+     * ----------------------------------------------------------------------
+     * Building
+     * ----------------------------------------------------------------------
+     */
+
+    /**
+     * Build the CFG of a method.
+     *
+     * @param classReader
+     *            ClassReader for the class containing the method
+     * @param methodName
+     *            name of the method
+     * @param methodSig
+     *            signature of the method
+     * @return the CFG, or null if the class has no such method or the method
+     *         has no code
+     * @throws CFGBuilderException
+     *             if the code can't be parsed, or uses JSR/RET subroutines
+     */
+    public static @CheckForNull
+    CompactCFG build(ClassReader classReader, String methodName, String methodSig) throws CFGBuilderException {
+        char[] buf = new char[classReader.getMaxStringLength()];
+
+        // Skip access flags, this class, super class, and interfaces
+        int offset = classReader.header + 6;
+        offset += 2 + 2 * classReader.readUnsignedShort(offset);
+
+        // Skip the fields
+        int fieldsCount = classReader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < fieldsCount; i++) {
+            offset = skipAttributes(classReader, offset + 6);
+        }
+
+        int methodsCount = classReader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < methodsCount; i++) {
+            String name = classReader.readUTF8(offset + 2, buf);
+            String sig = classReader.readUTF8(offset + 4, buf);
+            if (!name.equals(methodName) || !sig.equals(methodSig)) {
+                offset = skipAttributes(classReader, offset + 6);
+                continue;
+            }
+            int attributesCount = classReader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributesCount; j++) {
+                int length = classReader.readInt(offset + 2);
+                if ("Code".equals(classReader.readUTF8(offset, buf))) {
+                    return build(classReader, offset + 6, methodName, methodSig);
+                }
+                offset += 6 + length;
+            }
+            return null;
+        }
+        return null;
+    }
+
+    private static int skipAttributes(ClassReader classReader, int offset) {
+        int attributesCount = classReader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributesCount; i++) {
+            offset += 6 + classReader.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+    /**
+     * Build the CFG from a Code attribute.
+     *
+     * @param offset
+     *            offset of the Code attribute's max_stack item
+     */
+    private static CompactCFG build(ClassReader classReader, int offset, String methodName, String methodSig)
+            throws CFGBuilderException {
+        int codeLength = classReader.readInt(offset + 4);
+        int codeStart = offset + 8;
+        if (codeLength <= 0) {
+            throw new CFGBuilderException("Empty code in " + methodName + methodSig);
+        }
+
+        // Find the instructions and the block leaders
+        BitSet leader = new BitSet(codeLength + 1);
+        leader.set(0);
+        int[] pcs = new int[codeLength];
+        int numInstructions = 0;
+        int pc = 0;
+        while (pc < codeLength) {
+            pcs[numInstructions++] = pc;
+            int opcode = classReader.readByte(codeStart + pc);
+            int length = instructionLength(classReader, codeStart, pc, opcode);
+            if (length <= 0 || pc + length > codeLength) {
+                throw new CFGBuilderException("Invalid bytecode at " + pc + " in " + methodName + methodSig);
+            }
+            if (endsBlock(opcode)) {
+                leader.set(pc + length);
+                int[] targets = branchTargets(classReader, codeStart, pc, opcode);
+                for (int target : targets) {
+                    if (target < 0 || target >= codeLength) {
+                        throw new CFGBuilderException("Invalid branch target at " + pc + " in " + methodName + methodSig);
+                    }
+                    leader.set(target);
+                }
+            }
+            pc += length;
+        }
+        int[] instructionPC = Arrays.copyOf(pcs, numInstructions);
+
+        // Handlers start blocks. Like the blocks of the BCEL CFG, blocks
+        // don't end at the bounds of handler ranges, so each of its blocks
+        // is inside one of these blocks.
+        int handlerTable = codeStart + codeLength;
+        int numHandlers = classReader.readUnsignedShort(handlerTable);
+        int[] handlerStart = new int[numHandlers];
+        int[] handlerEnd = new int[numHandlers];
+        int[] handlerPC = new int[numHandlers];
+        for (int h = 0; h < numHandlers; h++) {
+            int entry = handlerTable + 2 + 8 * h;
+            handlerStart[h] = classReader.readUnsignedShort(entry);
+            handlerEnd[h] = classReader.readUnsignedShort(entry + 2);
+            handlerPC[h] = classReader.readUnsignedShort(entry + 4);
+            if (handlerStart[h] >= handlerEnd[h] || handlerEnd[h] > codeLength || handlerPC[h] >= codeLength) {
+                throw new CFGBuilderException("Invalid exception handler in " + methodName + methodSig);
+            }
+            leader.set(handlerPC[h]);
+        }
+        leader.clear(codeLength);
+
+        // Number the blocks
+        int numBlocks = leader.cardinality() + 1;
+        int[] blockStart = new int[numBlocks];
+        int[] blockFirstInstruction = new int[numBlocks + 1];
+        int b = 0;
+        for (int i = 0; i < numInstructions; i++) {
+            if (leader.get(instructionPC[i])) {
+                blockStart[b] = instructionPC[i];
+                blockFirstInstruction[b] = i;
+                b++;
+            }
+        }
+        if (b != numBlocks - 1) {
+            // A branch target or handler bound is inside an instruction
+            throw new CFGBuilderException("Branch into the middle of an instruction in " + methodName + methodSig);
+        }
+        int exit = numBlocks - 1;
+        blockStart[exit] = codeLength;
+        blockFirstInstruction[exit] = numInstructions;
+        blockFirstInstruction[numBlocks] = numInstructions;
+
+        // Add the edges
+        EdgeList edges = new EdgeList(numBlocks);
+        for (b = 0; b < exit; b++) {
+            int last = instructionPC[blockFirstInstruction[b + 1] - 1];
+            int next = blockFirstInstruction[b + 1] < numInstructions ? b + 1 : -1;
+            int opcode = classReader.readByte(codeStart + last);
+            switch (opcode) {
+            case Opcodes.GOTO:
+            case GOTO_W:
+                edges.add(b, blockOf(blockStart, exit, branchTargets(classReader, codeStart, last, opcode)[0]), GOTO_EDGE);
+                break;
+            case Opcodes.TABLESWITCH:
+            case Opcodes.LOOKUPSWITCH: {
+                int[] targets = branchTargets(classReader, codeStart, last, opcode);
+                edges.add(b, blockOf(blockStart, exit, targets[0]), SWITCH_DEFAULT_EDGE);
+                for (int i = 1; i < targets.length; i++) {
+                    edges.add(b, blockOf(blockStart, exit, targets[i]), SWITCH_EDGE);
+                }
+                break;
+            }
+            case Opcodes.IRETURN:
+            case Opcodes.LRETURN:
+            case Opcodes.FRETURN:
+            case Opcodes.DRETURN:
+            case Opcodes.ARETURN:
+            case Opcodes.RETURN:
+                edges.add(b, exit, RETURN_EDGE);
+                break;
+            case Opcodes.ATHROW:
+                edges.add(b, exit, UNHANDLED_EXCEPTION_EDGE);
+                break;
+            case Opcodes.JSR:
+            case JSR_W:
+            case Opcodes.RET:
+                throw new CFGBuilderException("JSR/RET subroutines are not supported in " + methodName + methodSig);
+            default:
+                if (next < 0) {
+                    throw new CFGBuilderException("Falling off the end of the code in " + methodName + methodSig);
+                }
+                edges.add(b, next, FALL_THROUGH_EDGE);
+                if (isConditionalBranch(opcode)) {
+                    edges.add(b, blockOf(blockStart, exit, branchTargets(classReader, codeStart, last, opcode)[0]), IFCMP_EDGE);
+                }
+                break;
+            }
+            for (int h = 0; h < numHandlers; h++) {
+                if (blockStart[b] < handlerEnd[h] && blockStart[b + 1] > handlerStart[h]) {
+                    edges.add(b, blockOf(blockStart, exit, handlerPC[h]), HANDLED_EXCEPTION_EDGE);
+                }
+            }
+            edges.endBlock(b);
+        }
+        edges.endBlock(exit);
+
+        return new CompactCFG(methodName, methodSig, codeLength, instructionPC, blockStart, blockFirstInstruction,
+                edges.start, edges.getTargets(), edges.getTypes());
+    }
+
+    /**
+     * Edges, added block by block.
+     */
+    private static class EdgeList {
+        final int[] start;
+
+        int[] target = new int[16];
+
+        int[] type = new int[16];
+
+        int size;
+
+        EdgeList(int numBlocks) {
+            start = new int[numBlocks + 1];
+        }
+
+        void add(int source, int dest, int edgeType) {
+            // Switches and handler lists may repeat an edge
+            for (int e = start[source]; e < size; e++) {
+                if (target[e] == dest && type[e] == edgeType) {
+                    return;
+                }
+            }
+            if (size == target.length) {
+                target = Arrays.copyOf(target, 2 * size);
+                type = Arrays.copyOf(type, 2 * size);
+            }
+            target[size] = dest;
+            type[size] = edgeType;
+            size++;
+        }
+
+        void endBlock(int block) {
+            start[block + 1] = size;
+        }
+
+        int[] getTargets() {
+            return Arrays.copyOf(target, size);
+        }
+
+        int[] getTypes() {
+            return Arrays.copyOf(type, size);
+        }
+    }
+
+    private static final int WIDE = 196;
+
+    private static final int GOTO_W = 200;
+
+    private static final int JSR_W = 201;
+
+    private static int blockOf(int[] blockStart, int exit, int pc) {
+        return Arrays.binarySearch(blockStart, 0, exit, pc);
+    }
+
+    private static boolean isConditionalBranch(int opcode) {
+        return (opcode >= Opcodes.IFEQ && opcode <= Opcodes.IF_ACMPNE) || opcode == Opcodes.IFNULL
+                || opcode == Opcodes.IFNONNULL;
+    }
+
+    private static boolean endsBlock(int opcode) {
+        switch (opcode) {
+        case Opcodes.GOTO:
+        case GOTO_W:
+        case Opcodes.JSR:
+        case JSR_W:
+        case Opcodes.RET:
+        case Opcodes.TABLESWITCH:
+        case Opcodes.LOOKUPSWITCH:
+        case Opcodes.IRETURN:
+        case Opcodes.LRETURN:
+        case Opcodes.FRETURN:
+        case Opcodes.DRETURN:
+        case Opcodes.ARETURN:
+        case Opcodes.RETURN:
+        case Opcodes.ATHROW:
+            return true;
+        default:
+            return isConditionalBranch(opcode);
+        }
+    }
+
+    /**
+     * Get the targets of a branch. For a switch, the default target comes
+     * first.
+     */
+    private static int[] branchTargets(ClassReader classReader, int codeStart, int pc, int opcode) {
+        int at = codeStart + pc;
+        switch (opcode) {
+        case GOTO_W:
+        case JSR_W:
+            return new int[] { pc + classReader.readInt(at + 1) };
+        case Opcodes.TABLESWITCH: {
+            int operands = codeStart + ((pc + 4) & ~3);
+            int low = classReader.readInt(operands + 4);
+            int high = classReader.readInt(operands + 8);
+            int[] targets = new int[high - low + 2];
+            targets[0] = pc + classReader.readInt(operands);
+            for (int i = 1; i < targets.length; i++) {
+                targets[i] = pc + classReader.readInt(operands + 8 + 4 * i);
+            }
+            return targets;
+        }
+        case Opcodes.LOOKUPSWITCH: {
+            int operands = codeStart + ((pc + 4) & ~3);
+            int npairs = classReader.readInt(operands + 4);
+            int[] targets = new int[npairs + 1];
+            targets[0] = pc + classReader.readInt(operands);
+            for (int i = 1; i < targets.length; i++) {
+                targets[i] = pc + classReader.readInt(operands + 4 + 8 * i);
+            }
+            return targets;
+        }
+        case Opcodes.GOTO:
+        case Opcodes.JSR:
+            return new int[] { pc + classReader.readShort(at + 1) };
+        default:
+            if (isConditionalBranch(opcode)) {
+                return new int[] { pc + classReader.readShort(at + 1) };
+            }
+            return new int[0];
+        }
+    }
+
+    /**
+     * Get the length of an instruction.
+     *
+     * @return the length, or 0 if the opcode is invalid
+     */
+    private static int instructionLength(ClassReader classReader, int codeStart, int pc, int opcode) {
+        switch (opcode) {
+        case Opcodes.BIPUSH:
+        case Opcodes.LDC:
+        case Opcodes.ILOAD:
+        case Opcodes.LLOAD:
+        case Opcodes.FLOAD:
+        case Opcodes.DLOAD:
+        case Opcodes.ALOAD:
+        case Opcodes.ISTORE:
+        case Opcodes.LSTORE:
+        case Opcodes.FSTORE:
+        case Opcodes.DSTORE:
+        case Opcodes.ASTORE:
+        case Opcodes.RET:
+        case Opcodes.NEWARRAY:
+            return 2;
+        case Opcodes.SIPUSH:
+        case 19: // ldc_w
+        case 20: // ldc2_w
+        case Opcodes.IINC:
+        case Opcodes.GETSTATIC:
+        case Opcodes.PUTSTATIC:
+        case Opcodes.GETFIELD:
+        case Opcodes.PUTFIELD:
+        case Opcodes.INVOKEVIRTUAL:
+        case Opcodes.INVOKESPECIAL:
+        case Opcodes.INVOKESTATIC:
+        case Opcodes.NEW:
+        case Opcodes.ANEWARRAY:
+        case Opcodes.CHECKCAST:
+        case Opcodes.INSTANCEOF:
+        case Opcodes.IFNULL:
+        case Opcodes.IFNONNULL:
+            return 3;
+        case Opcodes.MULTIANEWARRAY:
+            return 4;
+        case Opcodes.INVOKEINTERFACE:
+        case Opcodes.INVOKEDYNAMIC:
+        case GOTO_W:
+        case JSR_W:
+            return 5;
+        case WIDE:
+            return classReader.readByte(codeStart + pc + 1) == Opcodes.IINC ? 6 : 4;
+        case Opcodes.TABLESWITCH: {
+            int operands = (pc + 4) & ~3;
+            int low = classReader.readInt(codeStart + operands + 4);
+            int high = classReader.readInt(codeStart + operands + 8);
+            long count = (long) high - low + 1;
+            if (count <= 0 || count > Integer.MAX_VALUE / 8) {
+                return 0;
+            }
+            return operands - pc + 12 + 4 * (int) count;
+        }
+        case Opcodes.LOOKUPSWITCH: {
+            int operands = (pc + 4) & ~3;
+            int npairs = classReader.readInt(codeStart + operands + 4);
+            if (npairs < 0 || npairs > Integer.MAX_VALUE / 16) {
+                return 0;
+            }
+            return operands - pc + 8 + 8 * npairs;
+        }
+        default:
+            if (opcode >= Opcodes.IFEQ && opcode <= Opcodes.JSR) {
+                return 3;
+            }
+            return opcode <= Opcodes.IFNONNULL ? 1 : 0;
+        }
+    }
+}
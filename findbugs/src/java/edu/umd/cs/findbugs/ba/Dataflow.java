@@ -20,10 +20,13 @@
 package edu.umd.cs.findbugs.ba;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.TreeSet;
 
+import javax.annotation.CheckForNull;
+
 import org.apache.bcel.generic.InstructionHandle;
 import org.apache.bcel.generic.MethodGen;
 
@@ -63,8 +66,43 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
 
     private int numIterations;
 
+    private int numTransfers;
+
+    /*
+     * Temporary facts reused for every edge and block visited, so that
+     * iterating to a fixpoint does not allocate new facts. Analyses copy and
+     * merge facts by value, so no other fact refers to them.
+     */
+    private Fact scratchEdgeFact;
+
+    private Fact scratchResultFact;
+
+    /** Budget of the method while the analysis is executed, if it has one */
+    private AnalysisBudget.MethodBudget budget;
+
     public static boolean DEBUG = SystemProperties.getBoolean("dataflow.debug");
 
+    private static final ThreadLocal<Boolean> worklistSolverOverride = new ThreadLocal<Boolean>();
+
+    /**
+     * Override the choice of solver made by the analyses, for dataflows
+     * executed by the current thread. This is used to compare the results and
+     * the cost of the two solvers.
+     *
+     * @param useWorklistSolver
+     *            true to use the worklist solver for all analyses, false to
+     *            use the sweeping solver for all analyses, or null to let each
+     *            analysis choose
+     * @see DataflowAnalysis#useWorklistSolver()
+     */
+    public static void setWorklistSolverOverride(@CheckForNull Boolean useWorklistSolver) {
+        if (useWorklistSolver == null) {
+            worklistSolverOverride.remove();
+        } else {
+            worklistSolverOverride.set(useWorklistSolver);
+        }
+    }
+
     /**
      * Constructor.
      *
@@ -140,6 +178,24 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
      * points of each block.
      */
     public void execute() throws DataflowAnalysisException {
+        budget = AnalysisBudget.startDataflow(cfg);
+        try {
+            solve();
+        } finally {
+            if (budget != null) {
+                budget.end();
+                budget = null;
+            }
+        }
+    }
+
+    private void solve() throws DataflowAnalysisException {
+        Boolean override = worklistSolverOverride.get();
+        if (override != null ? override.booleanValue() : analysis.useWorklistSolver()) {
+            executeWithWorklist();
+            return;
+        }
+
         boolean change;
         boolean debugWas = DEBUG;
         if (DEBUG) {
@@ -315,7 +371,7 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                         Fact predFact = analysis.getResultFact(logicalPred);
 
                         // Apply the edge transfer function.
-                        Fact edgeFact = analysis.createFact();
+                        Fact edgeFact = getScratchEdgeFact();
                         analysis.copy(predFact, edgeFact);
                         analysis.edgeTransfer(edge, edgeFact);
 
@@ -366,7 +422,7 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                 boolean resultWasTop = analysis.isTop(result);
                 Fact origResult = null;
                 if (!resultWasTop) {
-                    origResult = analysis.createFact();
+                    origResult = getScratchResultFact();
                     analysis.copy(result, origResult);
                 }
 
@@ -374,6 +430,10 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                 // Apply the transfer function.
 
                 analysis.transfer(block, null, start, result);
+                ++numTransfers;
+                if (budget != null) {
+                    budget.visitBlock();
+                }
                 //                } else {
                 //                    analysis.copy(start, result);
                 //                }
@@ -437,6 +497,153 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
 
         }
         DEBUG = debugWas;
+        scratchEdgeFact = null;
+        scratchResultFact = null;
+    }
+
+    /**
+     * Run the algorithm using a worklist. Blocks are taken from the worklist
+     * in the order of their strongly connected components, and in the
+     * analysis's block order within a component, and a block is only put back
+     * on the worklist when the result fact of one of its logical predecessors
+     * changes.
+     */
+    private void executeWithWorklist() throws DataflowAnalysisException {
+        if (DEBUG) {
+            reportAnalysis("Executing with worklist");
+        }
+
+        BlockOrder order = new StronglyConnectedComponentOrder(cfg, blockOrder, isForwards);
+        int numBlocks = cfg.getNumBasicBlocks();
+        BasicBlock[] blocks = new BasicBlock[numBlocks];
+        int[] rank = new int[cfg.getNumVertexLabels()];
+        int count = 0;
+        for (Iterator<BasicBlock> i = order.blockIterator(); i.hasNext();) {
+            BasicBlock block = i.next();
+            rank[block.getLabel()] = count;
+            blocks[count++] = block;
+        }
+
+        int[] numVisits = new int[numBlocks];
+        BitSet worklist = new BitSet(numBlocks);
+        worklist.set(0, numBlocks);
+        int timestamp = 0;
+
+        analysis.startIteration();
+        for (int r = worklist.nextSetBit(0); r >= 0; r = worklist.nextSetBit(0)) {
+            worklist.clear(r);
+            BasicBlock block = blocks[r];
+
+            if (++numVisits[r] > numIterations) {
+                numIterations = numVisits[r];
+                if (numIterations >= MAX_ITERS + 9) {
+                    throw new DataflowAnalysisException("Too many iterations (" + numIterations
+                            + ") in dataflow when analyzing " + getFullyQualifiedMethodName());
+                }
+            }
+
+            Fact start = analysis.getStartFact(block);
+            Fact result = analysis.getResultFact(block);
+            int originalResultTimestamp = analysis.getLastUpdateTimestamp(result);
+
+            analysis.makeFactTop(start);
+            if (block == logicalEntryBlock()) {
+                analysis.initEntryFact(start);
+            } else {
+                meetPredecessorFacts(block, start);
+            }
+            analysis.setLastUpdateTimestamp(start, timestamp);
+            if (DEBUG) {
+                debug(block, "start fact is " + analysis.factToString(start) + "\n");
+            }
+
+            boolean resultWasTop = analysis.isTop(result);
+            Fact origResult = null;
+            if (!resultWasTop) {
+                origResult = getScratchResultFact();
+                analysis.copy(result, origResult);
+            }
+
+            analysis.transfer(block, null, start, result);
+            ++numTransfers;
+            if (budget != null) {
+                budget.visitBlock();
+            }
+
+            boolean thisResultChanged;
+            if (resultWasTop) {
+                thisResultChanged = !analysis.isTop(result);
+            } else {
+                thisResultChanged = !analysis.same(result, origResult);
+            }
+            if (thisResultChanged) {
+                timestamp++;
+                analysis.setLastUpdateTimestamp(result, timestamp);
+
+                // Revisit the logical successors
+                Iterator<Edge> succEdgeIter = isForwards ? cfg.outgoingEdgeIterator(block) : cfg.incomingEdgeIterator(block);
+                while (succEdgeIter.hasNext()) {
+                    Edge edge = succEdgeIter.next();
+                    BasicBlock logicalSucc = isForwards ? edge.getTarget() : edge.getSource();
+                    worklist.set(rank[logicalSucc.getLabel()]);
+                }
+            } else {
+                analysis.setLastUpdateTimestamp(result, originalResultTimestamp);
+            }
+
+            if (DEBUG) {
+                debug(block, "result is " + analysis.factToString(result) + " @ timestamp "
+                        + analysis.getLastUpdateTimestamp(result) + "\n");
+            }
+        }
+        analysis.finishIteration();
+
+        scratchEdgeFact = null;
+        scratchResultFact = null;
+    }
+
+    /**
+     * Meet the result facts of the logical predecessors of a block, transformed
+     * by the edge transfer function, into the block's start fact.
+     */
+    private void meetPredecessorFacts(BasicBlock block, Fact start) throws DataflowAnalysisException {
+        int rawPredCount = 0;
+        Iterator<Edge> predEdgeIter = logicalPredecessorEdgeIterator(block);
+        while (predEdgeIter.hasNext()) {
+            predEdgeIter.next();
+            rawPredCount++;
+        }
+
+        predEdgeIter = logicalPredecessorEdgeIterator(block);
+        while (predEdgeIter.hasNext()) {
+            Edge edge = predEdgeIter.next();
+            BasicBlock logicalPred = isForwards ? edge.getSource() : edge.getTarget();
+
+            Fact edgeFact = getScratchEdgeFact();
+            analysis.copy(analysis.getResultFact(logicalPred), edgeFact);
+            analysis.edgeTransfer(edge, edgeFact);
+
+            if (analysis instanceof UnconditionalValueDerefAnalysis) {
+                ((UnconditionalValueDerefAnalysis) analysis).meetInto((UnconditionalValueDerefSet) edgeFact, edge,
+                        (UnconditionalValueDerefSet) start, rawPredCount == 1);
+            } else {
+                analysis.meetInto(edgeFact, edge, start);
+            }
+        }
+    }
+
+    private Fact getScratchEdgeFact() {
+        if (scratchEdgeFact == null) {
+            scratchEdgeFact = analysis.createFact();
+        }
+        return scratchEdgeFact;
+    }
+
+    private Fact getScratchResultFact() {
+        if (scratchResultFact == null) {
+            scratchResultFact = analysis.createFact();
+        }
+        return scratchResultFact;
     }
 
     private void reportAnalysis(String msg) {
@@ -467,12 +674,22 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
     }
 
     /**
-     * Return the number of iterations of the main execution loop.
+     * Return the number of iterations of the main execution loop. For the
+     * worklist solver, this is the largest number of times any one block was
+     * visited.
      */
     public int getNumIterations() {
         return numIterations;
     }
 
+    /**
+     * Return the number of times the transfer function was applied to a
+     * block while executing the dataflow analysis.
+     */
+    public int getNumTransfers() {
+        return numTransfers;
+    }
+
     /**
      * Get dataflow facts for start of given block.
      */
@@ -128,6 +128,16 @@ public interface DataflowAnalysis<Fact> {
      */
     public BlockOrder getBlockOrder(CFG cfg);
 
+    /**
+     * Should the analysis be solved with a worklist, which only revisits the
+     * blocks whose logical predecessors changed, rather than by sweeping over
+     * all of the blocks until nothing changes? This is only appropriate for
+     * analyses whose results do not depend on the order in which blocks are
+     * visited, and which do not rely on startIteration() and
+     * finishIteration() being called around each sweep.
+     */
+    public boolean useWorklistSolver();
+
     /**
      * Are given dataflow facts the same?
      */
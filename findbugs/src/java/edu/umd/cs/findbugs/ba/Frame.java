@@ -21,10 +21,11 @@ package edu.umd.cs.findbugs.ba;
 
 import static edu.umd.cs.findbugs.ba.Debug.VERIFY_INTEGRITY;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import org.apache.bcel.Constants;
 import org.apache.bcel.generic.ConstantPoolGen;
@@ -76,8 +77,14 @@ public abstract class Frame<ValueType> {
 
     /**
      * Array storing the values of local variables and operand stack slots.
+     * Only the first numSlots elements are in use; the rest are null.
      */
-    private final ArrayList<ValueType> slotList;
+    private Object[] slots;
+
+    /**
+     * Number of slots (locals plus stack values) in use.
+     */
+    private int numSlots;
 
     /**
      * Flag marking this frame as a special "TOP" value. Such Frames serve as
@@ -110,9 +117,18 @@ public abstract class Frame<ValueType> {
      */
     public Frame(int numLocals) {
         this.numLocals = numLocals;
-        this.slotList = new ArrayList<ValueType>(numLocals + DEFAULT_STACK_CAPACITY);
-        for (int i = 0; i < numLocals; ++i) {
-            slotList.add(null);
+        this.slots = new Object[numLocals + DEFAULT_STACK_CAPACITY];
+        this.numSlots = numLocals;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ValueType slot(int n) {
+        return (ValueType) slots[n];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(capacity, 2 * slots.length));
         }
     }
 
@@ -178,7 +194,8 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        slotList.add(value);
+        ensureCapacity(numSlots + 1);
+        slots[numSlots++] = value;
     }
 
     /**
@@ -192,10 +209,12 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new DataflowAnalysisException("accessing top or bottom frame");
         }
-        if (slotList.size() == numLocals) {
+        if (numSlots == numLocals) {
             throw new DataflowAnalysisException("operand stack empty");
         }
-        return slotList.remove(slotList.size() - 1);
+        ValueType value = slot(--numSlots);
+        slots[numSlots] = null;
+        return value;
     }
 
     /**
@@ -208,11 +227,11 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new DataflowAnalysisException("accessing top or bottom frame");
         }
-        assert slotList.size() >= numLocals;
-        if (slotList.size() == numLocals) {
+        assert numSlots >= numLocals;
+        if (numSlots == numLocals) {
             throw new DataflowAnalysisException("operand stack is empty");
         }
-        return slotList.get(slotList.size() - 1);
+        return slot(numSlots - 1);
     }
 
     /**
@@ -225,10 +244,7 @@ public abstract class Frame<ValueType> {
         if (valueList.length > stackDepth) {
             throw new DataflowAnalysisException("not enough values on stack");
         }
-        int numSlots = slotList.size();
-        for (int i = numSlots - valueList.length, j = 0; i < numSlots; ++i, ++j) {
-            valueList[j] = slotList.get(i);
-        }
+        System.arraycopy(slots, numSlots - valueList.length, valueList, 0, valueList.length);
     }
 
     /**
@@ -249,8 +265,8 @@ public abstract class Frame<ValueType> {
         if (loc < 0) {
             throw new DataflowAnalysisException("can't get position " + loc + " of stack");
         }
-        int pos = slotList.size() - (loc + 1);
-        return slotList.get(pos);
+        int pos = numSlots - (loc + 1);
+        return slot(pos);
     }
 
     /**
@@ -265,7 +281,7 @@ public abstract class Frame<ValueType> {
         if (loc >= stackDepth) {
             throw new DataflowAnalysisException("not enough values on stack: access=" + loc + ", avail=" + stackDepth);
         }
-        return slotList.size() - (loc + 1);
+        return numSlots - (loc + 1);
     }
 
     /**
@@ -427,7 +443,7 @@ public abstract class Frame<ValueType> {
             throw new IllegalArgumentException();
         }
 
-        return (slotList.size() - numArguments) + i;
+        return (numSlots - numArguments) + i;
     }
 
     /**
@@ -488,17 +504,16 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        assert slotList.size() >= numLocals;
-        if (slotList.size() > numLocals) {
-            slotList.subList(numLocals, slotList.size()).clear();
-        }
+        assert numSlots >= numLocals;
+        Arrays.fill(slots, numLocals, numSlots, null);
+        numSlots = numLocals;
     }
 
     /**
      * Get the depth of the Java operand stack.
      */
     public int getStackDepth() {
-        return slotList.size() - numLocals;
+        return numSlots - numLocals;
     }
 
     /**
@@ -512,15 +527,15 @@ public abstract class Frame<ValueType> {
      * Get the number of slots (locals plus stack values).
      */
     public int getNumSlots() {
-        return slotList.size();
+        return numSlots;
     }
 
     public boolean contains(ValueType value) {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        for (ValueType v : slotList) {
-            if (v.equals(value)) {
+        for (int i = 0; i < numSlots; ++i) {
+            if (slots[i].equals(value)) {
                 return true;
             }
         }
@@ -538,7 +553,10 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        return slotList.get(n);
+        if (n >= numSlots) {
+            throw new IndexOutOfBoundsException("Slot " + n + " of " + numSlots);
+        }
+        return slot(n);
     }
 
     /**
@@ -556,7 +574,10 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        slotList.set(n, value);
+        if (n >= numSlots) {
+            throw new IndexOutOfBoundsException("Slot " + n + " of " + numSlots);
+        }
+        slots[n] = value;
     }
 
     /**
@@ -568,6 +589,10 @@ public abstract class Frame<ValueType> {
      * @return true if the frames are the same, false otherwise
      */
     public boolean sameAs(Frame<ValueType> other) {
+        if (this == other) {
+            return true;
+        }
+
         if (isTop != other.isTop) {
             return false;
         }
@@ -584,12 +609,15 @@ public abstract class Frame<ValueType> {
             return true;
         }
 
-        if (getNumSlots() != other.getNumSlots()) {
+        if (numSlots != other.numSlots) {
             return false;
         }
 
-        for (int i = 0; i < getNumSlots(); ++i) {
-            if (!getValue(i).equals(other.getValue(i))) {
+        Object[] otherSlots = other.slots;
+        for (int i = 0; i < numSlots; ++i) {
+            Object value = slots[i];
+            Object otherValue = otherSlots[i];
+            if (value != otherValue && !value.equals(otherValue)) {
                 return false;
             }
         }
@@ -605,30 +633,13 @@ public abstract class Frame<ValueType> {
      */
     public void copyFrom(Frame<ValueType> other) {
         lastUpdateTimestamp = other.lastUpdateTimestamp;
-        if (true) {
-            int size = slotList.size();
-            if (size == other.slotList.size()) {
-                for (int i = 0; i < size; i++) {
-                    slotList.set(i, other.slotList.get(i));
-                }
-            } else {
-                slotList.clear();
-                for (ValueType v : other.slotList) {
-                    slotList.add(v);
-                }
-            }
-        } else {
-            slotList.clear();
-            slotList.addAll(other.slotList);
-
-        }
-        /*
-         * Andrei, 27.02.2008: "optimized" code below takes ~18% overall FB
-         * execution time, code above only 5% int size = slotList.size(); if
-         * (size == other.slotList.size()) { for (int i = 0; i < size; i++)
-         * slotList.set(i, other.slotList.get(i)); } else { slotList.clear();
-         * for (ValueType v : other.slotList) slotList.add(v); }
-         */
+        int otherNumSlots = other.numSlots;
+        ensureCapacity(otherNumSlots);
+        System.arraycopy(other.slots, 0, slots, 0, otherNumSlots);
+        if (numSlots > otherNumSlots) {
+            Arrays.fill(slots, otherNumSlots, numSlots, null);
+        }
+        numSlots = otherNumSlots;
         isTop = other.isTop;
         isBottom = other.isBottom;
     }
@@ -690,9 +701,8 @@ public abstract class Frame<ValueType> {
      *         stack slots
      */
     public Collection<ValueType> allSlots() {
-        if (slotList == null) {
-            return Collections.<ValueType> emptyList();
-        }
+        @SuppressWarnings("unchecked")
+        List<ValueType> slotList = (List<ValueType>) Arrays.asList(slots).subList(0, numSlots);
         return Collections.<ValueType> unmodifiableCollection(slotList);
     }
 
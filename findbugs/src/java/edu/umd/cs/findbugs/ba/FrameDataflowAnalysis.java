@@ -183,6 +183,10 @@ ForwardDataflowAnalysis<FrameType> {
      *            frames
      */
     protected void mergeInto(FrameType other, FrameType result) throws DataflowAnalysisException {
+        if (other == result) {
+            return;
+        }
+
         // Handle if result Frame or the other Frame is the special "TOP" value.
         if (result.isTop()) {
             // Result is the identity element, so copy the other Frame
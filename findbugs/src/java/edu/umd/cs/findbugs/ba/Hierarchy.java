@@ -42,6 +42,7 @@ import org.apache.bcel.generic.ReferenceType;
 import org.apache.bcel.generic.Type;
 
 import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.ba.ch.ClassHierarchyCallGraph;
 import edu.umd.cs.findbugs.ba.ch.Subtypes2;
 import edu.umd.cs.findbugs.ba.type.NullType;
 import edu.umd.cs.findbugs.ba.type.TypeFrame;
@@ -817,8 +818,44 @@ public class Hierarchy {
 
         // Get the receiver class.
         String receiverClassName = ((ObjectType) receiverType).getClassName();
-        JavaClass receiverClass = analysisContext.lookupClass(receiverClassName);
         ClassDescriptor receiverDesc = DescriptorFactory.createClassDescriptorFromDottedClassName(receiverClassName);
+        // Only invokevirtual and invokeinterface are dispatched on the
+        // receiver; the others are memoized like invokespecial
+        short opcode = invokeInstruction.getOpcode();
+        boolean invokeSpecial = opcode != Constants.INVOKEVIRTUAL && opcode != Constants.INVOKEINTERFACE;
+        if (!analysisContext.getSubtypes2().hasCompleteHierarchyIndex()) {
+            // Subtypes may still be added, so the targets can't be memoized
+            return computeMethodCallTargets(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial);
+        }
+
+        // The targets are memoized as XMethods, so that the JavaClasses
+        // aren't kept alive by the ClassHierarchyCallGraph
+        ClassHierarchyCallGraph callGraph = analysisContext.getClassHierarchyCallGraph();
+        Set<XMethod> memoized = callGraph.getConcreteDispatchTargets(receiverDesc, methodName, methodSig, receiverTypeIsExact,
+                invokeSpecial);
+        if (memoized == null) {
+            Set<JavaClassAndMethod> computed = computeMethodCallTargets(receiverDesc, methodName, methodSig,
+                    receiverTypeIsExact, invokeSpecial);
+            Set<XMethod> targets = new HashSet<XMethod>();
+            for (JavaClassAndMethod target : computed) {
+                targets.add(target.toXMethod());
+            }
+            callGraph.putConcreteDispatchTargets(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial,
+                    targets);
+            return computed;
+        }
+        for (XMethod target : memoized) {
+            result.add(new JavaClassAndMethod(target));
+        }
+        return result;
+    }
+
+    private static Set<JavaClassAndMethod> computeMethodCallTargets(ClassDescriptor receiverDesc, String methodName,
+            String methodSig, boolean receiverTypeIsExact, boolean invokeSpecial) throws ClassNotFoundException {
+        HashSet<JavaClassAndMethod> result = new HashSet<JavaClassAndMethod>();
+        AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+        String receiverClassName = receiverDesc.toDottedClassName();
+        JavaClass receiverClass = analysisContext.lookupClass(receiverClassName);
 
         // Figure out the upper bound for the method.
         // This is what will be called if this is not a virtual call site.
@@ -835,7 +872,7 @@ public class Hierarchy {
         }
 
         // Is this a virtual call site?
-        boolean virtualCall = (invokeInstruction.getOpcode() == Constants.INVOKEVIRTUAL || invokeInstruction.getOpcode() == Constants.INVOKEINTERFACE)
+        boolean virtualCall = !invokeSpecial
                 && (upperBound == null || !upperBound.getJavaClass().isFinal() && !upperBound.getMethod().isFinal())
                 && !receiverTypeIsExact;
 
@@ -851,11 +888,6 @@ public class Hierarchy {
                         result.add(new JavaClassAndMethod(concreteSubtypeMethod));
                     }
                 }
-                if (false && subTypeSet.size() > 500) {
-                    new RuntimeException(receiverClassName + " has " + subTypeSet.size() + " subclasses, " + result.size()
-                            + " of which implement " + methodName + methodSig + " " + invokeInstruction)
-                    .printStackTrace(System.out);
-                }
 
             }
         }
@@ -40,6 +40,7 @@ import org.apache.bcel.generic.ReferenceType;
 import org.apache.bcel.generic.Type;
 
 import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.ba.ch.ClassHierarchyCallGraph;
 import edu.umd.cs.findbugs.ba.type.NullType;
 import edu.umd.cs.findbugs.ba.type.TypeFrame;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
@@ -427,6 +428,23 @@ public class Hierarchy2 {
 
     public static Set<XMethod> resolveVirtualMethodCallTargets(ClassDescriptor receiverDesc, String methodName, String methodSig,
             boolean receiverTypeIsExact, boolean invokeSpecial) throws ClassNotFoundException {
+        AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+        if (!analysisContext.getSubtypes2().hasCompleteHierarchyIndex()) {
+            // Subtypes may still be added, so the targets can't be memoized
+            return computeVirtualMethodCallTargets(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial);
+        }
+        ClassHierarchyCallGraph callGraph = analysisContext.getClassHierarchyCallGraph();
+        Set<XMethod> result = callGraph.getDispatchTargets(receiverDesc, methodName, methodSig, receiverTypeIsExact,
+                invokeSpecial);
+        if (result == null) {
+            result = callGraph.putDispatchTargets(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial,
+                    computeVirtualMethodCallTargets(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial));
+        }
+        return result;
+    }
+
+    private static Set<XMethod> computeVirtualMethodCallTargets(ClassDescriptor receiverDesc, String methodName,
+            String methodSig, boolean receiverTypeIsExact, boolean invokeSpecial) throws ClassNotFoundException {
         // Figure out the upper bound for the method.
         // This is what will be called if this is not a virtual call site.
         AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
@@ -75,6 +75,11 @@ public class LiveLocalStoreAnalysis extends BackwardDataflowAnalysis<BitSet> imp
         fact.set(topBit);
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public boolean same(BitSet fact1, BitSet fact2) {
         return fact1.equals(fact2);
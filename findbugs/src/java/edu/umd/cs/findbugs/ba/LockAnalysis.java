@@ -100,6 +100,11 @@ public class LockAnalysis extends ForwardDataflowAnalysis<LockSet> {
         return fact.isTop();
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public boolean same(LockSet fact1, LockSet fact2) {
         return fact1.sameAs(fact2);
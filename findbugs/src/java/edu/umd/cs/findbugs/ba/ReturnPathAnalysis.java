@@ -51,6 +51,11 @@ public class ReturnPathAnalysis extends ForwardDataflowAnalysis<ReturnPath> impl
         return fact.getKind() == ReturnPath.TOP;
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public boolean same(ReturnPath fact1, ReturnPath fact2) {
         return fact1.sameAs(fact2);
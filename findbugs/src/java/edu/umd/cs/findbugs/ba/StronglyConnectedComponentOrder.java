@@ -0,0 +1,118 @@
+/*
+ * Bytecode Analysis Framework
+ * Copyright (C) 2003,2004 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Set;
+
+import edu.umd.cs.findbugs.graph.GraphToolkit;
+import edu.umd.cs.findbugs.graph.StronglyConnectedComponents;
+
+/**
+ * A BlockOrder which groups the blocks of a CFG by strongly connected
+ * component. The components are visited in topological order of the logical
+ * flow of the analysis (the CFG for forward analyses, its transpose for
+ * backward analyses), and blocks within a component are visited in the order
+ * given by another BlockOrder. Used by the worklist solver in {@link Dataflow},
+ * so that a loop reaches its fixpoint before the blocks after it are visited.
+ *
+ * @see BlockOrder
+ * @see StronglyConnectedComponents
+ */
+public class StronglyConnectedComponentOrder extends AbstractBlockOrder {
+
+    private static class ComponentComparator implements Comparator<BasicBlock> {
+        private final int[] componentIndex;
+
+        private final BlockOrder blockOrder;
+
+        public ComponentComparator(int[] componentIndex, BlockOrder blockOrder) {
+            this.componentIndex = componentIndex;
+            this.blockOrder = blockOrder;
+        }
+
+        @Override
+        public int compare(BasicBlock a, BasicBlock b) {
+            int cmp = componentIndex[a.getLabel()] - componentIndex[b.getLabel()];
+            if (cmp != 0) {
+                return cmp;
+            }
+            return blockOrder.compare(a, b);
+        }
+    }
+
+    /**
+     * GraphToolkit used to build the transposed CFG needed to find the
+     * strongly connected components.
+     */
+    private static class CFGToolkit implements GraphToolkit<CFG, Edge, BasicBlock> {
+        @Override
+        public CFG createGraph() {
+            return new CFG();
+        }
+
+        @Override
+        public BasicBlock duplicateVertex(BasicBlock original) {
+            return new BasicBlock();
+        }
+
+        @Override
+        public void copyEdge(Edge source, Edge dest) {
+            dest.setType(source.getType());
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cfg
+     *            the CFG
+     * @param blockOrder
+     *            the order in which to visit blocks in the same strongly
+     *            connected component
+     * @param isForwards
+     *            true if the analysis is forwards, false if backwards
+     */
+    public StronglyConnectedComponentOrder(CFG cfg, BlockOrder blockOrder, boolean isForwards) {
+        super(cfg, new ComponentComparator(findComponents(cfg, isForwards), blockOrder));
+    }
+
+    /**
+     * Number each block with the index of its strongly connected component.
+     * StronglyConnectedComponents finds the components in topological order
+     * of the CFG, so the order is reversed for backward analyses.
+     */
+    private static int[] findComponents(CFG cfg, boolean isForwards) {
+        StronglyConnectedComponents<CFG, Edge, BasicBlock> scc = new StronglyConnectedComponents<CFG, Edge, BasicBlock>();
+        scc.findStronglyConnectedComponents(cfg, new CFGToolkit());
+
+        int[] componentIndex = new int[cfg.getNumVertexLabels()];
+        int index = 0;
+        for (Iterator<Set<BasicBlock>> i = scc.setIterator(); i.hasNext();) {
+            int component = isForwards ? index : -index;
+            for (BasicBlock block : i.next()) {
+                componentIndex[block.getLabel()] = component;
+            }
+            ++index;
+        }
+        return componentIndex;
+    }
+}
@@ -20,6 +20,7 @@
 package edu.umd.cs.findbugs.ba;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -53,6 +54,7 @@ import edu.umd.cs.findbugs.classfile.FieldDescriptor;
 import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
 import edu.umd.cs.findbugs.classfile.analysis.FieldInfo;
 import edu.umd.cs.findbugs.classfile.analysis.MethodInfo;
 import edu.umd.cs.findbugs.detect.BuildObligationPolicyDatabase;
@@ -71,19 +73,23 @@ import edu.umd.cs.findbugs.visitclass.PreorderVisitor;
 public class XFactory {
     public static final boolean DEBUG_UNRESOLVED = SystemProperties.getBoolean("findbugs.xfactory.debugunresolved");
 
-    private final Set<ClassDescriptor> reflectiveClasses = new HashSet<ClassDescriptor>();
+    // The XFactory is shared by all analysis threads (see FindBugs2 -threads),
+    // so all of its collections are synchronized. Iterating over them is only
+    // done between passes, when no worker threads are running.
 
-    private final Map<MethodDescriptor, XMethod> methods = new HashMap<MethodDescriptor, XMethod>();
+    private final Set<ClassDescriptor> reflectiveClasses = Collections.synchronizedSet(new HashSet<ClassDescriptor>());
 
-    private final Map<FieldDescriptor, XField> fields = new HashMap<FieldDescriptor, XField>();
+    private final Map<MethodDescriptor, XMethod> methods = Collections.synchronizedMap(new HashMap<MethodDescriptor, XMethod>());
 
-    private final Set<XMethod> calledMethods = new HashSet<XMethod>();
+    private final Map<FieldDescriptor, XField> fields = Collections.synchronizedMap(new HashMap<FieldDescriptor, XField>());
 
-    private final Set<XField> emptyArrays = new HashSet<XField>();
+    private final Set<XMethod> calledMethods = Collections.synchronizedSet(new HashSet<XMethod>());
 
-    private final Set<String> calledMethodSignatures = new HashSet<String>();
+    private final Set<XField> emptyArrays = Collections.synchronizedSet(new HashSet<XField>());
 
-    private final Set<MethodDescriptor> functionsThatMightBeMistakenForProcedures = new HashSet<MethodDescriptor>();
+    private final Set<String> calledMethodSignatures = Collections.synchronizedSet(new HashSet<String>());
+
+    private final Set<MethodDescriptor> functionsThatMightBeMistakenForProcedures = Collections.synchronizedSet(new HashSet<MethodDescriptor>());
 
     public void canonicalizeAll() {
         DescriptorFactory descriptorFactory = DescriptorFactory.instance();
@@ -106,6 +112,10 @@ public class XFactory {
     }
 
     public void intern(XClass c) {
+        if (isCompact(c)) {
+            // The members are looked up in the class when they are needed
+            return;
+        }
         for (XMethod m : c.getXMethods()) {
             MethodInfo mi = (MethodInfo) m;
             methods.put(mi, mi);
@@ -116,6 +126,20 @@ public class XFactory {
         }
     }
 
+    /**
+     * Determine whether an XMethod has been handed out for a method.
+     */
+    public boolean isCached(MethodDescriptor desc) {
+        return methods.containsKey(desc);
+    }
+
+    /**
+     * Determine whether an XField has been handed out for a field.
+     */
+    public boolean isCached(FieldDescriptor desc) {
+        return fields.containsKey(desc);
+    }
+
     public Collection<XField> allFields() {
         return fields.values();
     }
@@ -326,11 +350,18 @@ public class XFactory {
             return m;
         }
         m = xFactory.resolveXMethod(desc);
-        if (m instanceof MethodDescriptor) {
-            xFactory.methods.put((MethodDescriptor) m, m);
-            DescriptorFactory.instance().canonicalize((MethodDescriptor) m);
-        } else {
-            xFactory.methods.put(desc, m);
+        synchronized (xFactory.methods) {
+            // another thread may have resolved the same method meanwhile
+            XMethod existing = xFactory.methods.get(desc);
+            if (existing != null) {
+                return existing;
+            }
+            if (m instanceof MethodDescriptor) {
+                xFactory.methods.put((MethodDescriptor) m, m);
+                DescriptorFactory.instance().canonicalize((MethodDescriptor) m);
+            } else {
+                xFactory.methods.put(desc, m);
+            }
         }
         return m;
     }
@@ -360,6 +391,12 @@ public class XFactory {
                 if (xClass == null) {
                     break;
                 }
+                if (isCompact(xClass)) {
+                    m = xClass.findMethod(desc.getName(), desc.getSignature(), desc.isStatic());
+                    if (m != null) {
+                        return m;
+                    }
+                }
                 ClassDescriptor superClass = xClass.getSuperclassDescriptor();
                 if (superClass == null) {
                     break;
@@ -543,11 +580,26 @@ public class XFactory {
 
         XField f = xFactory.fields.get(desc);
         if (f == null) {
+            XClass xClass = Global.getAnalysisCache().probeClassAnalysis(XClass.class, desc.getClassDescriptor());
+            if (isCompact(xClass)) {
+                f = xClass.findField(desc.getName(), desc.getSignature(), desc.isStatic());
+                if (f != null && f.getClassDescriptor().equals(desc.getClassDescriptor())) {
+                    return f;
+                }
+            }
             return new UnresolvedXField(desc);
         }
         return f;
     }
 
+    /**
+     * @return true if the members of the class are kept in the MemberStore,
+     *         rather than in the maps of the factory
+     */
+    private static boolean isCompact(@CheckForNull XClass xClass) {
+        return xClass instanceof ClassInfo && ((ClassInfo) xClass).hasCompactMembers();
+    }
+
     public static XField createXField(FieldDescriptor desc) {
         XFactory xFactory = AnalysisContext.currentXFactory();
 
@@ -556,7 +608,13 @@ public class XFactory {
             return m;
         }
         m = xFactory.resolveXField(desc);
-        xFactory.fields.put(desc, m);
+        synchronized (xFactory.fields) {
+            XField existing = xFactory.fields.get(desc);
+            if (existing != null) {
+                return existing;
+            }
+            xFactory.fields.put(desc, m);
+        }
         return m;
     }
 
@@ -581,6 +639,12 @@ public class XFactory {
                 if (xClass == null) {
                     break;
                 }
+                if (isCompact(xClass)) {
+                    f = xClass.findField(desc.getName(), desc.getSignature(), desc.isStatic());
+                    if (f != null) {
+                        return f;
+                    }
+                }
                 ClassDescriptor superClass = xClass.getSuperclassDescriptor();
                 if (superClass != null) {
                     worklist.add(superClass);
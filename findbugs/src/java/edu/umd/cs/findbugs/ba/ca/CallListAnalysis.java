@@ -100,6 +100,11 @@ public class CallListAnalysis extends AbstractDataflowAnalysis<CallList> {
         return new CallList();
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public boolean same(CallList a, CallList b) {
         return a.equals(b);
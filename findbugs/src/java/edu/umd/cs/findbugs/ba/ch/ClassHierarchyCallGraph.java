@@ -0,0 +1,438 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.ch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.CheckForNull;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.Hierarchy;
+import edu.umd.cs.findbugs.ba.Hierarchy2;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.engine.asm.FindBugsASM;
+
+/**
+ * Database of resolved method calls, shared by all detectors.
+ *
+ * <p>
+ * The targets of virtual calls, as computed by
+ * {@link Hierarchy2#resolveVirtualMethodCallTargets(ClassDescriptor, String, String, boolean, boolean)}
+ * , are memoized per receiver type and method once the class hierarchy is
+ * frozen (see {@link Subtypes2#hasCompleteHierarchyIndex()}). Before that,
+ * subtypes may still be added, and targets aren't cached. The concrete
+ * targets computed by the BCEL based
+ * {@link Hierarchy#resolveMethodCallTargets(org.apache.bcel.generic.InvokeInstruction, edu.umd.cs.findbugs.ba.type.TypeFrame, org.apache.bcel.generic.ConstantPoolGen)}
+ * are memoized separately, since they differ.
+ * </p>
+ *
+ * <p>
+ * The class hierarchy call graph of the application methods is built on the
+ * first request, by scanning the calls in the application classes and
+ * resolving each one to all of its possible targets. Methods are numbered,
+ * application methods first, and the callees and callers of each method are
+ * kept in int arrays.
+ * </p>
+ */
+public class ClassHierarchyCallGraph {
+    private static final boolean DEBUG = SystemProperties.getBoolean("chcg.debug");
+
+    /**
+     * Key of memoized call targets.
+     */
+    private static final class DispatchKey {
+        final ClassDescriptor receiver;
+
+        final String methodName;
+
+        final String methodSig;
+
+        final int kind;
+
+        DispatchKey(ClassDescriptor receiver, String methodName, String methodSig, boolean receiverTypeIsExact,
+                boolean invokeSpecial, boolean concrete) {
+            this.receiver = receiver;
+            this.methodName = methodName;
+            this.methodSig = methodSig;
+            this.kind = (receiverTypeIsExact ? 1 : 0) | (invokeSpecial ? 2 : 0) | (concrete ? 4 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return (receiver.hashCode() * 31 + methodName.hashCode()) * 31 + methodSig.hashCode() + kind;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof DispatchKey)) {
+                return false;
+            }
+            DispatchKey other = (DispatchKey) o;
+            return kind == other.kind && receiver.equals(other.receiver) && methodName.equals(other.methodName)
+                    && methodSig.equals(other.methodSig);
+        }
+    }
+
+    private final ConcurrentHashMap<DispatchKey, Set<XMethod>> dispatchTargets = new ConcurrentHashMap<DispatchKey, Set<XMethod>>();
+
+    private volatile Graph graph;
+
+    /**
+     * Get the memoized targets of a virtual call.
+     *
+     * @return the targets, or null if they haven't been computed
+     */
+    public @CheckForNull
+    Set<XMethod> getDispatchTargets(ClassDescriptor receiverDesc, String methodName, String methodSig,
+            boolean receiverTypeIsExact, boolean invokeSpecial) {
+        return dispatchTargets.get(new DispatchKey(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial,
+                false));
+    }
+
+    /**
+     * Memoize the targets of a virtual call.
+     *
+     * @param targets
+     *            the computed targets
+     * @return an unmodifiable set of the targets, which should be used
+     *         instead of the given set
+     */
+    public Set<XMethod> putDispatchTargets(ClassDescriptor receiverDesc, String methodName, String methodSig,
+            boolean receiverTypeIsExact, boolean invokeSpecial, Set<XMethod> targets) {
+        return put(new DispatchKey(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial, false), targets);
+    }
+
+    /**
+     * Get the memoized concrete targets of an instance method call, as
+     * computed by
+     * {@link Hierarchy#resolveMethodCallTargets(org.apache.bcel.generic.ReferenceType, org.apache.bcel.generic.InvokeInstruction, org.apache.bcel.generic.ConstantPoolGen, boolean)}
+     * . They differ from the targets computed by Hierarchy2, which include
+     * abstract methods.
+     *
+     * @return the targets, or null if they haven't been computed
+     */
+    public @CheckForNull
+    Set<XMethod> getConcreteDispatchTargets(ClassDescriptor receiverDesc, String methodName, String methodSig,
+            boolean receiverTypeIsExact, boolean invokeSpecial) {
+        return dispatchTargets.get(new DispatchKey(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial,
+                true));
+    }
+
+    /**
+     * Memoize the concrete targets of an instance method call.
+     *
+     * @param targets
+     *            the computed targets
+     * @return an unmodifiable set of the targets, which should be used
+     *         instead of the given set
+     */
+    public Set<XMethod> putConcreteDispatchTargets(ClassDescriptor receiverDesc, String methodName, String methodSig,
+            boolean receiverTypeIsExact, boolean invokeSpecial, Set<XMethod> targets) {
+        return put(new DispatchKey(receiverDesc, methodName, methodSig, receiverTypeIsExact, invokeSpecial, true), targets);
+    }
+
+    private Set<XMethod> put(DispatchKey key, Set<XMethod> targets) {
+        Set<XMethod> result = targets.isEmpty() ? Collections.<XMethod> emptySet() : Collections.unmodifiableSet(targets);
+        Set<XMethod> previous = dispatchTargets.putIfAbsent(key, result);
+        return previous != null ? previous : result;
+    }
+
+    /**
+     * @return the number of memoized call targets
+     */
+    public int getNumDispatchTargets() {
+        return dispatchTargets.size();
+    }
+
+    /*
+     * ----------------------------------------------------------------------
+     * Call graph
+     * ----------------------------------------------------------------------
+     */
+
+    /**
+     * Get the call graph of the application methods, building it if needed.
+     */
+    public Graph getGraph() {
+        Graph result = graph;
+        if (result == null) {
+            synchronized (this) {
+                result = graph;
+                if (result == null) {
+                    result = buildGraph(AnalysisContext.currentAnalysisContext().getAppClassList());
+                    graph = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Class hierarchy call graph. Immutable, so it can be shared by analyses
+     * running in parallel.
+     */
+    public static final class Graph {
+        private final MethodDescriptor[] method;
+
+        private final Map<MethodDescriptor, Integer> methodId;
+
+        private final int numApplicationMethods;
+
+        private final int[] calleeStart;
+
+        private final int[] callee;
+
+        private final int[] callerStart;
+
+        private final int[] caller;
+
+        Graph(List<MethodDescriptor> methods, Map<MethodDescriptor, Integer> methodId, int numApplicationMethods,
+                int[] calleeStart, int[] callee) {
+            this.method = methods.toArray(new MethodDescriptor[methods.size()]);
+            this.methodId = methodId;
+            this.numApplicationMethods = numApplicationMethods;
+            this.calleeStart = calleeStart;
+            this.callee = callee;
+
+            int n = method.length;
+            callerStart = new int[n + 1];
+            for (int c : callee) {
+                callerStart[c + 1]++;
+            }
+            for (int m = 0; m < n; m++) {
+                callerStart[m + 1] += callerStart[m];
+            }
+            caller = new int[callee.length];
+            int[] next = Arrays.copyOf(callerStart, n);
+            for (int m = 0; m < n; m++) {
+                for (int e = calleeStart[m]; e < calleeStart[m + 1]; e++) {
+                    caller[next[callee[e]]++] = m;
+                }
+            }
+        }
+
+        /**
+         * @return the number of methods, including called library methods
+         */
+        public int getNumMethods() {
+            return method.length;
+        }
+
+        /**
+         * @return the number of application methods, which are numbered
+         *         first
+         */
+        public int getNumApplicationMethods() {
+            return numApplicationMethods;
+        }
+
+        public int getNumEdges() {
+            return callee.length;
+        }
+
+        public MethodDescriptor getMethod(int id) {
+            return method[id];
+        }
+
+        /**
+         * @return the id of a method, or -1 if it isn't in the graph
+         */
+        public int getMethodId(MethodDescriptor methodDescriptor) {
+            Integer id = methodId.get(methodDescriptor);
+            return id == null ? -1 : id;
+        }
+
+        public int getNumCallees(int id) {
+            return calleeStart[id + 1] - calleeStart[id];
+        }
+
+        /**
+         * @return the i-th possible target of the calls in a method
+         */
+        public int getCallee(int id, int i) {
+            return callee[calleeStart[id] + i];
+        }
+
+        int[] getCalleeStart() {
+            return calleeStart;
+        }
+
+        int[] getCallees() {
+            return callee;
+        }
+
+        public int getNumCallers(int id) {
+            return callerStart[id + 1] - callerStart[id];
+        }
+
+        /**
+         * @return the i-th method possibly calling a method
+         */
+        public int getCaller(int id, int i) {
+            return caller[callerStart[id] + i];
+        }
+    }
+
+    private static final class CallSite {
+        final int opcode;
+
+        final String owner;
+
+        final String name;
+
+        final String sig;
+
+        CallSite(int opcode, String owner, String name, String sig) {
+            this.opcode = opcode;
+            this.owner = owner;
+            this.name = name;
+            this.sig = sig;
+        }
+    }
+
+    /**
+     * Build the call graph of the given application classes.
+     */
+    static Graph buildGraph(Collection<ClassDescriptor> appClasses) {
+        final List<MethodDescriptor> methods = new ArrayList<MethodDescriptor>();
+        final Map<MethodDescriptor, Integer> methodId = new HashMap<MethodDescriptor, Integer>();
+        final List<List<CallSite>> calls = new ArrayList<List<CallSite>>();
+
+        for (ClassDescriptor classDescriptor : appClasses) {
+            FBClassReader reader;
+            try {
+                reader = Global.getAnalysisCache().getClassAnalysis(FBClassReader.class, classDescriptor);
+            } catch (CheckedAnalysisException e) {
+                AnalysisContext.logError("Error scanning " + classDescriptor + " for calls", e);
+                continue;
+            }
+            final String className = classDescriptor.getClassName();
+            reader.accept(new ClassVisitor(FindBugsASM.ASM_VERSION) {
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                    MethodDescriptor m = DescriptorFactory.instance().getMethodDescriptor(className, name, desc,
+                            (access & Opcodes.ACC_STATIC) != 0);
+                    if (methodId.containsKey(m)) {
+                        return null;
+                    }
+                    methodId.put(m, methods.size());
+                    methods.add(m);
+                    final List<CallSite> sites = new ArrayList<CallSite>();
+                    calls.add(sites);
+                    return new MethodVisitor(FindBugsASM.ASM_VERSION) {
+                        @Override
+                        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                            if (owner.charAt(0) == '[') {
+                                // Array methods are those of Object
+                                owner = "java/lang/Object";
+                            }
+                            sites.add(new CallSite(opcode, owner, name, desc));
+                        }
+                    };
+                }
+            }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        int numApplicationMethods = methods.size();
+
+        // Resolve the calls, numbering the called library methods
+        int[] calleeStart = new int[numApplicationMethods + 1];
+        int[] callee = new int[16];
+        int numEdges = 0;
+        for (int m = 0; m < numApplicationMethods; m++) {
+            int start = numEdges;
+            for (CallSite site : calls.get(m)) {
+                for (XMethod target : resolveCall(site)) {
+                    MethodDescriptor targetDescriptor = target.getMethodDescriptor();
+                    Integer id = methodId.get(targetDescriptor);
+                    if (id == null) {
+                        id = methods.size();
+                        methodId.put(targetDescriptor, id);
+                        methods.add(targetDescriptor);
+                    }
+                    if (numEdges == callee.length) {
+                        callee = Arrays.copyOf(callee, 2 * numEdges);
+                    }
+                    callee[numEdges++] = id;
+                }
+            }
+            // Sort and remove duplicate callees
+            Arrays.sort(callee, start, numEdges);
+            int end = start;
+            for (int e = start; e < numEdges; e++) {
+                if (e == start || callee[e] != callee[e - 1]) {
+                    callee[end++] = callee[e];
+                }
+            }
+            numEdges = end;
+            calleeStart[m + 1] = numEdges;
+        }
+        // Library methods have no known callees
+        int[] allCalleeStart = Arrays.copyOf(calleeStart, methods.size() + 1);
+        Arrays.fill(allCalleeStart, numApplicationMethods + 1, allCalleeStart.length, numEdges);
+
+        Graph result = new Graph(methods, methodId, numApplicationMethods, allCalleeStart, Arrays.copyOf(callee, numEdges));
+        if (DEBUG) {
+            System.out.println("Class hierarchy call graph: " + numApplicationMethods + " application methods, "
+                    + result.getNumMethods() + " methods, " + numEdges + " edges");
+        }
+        return result;
+    }
+
+    private static Set<XMethod> resolveCall(CallSite site) {
+        ClassDescriptor owner = DescriptorFactory.createClassDescriptor(site.owner);
+        String name = site.name;
+        String sig = site.sig;
+        try {
+            switch (site.opcode) {
+            case Opcodes.INVOKESTATIC: {
+                XMethod target = Hierarchy2.findInvocationLeastUpperBound(owner, name, sig, true, false);
+                return target == null ? Collections.<XMethod> emptySet() : Collections.singleton(target);
+            }
+            case Opcodes.INVOKESPECIAL:
+                return Hierarchy2.resolveVirtualMethodCallTargets(owner, name, sig, false, true);
+            default:
+                return Hierarchy2.resolveVirtualMethodCallTargets(owner, name, sig, false, false);
+            }
+        } catch (ClassNotFoundException e) {
+            AnalysisContext.reportMissingClass(e);
+            return Collections.<XMethod> emptySet();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.ch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+
+/**
+ * Frozen index of an InheritanceGraph, answering subtype queries without
+ * traversing the graph.
+ *
+ * <p>
+ * Every vertex gets an int id. The superclass edges form a tree (a forest, if
+ * classes are missing), whose vertices are numbered in preorder; a class is a
+ * superclass of another if the other's preorder number is within its
+ * subtree's range. The supertypes of a class which are not its superclasses,
+ * that is its interfaces and the interfaces of its superclasses, are kept as
+ * a sorted array of ids. A class which adds no interfaces shares the array of
+ * its superclass, so most classes cost no extra memory.
+ * </p>
+ *
+ * <p>
+ * The index is immutable, so it can be queried without locking. Classes added
+ * to the graph later are not in the index; their queries must be answered
+ * from the graph. The supertypes of the indexed classes can't change, but an
+ * added class may be a new subtype of indexed classes.
+ * </p>
+ */
+final class HierarchyIndex {
+    private static final int[] NO_IDS = new int[0];
+
+    private final Map<ClassDescriptor, Integer> idMap;
+
+    private final ClassDescriptor[] descriptor;
+
+    private final boolean[] resolved;
+
+    /** Id of the direct superclass, or -1. */
+    private final int[] parent;
+
+    /** Preorder number in the superclass tree, or -1 if not in the tree. */
+    private final int[] pre;
+
+    /** Largest preorder number in the subtree. */
+    private final int[] last;
+
+    /** Vertex with a given preorder number. */
+    private final int[] byPre;
+
+    /** Nearest unresolved superclass, including the class itself, or -1. */
+    private final int[] unresolvedSuperclass;
+
+    /** Sorted ids of the supertypes which are not superclasses. */
+    private final int[][] otherSupertypes;
+
+    /** Whether a missing class is among the supertypes. */
+    private final boolean[] incomplete;
+
+    /**
+     * The subtypes of x which are not its subclasses are the subtrees of
+     * implementor[implementorStart[x] .. implementorStart[x+1]).
+     */
+    private final int[] implementorStart;
+
+    private final int[] implementor;
+
+    /** Whether every vertex is in the superclass tree. */
+    private final boolean complete;
+
+    HierarchyIndex(InheritanceGraph graph) {
+        int n = graph.getNumVertices();
+        ClassVertex[] vertex = new ClassVertex[n];
+        idMap = new HashMap<ClassDescriptor, Integer>(n * 4 / 3 + 1);
+        descriptor = new ClassDescriptor[n];
+        resolved = new boolean[n];
+        int v = 0;
+        for (Iterator<ClassVertex> i = graph.vertexIterator(); i.hasNext(); v++) {
+            vertex[v] = i.next();
+            descriptor[v] = vertex[v].getClassDescriptor();
+            resolved[v] = vertex[v].isResolved();
+            idMap.put(descriptor[v], v);
+        }
+
+        // Superclass tree
+        parent = new int[n];
+        int[] childStart = new int[n + 1];
+        for (v = 0; v < n; v++) {
+            ClassVertex superclass = vertex[v].getDirectSuperclass();
+            parent[v] = superclass == null ? -1 : idMap.get(superclass.getClassDescriptor());
+            if (parent[v] >= 0) {
+                childStart[parent[v] + 1]++;
+            }
+        }
+        for (v = 0; v < n; v++) {
+            childStart[v + 1] += childStart[v];
+        }
+        int[] child = new int[childStart[n]];
+        int[] next = Arrays.copyOf(childStart, n);
+        for (v = 0; v < n; v++) {
+            if (parent[v] >= 0) {
+                child[next[parent[v]]++] = v;
+            }
+        }
+
+        // Number the tree in preorder. Classes in a superclass cycle are
+        // unreachable from the roots, and stay unnumbered.
+        pre = new int[n];
+        last = new int[n];
+        byPre = new int[n];
+        Arrays.fill(pre, -1);
+        int count = 0;
+        int[] stack = new int[n];
+        int[] childIndex = new int[n];
+        for (int root = 0; root < n; root++) {
+            if (parent[root] >= 0) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = root;
+            byPre[count] = root;
+            pre[root] = count++;
+            childIndex[root] = childStart[root];
+            while (top > 0) {
+                int cur = stack[top - 1];
+                if (childIndex[cur] < childStart[cur + 1]) {
+                    int c = child[childIndex[cur]++];
+                    byPre[count] = c;
+                    pre[c] = count++;
+                    childIndex[c] = childStart[c];
+                    stack[top++] = c;
+                } else {
+                    last[cur] = count - 1;
+                    top--;
+                }
+            }
+        }
+        complete = count == n;
+
+        // Supertypes which are not superclasses, computed in preorder so the
+        // superclass's array can be shared
+        unresolvedSuperclass = new int[n];
+        otherSupertypes = new int[n][];
+        incomplete = new boolean[n];
+        int[] mark = new int[n];
+        Arrays.fill(mark, -1);
+        int[] workList = new int[n];
+        int[] found = new int[n];
+        for (int p = 0; p < count; p++) {
+            v = byPre[p];
+            int up = parent[v];
+            unresolvedSuperclass[v] = !resolved[v] ? v : up >= 0 ? unresolvedSuperclass[up] : -1;
+
+            int head = 0;
+            int tail = 0;
+            int numFound = 0;
+            boolean missing = false;
+            workList[tail++] = v;
+            mark[v] = v;
+            while (head < tail) {
+                int cur = workList[head++];
+                if (!resolved[cur]) {
+                    missing = true;
+                }
+                if (!isSuperclass(cur, v)) {
+                    found[numFound++] = cur;
+                }
+                for (Iterator<InheritanceEdge> i = graph.outgoingEdgeIterator(vertex[cur]); i.hasNext();) {
+                    int target = idMap.get(i.next().getTarget().getClassDescriptor());
+                    if (mark[target] != v) {
+                        mark[target] = v;
+                        workList[tail++] = target;
+                    }
+                }
+            }
+            incomplete[v] = missing;
+            int[] others = Arrays.copyOf(found, numFound);
+            Arrays.sort(others);
+            if (up >= 0 && Arrays.equals(others, otherSupertypes[up])) {
+                others = otherSupertypes[up];
+            } else if (numFound == 0) {
+                others = NO_IDS;
+            }
+            otherSupertypes[v] = others;
+        }
+
+        // Invert: a class implements the interfaces it has and its
+        // superclass doesn't
+        implementorStart = new int[n + 1];
+        List<int[]> pairs = new ArrayList<int[]>();
+        for (int p = 0; p < count; p++) {
+            v = byPre[p];
+            int[] others = otherSupertypes[v];
+            int up = parent[v];
+            if (up >= 0 && others == otherSupertypes[up]) {
+                continue;
+            }
+            for (int s : others) {
+                if (up < 0 || Arrays.binarySearch(otherSupertypes[up], s) < 0) {
+                    pairs.add(new int[] { s, v });
+                    implementorStart[s + 1]++;
+                }
+            }
+        }
+        for (v = 0; v < n; v++) {
+            implementorStart[v + 1] += implementorStart[v];
+        }
+        implementor = new int[pairs.size()];
+        next = Arrays.copyOf(implementorStart, n);
+        for (int[] pair : pairs) {
+            implementor[next[pair[0]]++] = pair[1];
+        }
+    }
+
+    /**
+     * @return the number of classes in the index
+     */
+    int size() {
+        return descriptor.length;
+    }
+
+    /**
+     * @return the id of a class, or -1 if the class is not in the index or
+     *         not in the superclass tree
+     */
+    int getId(ClassDescriptor classDescriptor) {
+        Integer id = idMap.get(classDescriptor);
+        return id == null || pre[id] < 0 ? -1 : id;
+    }
+
+    ClassDescriptor getClassDescriptor(int id) {
+        return descriptor[id];
+    }
+
+    /**
+     * @return true if no class is missing from the superclass tree, so
+     *         subtypes can be found from the index
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    private boolean isSuperclass(int sup, int sub) {
+        return pre[sup] >= 0 && pre[sub] >= 0 && pre[sup] <= pre[sub] && pre[sub] <= last[sup];
+    }
+
+    private boolean isKnownSupertype(int sub, int sup) {
+        return isSuperclass(sup, sub) || Arrays.binarySearch(otherSupertypes[sub], sup) >= 0;
+    }
+
+    /**
+     * Determine whether a class is a known supertype of an indexed class.
+     */
+    boolean hasSupertype(int sub, ClassDescriptor sup) {
+        Integer id = idMap.get(sup);
+        return id != null && isKnownSupertype(sub, id);
+    }
+
+    /**
+     * @return true if a missing class is among the supertypes of an indexed
+     *         class, so it may have supertypes which aren't known
+     */
+    boolean isIncomplete(int id) {
+        return incomplete[id];
+    }
+
+    /**
+     * Get the known subtypes of an indexed class, including the class itself.
+     * Only valid if the index is complete.
+     */
+    Set<ClassDescriptor> getSubtypes(int id) throws ClassNotFoundException {
+        if (!resolved[id]) {
+            ClassDescriptor.throwClassNotFoundException(descriptor[id]);
+        }
+        Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
+        addSubclasses(id, result);
+        for (int i = implementorStart[id]; i < implementorStart[id + 1]; i++) {
+            addSubclasses(implementor[i], result);
+        }
+        return result;
+    }
+
+    private void addSubclasses(int id, Set<ClassDescriptor> result) {
+        for (int p = pre[id]; p <= last[id]; p++) {
+            result.add(descriptor[byPre[p]]);
+        }
+    }
+
+    /**
+     * Get the first common superclass of two indexed classes, as computed by
+     * {@link Subtypes2#getFirstCommonSuperclass(org.apache.bcel.generic.ObjectType, org.apache.bcel.generic.ObjectType)}
+     * .
+     *
+     * @return the id of the first common superclass, or -1 for
+     *         java.lang.Object
+     */
+    int getFirstCommonSuperclass(int a, int b) throws ClassNotFoundException {
+        if (!resolved[a]) {
+            ClassDescriptor.throwClassNotFoundException(descriptor[a]);
+        }
+        if (!resolved[b]) {
+            ClassDescriptor.throwClassNotFoundException(descriptor[b]);
+        }
+        if (isKnownSupertype(b, a)) {
+            return a;
+        }
+        if (isKnownSupertype(a, b)) {
+            return b;
+        }
+        if (unresolvedSuperclass[a] >= 0) {
+            ClassDescriptor.throwClassNotFoundException(descriptor[unresolvedSuperclass[a]]);
+        }
+        if (unresolvedSuperclass[b] >= 0) {
+            ClassDescriptor.throwClassNotFoundException(descriptor[unresolvedSuperclass[b]]);
+        }
+
+        int common = a;
+        while (common >= 0 && !isSuperclass(common, b)) {
+            common = parent[common];
+        }
+        if (common >= 0 && !"java/lang/Object".equals(descriptor[common].getClassName())) {
+            return common;
+        }
+
+        // See if a common supertype other than java.lang.Object is in the
+        // same package as a or b; otherwise take any
+        int candidate = -1;
+        String aPackage = descriptor[a].getPackageName();
+        String bPackage = descriptor[b].getPackageName();
+        for (int c = a; c >= 0; c = parent[c]) {
+            candidate = pickCommonSupertype(c, b, candidate, aPackage, bPackage);
+            if (candidate >= 0 && isInPackage(candidate, aPackage, bPackage)) {
+                return candidate;
+            }
+        }
+        for (int c : otherSupertypes[a]) {
+            candidate = pickCommonSupertype(c, b, candidate, aPackage, bPackage);
+            if (candidate >= 0 && isInPackage(candidate, aPackage, bPackage)) {
+                return candidate;
+            }
+        }
+        return candidate;
+    }
+
+    private int pickCommonSupertype(int c, int b, int candidate, String aPackage, String bPackage) {
+        if (!isKnownSupertype(b, c) || "java/lang/Object".equals(descriptor[c].getClassName())) {
+            return candidate;
+        }
+        if (candidate < 0 || isInPackage(c, aPackage, bPackage)) {
+            return c;
+        }
+        return candidate;
+    }
+
+    private boolean isInPackage(int c, String aPackage, String bPackage) {
+        String cPackage = descriptor[c].getPackageName();
+        return cPackage.equals(aPackage) || cPackage.equals(bPackage);
+    }
+}
@@ -22,12 +22,12 @@ package edu.umd.cs.findbugs.ba.ch;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.CheckForNull;
 
@@ -44,6 +44,7 @@ import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ObjectTypeFactory;
 import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XFactory;
 import edu.umd.cs.findbugs.ba.XMethod;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.DescriptorFactory;
@@ -65,6 +66,8 @@ public class Subtypes2 {
 
     public static final boolean DEBUG_QUERIES = SystemProperties.getBoolean("findbugs.subtypes2.debugqueries");
 
+    private static final boolean USE_HIERARCHY_INDEX = SystemProperties.getBoolean("findbugs.subtypes2.index", true);
+
     private final InheritanceGraph graph;
 
     private final Map<ClassDescriptor, ClassVertex> classDescriptorToVertexMap;
@@ -81,6 +84,26 @@ public class Subtypes2 {
 
     private final ObjectType CLONEABLE;
 
+    /**
+     * Guards the inheritance graph and the query caches. It is never held
+     * while class analyses are computed: a query loads the XClasses it needs
+     * before taking it (see {@link #loadSupertypes(ClassDescriptor)}), and
+     * traversals call their visitors without it.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Frozen index of the inheritance graph, or null if it hasn't been built.
+     * Queries on indexed classes are answered from it without locking.
+     */
+    private volatile HierarchyIndex hierarchyIndex;
+
+    /**
+     * Whether no class has been added to the graph since the index was built,
+     * so the index knows all subtypes of the indexed classes.
+     */
+    private volatile boolean hierarchyIndexHasAllSubtypes;
+
     /**
      * Object to record the results of a supertype search.
      */
@@ -115,7 +138,7 @@ public class Subtypes2 {
      */
     public Subtypes2() {
         this.graph = new InheritanceGraph();
-        this.classDescriptorToVertexMap = new HashMap<ClassDescriptor, ClassVertex>();
+        this.classDescriptorToVertexMap = new ConcurrentHashMap<ClassDescriptor, ClassVertex>();
         this.supertypeSetMap = new MapCache<ClassDescriptor, SupertypeQueryResults>(500);
         this.subtypeSetMap = new MapCache<ClassDescriptor, Set<ClassDescriptor>>(500);
         this.xclassSet = new HashSet<XClass>();
@@ -226,21 +249,55 @@ public class Subtypes2 {
                 return;
             }
         }
-        ClassVertex vertex = addClassAndGetClassVertex(appXClass);
-        vertex.markAsApplicationClass();
+        loadSupertypes(appXClass);
+        synchronized (lock) {
+            ClassVertex vertex = addClassAndGetClassVertex(appXClass);
+            vertex.markAsApplicationClass();
+        }
 
     }
 
     public boolean isApplicationClass(ClassDescriptor descriptor) {
         assert descriptor != null;
+        loadSupertypes(descriptor);
         try {
-            return resolveClassVertex(descriptor).isApplicationClass();
+            synchronized (lock) {
+                return resolveClassVertex(descriptor).isApplicationClass();
+            }
         } catch (ClassNotFoundException e) {
             AnalysisContext.reportMissingClass(e);
             return false;
         }
     }
 
+    /**
+     * Build the index answering subtype queries for the classes in the
+     * inheritance graph. Should be called once the referenced classes have
+     * been added; classes added later are answered from the graph.
+     */
+    public void buildHierarchyIndex() {
+        if (!USE_HIERARCHY_INDEX) {
+            return;
+        }
+        synchronized (lock) {
+            hierarchyIndex = new HierarchyIndex(graph);
+            hierarchyIndexHasAllSubtypes = true;
+        }
+        if (DEBUG) {
+            System.out.println("Indexed " + hierarchyIndex.size() + " classes");
+        }
+    }
+
+    /**
+     * Determine whether subtype queries are answered from an index which
+     * knows all the classes of the inheritance graph. Once true, the answers
+     * to subtype queries don't change unless more classes are added.
+     */
+    public boolean hasCompleteHierarchyIndex() {
+        HierarchyIndex index = hierarchyIndex;
+        return index != null && hierarchyIndexHasAllSubtypes && index.isComplete();
+    }
+
     /**
      * Add a class or interface, and its transitive supertypes, to the
      * inheritance graph.
@@ -249,7 +306,65 @@ public class Subtypes2 {
      *            XClass to add to the inheritance graph
      */
     public void addClass(XClass xclass) {
-        addClassAndGetClassVertex(xclass);
+        loadSupertypes(xclass);
+        synchronized (lock) {
+            addClassAndGetClassVertex(xclass);
+        }
+    }
+
+    /**
+     * Load the XClasses of the given class and its transitive supertypes,
+     * unless it is in the inheritance graph already. Called before taking
+     * the lock, so adding the class to the graph only looks up loaded
+     * XClasses.
+     *
+     * @param classDescriptor
+     *            ClassDescriptor naming a class
+     */
+    private void loadSupertypes(ClassDescriptor classDescriptor) {
+        if (classDescriptorToVertexMap.containsKey(classDescriptor)) {
+            return;
+        }
+        XClass xclass = AnalysisContext.currentXFactory().getXClass(classDescriptor);
+        if (xclass != null) {
+            loadSupertypes(xclass);
+        }
+    }
+
+    private void loadSupertypes(XClass xclass) {
+        XFactory xFactory = AnalysisContext.currentXFactory();
+        LinkedList<XClass> workList = new LinkedList<XClass>();
+        Set<ClassDescriptor> seen = new HashSet<ClassDescriptor>();
+        workList.add(xclass);
+        while (!workList.isEmpty()) {
+            XClass work = workList.removeFirst();
+            ArrayList<ClassDescriptor> supertypes = new ArrayList<ClassDescriptor>();
+            if (work.getSuperclassDescriptor() != null) {
+                supertypes.add(work.getSuperclassDescriptor());
+            }
+            ClassDescriptor[] interfaces = work.getInterfaceDescriptorList();
+            // Synthesized ClassInfos, e.g. of package-info, have none
+            if (interfaces != null) {
+                Collections.addAll(supertypes, interfaces);
+            }
+            for (ClassDescriptor supertype : supertypes) {
+                if (seen.add(supertype) && !classDescriptorToVertexMap.containsKey(supertype)) {
+                    XClass superXClass = xFactory.getXClass(supertype);
+                    if (superXClass != null) {
+                        workList.addLast(superXClass);
+                    }
+                }
+            }
+        }
+    }
+
+    private void loadSupertypes(Type type) {
+        if (type instanceof ArrayType) {
+            type = ((ArrayType) type).getBasicType();
+        }
+        if (type instanceof ObjectType) {
+            loadSupertypes(DescriptorFactory.getClassDescriptor((ObjectType) type));
+        }
     }
 
     /**
@@ -300,6 +415,9 @@ public class Subtypes2 {
 
         if (vertex.isResolved()) {
             xclassSet.add(vertex.getXClass());
+            // A missing class has no subtypes yet, but a resolved one may
+            // extend indexed classes
+            hierarchyIndexHasAllSubtypes = false;
         }
 
         if (vertex.isInterface()) {
@@ -401,16 +519,48 @@ public class Subtypes2 {
     boolean prevResult;
 
     public boolean isSubtype(ClassDescriptor subDesc, ClassDescriptor superDesc) throws ClassNotFoundException {
-        if (subDesc == prevSubDesc && prevSuperDesc == superDesc) {
-            return prevResult;
+        HierarchyIndex index = hierarchyIndex;
+        int subId;
+        if (index != null && !subDesc.equals(superDesc) && !"java/lang/Object".equals(superDesc.getClassName())
+                && (subId = index.getId(subDesc)) >= 0) {
+            if (index.hasSupertype(subId, superDesc)) {
+                return true;
+            }
+            if (index.isIncomplete(subId)) {
+                // We don't really know which class was missing.
+                // However, any missing classes will already have been reported.
+                throw new ClassNotFoundException();
+            }
+            return false;
+        }
+        synchronized (lock) {
+            if (subDesc == prevSubDesc && prevSuperDesc == superDesc) {
+                return prevResult;
+            }
         }
-        prevResult = isSubtype0(subDesc, superDesc);
-        prevSubDesc = subDesc;
-        prevSuperDesc = superDesc;
-        return prevResult;
+        boolean result = isSubtype0(subDesc, superDesc);
+        synchronized (lock) {
+            prevResult = result;
+            prevSubDesc = subDesc;
+            prevSuperDesc = superDesc;
+        }
+        return result;
     }
 
     public boolean isSubtype(ClassDescriptor subDesc, ClassDescriptor... superDesc) throws ClassNotFoundException {
+        HierarchyIndex index = hierarchyIndex;
+        int subId;
+        if (index != null && (subId = index.getId(subDesc)) >= 0) {
+            for (ClassDescriptor s : superDesc) {
+                if (subDesc.equals(s) || index.hasSupertype(subId, s)) {
+                    return true;
+                }
+            }
+            if (superDesc.length > 0 && index.isIncomplete(subId)) {
+                throw new ClassNotFoundException();
+            }
+            return false;
+        }
         for (ClassDescriptor s : superDesc) {
             if (subDesc.equals(s)) {
                 return true;
@@ -542,15 +692,24 @@ public class Subtypes2 {
      * @throws ClassNotFoundException
      */
     public ReferenceType getFirstCommonSuperclass(ReferenceType a, ReferenceType b) throws ClassNotFoundException {
+        if (hierarchyIndex != null && a instanceof ObjectType && b instanceof ObjectType) {
+            // Answered from the index, if both classes are indexed
+            return getFirstCommonSuperclass((ObjectType) a, (ObjectType) b);
+        }
         // Easy case: same types
         if (a.equals(b)) {
             return a;
         }
 
-        ReferenceType answer = checkFirstCommonSuperclassQueryCache(a, b);
+        ReferenceType answer;
+        synchronized (lock) {
+            answer = checkFirstCommonSuperclassQueryCache(a, b);
+        }
         if (answer == null) {
             answer = computeFirstCommonSuperclassOfReferenceTypes(a, b);
-            putFirstCommonSuperclassQueryCache(a, b, answer);
+            synchronized (lock) {
+                putFirstCommonSuperclassQueryCache(a, b, answer);
+            }
         }
         return answer;
     }
@@ -703,14 +862,33 @@ public class Subtypes2 {
         if (a.equals(b)) {
             return a;
         }
-
-        ObjectType firstCommonSupertype = (ObjectType) checkFirstCommonSuperclassQueryCache(a, b);
-        if (firstCommonSupertype == null) {
-            firstCommonSupertype = computeFirstCommonSuperclassOfObjectTypes(a, b);
-            firstCommonSuperclassQueryCache.put(a, b, firstCommonSupertype);
+        HierarchyIndex index = hierarchyIndex;
+        if (index != null) {
+            int aId = index.getId(DescriptorFactory.getClassDescriptor(a));
+            int bId = aId >= 0 ? index.getId(DescriptorFactory.getClassDescriptor(b)) : -1;
+            if (bId >= 0) {
+                int common = index.getFirstCommonSuperclass(aId, bId);
+                if (common == aId) {
+                    return a;
+                } else if (common == bId) {
+                    return b;
+                } else if (common < 0) {
+                    return Type.OBJECT;
+                }
+                return ObjectTypeFactory.getInstance(index.getClassDescriptor(common).toDottedClassName());
+            }
         }
+        loadSupertypes(a);
+        loadSupertypes(b);
+        synchronized (lock) {
+            ObjectType firstCommonSupertype = (ObjectType) checkFirstCommonSuperclassQueryCache(a, b);
+            if (firstCommonSupertype == null) {
+                firstCommonSupertype = computeFirstCommonSuperclassOfObjectTypes(a, b);
+                firstCommonSuperclassQueryCache.put(a, b, firstCommonSupertype);
+            }
 
-        return firstCommonSupertype;
+            return firstCommonSupertype;
+        }
     }
 
     private ObjectType computeFirstCommonSuperclassOfObjectTypes(ObjectType a, ObjectType b) throws ClassNotFoundException {
@@ -822,12 +1000,22 @@ public class Subtypes2 {
      * @throws ClassNotFoundException
      */
     public Set<ClassDescriptor> getSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
-        Set<ClassDescriptor> result = subtypeSetMap.get(classDescriptor);
-        if (result == null) {
-            result = computeKnownSubtypes(classDescriptor);
-            subtypeSetMap.put(classDescriptor, result);
+        HierarchyIndex index = hierarchyIndex;
+        if (hasCompleteHierarchyIndex()) {
+            int id = index.getId(classDescriptor);
+            if (id >= 0) {
+                return index.getSubtypes(id);
+            }
+        }
+        loadSupertypes(classDescriptor);
+        synchronized (lock) {
+            Set<ClassDescriptor> result = subtypeSetMap.get(classDescriptor);
+            if (result == null) {
+                result = computeKnownSubtypes(classDescriptor);
+                subtypeSetMap.put(classDescriptor, result);
+            }
+            return result;
         }
-        return result;
     }
 
     /**
@@ -855,17 +1043,20 @@ public class Subtypes2 {
      * @throws ClassNotFoundException
      */
     public Set<ClassDescriptor> getDirectSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
+        loadSupertypes(classDescriptor);
+        synchronized (lock) {
 
-        ClassVertex startVertex = resolveClassVertex(classDescriptor);
+            ClassVertex startVertex = resolveClassVertex(classDescriptor);
 
-        Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
-        Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(startVertex);
-        while (i.hasNext()) {
-            InheritanceEdge edge = i.next();
-            result.add(edge.getSource().getClassDescriptor());
-        }
+            Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
+            Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(startVertex);
+            while (i.hasNext()) {
+                InheritanceEdge edge = i.next();
+                result.add(edge.getSource().getClassDescriptor());
+            }
 
-        return result;
+            return result;
+        }
     }
 
     /**
@@ -958,7 +1149,9 @@ public class Subtypes2 {
     public void traverseSupertypes(ClassDescriptor start, InheritanceGraphVisitor visitor) throws ClassNotFoundException {
         LinkedList<SupertypeTraversalPath> workList = new LinkedList<SupertypeTraversalPath>();
 
-        ClassVertex startVertex = resolveClassVertex(start);
+        // Once the start vertex is resolved, its transitive supertypes are
+        // in the graph, and the vertices we visit don't change
+        ClassVertex startVertex = resolveSupertypes(start);
         workList.addLast(new SupertypeTraversalPath(startVertex));
 
         while (!workList.isEmpty()) {
@@ -1007,9 +1200,27 @@ public class Subtypes2 {
      *             if the start vertex cannot be resolved
      */
     public void traverseSupertypesDepthFirst(ClassDescriptor start, SupertypeTraversalVisitor visitor) throws ClassNotFoundException {
+        resolveSupertypes(start);
         this.traverseSupertypesDepthFirstHelper(start, visitor, new HashSet<ClassDescriptor>());
     }
 
+    /**
+     * Resolve the vertex of a class, adding it and its transitive supertypes
+     * to the inheritance graph.
+     *
+     * @param classDescriptor
+     *            ClassDescriptor naming a class
+     * @return resolved ClassVertex
+     * @throws ClassNotFoundException
+     *             if the class does not exist
+     */
+    private ClassVertex resolveSupertypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
+        loadSupertypes(classDescriptor);
+        synchronized (lock) {
+            return resolveClassVertex(classDescriptor);
+        }
+    }
+
     private void traverseSupertypesDepthFirstHelper(ClassDescriptor cur, SupertypeTraversalVisitor visitor,
             Set<ClassDescriptor> seen) throws ClassNotFoundException {
 
@@ -1118,40 +1329,43 @@ public class Subtypes2 {
 
 
     public boolean hasKnownSubclasses(ClassDescriptor classDescriptor) throws ClassNotFoundException {
+        loadSupertypes(classDescriptor);
+        synchronized (lock) {
 
-        ClassVertex startVertex = resolveClassVertex(classDescriptor);
-        if (!startVertex.isInterface()) {
-            return true;
-        }
+            ClassVertex startVertex = resolveClassVertex(classDescriptor);
+            if (!startVertex.isInterface()) {
+                return true;
+            }
 
-        LinkedList<ClassVertex> workList = new LinkedList<ClassVertex>();
+            LinkedList<ClassVertex> workList = new LinkedList<ClassVertex>();
 
-        workList.addLast(startVertex);
+            workList.addLast(startVertex);
 
-        Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
+            Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
 
-        while (!workList.isEmpty()) {
-            ClassVertex current = workList.removeFirst();
+            while (!workList.isEmpty()) {
+                ClassVertex current = workList.removeFirst();
 
-            if (!result.add(current.getClassDescriptor())) {
-                // Already added this class
-                continue;
-            }
+                if (!result.add(current.getClassDescriptor())) {
+                    // Already added this class
+                    continue;
+                }
 
-            // Add class to the result
-            if (current.isResolved() && !current.isInterface()) {
-                return true;
-            }
+                // Add class to the result
+                if (current.isResolved() && !current.isInterface()) {
+                    return true;
+                }
 
-            // Add all known subtype vertices to the work list
-            Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(current);
-            while (i.hasNext()) {
-                InheritanceEdge edge = i.next();
-                workList.addLast(edge.getSource());
+                // Add all known subtype vertices to the work list
+                Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(current);
+                while (i.hasNext()) {
+                    InheritanceEdge edge = i.next();
+                    workList.addLast(edge.getSource());
+                }
             }
-        }
 
-        return false;
+            return false;
+        }
     }
     private Set<ClassDescriptor> computeKnownSupertypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
         LinkedList<ClassVertex> workList = new LinkedList<ClassVertex>();
@@ -1192,12 +1406,15 @@ public class Subtypes2 {
      * @return SupertypeQueryResults for the class named by the ClassDescriptor
      */
     public SupertypeQueryResults getSupertypeQueryResults(ClassDescriptor classDescriptor) {
-        SupertypeQueryResults supertypeQueryResults = supertypeSetMap.get(classDescriptor);
-        if (supertypeQueryResults == null) {
-            supertypeQueryResults = computeSupertypes(classDescriptor);
-            supertypeSetMap.put(classDescriptor, supertypeQueryResults);
+        loadSupertypes(classDescriptor);
+        synchronized (lock) {
+            SupertypeQueryResults supertypeQueryResults = supertypeSetMap.get(classDescriptor);
+            if (supertypeQueryResults == null) {
+                supertypeQueryResults = computeSupertypes(classDescriptor);
+                supertypeSetMap.put(classDescriptor, supertypeQueryResults);
+            }
+            return supertypeQueryResults;
         }
-        return supertypeQueryResults;
     }
 
     /**
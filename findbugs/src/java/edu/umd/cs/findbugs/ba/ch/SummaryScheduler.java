@@ -0,0 +1,375 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.ch;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.umd.cs.findbugs.SystemProperties;
+
+/**
+ * Schedules the computation of interprocedural method summaries bottom-up
+ * over the strongly connected components of a call graph.
+ *
+ * <p>
+ * A component is summarized once all the components it calls have been
+ * summarized, so callers see the final summaries of their callees. The
+ * methods of a recursive component are summarized repeatedly until none of
+ * their summaries change; other components are summarized once. Components
+ * which don't depend on each other may be summarized in parallel.
+ * </p>
+ */
+public class SummaryScheduler {
+    private static final boolean DEBUG = SystemProperties.getBoolean("summaries.debug");
+
+    /**
+     * Bound on the number of times the methods of a recursive component are
+     * summarized, in case summaries don't converge.
+     */
+    private static final int MAX_ITERATIONS = SystemProperties.getInt("summaries.maxIterations", 100);
+
+    /**
+     * Computes the summary of a method.
+     */
+    public interface Summarizer {
+        /**
+         * Compute or update the summary of a method. When run in parallel,
+         * methods of different components are summarized concurrently.
+         *
+         * @param method
+         *            the id of the method
+         * @return true if the summary of the method changed
+         */
+        boolean summarize(int method);
+    }
+
+    private final int numMethods;
+
+    /** Component of each method */
+    private final int[] component;
+
+    /** Methods of each component, in CSR form */
+    private final int[] componentStart;
+
+    private final int[] componentMethod;
+
+    private final boolean[] recursive;
+
+    /** Components calling each component, in CSR form */
+    private final int[] callerStart;
+
+    private final int[] caller;
+
+    /** Number of distinct components called by each component */
+    private final int[] numCallees;
+
+    /**
+     * Schedule summaries for the methods of a class hierarchy call graph.
+     */
+    public SummaryScheduler(ClassHierarchyCallGraph.Graph graph) {
+        this(graph.getNumMethods(), graph.getCalleeStart(), graph.getCallees());
+    }
+
+    /**
+     * Schedule summaries for the methods of a call graph.
+     *
+     * @param numMethods
+     *            the number of methods, numbered from 0
+     * @param calleeStart
+     *            the callees of method m are
+     *            callee[calleeStart[m]..calleeStart[m+1]-1]
+     * @param callee
+     *            the callees of all the methods
+     */
+    public SummaryScheduler(int numMethods, int[] calleeStart, int[] callee) {
+        this.numMethods = numMethods;
+        component = new int[numMethods];
+        componentMethod = new int[numMethods];
+        int numComponents = findComponents(calleeStart, callee);
+
+        componentStart = new int[numComponents + 1];
+        for (int m = 0; m < numMethods; m++) {
+            componentStart[component[m] + 1]++;
+        }
+        for (int c = 0; c < numComponents; c++) {
+            componentStart[c + 1] += componentStart[c];
+        }
+        int[] next = Arrays.copyOf(componentStart, numComponents);
+        for (int m = 0; m < numMethods; m++) {
+            componentMethod[next[component[m]]++] = m;
+        }
+
+        // Condense the call graph, without duplicate edges
+        recursive = new boolean[numComponents];
+        numCallees = new int[numComponents];
+        int[] lastCaller = new int[numComponents];
+        Arrays.fill(lastCaller, -1);
+        int[] edgeFrom = new int[callee.length];
+        int[] edgeTo = new int[callee.length];
+        int numEdges = 0;
+        for (int c = 0; c < numComponents; c++) {
+            for (int i = componentStart[c]; i < componentStart[c + 1]; i++) {
+                int m = componentMethod[i];
+                for (int e = calleeStart[m]; e < calleeStart[m + 1]; e++) {
+                    int d = component[callee[e]];
+                    if (d == c) {
+                        recursive[c] = true;
+                    } else if (lastCaller[d] != c) {
+                        lastCaller[d] = c;
+                        edgeFrom[numEdges] = c;
+                        edgeTo[numEdges] = d;
+                        numEdges++;
+                        numCallees[c]++;
+                    }
+                }
+            }
+        }
+        callerStart = new int[numComponents + 1];
+        for (int e = 0; e < numEdges; e++) {
+            callerStart[edgeTo[e] + 1]++;
+        }
+        for (int c = 0; c < numComponents; c++) {
+            callerStart[c + 1] += callerStart[c];
+        }
+        caller = new int[numEdges];
+        next = Arrays.copyOf(callerStart, numComponents);
+        for (int e = 0; e < numEdges; e++) {
+            caller[next[edgeTo[e]]++] = edgeFrom[e];
+        }
+        if (DEBUG) {
+            System.out.println("Summaries: " + numMethods + " methods in " + numComponents + " components");
+        }
+    }
+
+    /**
+     * Find the strongly connected components with Tarjan's algorithm,
+     * without recursion. A component is completed after all the components
+     * it calls, so components are numbered bottom-up.
+     *
+     * @return the number of components
+     */
+    private int findComponents(int[] calleeStart, int[] callee) {
+        int[] index = new int[numMethods];
+        int[] lowLink = new int[numMethods];
+        Arrays.fill(index, -1);
+        int[] stack = new int[numMethods];
+        boolean[] onStack = new boolean[numMethods];
+        int stackSize = 0;
+        int[] callStack = new int[numMethods];
+        int[] nextEdge = new int[numMethods];
+        int nextIndex = 0;
+        int numComponents = 0;
+
+        for (int root = 0; root < numMethods; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = lowLink[root] = nextIndex++;
+            nextEdge[root] = calleeStart[root];
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (depth > 0) {
+                int m = callStack[depth - 1];
+                if (nextEdge[m] < calleeStart[m + 1]) {
+                    int n = callee[nextEdge[m]++];
+                    if (index[n] < 0) {
+                        callStack[depth++] = n;
+                        index[n] = lowLink[n] = nextIndex++;
+                        nextEdge[n] = calleeStart[n];
+                        stack[stackSize++] = n;
+                        onStack[n] = true;
+                    } else if (onStack[n]) {
+                        lowLink[m] = Math.min(lowLink[m], index[n]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[m]);
+                }
+                if (lowLink[m] == index[m]) {
+                    int n;
+                    do {
+                        n = stack[--stackSize];
+                        onStack[n] = false;
+                        component[n] = numComponents;
+                    } while (n != m);
+                    numComponents++;
+                }
+            }
+        }
+        return numComponents;
+    }
+
+    public int getNumComponents() {
+        return recursive.length;
+    }
+
+    /**
+     * @return the component of a method; a method's callees are in the same
+     *         or lower numbered components
+     */
+    public int getComponent(int method) {
+        return component[method];
+    }
+
+    public int getComponentSize(int c) {
+        return componentStart[c + 1] - componentStart[c];
+    }
+
+    /**
+     * @return the i-th method of a component
+     */
+    public int getComponentMethod(int c, int i) {
+        return componentMethod[componentStart[c] + i];
+    }
+
+    /**
+     * @return true if the methods of a component call each other, or the
+     *         method of the component calls itself
+     */
+    public boolean isRecursive(int c) {
+        return recursive[c];
+    }
+
+    /**
+     * Summarize all methods, bottom-up.
+     *
+     * @param summarizer
+     *            computes the summaries; must be thread-safe if threads is
+     *            more than 1
+     * @param threads
+     *            the number of threads summarizing components in parallel
+     */
+    public void run(Summarizer summarizer, int threads) throws InterruptedException {
+        if (threads <= 1) {
+            for (int c = 0; c < getNumComponents(); c++) {
+                summarizeComponent(summarizer, c);
+            }
+            return;
+        }
+        new ParallelRun(summarizer, threads).run();
+    }
+
+    private void summarizeComponent(Summarizer summarizer, int c) {
+        int start = componentStart[c];
+        int end = componentStart[c + 1];
+        if (!recursive[c]) {
+            summarizer.summarize(componentMethod[start]);
+            return;
+        }
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            boolean changed = false;
+            for (int i = start; i < end; i++) {
+                // Summarize every method, even once one has changed, so
+                // each iteration sees the updated summaries
+                if (summarizer.summarize(componentMethod[i])) {
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                return;
+            }
+        }
+        if (DEBUG) {
+            System.out.println("Summaries of component " + c + " didn't converge");
+        }
+    }
+
+    /**
+     * Summarizes components in a thread pool, each one once all the
+     * components it calls are done.
+     */
+    private class ParallelRun {
+        private final Summarizer summarizer;
+
+        private final ExecutorService executor;
+
+        private final AtomicInteger[] pending;
+
+        private final CountDownLatch done;
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        ParallelRun(Summarizer summarizer, int threads) {
+            this.summarizer = summarizer;
+            this.executor = Executors.newFixedThreadPool(threads);
+            int numComponents = getNumComponents();
+            pending = new AtomicInteger[numComponents];
+            for (int c = 0; c < numComponents; c++) {
+                pending[c] = new AtomicInteger(numCallees[c]);
+            }
+            done = new CountDownLatch(numComponents);
+        }
+
+        void run() throws InterruptedException {
+            try {
+                for (int c = 0; c < pending.length; c++) {
+                    if (numCallees[c] == 0) {
+                        submit(c);
+                    }
+                }
+                done.await();
+            } finally {
+                executor.shutdownNow();
+            }
+            Throwable t = failure.get();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+
+        private void submit(final int c) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (failure.get() == null) {
+                                summarizeComponent(summarizer, c);
+                            }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                        for (int i = callerStart[c]; i < callerStart[c + 1]; i++) {
+                            int d = caller[i];
+                            if (pending[d].decrementAndGet() == 0) {
+                                submit(d);
+                            }
+                        }
+                        done.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The run was interrupted
+            }
+        }
+    }
+}
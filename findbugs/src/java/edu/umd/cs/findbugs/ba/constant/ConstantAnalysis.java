@@ -67,6 +67,11 @@ public class ConstantAnalysis extends FrameDataflowAnalysis<Constant, ConstantFr
         visitor.analyzeInstruction(handle.getInstruction());
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public void meetInto(ConstantFrame fact, Edge edge, ConstantFrame result) throws DataflowAnalysisException {
 
@@ -89,8 +94,12 @@ public class ConstantAnalysis extends FrameDataflowAnalysis<Constant, ConstantFr
 
     @Override
     protected void mergeValues(ConstantFrame otherFrame, ConstantFrame resultFrame, int slot) throws DataflowAnalysisException {
-        Constant value = Constant.merge(resultFrame.getValue(slot), otherFrame.getValue(slot));
-        resultFrame.setValue(slot, value);
+        Constant mine = resultFrame.getValue(slot);
+        Constant other = otherFrame.getValue(slot);
+        if (mine == other) {
+            return;
+        }
+        resultFrame.setValue(slot, Constant.merge(mine, other));
     }
 
     // /*
@@ -80,6 +80,11 @@ public abstract class FieldSetAnalysis extends ForwardDataflowAnalysis<FieldSet>
         result.mergeWith(fact);
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public boolean same(FieldSet fact1, FieldSet fact2) {
         return fact1.sameAs(fact2);
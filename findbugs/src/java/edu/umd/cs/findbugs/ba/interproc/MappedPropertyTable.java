@@ -0,0 +1,400 @@
+/*
+ * Bytecode analysis framework
+ * Copyright (C) 2005, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.interproc;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillClose;
+
+import org.apache.bcel.Constants;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Read-only table of the entries of a {@link PropertyDatabase} in the binary
+ * database format. The entries are sorted by key, so a property is found by
+ * binary search in the table, which is usually a memory-mapped file; nothing
+ * is decoded until it is looked up.
+ *
+ * <p>
+ * The layout (all numbers are 4 byte big-endian ints) is:
+ * </p>
+ *
+ * <pre>
+ *  header   magic, version, number of entries
+ *  index    offset of each entry, in key order
+ *  entries  (key length, key, access flags, property length, property)*
+ * </pre>
+ *
+ * <p>
+ * A key is the UTF-8 encoded "class,name,signature" of a method or field,
+ * with the class name dotted, as in the text format. Keys are compared as
+ * unsigned bytes. The property is the UTF-8 encoded string written by
+ * {@link PropertyDatabase#encodeProperty(Object)}. A method or field is
+ * static if {@link Constants#ACC_STATIC} is set in its access flags.
+ * </p>
+ */
+public class MappedPropertyTable {
+
+    private static final byte[] MAGIC = { 'F', 'B', 'P', 'R', 'O', 'P', 'D', 'B' };
+
+    private static final int VERSION = 1;
+
+    static final int HEADER_SIZE = MAGIC.length + 8;
+
+    /**
+     * An entry of a table to be written.
+     */
+    public static class Entry implements Comparable<Entry> {
+        final byte[] key;
+
+        final int accessFlags;
+
+        final String property;
+
+        /**
+         * @param key
+         *            the key, "class,name,signature"
+         * @param accessFlags
+         *            the access flags of the method or field
+         * @param property
+         *            the encoded property
+         */
+        public Entry(String key, int accessFlags, String property) {
+            this.key = key.getBytes(UTF8.charset);
+            this.accessFlags = accessFlags;
+            this.property = property;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int cmp = compareBytes(key, other.key);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return accessFlags - other.accessFlags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && compareTo((Entry) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(key) + accessFlags;
+        }
+    }
+
+    private final ByteBuffer buffer;
+
+    private final int size;
+
+    private MappedPropertyTable(ByteBuffer buffer) throws PropertyDatabaseFormatException {
+        this.buffer = buffer;
+        int limit = buffer.limit();
+        if (!isBinary(buffer)) {
+            throw new PropertyDatabaseFormatException("Not a binary property database");
+        }
+        int version = buffer.getInt(MAGIC.length);
+        if (version != VERSION) {
+            throw new PropertyDatabaseFormatException("Unsupported binary property database version " + version);
+        }
+        size = buffer.getInt(MAGIC.length + 4);
+        // Entries are not checked here, so that opening the table doesn't
+        // touch them
+        if (size < 0 || size > (limit - HEADER_SIZE) / 4) {
+            throw new PropertyDatabaseFormatException("Invalid binary property database: bad entry count");
+        }
+    }
+
+    /**
+     * Map a binary property database file.
+     *
+     * @param file
+     *            the file
+     * @return the table
+     */
+    public static MappedPropertyTable map(File file) throws IOException, PropertyDatabaseFormatException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Property database " + file + " is too large to be mapped");
+            }
+            // The mapping stays valid after the channel is closed
+            return new MappedPropertyTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Get a table from the contents of a binary property database, such as a
+     * resource which can't be mapped.
+     *
+     * @param data
+     *            the contents
+     * @return the table
+     */
+    public static MappedPropertyTable wrap(byte[] data) throws PropertyDatabaseFormatException {
+        return new MappedPropertyTable(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Determine whether some data starts like a binary property database.
+     *
+     * @param header
+     *            the data, positioned at its start
+     * @return true if the data has the magic number of the binary format
+     */
+    static boolean isBinary(ByteBuffer header) {
+        if (header.limit() < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determine whether a file is a binary property database.
+     *
+     * @param file
+     *            the file
+     * @return true if the file has the magic number of the binary format
+     */
+    public static boolean isBinary(File file) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int n = 0;
+            while (n < header.length) {
+                int count = in.read(header, n, header.length - n);
+                if (count < 0) {
+                    return false;
+                }
+                n += count;
+            }
+        }
+        return isBinary(ByteBuffer.wrap(header));
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the key, "class,name,signature", of an entry
+     */
+    public String getKey(int entry) {
+        int offset = offsetOf(entry);
+        return decode(offset + 4, buffer.getInt(offset));
+    }
+
+    /**
+     * @return the access flags of an entry
+     */
+    public int getAccessFlags(int entry) {
+        int offset = offsetOf(entry);
+        return buffer.getInt(offset + 4 + buffer.getInt(offset));
+    }
+
+    /**
+     * @return the encoded property of an entry
+     */
+    public String getProperty(int entry) {
+        int offset = offsetOf(entry);
+        int propertyOffset = offset + 8 + buffer.getInt(offset);
+        return decode(propertyOffset + 4, buffer.getInt(propertyOffset));
+    }
+
+    /**
+     * Look up the property of a method or field.
+     *
+     * @param dottedClassName
+     *            the class of the method or field
+     * @param name
+     *            the name of the method or field
+     * @param signature
+     *            the signature of the method or field
+     * @param isStatic
+     *            whether the method or field is static
+     * @return the encoded property, or null if there is none
+     */
+    public @CheckForNull
+    String lookup(String dottedClassName, String name, String signature, boolean isStatic) {
+        byte[] key = (dottedClassName + "," + name + "," + signature).getBytes(UTF8.charset);
+
+        // Find the first entry with the key
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mid, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // Entries differing only in access flags are adjacent
+        for (int i = low; i < size && compareKey(i, key) == 0; i++) {
+            if (((getAccessFlags(i) & Constants.ACC_STATIC) != 0) == isStatic) {
+                return getProperty(i);
+            }
+        }
+        return null;
+    }
+
+    private int offsetOf(int entry) {
+        return buffer.getInt(HEADER_SIZE + 4 * entry);
+    }
+
+    private int compareKey(int entry, byte[] key) {
+        int offset = offsetOf(entry);
+        int length = buffer.getInt(offset);
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buffer.get(offset + 4 + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, UTF8.charset);
+    }
+
+    static int compareBytes(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Write a binary property database. The OutputStream is guaranteed to be
+     * closed, even if an exception is thrown.
+     *
+     * @param entries
+     *            the entries, in any order; of entries with the same key
+     *            and access flags, the last one is written
+     * @param out
+     *            the OutputStream
+     */
+    public static void write(List<Entry> entries, @WillClose OutputStream out) throws IOException {
+        List<Entry> sorted = new ArrayList<Entry>(entries);
+        // The sort is stable, so the last of equal entries is last
+        Collections.sort(sorted);
+        for (int i = sorted.size() - 2; i >= 0; i--) {
+            if (sorted.get(i).compareTo(sorted.get(i + 1)) == 0) {
+                sorted.remove(i);
+            }
+        }
+        List<byte[]> properties = new ArrayList<byte[]>(sorted.size());
+        for (Entry e : sorted) {
+            properties.add(e.property.getBytes(UTF8.charset));
+        }
+
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+            data.write(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(sorted.size());
+            int offset = HEADER_SIZE + 4 * sorted.size();
+            for (int i = 0; i < sorted.size(); i++) {
+                data.writeInt(offset);
+                offset += 12 + sorted.get(i).key.length + properties.get(i).length;
+            }
+            for (int i = 0; i < sorted.size(); i++) {
+                Entry e = sorted.get(i);
+                data.writeInt(e.key.length);
+                data.write(e.key);
+                data.writeInt(e.accessFlags);
+                data.writeInt(properties.get(i).length);
+                data.write(properties.get(i));
+            }
+        }
+    }
+
+    /**
+     * Convert a property database from the text format to the binary format.
+     * No classes need to be loaded, so databases for libraries can be
+     * converted without analyzing them.
+     */
+    public static void main(String[] args) throws IOException, PropertyDatabaseFormatException {
+        if (args.length != 2) {
+            System.err.println("Usage: " + MappedPropertyTable.class.getName() + " <text database> <binary database>");
+            System.exit(1);
+        }
+        List<Entry> entries = new ArrayList<Entry>();
+        try (BufferedReader reader = new BufferedReader(Util.getReader(new FileInputStream(args[0])))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if ("".equals(line)) {
+                    continue;
+                }
+                int bar = line.indexOf('|');
+                int comma = bar < 0 ? -1 : line.lastIndexOf(',', bar);
+                if (comma < 0) {
+                    throw new PropertyDatabaseFormatException("Invalid property database entry: " + line);
+                }
+                int accessFlags;
+                try {
+                    accessFlags = Integer.parseInt(line.substring(comma + 1, bar));
+                } catch (NumberFormatException e) {
+                    throw new PropertyDatabaseFormatException("Invalid access flags: " + line);
+                }
+                entries.add(new Entry(line.substring(0, comma), accessFlags, line.substring(bar + 1)));
+            }
+        }
+        write(entries, new FileOutputStream(args[1]));
+        System.out.println("Wrote " + entries.size() + " entries to " + args[1]);
+    }
+}
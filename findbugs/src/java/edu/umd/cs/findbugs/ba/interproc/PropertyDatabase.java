@@ -19,17 +19,23 @@
 
 package edu.umd.cs.findbugs.ba.interproc;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -40,11 +46,19 @@ import javax.annotation.WillClose;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.charsets.UTF8;
 import edu.umd.cs.findbugs.classfile.FieldOrMethodDescriptor;
+import edu.umd.cs.findbugs.io.IO;
 import edu.umd.cs.findbugs.util.Util;
 
 /**
  * Property database for interprocedural analysis.
  *
+ * <p>
+ * A database can be read from the text format, one "key|property" line per
+ * entry, or from the binary format of {@link MappedPropertyTable}. Entries
+ * read in the binary format stay in the (memory-mapped) table and are only
+ * decoded when they are looked up, until they are enumerated or removed.
+ * </p>
+ *
  * @param <KeyType>
  *            key type: either MethodDescriptor or FieldDescriptor
  * @param <ValueType>
@@ -55,6 +69,12 @@ import edu.umd.cs.findbugs.util.Util;
 public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor, ValueType> {
     private final Map<KeyType, ValueType> propertyMap;
 
+    /**
+     * Binary tables read whose entries haven't been decoded into propertyMap;
+     * later tables take precedence, and propertyMap over all of them
+     */
+    private final List<MappedPropertyTable> tables = new ArrayList<MappedPropertyTable>();
+
     /**
      * Constructor. Creates an empty property database.
      */
@@ -83,24 +103,80 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      */
     public @CheckForNull
     ValueType getProperty(KeyType key) {
-        return propertyMap.get(key);
+        ValueType property = propertyMap.get(key);
+        if (property != null || tables.isEmpty()) {
+            return property;
+        }
+        String className = key.getClassDescriptor().toDottedClassName();
+        for (int i = tables.size() - 1; i >= 0; i--) {
+            String encoded = tables.get(i).lookup(className, key.getName(), key.getSignature(), key.isStatic());
+            if (encoded != null) {
+                try {
+                    return decodeProperty(encoded);
+                } catch (PropertyDatabaseFormatException e) {
+                    AnalysisContext.logError("Invalid property for " + key, e);
+                    return null;
+                }
+            }
+        }
+        return null;
     }
 
     public Set<KeyType> getKeys() {
+        inflate();
         return propertyMap.keySet();
     }
 
     public Collection<Map.Entry<KeyType, ValueType>> entrySet() {
+        inflate();
         return propertyMap.entrySet();
     }
 
+    /**
+     * Decode all entries of the binary tables into propertyMap.
+     */
+    private void inflate() {
+        for (int i = tables.size() - 1; i >= 0; i--) {
+            inflate(tables.get(i), false);
+        }
+        tables.clear();
+    }
+
+    /**
+     * Decode all entries of a binary table into propertyMap.
+     *
+     * @param replace
+     *            true if the table's entries replace those in propertyMap
+     */
+    private void inflate(MappedPropertyTable table, boolean replace) {
+        for (int i = 0; i < table.size(); i++) {
+            String encodedKey = table.getKey(i) + "," + table.getAccessFlags(i);
+            try {
+                KeyType key = parseKey(encodedKey);
+                if (key != null && (replace || !propertyMap.containsKey(key))) {
+                    propertyMap.put(key, decodeProperty(table.getProperty(i)));
+                }
+            } catch (PropertyDatabaseFormatException e) {
+                AnalysisContext.logError("Invalid property database entry " + encodedKey, e);
+            }
+        }
+    }
+
     /**
      * Return whether or not the database is empty.
      *
      * @return true if the database is empty, false it it has at least one entry
      */
     public boolean isEmpty() {
-        return propertyMap.isEmpty();
+        if (!propertyMap.isEmpty()) {
+            return false;
+        }
+        for (MappedPropertyTable table : tables) {
+            if (table.size() > 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -112,11 +188,26 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      *         this key
      */
     public ValueType removeProperty(KeyType key) {
+        inflate();
         return propertyMap.remove(key);
     }
 
     /**
-     * Read property database from given file.
+     * Add a binary table read after the existing entries.
+     */
+    private void addTable(MappedPropertyTable table) {
+        if (propertyMap.isEmpty()) {
+            tables.add(table);
+        } else {
+            // The table's entries must replace those read before
+            inflate();
+            inflate(table, true);
+        }
+    }
+
+    /**
+     * Read property database from given file. A file in the binary format is
+     * memory-mapped.
      *
      * @param fileName
      *            name of the database file
@@ -124,7 +215,12 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      * @throws PropertyDatabaseFormatException
      */
     public void readFromFile(String fileName) throws IOException, PropertyDatabaseFormatException {
-        read(new FileInputStream(fileName));
+        File file = new File(fileName);
+        if (MappedPropertyTable.isBinary(file)) {
+            addTable(MappedPropertyTable.map(file));
+        } else {
+            read(new FileInputStream(file));
+        }
     }
 
     /**
@@ -140,7 +236,21 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
         BufferedReader reader = null;
 
         try {
-            reader = new BufferedReader(Util.getReader(in));
+            BufferedInputStream bufferedIn = new BufferedInputStream(in);
+            byte[] header = new byte[MappedPropertyTable.HEADER_SIZE];
+            bufferedIn.mark(header.length);
+            int n = 0;
+            int count;
+            while (n < header.length && (count = bufferedIn.read(header, n, header.length - n)) > 0) {
+                n += count;
+            }
+            bufferedIn.reset();
+            if (MappedPropertyTable.isBinary(ByteBuffer.wrap(header, 0, n))) {
+                addTable(MappedPropertyTable.wrap(IO.readAll(bufferedIn)));
+                return;
+            }
+
+            reader = new BufferedReader(Util.getReader(bufferedIn));
             String line;
             while ((line = reader.readLine()) != null) {
                 line = line.trim();
@@ -160,6 +270,8 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
             try {
                 if (reader != null) {
                     reader.close();
+                } else {
+                    in.close();
                 }
             } catch (IOException e) {
                 // Ignore
@@ -201,6 +313,7 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      * @throws IOException
      */
     public void write(@WillClose OutputStream out) throws IOException {
+        inflate();
         BufferedWriter writer = null;
         boolean missingClassWarningsSuppressed = AnalysisContext.currentAnalysisContext().setMissingClassWarningsSuppressed(true);
 
@@ -233,6 +346,51 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
         }
     }
 
+    /**
+     * Write property database to given file in the binary format.
+     *
+     * @param fileName
+     *            name of the database file
+     * @throws IOException
+     */
+    public void writeBinaryToFile(String fileName) throws IOException {
+        writeBinary(new FileOutputStream(fileName));
+    }
+
+    /**
+     * Write property database to an OutputStream in the binary format. As for
+     * {@link #write(OutputStream)}, only the entries of application classes
+     * are written. The OutputStream is guaranteed to be closed, even if an
+     * exception is thrown.
+     *
+     * @param out
+     *            the OutputStream
+     * @throws IOException
+     */
+    public void writeBinary(@WillClose OutputStream out) throws IOException {
+        inflate();
+        List<MappedPropertyTable.Entry> entries = new ArrayList<MappedPropertyTable.Entry>();
+        boolean missingClassWarningsSuppressed = AnalysisContext.currentAnalysisContext().setMissingClassWarningsSuppressed(true);
+        try {
+            for (Map.Entry<KeyType, ValueType> e : propertyMap.entrySet()) {
+                KeyType key = e.getKey();
+                if (AnalysisContext.currentAnalysisContext().isApplicationClass(key.getClassDescriptor())) {
+                    StringWriter encodedKey = new StringWriter();
+                    writeKey(encodedKey, key);
+                    String s = encodedKey.toString();
+                    int comma = s.lastIndexOf(',');
+                    entries.add(new MappedPropertyTable.Entry(s.substring(0, comma), Integer.parseInt(s.substring(comma + 1)),
+                            encodeProperty(e.getValue())));
+                }
+            }
+            MappedPropertyTable.write(entries, out);
+        } finally {
+            AnalysisContext.currentAnalysisContext().setMissingClassWarningsSuppressed(missingClassWarningsSuppressed);
+            // In case the entries couldn't be collected
+            IO.close(out);
+        }
+    }
+
     /**
      * Parse a key from a String.
      *
@@ -248,7 +248,12 @@ public class TypeQualifierValue<A extends Annotation> {
         Set<TypeQualifierValue<?>> allKnownTypeQualifiers = new HashSet<TypeQualifierValue<?>>();
     }
 
-    private static ThreadLocal<Data> instance = new ThreadLocal<Data>() {
+    /**
+     * Inheritable, so that analysis worker threads see the same set of known
+     * type qualifiers as the thread that started them. Access to the Data
+     * object is guarded by synchronizing on it.
+     */
+    private static ThreadLocal<Data> instance = new InheritableThreadLocal<Data>() {
         @Override
         protected Data initialValue() {
             return new Data();
@@ -296,14 +301,24 @@ public class TypeQualifierValue<A extends Annotation> {
     @SuppressWarnings("rawtypes")
     public static @Nonnull
     TypeQualifierValue<?> getValue(ClassDescriptor desc, @CheckForNull  Object value) {
-        DualKeyHashMap<ClassDescriptor, Object, TypeQualifierValue<?>> map = instance.get().typeQualifierMap;
-        TypeQualifierValue<?> result = map.get(desc, value);
-        if (result != null) {
-            return result;
+        Data data = instance.get();
+        synchronized (data) {
+            TypeQualifierValue<?> result = data.typeQualifierMap.get(desc, value);
+            if (result != null) {
+                return result;
+            }
+        }
+        // Constructing the value may need the analysis cache, so don't do it
+        // while holding the lock
+        TypeQualifierValue<?> result = new TypeQualifierValue(desc, value);
+        synchronized (data) {
+            TypeQualifierValue<?> existing = data.typeQualifierMap.get(desc, value);
+            if (existing != null) {
+                return existing;
+            }
+            data.typeQualifierMap.put(desc, value, result);
+            data.allKnownTypeQualifiers.add(result);
         }
-        result = new TypeQualifierValue(desc, value);
-        map.put(desc, value, result);
-        instance.get().allKnownTypeQualifiers.add(result);
         return result;
     }
     @SuppressWarnings("unchecked")
@@ -318,7 +333,10 @@ public class TypeQualifierValue<A extends Annotation> {
      * @return Collection of all known TypeQualifierValues
      */
     public static Collection<TypeQualifierValue<?>> getAllKnownTypeQualifiers() {
-        return Collections.unmodifiableSet(instance.get().allKnownTypeQualifiers);
+        Data data = instance.get();
+        synchronized (data) {
+            return Collections.unmodifiableSet(new HashSet<TypeQualifierValue<?>>(data.allKnownTypeQualifiers));
+        }
     }
 
     /**
@@ -334,7 +352,7 @@ public class TypeQualifierValue<A extends Annotation> {
 
         LinkedList<TypeQualifierValue<?>> result = new LinkedList<TypeQualifierValue<?>>();
 
-        for (TypeQualifierValue<?> t : instance.get().allKnownTypeQualifiers) {
+        for (TypeQualifierValue<?> t : getAllKnownTypeQualifiers()) {
             //
             // Any TypeQualifierValue with the same
             // annotation class but a different value is a complementary
@@ -360,7 +378,7 @@ public class TypeQualifierValue<A extends Annotation> {
      */
     public static boolean hasMultipleVariants(TypeQualifierValue<?> tqv) {
         int count = 0;
-        for (TypeQualifierValue<?> t : instance.get().allKnownTypeQualifiers) {
+        for (TypeQualifierValue<?> t : getAllKnownTypeQualifiers()) {
             if (t.typeQualifier.equals(tqv.typeQualifier)) {
                 count++;
             }
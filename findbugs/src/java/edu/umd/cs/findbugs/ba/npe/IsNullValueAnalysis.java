@@ -634,8 +634,12 @@ IsNullValueAnalysisFeatures {
     @Override
     protected void mergeValues(IsNullValueFrame otherFrame, IsNullValueFrame resultFrame, int slot)
             throws DataflowAnalysisException {
-        IsNullValue value = IsNullValue.merge(resultFrame.getValue(slot), otherFrame.getValue(slot));
-        resultFrame.setValue(slot, value);
+        IsNullValue mine = resultFrame.getValue(slot);
+        IsNullValue other = otherFrame.getValue(slot);
+        if (mine == other) {
+            return;
+        }
+        resultFrame.setValue(slot, IsNullValue.merge(mine, other));
     }
 
     /**
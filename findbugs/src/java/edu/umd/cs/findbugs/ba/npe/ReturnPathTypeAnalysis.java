@@ -149,6 +149,11 @@ public class ReturnPathTypeAnalysis extends BasicAbstractDataflowAnalysis<Return
         result.mergeWith(fact);
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public boolean same(ReturnPathType fact1, ReturnPathType fact2) {
         return fact1.sameAs(fact2);
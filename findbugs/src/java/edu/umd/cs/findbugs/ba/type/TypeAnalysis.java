@@ -394,6 +394,11 @@ public class TypeAnalysis extends FrameDataflowAnalysis<Type, TypeFrame> impleme
         return fact.isValid();
     }
 
+    @Override
+    public boolean useWorklistSolver() {
+        return true;
+    }
+
     @Override
     public boolean same(TypeFrame fact1, TypeFrame fact2) {
         return fact1.sameAs(fact2);
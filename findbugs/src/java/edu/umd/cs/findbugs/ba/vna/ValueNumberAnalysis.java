@@ -264,8 +264,12 @@ public class ValueNumberAnalysis extends FrameDataflowAnalysis<ValueNumber, Valu
     @Override
     protected void mergeValues(ValueNumberFrame otherFrame, ValueNumberFrame resultFrame, int slot)
             throws DataflowAnalysisException {
-        ValueNumber value = mergeValues(resultFrame, slot, resultFrame.getValue(slot), otherFrame.getValue(slot));
-        resultFrame.setValue(slot, value);
+        ValueNumber mine = resultFrame.getValue(slot);
+        ValueNumber other = otherFrame.getValue(slot);
+        if (mine == other) {
+            return;
+        }
+        resultFrame.setValue(slot, mergeValues(resultFrame, slot, mine, other));
     }
 
     private ValueNumber mergeValues(ValueNumberFrame frame, int slot, ValueNumber mine, ValueNumber other) {
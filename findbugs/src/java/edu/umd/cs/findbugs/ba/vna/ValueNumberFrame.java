@@ -19,7 +19,6 @@
 
 package edu.umd.cs.findbugs.ba.vna;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -50,7 +49,15 @@ import edu.umd.cs.findbugs.util.Util;
  */
 public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberAnalysisFeatures {
 
-    private ArrayList<ValueNumber> mergedValueList;
+    private ValueNumber[] mergedValues;
+
+    /**
+     * The numbers of the values in the slots of the frame, so that frames can
+     * be compared without looking at the ValueNumber objects. Within one
+     * analysis there is exactly one ValueNumber for each number, so comparing
+     * numbers is the same as comparing values.
+     */
+    private int[] slotNumbers;
 
     private Map<AvailableLoad, ValueNumber[]> availableLoadMap;
 
@@ -92,6 +99,7 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
 
     public ValueNumberFrame(int numLocals) {
         super(numLocals);
+        slotNumbers = new int[numLocals + 4];
         if (REDUNDANT_LOAD_ELIMINATION) {
             setAvailableLoadMap(Collections.<AvailableLoad, ValueNumber[]> emptyMap());
             setMergedLoads(Collections.<AvailableLoad, ValueNumber> emptyMap());
@@ -404,11 +412,30 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
     }
 
     ValueNumber getMergedValue(int slot) {
-        return mergedValueList.get(slot);
+        return mergedValues[slot];
     }
 
     void setMergedValue(int slot, ValueNumber value) {
-        mergedValueList.set(slot, value);
+        mergedValues[slot] = value;
+    }
+
+    private void setSlotNumber(int slot, ValueNumber value) {
+        if (slot >= slotNumbers.length) {
+            slotNumbers = Arrays.copyOf(slotNumbers, Math.max(slot + 1, 2 * slotNumbers.length));
+        }
+        slotNumbers[slot] = value.getNumber();
+    }
+
+    @Override
+    public void pushValue(ValueNumber value) {
+        super.pushValue(value);
+        setSlotNumber(getNumSlots() - 1, value);
+    }
+
+    @Override
+    public void setValue(int n, ValueNumber value) {
+        super.setValue(n, value);
+        setSlotNumber(n, value);
     }
 
     @Override
@@ -417,14 +444,10 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
             throw new IllegalArgumentException();
         }
         // If merged value list hasn't been created yet, create it.
-        if (mergedValueList == null && other.isValid()) {
+        if (mergedValues == null && other.isValid()) {
             // This is where this frame gets its size.
             // It will have the same size as long as it remains valid.
-            mergedValueList = new ArrayList<ValueNumber>(other.getNumSlots());
-            int numSlots = other.getNumSlots();
-            for (int i = 0; i < numSlots; ++i) {
-                mergedValueList.add(null);
-            }
+            mergedValues = new ValueNumber[other.getNumSlots()];
         }
 
         if (REDUNDANT_LOAD_ELIMINATION) {
@@ -433,6 +456,12 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
         }
 
         super.copyFrom(other);
+
+        int numSlots = other.getNumSlots();
+        if (numSlots > slotNumbers.length) {
+            slotNumbers = new int[((ValueNumberFrame) other).slotNumbers.length];
+        }
+        System.arraycopy(((ValueNumberFrame) other).slotNumbers, 0, slotNumbers, 0, numSlots);
     }
 
     private void assignAvailableLoadMap(ValueNumberFrame other) {
@@ -656,13 +685,22 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
 
     @Override
     public boolean sameAs(Frame<ValueNumber> other) {
-        if(!super.sameAs(other)) {
-            return false;
-        }
-        if (isTop() && other.isTop() || isBottom() && other.isBottom()) {
+        if (this == other) {
             return true;
         }
+        if (!isValid() || !other.isValid()) {
+            return super.sameAs(other);
+        }
         ValueNumberFrame o = (ValueNumberFrame)other;
+        int numSlots = getNumSlots();
+        if (numSlots != o.getNumSlots()) {
+            return false;
+        }
+        for (int i = 0; i < numSlots; ++i) {
+            if (slotNumbers[i] != o.slotNumbers[i]) {
+                return false;
+            }
+        }
         if(availableLoadMap.size() != o.availableLoadMap.size()) {
             return false;
         }
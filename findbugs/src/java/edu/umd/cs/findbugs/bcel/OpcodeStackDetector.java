@@ -19,13 +19,21 @@
 
 package edu.umd.cs.findbugs.bcel;
 
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.CheckForNull;
 import javax.annotation.OverridingMethodsMustInvokeSuper;
 
 import org.apache.bcel.classfile.Code;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
 
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.OpcodeStack.JumpInfo;
+import edu.umd.cs.findbugs.classfile.engine.asm.FindBugsASM;
 
 /**
  * Base class for Detectors that want to scan the bytecode of a method and use
@@ -37,9 +45,32 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
 
     private final boolean isUsingCustomUserValue;
 
+    private final boolean isModifyingStack;
+
+    /**
+     * Whether a detector class modifies the opcode stack: if it is annotated
+     * with {@link edu.umd.cs.findbugs.OpcodeStack.ModifiesStack}, or calls
+     * replace() or replaceTop() anyway. A class which can't be read is assumed
+     * to modify it.
+     */
+    private static final ClassValue<Boolean> MODIFIES_STACK = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (type.isAnnotationPresent(OpcodeStack.ModifiesStack.class)) {
+                return Boolean.TRUE;
+            }
+            try {
+                return findUnannotatedStackModification(type) != null;
+            } catch (IOException e) {
+                return Boolean.TRUE;
+            }
+        }
+    };
+
     public OpcodeStackDetector() {
         super();
         isUsingCustomUserValue = getClass().isAnnotationPresent(OpcodeStack.CustomUserValue.class);
+        isModifyingStack = MODIFIES_STACK.get(getClass()).booleanValue();
     }
 
     /**
@@ -103,4 +134,71 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
     public final boolean isUsingCustomUserValue() {
         return isUsingCustomUserValue;
     }
+
+    /**
+     * @return true if this detector is annotated with {@link edu.umd.cs.findbugs.OpcodeStack.ModifiesStack},
+     * or calls replace() or replaceTop() without it, and thus should simulate
+     * the opcode stack itself rather than reading the stack states shared
+     * with other detectors.
+     * @see OpcodeStack.StackStates
+     */
+    public final boolean isModifyingStack() {
+        return isModifyingStack;
+    }
+
+    /**
+     * Find a call to {@link OpcodeStack#replace(int, OpcodeStack.Item)} or
+     * {@link OpcodeStack#replaceTop(OpcodeStack.Item)} in a detector class
+     * which isn't annotated with
+     * {@link edu.umd.cs.findbugs.OpcodeStack.ModifiesStack}. Such a detector
+     * is treated as if it were annotated, since the shared stack states
+     * can't be modified. The class and its superclasses are scanned up to
+     * OpcodeStackDetector.
+     *
+     * @param detectorClass
+     *            the detector class
+     * @return the method making the call, as class.method, or null if there
+     *         is none or the class is annotated
+     * @throws IOException
+     *             if the bytes of a class can't be read
+     */
+    public static @CheckForNull
+    String findUnannotatedStackModification(Class<?> detectorClass) throws IOException {
+        if (detectorClass.isAnnotationPresent(OpcodeStack.ModifiesStack.class)) {
+            return null;
+        }
+        for (Class<?> c = detectorClass; c != null && c != OpcodeStackDetector.class; c = c.getSuperclass()) {
+            String resource = c.getName().replace('.', '/') + ".class";
+            ClassLoader loader = c.getClassLoader();
+            InputStream in = loader == null ? ClassLoader.getSystemResourceAsStream(resource) : loader.getResourceAsStream(resource);
+            if (in == null) {
+                continue;
+            }
+            final String[] caller = new String[1];
+            try {
+                final String className = c.getName();
+                new ClassReader(in).accept(new ClassVisitor(FindBugsASM.ASM_VERSION) {
+                    @Override
+                    public MethodVisitor visitMethod(int access, final String name, String desc, String signature,
+                            String[] exceptions) {
+                        return new MethodVisitor(FindBugsASM.ASM_VERSION) {
+                            @Override
+                            public void visitMethodInsn(int opcode, String owner, String name2, String desc2, boolean itf) {
+                                if (caller[0] == null && "edu/umd/cs/findbugs/OpcodeStack".equals(owner)
+                                        && ("replace".equals(name2) || "replaceTop".equals(name2))) {
+                                    caller[0] = className + "." + name;
+                                }
+                            }
+                        };
+                    }
+                }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            } finally {
+                in.close();
+            }
+            if (caller[0] != null) {
+                return caller[0];
+            }
+        }
+        return null;
+    }
 }
@@ -46,7 +46,11 @@ import edu.umd.cs.findbugs.util.MapCache;
  * @author David Hovemeyer
  */
 public class DescriptorFactory {
-    private static ThreadLocal<DescriptorFactory> instanceThreadLocal = new ThreadLocal<DescriptorFactory>() {
+    /**
+     * Inheritable, so that worker threads started by the analysis thread (see
+     * FindBugs2 -threads) intern descriptors in the same factory.
+     */
+    private static ThreadLocal<DescriptorFactory> instanceThreadLocal = new InheritableThreadLocal<DescriptorFactory>() {
         @Override
         protected DescriptorFactory initialValue() {
             return new DescriptorFactory();
@@ -75,11 +79,13 @@ public class DescriptorFactory {
             return s;
         }
         DescriptorFactory df =  instanceThreadLocal.get();
-        String cached = df.stringCache.get(s);
-        if (cached != null) {
-            return cached;
+        synchronized (df.stringCache) {
+            String cached = df.stringCache.get(s);
+            if (cached != null) {
+                return cached;
+            }
+            df.stringCache.put(s, s);
         }
-        df.stringCache.put(s, s);
         return s;
     }
 
@@ -100,7 +106,7 @@ public class DescriptorFactory {
         return classDescriptorMap.values();
     }
 
-    public void purge(Collection<ClassDescriptor> unusable) {
+    public synchronized void purge(Collection<ClassDescriptor> unusable) {
         for (ClassDescriptor c : unusable) {
             classDescriptorMap.remove(c.getClassName());
             dottedClassDescriptorMap.remove(c.getClassName().replace('/', '.'));
@@ -120,7 +126,7 @@ public class DescriptorFactory {
      * @return ClassDescriptor for that class
      */
     public @Nonnull
-    ClassDescriptor getClassDescriptor(@SlashedClassName String className) {
+    synchronized ClassDescriptor getClassDescriptor(@SlashedClassName String className) {
         assert className.indexOf('.') == -1;
         className = canonicalizeString(className);
         ClassDescriptor classDescriptor = classDescriptorMap.get(className);
@@ -138,7 +144,7 @@ public class DescriptorFactory {
      *            a class name in dotted format
      * @return ClassDescriptor for that class
      */
-    public ClassDescriptor getClassDescriptorForDottedClassName(@DottedClassName String dottedClassName) {
+    public synchronized ClassDescriptor getClassDescriptorForDottedClassName(@DottedClassName String dottedClassName) {
         assert dottedClassName != null;
         ClassDescriptor classDescriptor = dottedClassDescriptorMap.get(dottedClassName);
         if (classDescriptor == null) {
@@ -167,7 +173,7 @@ public class DescriptorFactory {
      *            true if method is static, false otherwise
      * @return MethodDescriptor
      */
-    public MethodDescriptor getMethodDescriptor(@SlashedClassName String className, String name, String signature,
+    public synchronized MethodDescriptor getMethodDescriptor(@SlashedClassName String className, String name, String signature,
             boolean isStatic) {
         if (className == null) {
             throw new NullPointerException("className must be nonnull");
@@ -181,7 +187,7 @@ public class DescriptorFactory {
         return existing;
     }
 
-    public void profile() {
+    public synchronized void profile() {
         int total = 0;
         int keys = 0;
         int values = 0;
@@ -199,7 +205,7 @@ public class DescriptorFactory {
 
     }
 
-    public void canonicalize(MethodDescriptor m) {
+    public synchronized void canonicalize(MethodDescriptor m) {
         MethodDescriptor existing = methodDescriptorMap.get(m);
         if (m != existing) {
             methodDescriptorMap.put(m, m);
@@ -207,7 +213,7 @@ public class DescriptorFactory {
 
     }
 
-    public void canonicalize(FieldDescriptor m) {
+    public synchronized void canonicalize(FieldDescriptor m) {
         FieldDescriptor existing = fieldDescriptorMap.get(m);
         if (m != existing) {
             fieldDescriptorMap.put(m, m);
@@ -234,7 +240,7 @@ public class DescriptorFactory {
      *            true if field is static, false if not
      * @return FieldDescriptor
      */
-    public FieldDescriptor getFieldDescriptor(@SlashedClassName String className, String name, String signature, boolean isStatic) {
+    public synchronized FieldDescriptor getFieldDescriptor(@SlashedClassName String className, String name, String signature, boolean isStatic) {
         FieldDescriptor fieldDescriptor = new FieldDescriptor(className, name, signature, isStatic);
         FieldDescriptor existing = fieldDescriptorMap.get(fieldDescriptor);
         if (existing == null) {
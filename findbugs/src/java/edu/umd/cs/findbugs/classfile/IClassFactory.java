@@ -36,6 +36,12 @@ public interface IClassFactory {
 
     public IAnalysisCache createAnalysisCache(IClassPath classPath, BugReporter errorLogger);
 
+    /**
+     * Create an analysis cache which may be used by several analysis threads
+     * at the same time.
+     */
+    public IAnalysisCache createConcurrentAnalysisCache(IClassPath classPath, BugReporter errorLogger);
+
     // public IScannableCodeBase createLocalCodeBase(String fileName)
     // throws IOException;
     //
@@ -53,6 +53,15 @@ public interface IClassPathBuilder {
      */
     public void scanNestedArchives(boolean scanNestedArchives);
 
+    /**
+     * Set the number of threads used to open and scan codebases. This should
+     * be called before the build() method is called.
+     *
+     * @param threads
+     *            number of threads, 1 to scan codebases one at a time
+     */
+    public void setThreads(int threads);
+
     /**
      * Build the classpath.
      *
@@ -58,11 +58,19 @@ import edu.umd.cs.findbugs.util.Util;
 public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
 
     private final static boolean DEBUG = SystemProperties.getBoolean("ci.debug");
-    private final FieldInfo[] xFields;
+    private FieldInfo[] xFields;
 
-    private final MethodInfo[] xMethods;
+    private MethodInfo[] xMethods;
 
-    private final MethodInfo[] methodsInCallOrder;
+    private volatile MethodInfo[] methodsInCallOrder;
+
+    /**
+     * Rows of the members in the MemberStore, if the class has been
+     * compacted; its members are then materialized when looked up.
+     */
+    private volatile MemberStore.Members compactMembers;
+
+    private volatile boolean allMembersMaterialized;
 
     private final ClassDescriptor immediateEnclosingClass;
 
@@ -299,34 +307,124 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
         this.classAnnotations = Util.immutableMap(classAnnotations);
         this.usesConcurrency = usesConcurrency;
         this.hasStubs = hasStubs;
-        this.methodsInCallOrder = computeMethodsInCallOrder();
-        /*
-        if (false) {
-            System.out.println("Methods in call order for " + classDescriptor);
-            for (MethodInfo m : methodsInCallOrder) {
-                System.out.println("  " + m);
+        // The methods in call order are computed on first use, since they
+        // need the analysis cache, and most classes are never asked for them
+    }
+
+    /**
+     * @return true if the members of the class have been compacted into the
+     *         MemberStore
+     */
+    public boolean hasCompactMembers() {
+        return compactMembers != null;
+    }
+
+    MemberStore.Members getCompactMembers() {
+        return compactMembers;
+    }
+
+    MethodInfo[] getMethodArray() {
+        return xMethods;
+    }
+
+    FieldInfo[] getFieldArray() {
+        return xFields;
+    }
+
+    /**
+     * Replace the members by their rows in the MemberStore.
+     *
+     * @param methods
+     *            the methods which are kept, the others null
+     * @param fields
+     *            the fields which are kept, the others null
+     */
+    synchronized void setCompactMembers(MemberStore.Members members, MethodInfo[] methods, FieldInfo[] fields) {
+        xMethods = methods;
+        xFields = fields;
+        methodsInCallOrder = null;
+        compactMembers = members;
+    }
+
+    private MethodInfo[] methods() {
+        MemberStore.Members members = compactMembers;
+        if (members == null || allMembersMaterialized) {
+            return xMethods;
+        }
+        synchronized (this) {
+            for (int i = 0; i < xMethods.length; i++) {
+                method(members, i);
+            }
+            for (int i = 0; i < xFields.length; i++) {
+                field(members, i);
             }
-            System.out.println();
+            allMembersMaterialized = true;
+            return xMethods;
         }
-         */
+    }
+
+    private FieldInfo[] fields() {
+        methods();
+        return xFields;
+    }
+
+    /**
+     * Get a method of a compacted class. Must be called with the lock held.
+     */
+    private MethodInfo method(MemberStore.Members members, int i) {
+        MethodInfo result = xMethods[i];
+        if (result == null) {
+            result = members.store.materializeMethod(this, members, i);
+            xMethods[i] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get a field of a compacted class. Must be called with the lock held.
+     */
+    private FieldInfo field(MemberStore.Members members, int i) {
+        FieldInfo result = xFields[i];
+        if (result == null) {
+            result = members.store.materializeField(this, members, i);
+            xFields[i] = result;
+        }
+        return result;
     }
 
     @Override
     public List<? extends XField> getXFields() {
-        return Arrays.asList(xFields);
+        return Arrays.asList(fields());
     }
 
     @Override
     public List<? extends XMethod> getXMethods() {
-        return Arrays.asList(xMethods);
+        return Arrays.asList(methods());
     }
 
     public List<? extends XMethod> getXMethodsInCallOrder() {
-        return Arrays.asList(methodsInCallOrder);
+        MethodInfo[] result = methodsInCallOrder;
+        if (result == null) {
+            synchronized (this) {
+                methods();
+                if (methodsInCallOrder == null) {
+                    methodsInCallOrder = computeMethodsInCallOrder();
+                }
+                result = methodsInCallOrder;
+            }
+        }
+        return Arrays.asList(result);
     }
 
     @Override
     public XMethod findMethod(String methodName, String methodSig, boolean isStatic) {
+        MemberStore.Members members = compactMembers;
+        if (members != null && !allMembersMaterialized) {
+            synchronized (this) {
+                int i = members.store.findMethod(members, methodName, methodSig, isStatic);
+                return i < 0 ? null : method(members, i);
+            }
+        }
         int hash = FieldOrMethodDescriptor.getNameSigHashCode(methodName, methodSig);
         for (MethodInfo mInfo : xMethods) {
             if (mInfo.getNameSigHashCode() == hash && mInfo.getName().equals(methodName)
@@ -352,11 +450,21 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
 
     @Override
     public XField findField(String name, String signature, boolean isStatic) {
-        int hash = FieldOrMethodDescriptor.getNameSigHashCode(name, signature);
-        for (FieldInfo fInfo : xFields) {
-            if (fInfo.getNameSigHashCode() == hash && fInfo.getName().equals(name) && fInfo.getSignature().equals(signature)
-                    && fInfo.isStatic() == isStatic) {
-                return fInfo;
+        MemberStore.Members members = compactMembers;
+        if (members != null && !allMembersMaterialized) {
+            synchronized (this) {
+                int i = members.store.findField(members, name, signature, isStatic);
+                if (i >= 0) {
+                    return field(members, i);
+                }
+            }
+        } else {
+            int hash = FieldOrMethodDescriptor.getNameSigHashCode(name, signature);
+            for (FieldInfo fInfo : xFields) {
+                if (fInfo.getNameSigHashCode() == hash && fInfo.getName().equals(name) && fInfo.getSignature().equals(signature)
+                        && fInfo.isStatic() == isStatic) {
+                    return fInfo;
+                }
             }
         }
         try {
@@ -93,7 +93,7 @@ public class FieldInfo extends FieldDescriptor implements XField {
     final boolean isResolved;
 
 
-    private FieldInfo(@SlashedClassName String className, String fieldName, String fieldSignature,
+    FieldInfo(@SlashedClassName String className, String fieldName, String fieldSignature,
             @CheckForNull String fieldSourceSignature, int accessFlags, Map<ClassDescriptor, AnnotationValue> fieldAnnotations,
             boolean isResolved) {
         super(className, fieldName, fieldSignature, (accessFlags & Constants.ACC_STATIC) != 0);
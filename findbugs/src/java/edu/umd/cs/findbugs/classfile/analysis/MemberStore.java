@@ -0,0 +1,391 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.bcel.Constants;
+
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.XFactory;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.FieldDescriptor;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Columnar store of the methods and fields of referenced classes.
+ *
+ * <p>
+ * The MethodInfo and FieldInfo objects of classes which aren't analyzed are
+ * mostly never looked at, but each one costs an object with several fields,
+ * and every referenced class keeps all of them. A class compacted into the
+ * store keeps a row for each member instead: names and signatures are ids in
+ * a string pool, flags are packed into ints, and the rarely present parts
+ * (annotations, exceptions, access methods) are kept in maps indexed by row.
+ * A member's MethodInfo or FieldInfo is materialized when it is first looked
+ * up, and kept by the class from then on, so it is the same object for the
+ * rest of the analysis.
+ * </p>
+ *
+ * <p>
+ * Members which were handed out before the class was compacted, such as
+ * methods cached by the {@link XFactory} or bridge methods, keep their
+ * objects.
+ * </p>
+ */
+public class MemberStore {
+    /**
+     * Whether referenced classes are compacted into the store.
+     */
+    public static final boolean ENABLED = SystemProperties.getBoolean("findbugs.memberstore", true);
+
+    private static final int USES_CONCURRENCY = 1;
+
+    private static final int HAS_BACK_BRANCH = 2;
+
+    private static final int IS_STUB = 4;
+
+    private static final int IS_UNCONDITIONAL_THROWER = 8;
+
+    private static final int IS_IDENTITY = 16;
+
+    private static final int USES_INVOKE_DYNAMIC = 32;
+
+    /**
+     * Rows of the members of a compacted class.
+     */
+    static final class Members {
+        final MemberStore store;
+
+        final int firstMethod;
+
+        final int numMethods;
+
+        final int firstField;
+
+        final int numFields;
+
+        Members(MemberStore store, int firstMethod, int numMethods, int firstField, int numFields) {
+            this.store = store;
+            this.firstMethod = firstMethod;
+            this.numMethods = numMethods;
+            this.firstField = firstField;
+            this.numFields = numFields;
+        }
+    }
+
+    // String pool
+
+    private final List<String> strings = new ArrayList<String>();
+
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+    // Method columns
+
+    private int numMethods;
+
+    private int[] methodName = new int[256];
+
+    private int[] methodSignature = new int[256];
+
+    private int[] methodSourceSignature = new int[256];
+
+    private int[] methodAccessFlags = new int[256];
+
+    private int[] methodBits = new int[256];
+
+    private int[] methodCallCount = new int[256];
+
+    private long[] methodVariableIsSynthetic = new long[256];
+
+    private final Map<Integer, String[]> methodExceptions = new HashMap<Integer, String[]>();
+
+    private final Map<Integer, Map<ClassDescriptor, AnnotationValue>> methodAnnotations = new HashMap<Integer, Map<ClassDescriptor, AnnotationValue>>();
+
+    private final Map<Integer, Map<Integer, Map<ClassDescriptor, AnnotationValue>>> methodParameterAnnotations = new HashMap<Integer, Map<Integer, Map<ClassDescriptor, AnnotationValue>>>();
+
+    private final Map<Integer, MethodDescriptor> accessMethodForMethod = new HashMap<Integer, MethodDescriptor>();
+
+    private final Map<Integer, FieldDescriptor> accessMethodForField = new HashMap<Integer, FieldDescriptor>();
+
+    // Field columns
+
+    private int numFields;
+
+    private int[] fieldName = new int[256];
+
+    private int[] fieldSignature = new int[256];
+
+    private int[] fieldSourceSignature = new int[256];
+
+    private int[] fieldAccessFlags = new int[256];
+
+    private final Map<Integer, Map<ClassDescriptor, AnnotationValue>> fieldAnnotations = new HashMap<Integer, Map<ClassDescriptor, AnnotationValue>>();
+
+    /**
+     * Compact the members of a class into the store. Should only be used for
+     * classes which won't be analyzed, since their members are materialized
+     * again when they are looked up.
+     *
+     * @param classInfo
+     *            the class
+     * @return true if the class was compacted, false if it already was or has
+     *         no members
+     */
+    public boolean compact(ClassInfo classInfo) {
+        // Lock the class before the store, as when members are materialized
+        synchronized (classInfo) {
+            if (classInfo.getCompactMembers() != null) {
+                return false;
+            }
+            MethodInfo[] methods = classInfo.getMethodArray();
+            FieldInfo[] fields = classInfo.getFieldArray();
+            if (methods.length == 0 && fields.length == 0) {
+                return false;
+            }
+            AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+            XFactory xFactory = analysisContext == null ? null : AnalysisContext.currentXFactory();
+
+            MethodInfo[] keptMethods = MethodInfo.newArray(methods.length);
+            for (int i = 0; i < methods.length; i++) {
+                MethodInfo m = methods[i];
+                if (xFactory != null
+                        && (xFactory.isCached(m) || analysisContext.getBridgeTo(m) != null || analysisContext
+                                .getBridgeFrom(m) != null)) {
+                    // Someone may hold on to this object
+                    keptMethods[i] = m;
+                }
+            }
+            FieldInfo[] keptFields = fields.length == 0 ? FieldInfo.EMPTY_ARRAY : new FieldInfo[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                if (xFactory != null && xFactory.isCached(fields[i])) {
+                    keptFields[i] = fields[i];
+                }
+            }
+
+            Members members;
+            synchronized (this) {
+                members = new Members(this, numMethods, methods.length, numFields, fields.length);
+                for (int i = 0; i < methods.length; i++) {
+                    addMethod(methods[i], keptMethods[i] == null);
+                }
+                for (FieldInfo f : fields) {
+                    addField(f);
+                }
+            }
+            classInfo.setCompactMembers(members, keptMethods, keptFields);
+            return true;
+        }
+    }
+
+    private int intern(@CheckForNull String s) {
+        if (s == null) {
+            return -1;
+        }
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = strings.size();
+            strings.add(s);
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    private @CheckForNull
+    String string(int id) {
+        return id < 0 ? null : strings.get(id);
+    }
+
+    /**
+     * @param unregister
+     *            whether the method object is dropped, and should be removed
+     *            from the MethodInfo database
+     */
+    private void addMethod(MethodInfo m, boolean unregister) {
+        if (numMethods == methodName.length) {
+            int n = 2 * numMethods;
+            methodName = Arrays.copyOf(methodName, n);
+            methodSignature = Arrays.copyOf(methodSignature, n);
+            methodSourceSignature = Arrays.copyOf(methodSourceSignature, n);
+            methodAccessFlags = Arrays.copyOf(methodAccessFlags, n);
+            methodBits = Arrays.copyOf(methodBits, n);
+            methodCallCount = Arrays.copyOf(methodCallCount, n);
+            methodVariableIsSynthetic = Arrays.copyOf(methodVariableIsSynthetic, n);
+        }
+        int row = numMethods++;
+        methodName[row] = intern(m.getName());
+        methodSignature[row] = intern(m.getSignature());
+        methodSourceSignature[row] = intern(m.methodSourceSignature);
+        methodAccessFlags[row] = m.accessFlags;
+        int bits = 0;
+        if (m.usesConcurrency) {
+            bits |= USES_CONCURRENCY;
+        }
+        if (m.hasBackBranch) {
+            bits |= HAS_BACK_BRANCH;
+        }
+        if (m.isStub) {
+            bits |= IS_STUB;
+        }
+        if (m.isUnconditionalThrower()) {
+            bits |= IS_UNCONDITIONAL_THROWER;
+        }
+        if (m.isIdentity()) {
+            bits |= IS_IDENTITY;
+        }
+        if (m.usesInvokeDynamic()) {
+            bits |= USES_INVOKE_DYNAMIC;
+        }
+        methodBits[row] = bits;
+        methodCallCount[row] = m.methodCallCount;
+        methodVariableIsSynthetic[row] = m.variableIsSynthetic;
+        if (m.exceptions != null) {
+            methodExceptions.put(row, m.exceptions);
+        }
+        if (!m.methodAnnotations.isEmpty()) {
+            methodAnnotations.put(row, m.methodAnnotations);
+        }
+        if (!m.methodParameterAnnotations.isEmpty()) {
+            methodParameterAnnotations.put(row, m.methodParameterAnnotations);
+        }
+        MethodDescriptor forMethod = m.getAccessMethodForMethod();
+        if (forMethod != null) {
+            accessMethodForMethod.put(row, forMethod);
+        }
+        FieldDescriptor forField = m.getAccessMethodForField();
+        if (forField != null) {
+            accessMethodForField.put(row, forField);
+        }
+        if (unregister) {
+            m.unregister();
+        }
+    }
+
+    private void addField(FieldInfo f) {
+        if (numFields == fieldName.length) {
+            int n = 2 * numFields;
+            fieldName = Arrays.copyOf(fieldName, n);
+            fieldSignature = Arrays.copyOf(fieldSignature, n);
+            fieldSourceSignature = Arrays.copyOf(fieldSourceSignature, n);
+            fieldAccessFlags = Arrays.copyOf(fieldAccessFlags, n);
+        }
+        int row = numFields++;
+        fieldName[row] = intern(f.getName());
+        fieldSignature[row] = intern(f.getSignature());
+        fieldSourceSignature[row] = intern(f.fieldSourceSignature);
+        fieldAccessFlags[row] = f.accessFlags;
+        if (!f.fieldAnnotations.isEmpty()) {
+            fieldAnnotations.put(row, f.fieldAnnotations);
+        }
+    }
+
+    /**
+     * Find a method of a compacted class.
+     *
+     * @return the index of the method in the class, or -1 if there is none
+     */
+    synchronized int findMethod(Members members, String name, String signature, boolean isStatic) {
+        Integer nameId = stringIds.get(name);
+        Integer signatureId = stringIds.get(signature);
+        if (nameId == null || signatureId == null) {
+            return -1;
+        }
+        for (int i = 0; i < members.numMethods; i++) {
+            int row = members.firstMethod + i;
+            if (methodName[row] == nameId && methodSignature[row] == signatureId
+                    && ((methodAccessFlags[row] & Constants.ACC_STATIC) != 0) == isStatic) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find a field of a compacted class.
+     *
+     * @return the index of the field in the class, or -1 if there is none
+     */
+    synchronized int findField(Members members, String name, String signature, boolean isStatic) {
+        Integer nameId = stringIds.get(name);
+        Integer signatureId = stringIds.get(signature);
+        if (nameId == null || signatureId == null) {
+            return -1;
+        }
+        for (int i = 0; i < members.numFields; i++) {
+            int row = members.firstField + i;
+            if (fieldName[row] == nameId && fieldSignature[row] == signatureId
+                    && ((fieldAccessFlags[row] & Constants.ACC_STATIC) != 0) == isStatic) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Create the MethodInfo of a method of a compacted class.
+     */
+    synchronized MethodInfo materializeMethod(ClassDescriptor classDescriptor, Members members, int i) {
+        int row = members.firstMethod + i;
+        int bits = methodBits[row];
+        String[] exceptions = methodExceptions.get(row);
+        return new MethodInfo(classDescriptor.getClassName(), string(methodName[row]), string(methodSignature[row]),
+                string(methodSourceSignature[row]), methodAccessFlags[row], (bits & IS_UNCONDITIONAL_THROWER) != 0, false,
+                (bits & USES_CONCURRENCY) != 0, (bits & HAS_BACK_BRANCH) != 0, (bits & IS_STUB) != 0,
+                (bits & IS_IDENTITY) != 0, (bits & USES_INVOKE_DYNAMIC) != 0, methodCallCount[row],
+                exceptions == null ? null : exceptions.clone(), accessMethodForMethod.get(row), accessMethodForField.get(row),
+                orEmpty(methodAnnotations.get(row)), orEmpty(methodParameterAnnotations.get(row)),
+                methodVariableIsSynthetic[row]);
+    }
+
+    /**
+     * Create the FieldInfo of a field of a compacted class.
+     */
+    synchronized FieldInfo materializeField(ClassDescriptor classDescriptor, Members members, int i) {
+        int row = members.firstField + i;
+        return new FieldInfo(classDescriptor.getClassName(), string(fieldName[row]), string(fieldSignature[row]),
+                string(fieldSourceSignature[row]), fieldAccessFlags[row], orEmpty(fieldAnnotations.get(row)), true);
+    }
+
+    private static <K, V> Map<K, V> orEmpty(@CheckForNull Map<K, V> map) {
+        return map == null ? Collections.<K, V> emptyMap() : map;
+    }
+
+    /**
+     * @return the number of methods in the store
+     */
+    public synchronized int getNumMethods() {
+        return numMethods;
+    }
+
+    /**
+     * @return the number of fields in the store
+     */
+    public synchronized int getNumFields() {
+        return numFields;
+    }
+}
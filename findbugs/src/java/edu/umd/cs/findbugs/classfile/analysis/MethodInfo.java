@@ -325,6 +325,18 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
         this.variableIsSynthetic = variableIsSynthetic;
     }
 
+    /**
+     * Remove this method from the MethodInfo database, when the object is
+     * dropped for a copy of it.
+     */
+    void unregister() {
+        getUnconditionalthrowers().remove(this);
+        getAccessmethodformethod().remove(this);
+        getAccessmethodforfield().remove(this);
+        getIdentitymethods().remove(this);
+        getInvokeDynamicMethods().remove(this);
+    }
+
     @Override
     public @CheckForNull
     String[] getThrownExceptions() {
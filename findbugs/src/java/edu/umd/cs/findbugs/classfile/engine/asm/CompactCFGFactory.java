@@ -0,0 +1,67 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.engine.asm;
+
+import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.CompactCFG;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Analysis engine to produce CompactCFG objects for analyzed methods. The CFG
+ * is built from the class's ClassReader, so analyses which only need the
+ * shape of the control flow don't have to create a BCEL MethodGen and
+ * {@link edu.umd.cs.findbugs.ba.CFG}. The result is null for methods without
+ * code.
+ */
+public class CompactCFGFactory implements IMethodAnalysisEngine<CompactCFG> {
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisEngine#analyze(edu.umd.cs.findbugs
+     * .classfile.IAnalysisCache, java.lang.Object)
+     */
+    @Override
+    public CompactCFG analyze(IAnalysisCache analysisCache, MethodDescriptor descriptor) throws CheckedAnalysisException {
+        FBClassReader classReader = analysisCache.getClassAnalysis(FBClassReader.class, descriptor.getClassDescriptor());
+        return CompactCFG.build(classReader, descriptor.getName(), descriptor.getSignature());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisEngine#registerWith(edu.umd.cs
+     * .findbugs.classfile.IAnalysisCache)
+     */
+    @Override
+    public void registerWith(IAnalysisCache analysisCache) {
+        analysisCache.registerMethodAnalysisEngine(CompactCFG.class, this);
+    }
+
+    @Override
+    public String toString() {
+        return "compact CFG : " + CompactCFG.class.getName();
+    }
+}
@@ -33,7 +33,7 @@ public class EngineRegistrar implements IAnalysisEngineRegistrar {
     private static final IClassAnalysisEngine<?>[] classAnalysisEngineList = { new ClassNodeAnalysisEngine(),
         new ClassReaderAnalysisEngine(), };
 
-    private static IMethodAnalysisEngine<?>[] methodAnalysisEngineList = {};
+    private static IMethodAnalysisEngine<?>[] methodAnalysisEngineList = { new CompactCFGFactory(), };
 
     /**
      * Constructor.
@@ -26,6 +26,7 @@ import edu.umd.cs.findbugs.ba.CheckReturnAnnotationDatabase;
 import edu.umd.cs.findbugs.ba.InnerClassAccessMap;
 import edu.umd.cs.findbugs.ba.JCIPAnnotationDatabase;
 import edu.umd.cs.findbugs.ba.SourceInfoMap;
+import edu.umd.cs.findbugs.ba.ch.ClassHierarchyCallGraph;
 import edu.umd.cs.findbugs.ba.ch.Subtypes2;
 import edu.umd.cs.findbugs.ba.jsr305.DirectlyRelevantTypeQualifiersDatabase;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierDatabase;
@@ -38,6 +39,7 @@ import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.ReflectionDatabaseFactory;
+import edu.umd.cs.findbugs.classfile.analysis.MemberStore;
 import edu.umd.cs.findbugs.classfile.analysis.MethodInfo.MethodInfoDatabase;
 
 /**
@@ -61,7 +63,8 @@ public class EngineRegistrar implements IAnalysisEngineRegistrar {
     private static final IMethodAnalysisEngine<?>[] methodAnalysisEngineList = { new MethodFactory(), new MethodGenFactory(),
         new CFGFactory(), new UsagesRequiringNonNullValuesFactory(), new ValueNumberDataflowFactory(),
         new IsNullValueDataflowFactory(), new TypeDataflowFactory(), new DepthFirstSearchFactory(),
-        new ReverseDepthFirstSearchFactory(), new UnpackedCodeFactory(), new LockDataflowFactory(), new LockCheckerFactory(),
+        new ReverseDepthFirstSearchFactory(), new UnpackedCodeFactory(), new DecodedCodeFactory(), new LockDataflowFactory(),
+        new LockCheckerFactory(),
         new ReturnPathDataflowFactory(), new DominatorsAnalysisFactory(), new NonExceptionPostdominatorsAnalysisFactory(),
         new NonImplicitExceptionPostDominatorsAnalysisFactory(), new ExceptionSetFactoryFactory(),
         new ParameterSignatureListFactory(), new ConstantDataflowFactory(), new LoadDataflowFactory(),
@@ -69,12 +72,13 @@ public class EngineRegistrar implements IAnalysisEngineRegistrar {
         new BlockTypeAnalysisFactory(), new CallListDataflowFactory(), new UnconditionalValueDerefDataflowFactory(),
         new CompactLocationNumberingFactory(),  new ReturnPathTypeDataflowFactory(),
         new ForwardTypeQualifierDataflowFactoryFactory(), new BackwardTypeQualifierDataflowFactoryFactory(),
-        new OpcodeStack.JumpInfoFactory(), new StackMapAnalysisFactory(), new ObligationDataflowFactory(),
-        new ValueRangeAnalysisFactory(), new FinallyDuplicatesInfoFactory()};
+        new OpcodeStack.JumpInfoFactory(), new OpcodeStack.StackStatesFactory(), new StackMapAnalysisFactory(),
+        new ObligationDataflowFactory(), new ValueRangeAnalysisFactory(), new FinallyDuplicatesInfoFactory()};
 
     private static final IDatabaseFactory<?>[] databaseFactoryList = {
         // new ReflectionDatabaseFactory<Subtypes>(Subtypes.class),
         new ReflectionDatabaseFactory<Subtypes2>(Subtypes2.class),
+        new ReflectionDatabaseFactory<ClassHierarchyCallGraph>(ClassHierarchyCallGraph.class),
         new ReflectionDatabaseFactory<InnerClassAccessMap>(InnerClassAccessMap.class),
         new ReflectionDatabaseFactory<CheckReturnAnnotationDatabase>(CheckReturnAnnotationDatabase.class),
         new ReflectionDatabaseFactory<AnnotationRetentionDatabase>(AnnotationRetentionDatabase.class),
@@ -86,6 +90,7 @@ public class EngineRegistrar implements IAnalysisEngineRegistrar {
         new ReflectionDatabaseFactory<DirectlyRelevantTypeQualifiersDatabase>(DirectlyRelevantTypeQualifiersDatabase.class),
         new ReflectionDatabaseFactory<TypeQualifierDatabase>(TypeQualifierDatabase.class),
         new ReflectionDatabaseFactory<MethodInfoDatabase>(MethodInfoDatabase.class),
+        new ReflectionDatabaseFactory<MemberStore>(MemberStore.class),
     };
 
     /*
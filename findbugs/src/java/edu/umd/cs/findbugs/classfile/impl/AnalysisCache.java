@@ -258,7 +258,7 @@ public class AnalysisCache implements IAnalysisCache {
             Profiler profiler = getProfiler();
             // Perform the analysis
             try {
-                profiler.start(engine.getClass());
+                profiler.start(engine.getClass(), classDescriptor);
                 analysisResult = engine.analyze(this, classDescriptor);
 
                 // If engine returned null, we need to construct
@@ -364,7 +364,7 @@ public class AnalysisCache implements IAnalysisCache {
             throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
         }
         Profiler profiler = getProfiler();
-        profiler.start(engine.getClass());
+        profiler.start(engine.getClass(), methodDescriptor);
         try {
             return engine.analyze(this, methodDescriptor);
         } finally {
@@ -141,4 +141,9 @@ public class ClassFactory implements IClassFactory {
         IAnalysisCache analysisCache = new AnalysisCache(classPath, errorLogger);
         return analysisCache;
     }
+
+    @Override
+    public IAnalysisCache createConcurrentAnalysisCache(IClassPath classPath, BugReporter errorLogger) {
+        return new ConcurrentAnalysisCache(classPath, errorLogger);
+    }
 }
@@ -28,6 +28,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -37,9 +38,18 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
+import javax.annotation.CheckForNull;
+
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.JavaVersion;
 import edu.umd.cs.findbugs.SystemProperties;
@@ -174,6 +184,8 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
     private boolean scanNestedArchives;
 
+    private int threads = 1;
+
     /**
      * Constructor.
      *
@@ -215,6 +227,16 @@ public class ClassPathBuilder implements IClassPathBuilder {
         this.scanNestedArchives = scanNestedArchives;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IClassPathBuilder#setThreads(int)
+     */
+    @Override
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -581,9 +603,24 @@ public class ClassPathBuilder implements IClassPathBuilder {
      */
     private void processWorkList(IClassPath classPath, LinkedList<WorkListItem> workList, IClassPathBuilderProgress progress)
             throws InterruptedException, IOException, ResourceNotFoundException {
+        CodeBaseScanner scanner = threads > 1 ? new CodeBaseScanner() : null;
+        try {
+            processWorkList(workList, progress, scanner);
+        } finally {
+            if (scanner != null) {
+                scanner.dispose();
+            }
+        }
+    }
+
+    private void processWorkList(LinkedList<WorkListItem> workList, IClassPathBuilderProgress progress,
+            @CheckForNull CodeBaseScanner scanner) throws InterruptedException {
         // Build the classpath, scanning codebases for nested archives
         // and referenced codebases.
         while (!workList.isEmpty()) {
+            if (scanner != null) {
+                scanner.prefetch(workList);
+            }
             WorkListItem item = workList.removeFirst();
             if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
                 progress.startArchive(item.toString());
@@ -608,14 +645,11 @@ public class ClassPathBuilder implements IClassPathBuilder {
             }
 
             // Detect .java files, which are probably human error
-            if (item.getCodeBaseLocator() instanceof FilesystemCodeBaseLocator) {
-                FilesystemCodeBaseLocator l = (FilesystemCodeBaseLocator) item.getCodeBaseLocator();
-                if (l.getPathName().endsWith(".java")) {
-                    if (DEBUG){
-                        System.err.println("Ignoring .java file \"" + l.getPathName() + "\" specified in classpath or auxclasspath");
-                    }
-                    continue;
+            if (isJavaSourceFile(item)) {
+                if (DEBUG){
+                    System.err.println("Ignoring .java file \"" + item.getCodeBaseLocator() + "\" specified in classpath or auxclasspath");
                 }
+                continue;
             }
 
             // If we are working on an application codebase,
@@ -623,30 +657,27 @@ public class ClassPathBuilder implements IClassPathBuilder {
             // We issue warnings about problems with aux codebases,
             // but continue anyway.
 
-            try {
-                // Open the codebase and add it to the classpath
-                discoveredCodeBase = new DiscoveredCodeBase(item.getCodeBaseLocator().openCodeBase());
-                discoveredCodeBase.getCodeBase().setApplicationCodeBase(item.isAppCodeBase());
-                discoveredCodeBase.getCodeBase().setHowDiscovered(item.getHowDiscovered());
+            ScannedCodeBase scanned = null;
+            if (scanner != null) {
+                scanned = scanner.take(item);
+            }
+            if (scanned == null) {
+                scanned = openAndScanCodeBase(item);
+            }
+
+            if (scanned.discoveredCodeBase != null) {
+                discoveredCodeBase = scanned.discoveredCodeBase;
 
                 // Note that this codebase has been visited
                 discoveredCodeBaseMap.put(item.getCodeBaseLocator().toString(), discoveredCodeBase);
                 discoveredCodeBaseList.addLast(discoveredCodeBase);
+            }
+            for (WorkListItem foundItem : scanned.foundItems) {
+                addToWorkList(workList, foundItem);
+            }
 
-                // If it is a scannable codebase, check it for nested archives.
-                // In addition, if it is an application codebase then
-                // make a list of application classes.
-                if (discoveredCodeBase.getCodeBase() instanceof IScannableCodeBase
-                        && ( discoveredCodeBase.codeBase.isApplicationCodeBase()
-                                || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED)
-                        ) {
-                    scanCodebase(classPath, workList, discoveredCodeBase);
-                }
-
-                // Check for a Jar manifest for additional aux classpath
-                // entries.
-                scanJarManifestForClassPathEntries(workList, discoveredCodeBase.getCodeBase());
-            } catch (IOException e) {
+            if (scanned.ioException != null) {
+                IOException e = scanned.ioException;
                 if (item.isAppCodeBase() || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
                     if (e instanceof FileNotFoundException) {
                         if(item.isAppCodeBase()){
@@ -658,9 +689,9 @@ public class ClassPathBuilder implements IClassPathBuilder {
                         errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
                     }
                 }
-            } catch (ResourceNotFoundException e) {
+            } else if (scanned.resourceNotFoundException != null) {
                 if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                    errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
+                    errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), scanned.resourceNotFoundException);
                 }
             }
 
@@ -670,6 +701,180 @@ public class ClassPathBuilder implements IClassPathBuilder {
         }
     }
 
+    private static boolean isJavaSourceFile(WorkListItem item) {
+        return item.getCodeBaseLocator() instanceof FilesystemCodeBaseLocator
+                && ((FilesystemCodeBaseLocator) item.getCodeBaseLocator()).getPathName().endsWith(".java");
+    }
+
+    /**
+     * Result of opening and scanning the codebase of a worklist item.
+     */
+    private static class ScannedCodeBase {
+        final WorkListItem item;
+
+        DiscoveredCodeBase discoveredCodeBase;
+
+        final List<WorkListItem> foundItems = new ArrayList<WorkListItem>();
+
+        IOException ioException;
+
+        ResourceNotFoundException resourceNotFoundException;
+
+        ScannedCodeBase(WorkListItem item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * Open the codebase of a worklist item, and scan it for nested archives,
+     * Class-Path entries and application classes. This does not change the
+     * state of the ClassPathBuilder, so codebases may be opened and scanned
+     * concurrently.
+     *
+     * @param item
+     *            the worklist item
+     * @return the opened codebase, the worklist items found in it, and any
+     *         error opening or scanning it
+     * @throws InterruptedException
+     */
+    private ScannedCodeBase openAndScanCodeBase(WorkListItem item) throws InterruptedException {
+        ScannedCodeBase result = new ScannedCodeBase(item);
+        try {
+            // Open the codebase
+            DiscoveredCodeBase discoveredCodeBase = new DiscoveredCodeBase(item.getCodeBaseLocator().openCodeBase());
+            discoveredCodeBase.getCodeBase().setApplicationCodeBase(item.isAppCodeBase());
+            discoveredCodeBase.getCodeBase().setHowDiscovered(item.getHowDiscovered());
+            result.discoveredCodeBase = discoveredCodeBase;
+
+            // If it is a scannable codebase, check it for nested archives.
+            // In addition, if it is an application codebase then
+            // make a list of application classes.
+            if (discoveredCodeBase.getCodeBase() instanceof IScannableCodeBase
+                    && ( discoveredCodeBase.codeBase.isApplicationCodeBase()
+                            || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED)
+                    ) {
+                scanCodebase(result.foundItems, discoveredCodeBase);
+            }
+
+            // Check for a Jar manifest for additional aux classpath
+            // entries.
+            scanJarManifestForClassPathEntries(result.foundItems, discoveredCodeBase.getCodeBase());
+        } catch (IOException e) {
+            result.ioException = e;
+        } catch (ResourceNotFoundException e) {
+            result.resourceNotFoundException = e;
+        }
+        return result;
+    }
+
+    /**
+     * Opens and scans the codebases on the worklist in background threads,
+     * ahead of the worklist processing. The results are taken in worklist
+     * order, so the classpath is the same as when scanning codebases one at a
+     * time.
+     */
+    private class CodeBaseScanner {
+        private final ExecutorService executor;
+
+        private final Map<String, Future<ScannedCodeBase>> pending = new HashMap<String, Future<ScannedCodeBase>>();
+
+        CodeBaseScanner() {
+            // Threads are started from the analysis thread,
+            // so they inherit the analysis cache
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "FindBugs classpath scanner " + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        /**
+         * Start scanning the codebases on the worklist which have not been
+         * seen yet.
+         */
+        void prefetch(List<WorkListItem> workList) {
+            for (final WorkListItem item : workList) {
+                String key = item.getCodeBaseLocator().toString();
+                if (pending.containsKey(key) || discoveredCodeBaseMap.containsKey(key) || isJavaSourceFile(item)) {
+                    continue;
+                }
+                pending.put(key, executor.submit(new Callable<ScannedCodeBase>() {
+                    @Override
+                    public ScannedCodeBase call() throws InterruptedException {
+                        return openAndScanCodeBase(item);
+                    }
+                }));
+            }
+        }
+
+        /**
+         * Get the result of scanning the codebase of a worklist item.
+         *
+         * @return the result, or null if the codebase was not scanned for
+         *         this kind of worklist item
+         */
+        @CheckForNull
+        ScannedCodeBase take(WorkListItem item) throws InterruptedException {
+            Future<ScannedCodeBase> future = pending.remove(item.getCodeBaseLocator().toString());
+            if (future == null) {
+                return null;
+            }
+            ScannedCodeBase result = getResult(future);
+            if (result.item.isAppCodeBase() != item.isAppCodeBase() || result.item.getHowDiscovered() != item.getHowDiscovered()) {
+                // Scanned for an item found later on the worklist
+                close(result);
+                return null;
+            }
+            return result;
+        }
+
+        private ScannedCodeBase getResult(Future<ScannedCodeBase> future) throws InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                }
+                throw new IllegalStateException("Unexpected exception scanning codebase", cause);
+            }
+        }
+
+        private void close(ScannedCodeBase result) {
+            if (result.discoveredCodeBase != null) {
+                result.discoveredCodeBase.getCodeBase().close();
+            }
+        }
+
+        /**
+         * Stop the scanner threads, closing codebases scanned but not taken.
+         */
+        void dispose() {
+            executor.shutdownNow();
+            for (Future<ScannedCodeBase> future : pending.values()) {
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        close(future.get());
+                    } catch (ExecutionException e) {
+                        assert true;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            pending.clear();
+        }
+    }
+
     /**
      * Scan given codebase in order to
      * <ul>
@@ -678,13 +883,13 @@ public class ClassPathBuilder implements IClassPathBuilder {
      * <li>build a list of class resources found in the codebase
      * </ul>
      *
-     * @param workList
-     *            the worklist
+     * @param foundItems
+     *            list to which worklist items for nested archives are added
      * @param discoveredCodeBase
      *            the codebase to scan
      * @throws InterruptedException
      */
-    private void scanCodebase(IClassPath classPath, LinkedList<WorkListItem> workList, DiscoveredCodeBase discoveredCodeBase)
+    private void scanCodebase(List<WorkListItem> foundItems, DiscoveredCodeBase discoveredCodeBase)
             throws InterruptedException {
         if (DEBUG) {
             System.out.println("Scanning " + discoveredCodeBase.getCodeBase().getCodeBaseLocator());
@@ -715,8 +920,7 @@ public class ClassPathBuilder implements IClassPathBuilder {
                 }
                 ICodeBaseLocator nestedArchiveLocator = classFactory.createNestedArchiveCodeBaseLocator(codeBase,
                         entry.getResourceName());
-                addToWorkList(workList,
-                        new WorkListItem(nestedArchiveLocator, codeBase.isApplicationCodeBase(), ICodeBase.Discovered.NESTED));
+                foundItems.add(new WorkListItem(nestedArchiveLocator, codeBase.isApplicationCodeBase(), ICodeBase.Discovered.NESTED));
             }
         }
     }
@@ -756,13 +960,13 @@ public class ClassPathBuilder implements IClassPathBuilder {
     /**
      * Check a codebase for a Jar manifest to examine for Class-Path entries.
      *
-     * @param workList
-     *            the worklist
+     * @param foundItems
+     *            list to which worklist items for Class-Path entries are added
      * @param codeBase
      *            the codebase for examine for a Jar manifest
      * @throws IOException
      */
-    private void scanJarManifestForClassPathEntries(LinkedList<WorkListItem> workList, ICodeBase codeBase) throws IOException {
+    private void scanJarManifestForClassPathEntries(List<WorkListItem> foundItems, ICodeBase codeBase) throws IOException {
         // See if this codebase has a jar manifest
         ICodeBaseEntry manifestEntry = codeBase.lookupResource("META-INF/MANIFEST.MF");
         if (manifestEntry == null) {
@@ -789,7 +993,7 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
                     // Codebases found in Class-Path entries are always
                     // added to the aux classpath, not the application.
-                    addToWorkList(workList, new WorkListItem(relativeCodeBaseLocator, false, ICodeBase.Discovered.IN_JAR_MANIFEST));
+                    foundItems.add(new WorkListItem(relativeCodeBaseLocator, false, ICodeBase.Discovered.IN_JAR_MANIFEST));
                 }
             }
         } finally {
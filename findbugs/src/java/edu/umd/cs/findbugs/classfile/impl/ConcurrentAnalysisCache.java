@@ -0,0 +1,550 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ConstantPoolGen;
+
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
+import edu.umd.cs.findbugs.classfile.IErrorLogger;
+import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.UncheckedAnalysisException;
+import edu.umd.cs.findbugs.log.Profiler;
+import edu.umd.cs.findbugs.util.StripedMapCache;
+
+/**
+ * Implementation of IAnalysisCache which can be shared by several analysis
+ * threads.
+ * <p>
+ * Lookups go to lock-striped caches, and analysis engines run without holding
+ * any lock of the cache. If several threads ask for the same analysis result,
+ * the engine runs only once: the other threads wait for the first one to
+ * finish. (Should a thread end up waiting for a computation which, directly or
+ * through other waiting threads, waits for the thread itself, the thread
+ * computes the result on its own instead.)
+ * <p>
+ * Results of engines that can recompute them are kept in LRU caches. The size
+ * of the cache for an analysis class can be set with the system property
+ * <code>findbugs.analysisCache.size.</code><i>SimpleClassName</i>; the
+ * defaults are those of {@link AnalysisCache}.
+ *
+ * @see AnalysisCache
+ */
+public class ConcurrentAnalysisCache implements IAnalysisCache {
+
+    private static final int DEFAULT_JAVACLASS_RESULTS_TO_CACHE = 3000;
+
+    private static final int DEFAULT_FBCLASSREADER_RESULTS_TO_CACHE = 3000;
+
+    private static final int DEFAULT_CONSTANT_POOL_GEN_RESULTS_TO_CACHE = 500;
+
+    private static final int DEFAULT_CLASS_RESULTS_TO_CACHE = 5000;
+
+    /**
+     * ClassContexts hold all method analyses of a class, so only few of them
+     * are kept; but at least one per class being analyzed at the same time.
+     */
+    private static final int DEFAULT_CLASS_CONTEXTS_TO_CACHE = 10 + 2 * Runtime.getRuntime().availableProcessors();
+
+    private final IClassPath classPath;
+
+    private final BugReporter bugReporter;
+
+    private final ConcurrentMap<Class<?>, IClassAnalysisEngine<?>> classAnalysisEngineMap;
+
+    private final ConcurrentMap<Class<?>, IMethodAnalysisEngine<?>> methodAnalysisEngineMap;
+
+    private final ConcurrentMap<Class<?>, IDatabaseFactory<?>> databaseFactoryMap;
+
+    private final ConcurrentMap<Class<?>, StripedMapCache<ClassDescriptor, Object>> classAnalysisMap;
+
+    private final ConcurrentMap<Class<?>, Object> databaseMap;
+
+    private final Map<?, ?> analysisLocals = Collections.synchronizedMap(new HashMap<Object, Object>());
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * Constructor.
+     *
+     * @param classPath
+     *            the IClassPath to load resources from
+     * @param errorLogger
+     *            the IErrorLogger
+     */
+    ConcurrentAnalysisCache(IClassPath classPath, BugReporter errorLogger) {
+        this.classPath = classPath;
+        this.bugReporter = errorLogger;
+        this.classAnalysisEngineMap = new ConcurrentHashMap<Class<?>, IClassAnalysisEngine<?>>();
+        this.methodAnalysisEngineMap = new ConcurrentHashMap<Class<?>, IMethodAnalysisEngine<?>>();
+        this.databaseFactoryMap = new ConcurrentHashMap<Class<?>, IDatabaseFactory<?>>();
+        this.classAnalysisMap = new ConcurrentHashMap<Class<?>, StripedMapCache<ClassDescriptor, Object>>();
+        this.databaseMap = new ConcurrentHashMap<Class<?>, Object>();
+    }
+
+    @Override
+    public final Map<?, ?> getAnalysisLocals() {
+        return analysisLocals;
+    }
+
+    @Override
+    public IClassPath getClassPath() {
+        return classPath;
+    }
+
+    @Override
+    public void purgeAllMethodAnalysis() {
+        StripedMapCache<ClassDescriptor, Object> classContexts = classAnalysisMap.get(ClassContext.class);
+        if (classContexts == null) {
+            return;
+        }
+        for (Object c : classContexts.values()) {
+            if (c instanceof ClassContext) {
+                ((ClassContext) c).purgeAllMethodAnalyses();
+            }
+        }
+    }
+
+    @Override
+    public void purgeClassAnalysis(Class<?> analysisClass) {
+        classAnalysisMap.remove(analysisClass);
+    }
+
+    /**
+     * Cleans up all cached data
+     */
+    public void dispose() {
+        classAnalysisMap.clear();
+        classAnalysisEngineMap.clear();
+        analysisLocals.clear();
+        databaseFactoryMap.clear();
+        databaseMap.clear();
+        methodAnalysisEngineMap.clear();
+    }
+
+    /**
+     * @param analysisClass non null analysis type
+     * @return copy of the cached analysis data for given type, can be null
+     */
+    public @CheckForNull Map<ClassDescriptor, Object> getClassAnalysis(Class<?> analysisClass) {
+        StripedMapCache<ClassDescriptor, Object> descriptorMap = classAnalysisMap.get(analysisClass);
+        return descriptorMap != null ? descriptorMap.toMap() : null;
+    }
+
+    /**
+     * Adds the data for given analysis type from given map to the cache
+     * @param analysisClass non null analysis type
+     * @param map non null, pre-filled map with analysis data for given type
+     */
+    public <E> void reuseClassAnalysis(Class<E> analysisClass, Map<ClassDescriptor, Object> map) {
+        findOrCreateDescriptorMap(analysisClass).putAll(map);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E> E getClassAnalysis(final Class<E> analysisClass, @Nonnull final ClassDescriptor classDescriptor)
+            throws CheckedAnalysisException {
+        requireNonNull(classDescriptor, "classDescriptor is null");
+        final StripedMapCache<ClassDescriptor, Object> descriptorMap = findOrCreateDescriptorMap(analysisClass);
+
+        Object analysisResult = descriptorMap.get(classDescriptor);
+        if (analysisResult == null) {
+            final IClassAnalysisEngine<E> engine = (IClassAnalysisEngine<E>) classAnalysisEngineMap.get(analysisClass);
+            if (engine == null) {
+                throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
+            }
+            analysisResult = singleFlight.run(new AnalysisKey(analysisClass, classDescriptor), new Computation() {
+                @Override
+                public Object compute() {
+                    // Another thread may have finished meanwhile
+                    Object result = descriptorMap.get(classDescriptor);
+                    if (result != null) {
+                        return result;
+                    }
+                    Profiler profiler = getProfiler();
+                    profiler.start(engine.getClass(), classDescriptor);
+                    try {
+                        result = engine.analyze(ConcurrentAnalysisCache.this, classDescriptor);
+                        if (result == null) {
+                            result = AnalysisCache.NULL_ANALYSIS_RESULT;
+                        }
+                    } catch (CheckedAnalysisException e) {
+                        result = new AnalysisCache.AbnormalAnalysisResult(e);
+                    } catch (RuntimeException e) {
+                        result = new AnalysisCache.AbnormalAnalysisResult(e);
+                    } finally {
+                        profiler.end(engine.getClass());
+                    }
+                    descriptorMap.put(classDescriptor, result);
+                    return result;
+                }
+            });
+        }
+
+        if (analysisResult instanceof AnalysisCache.AbnormalAnalysisResult) {
+            return AnalysisCache.checkedCast(analysisClass,
+                    ((AnalysisCache.AbnormalAnalysisResult) analysisResult).returnOrThrow());
+        }
+        return AnalysisCache.checkedCast(analysisClass, analysisResult);
+    }
+
+    @Override
+    public <E> E probeClassAnalysis(Class<E> analysisClass, @Nonnull ClassDescriptor classDescriptor) {
+        StripedMapCache<ClassDescriptor, Object> descriptorMap = classAnalysisMap.get(analysisClass);
+        if (descriptorMap == null) {
+            return null;
+        }
+        return AnalysisCache.checkedCast(analysisClass, descriptorMap.get(classDescriptor));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E> E getMethodAnalysis(final Class<E> analysisClass, @Nonnull final MethodDescriptor methodDescriptor)
+            throws CheckedAnalysisException {
+        requireNonNull(methodDescriptor, "methodDescriptor is null");
+        final ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
+        Object object = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
+
+        if (object == null) {
+            final IMethodAnalysisEngine<E> engine = (IMethodAnalysisEngine<E>) methodAnalysisEngineMap.get(analysisClass);
+            if (engine == null) {
+                throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
+            }
+            object = singleFlight.run(new AnalysisKey(analysisClass, methodDescriptor), new Computation() {
+                @Override
+                public Object compute() {
+                    Object result = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
+                    if (result != null) {
+                        return result;
+                    }
+                    Profiler profiler = getProfiler();
+                    profiler.start(engine.getClass(), methodDescriptor);
+                    try {
+                        result = engine.analyze(ConcurrentAnalysisCache.this, methodDescriptor);
+                        if (result == null) {
+                            result = AnalysisCache.NULL_ANALYSIS_RESULT;
+                        }
+                    } catch (CheckedAnalysisException e) {
+                        result = new AnalysisCache.AbnormalAnalysisResult(e);
+                    } catch (RuntimeException e) {
+                        result = new AnalysisCache.AbnormalAnalysisResult(e);
+                    } finally {
+                        profiler.end(engine.getClass());
+                    }
+                    classContext.putMethodAnalysis(analysisClass, methodDescriptor, result);
+                    return result;
+                }
+            });
+        }
+
+        if (object instanceof AnalysisCache.AbnormalAnalysisResult) {
+            return AnalysisCache.checkedCast(analysisClass, ((AnalysisCache.AbnormalAnalysisResult) object).returnOrThrow());
+        }
+        return AnalysisCache.checkedCast(analysisClass, object);
+    }
+
+    @Override
+    public <E> void eagerlyPutMethodAnalysis(Class<E> analysisClass, @Nonnull MethodDescriptor methodDescriptor,
+            E analysisObject) {
+        try {
+            ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
+            assert analysisClass.isInstance(analysisObject);
+            classContext.putMethodAnalysis(analysisClass, methodDescriptor, analysisObject);
+        } catch (CheckedAnalysisException e) {
+            IllegalStateException ise = new IllegalStateException("Unexpected exception adding method analysis to cache");
+            ise.initCause(e);
+            throw ise;
+        }
+    }
+
+    @Override
+    public void purgeMethodAnalyses(@Nonnull MethodDescriptor methodDescriptor) {
+        try {
+            ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
+            classContext.purgeMethodAnalyses(methodDescriptor);
+        } catch (CheckedAnalysisException e) {
+            IllegalStateException ise = new IllegalStateException("Unexpected exception purging method analyses from cache");
+            ise.initCause(e);
+            throw ise;
+        }
+    }
+
+    private StripedMapCache<ClassDescriptor, Object> findOrCreateDescriptorMap(Class<?> analysisClass) {
+        StripedMapCache<ClassDescriptor, Object> descriptorMap = classAnalysisMap.get(analysisClass);
+        if (descriptorMap == null) {
+            descriptorMap = new StripedMapCache<ClassDescriptor, Object>(getCacheSize(analysisClass));
+            StripedMapCache<ClassDescriptor, Object> existing = classAnalysisMap.putIfAbsent(analysisClass, descriptorMap);
+            if (existing != null) {
+                descriptorMap = existing;
+            }
+        }
+        return descriptorMap;
+    }
+
+    /**
+     * Get the maximum number of results of given analysis class to keep.
+     *
+     * @param analysisClass
+     *            the analysis class
+     * @return maximum number of results, or 0 if results must be retained
+     *         indefinitely
+     */
+    private int getCacheSize(Class<?> analysisClass) {
+        int defaultSize;
+        IClassAnalysisEngine<?> engine = classAnalysisEngineMap.get(analysisClass);
+        if (analysisClass.equals(JavaClass.class)) {
+            defaultSize = DEFAULT_JAVACLASS_RESULTS_TO_CACHE;
+        } else if (analysisClass.equals(FBClassReader.class)) {
+            defaultSize = DEFAULT_FBCLASSREADER_RESULTS_TO_CACHE;
+        } else if (analysisClass.equals(ConstantPoolGen.class)) {
+            defaultSize = DEFAULT_CONSTANT_POOL_GEN_RESULTS_TO_CACHE;
+        } else if (analysisClass.equals(ClassContext.class)) {
+            defaultSize = DEFAULT_CLASS_CONTEXTS_TO_CACHE;
+        } else if (engine != null && engine.canRecompute()) {
+            defaultSize = DEFAULT_CLASS_RESULTS_TO_CACHE;
+        } else {
+            // The engine can't recompute its results, so keep them all
+            return 0;
+        }
+        return Math.max(1, SystemProperties.getInt("findbugs.analysisCache.size." + analysisClass.getSimpleName(), defaultSize));
+    }
+
+    @Override
+    public <E> void registerClassAnalysisEngine(Class<E> analysisResultType, IClassAnalysisEngine<E> classAnalysisEngine) {
+        classAnalysisEngineMap.put(analysisResultType, classAnalysisEngine);
+    }
+
+    @Override
+    public <E> void registerMethodAnalysisEngine(Class<E> analysisResultType, IMethodAnalysisEngine<E> methodAnalysisEngine) {
+        methodAnalysisEngineMap.put(analysisResultType, methodAnalysisEngine);
+    }
+
+    @Override
+    public <E> void registerDatabaseFactory(Class<E> databaseClass, IDatabaseFactory<E> databaseFactory) {
+        databaseFactoryMap.put(databaseClass, databaseFactory);
+    }
+
+    @Override
+    public <E> E getDatabase(Class<E> databaseClass) {
+        return getDatabase(databaseClass, false);
+    }
+
+    @Override
+    public @CheckForNull <E> E getOptionalDatabase(Class<E> databaseClass) {
+        return getDatabase(databaseClass, true);
+    }
+
+    public <E> E getDatabase(final Class<E> databaseClass, boolean optional) {
+        Object database = databaseMap.get(databaseClass);
+
+        if (database == null) {
+            final IDatabaseFactory<?> databaseFactory = databaseFactoryMap.get(databaseClass);
+            if (databaseFactory == null) {
+                if (optional) {
+                    return null;
+                }
+                throw new IllegalArgumentException("No database factory registered for " + databaseClass.getName());
+            }
+            database = singleFlight.run(databaseClass, new Computation() {
+                @Override
+                public Object compute() {
+                    Object result = databaseMap.get(databaseClass);
+                    if (result != null) {
+                        return result;
+                    }
+                    try {
+                        result = databaseFactory.createDatabase();
+                    } catch (CheckedAnalysisException e) {
+                        result = new AnalysisCache.AbnormalAnalysisResult(e);
+                    }
+                    Object existing = databaseMap.putIfAbsent(databaseClass, result);
+                    return existing != null ? existing : result;
+                }
+            });
+        }
+
+        if (database instanceof AnalysisCache.AbnormalAnalysisResult) {
+            throw new UncheckedAnalysisException("Error instantiating " + databaseClass.getName() + " database",
+                    ((AnalysisCache.AbnormalAnalysisResult) database).checkedAnalysisException);
+        }
+        return databaseClass.cast(database);
+    }
+
+    @Override
+    public <E> void eagerlyPutDatabase(Class<E> databaseClass, E database) {
+        databaseMap.put(databaseClass, database);
+    }
+
+    @Override
+    public IErrorLogger getErrorLogger() {
+        return bugReporter;
+    }
+
+    @Override
+    public Profiler getProfiler() {
+        return bugReporter.getProjectStats().getProfiler();
+    }
+
+    /**
+     * Key of a computation: analysis class and descriptor.
+     */
+    private static final class AnalysisKey {
+        private final Class<?> analysisClass;
+
+        private final Object descriptor;
+
+        AnalysisKey(Class<?> analysisClass, Object descriptor) {
+            this.analysisClass = analysisClass;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public int hashCode() {
+            return analysisClass.hashCode() * 31 + descriptor.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AnalysisKey)) {
+                return false;
+            }
+            AnalysisKey other = (AnalysisKey) obj;
+            return analysisClass.equals(other.analysisClass) && descriptor.equals(other.descriptor);
+        }
+    }
+
+    /**
+     * Computes an analysis result (or an AbnormalAnalysisResult).
+     */
+    interface Computation {
+        Object compute();
+    }
+
+    /**
+     * A computation in progress.
+     */
+    private static final class Pending {
+        final Thread owner = Thread.currentThread();
+
+        private boolean done;
+
+        private Object result;
+
+        synchronized void complete(Object result) {
+            this.result = result;
+            this.done = true;
+            notifyAll();
+        }
+
+        /**
+         * @return the result, or null if the computation failed
+         */
+        synchronized Object await() throws InterruptedException {
+            while (!done) {
+                wait();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Makes sure that a computation for a key runs in only one thread at a
+     * time; other threads asking for the same key wait for its result.
+     */
+    static final class SingleFlight {
+        private final ConcurrentMap<Object, Pending> inProgress = new ConcurrentHashMap<Object, Pending>();
+
+        /** What each waiting thread is waiting for */
+        private final ConcurrentMap<Thread, Pending> waitingFor = new ConcurrentHashMap<Thread, Pending>();
+
+        Object run(Object key, Computation computation) {
+            Pending mine = new Pending();
+            Pending pending = inProgress.putIfAbsent(key, mine);
+            if (pending == null) {
+                Object result = null;
+                try {
+                    result = computation.compute();
+                    return result;
+                } finally {
+                    inProgress.remove(key, mine);
+                    mine.complete(result);
+                }
+            }
+            if (pending.owner == mine.owner) {
+                // Recursive request from the computation itself
+                return computation.compute();
+            }
+
+            Thread current = mine.owner;
+            waitingFor.put(current, pending);
+            try {
+                if (!waitsFor(pending, current)) {
+                    Object result = pending.await();
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            } catch (InterruptedException e) {
+                current.interrupt();
+            } finally {
+                waitingFor.remove(current);
+            }
+            // Waiting would deadlock, the other thread failed,
+            // or we were interrupted: compute it ourselves
+            return computation.compute();
+        }
+
+        /**
+         * Check whether the owner of the pending computation is (indirectly)
+         * waiting for the given thread.
+         */
+        private boolean waitsFor(Pending pending, Thread thread) {
+            Pending p = pending;
+            for (int i = 0; p != null && i < 1000; i++) {
+                if (p.owner == thread) {
+                    return true;
+                }
+                p = waitingFor.get(p.owner);
+            }
+            return false;
+        }
+    }
+}
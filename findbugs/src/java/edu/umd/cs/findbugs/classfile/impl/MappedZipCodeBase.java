@@ -0,0 +1,282 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipException;
+
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ICodeBaseIterator;
+import edu.umd.cs.findbugs.classfile.ICodeBaseLocator;
+
+/**
+ * Implementation of ICodeBase to read from a memory-mapped zip file or jar
+ * file. The central directory is parsed directly from the mapped file, and
+ * entries are copied or inflated from the mapped file independently of each
+ * other, so that several threads can read entries at the same time.
+ *
+ * <p>
+ * ZIP64 archives and archives larger than 2GB are not supported; opening them
+ * fails with a ZipException, so that {@link ZipCodeBaseFactory} can fall back
+ * to {@link ZipFileCodeBase}.
+ * </p>
+ *
+ * <p>
+ * The mapping is released when the buffer is garbage collected, not when the
+ * codebase is closed: releasing it earlier would crash the JVM if an entry
+ * were still being read. Until then the file can't be deleted or replaced on
+ * Windows. No buffer handed out refers to the mapping, so entries can be used
+ * after the codebase is closed.
+ * </p>
+ */
+public class MappedZipCodeBase extends AbstractScannableCodeBase {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_HEADER_SIZE = 22;
+
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    /** General purpose flag set if entry names are encoded in UTF-8 */
+    private static final int UTF8_FLAG = 0x800;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Charset CP437 = Charset.forName("IBM437");
+
+    private final File file;
+
+    private final ByteBuffer buffer;
+
+    private final Map<String, MappedZipCodeBaseEntry> entryMap;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param codeBaseLocator
+     *            the codebase locator for this codebase
+     * @param file
+     *            the File containing the zip file (may be a temp file if the
+     *            codebase was copied from a nested zipfile in another codebase)
+     */
+    public MappedZipCodeBase(ICodeBaseLocator codeBaseLocator, File file) throws IOException {
+        super(codeBaseLocator);
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("Zip file " + file + " is too large to be mapped");
+            }
+            // The mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.entryMap = readCentralDirectory();
+        setLastModifiedTime(file.lastModified());
+    }
+
+    private Map<String, MappedZipCodeBaseEntry> readCentralDirectory() throws ZipException {
+        int end = findEndHeader();
+        int numEntries = getUnsignedShort(end + 10);
+        long centralDirectorySize = getUnsignedInt(end + 12);
+        long centralDirectoryOffset = getUnsignedInt(end + 16);
+        if (numEntries == 0xffff || centralDirectoryOffset == 0xffffffffL) {
+            throw new ZipException("ZIP64 zip file " + file + " can't be mapped");
+        }
+        if (centralDirectoryOffset + centralDirectorySize > end) {
+            throw new ZipException("Invalid central directory in zip file " + file);
+        }
+
+        Map<String, MappedZipCodeBaseEntry> result = new LinkedHashMap<String, MappedZipCodeBaseEntry>();
+        int pos = (int) centralDirectoryOffset;
+        for (int i = 0; i < numEntries; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > end || buffer.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry in zip file " + file);
+            }
+            int flags = getUnsignedShort(pos + 8);
+            int method = getUnsignedShort(pos + 10);
+            long dosTime = getUnsignedInt(pos + 12);
+            long compressedSize = getUnsignedInt(pos + 20);
+            long size = getUnsignedInt(pos + 24);
+            int nameLength = getUnsignedShort(pos + 28);
+            int extraLength = getUnsignedShort(pos + 30);
+            int commentLength = getUnsignedShort(pos + 32);
+            long localHeaderOffset = getUnsignedInt(pos + 42);
+            if (compressedSize == 0xffffffffL || size == 0xffffffffL || localHeaderOffset == 0xffffffffL) {
+                throw new ZipException("ZIP64 zip file " + file + " can't be mapped");
+            }
+            if (localHeaderOffset + LOCAL_HEADER_SIZE > centralDirectoryOffset) {
+                throw new ZipException("Invalid central directory entry in zip file " + file);
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = buffer.duplicate();
+            nameBuffer.position(pos + CENTRAL_HEADER_SIZE);
+            nameBuffer.get(nameBytes);
+            String name = new String(nameBytes, (flags & UTF8_FLAG) != 0 ? UTF8 : CP437);
+
+            if (!result.containsKey(name)) {
+                result.put(name, new MappedZipCodeBaseEntry(this, name, method, compressedSize, size,
+                        (int) localHeaderOffset, dosTime));
+            }
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    /**
+     * Find the end of central directory record, searching backwards since it
+     * is followed by the zip file comment.
+     */
+    private int findEndHeader() throws ZipException {
+        int limit = Math.max(0, buffer.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int pos = buffer.limit() - END_HEADER_SIZE; pos >= limit; pos--) {
+            if (buffer.getInt(pos) == END_HEADER_SIGNATURE) {
+                return pos;
+            }
+        }
+        throw new ZipException("No central directory in zip file " + file);
+    }
+
+    private int getUnsignedShort(int pos) {
+        return buffer.getShort(pos) & 0xffff;
+    }
+
+    private long getUnsignedInt(int pos) {
+        return buffer.getInt(pos) & 0xffffffffL;
+    }
+
+    /**
+     * Get the compressed data of an entry.
+     *
+     * @param localHeaderOffset
+     *            offset of the local header of the entry
+     * @param compressedSize
+     *            size of the compressed data
+     * @return a read-only slice of the mapped zip file, which must not be
+     *         handed out
+     * @throws ZipException
+     *             if the local header is invalid
+     * @throws IOException
+     *             if the codebase is closed
+     */
+    ByteBuffer getData(int localHeaderOffset, long compressedSize) throws IOException {
+        if (closed) {
+            throw new IOException("Zip file " + file + " is closed");
+        }
+        if (buffer.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header in zip file " + file);
+        }
+        long dataOffset = (long) localHeaderOffset + LOCAL_HEADER_SIZE + getUnsignedShort(localHeaderOffset + 26)
+                + getUnsignedShort(localHeaderOffset + 28);
+        if (dataOffset + compressedSize > buffer.limit()) {
+            throw new ZipException("Truncated entry in zip file " + file);
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position((int) dataOffset);
+        data.limit((int) (dataOffset + compressedSize));
+        return data.slice();
+    }
+
+    @Override
+    public ICodeBaseEntry lookupResource(String resourceName) {
+        // Translate resource name, in case a resource name
+        // has been overridden and the resource is being accessed
+        // using the overridden name.
+        resourceName = translateResourceName(resourceName);
+        return entryMap.get(resourceName);
+    }
+
+    @Override
+    public ICodeBaseIterator iterator() {
+        final Iterator<MappedZipCodeBaseEntry> entryIterator = entryMap.values().iterator();
+
+        return new ICodeBaseIterator() {
+            MappedZipCodeBaseEntry nextEntry;
+
+            @Override
+            public boolean hasNext() {
+                scanForNextEntry();
+                return nextEntry != null;
+            }
+
+            @Override
+            public ICodeBaseEntry next() throws InterruptedException {
+                scanForNextEntry();
+                if (nextEntry == null) {
+                    throw new NoSuchElementException();
+                }
+                ICodeBaseEntry result = nextEntry;
+                nextEntry = null;
+                return result;
+            }
+
+            private void scanForNextEntry() {
+                while (nextEntry == null) {
+                    if (!entryIterator.hasNext()) {
+                        return;
+                    }
+
+                    MappedZipCodeBaseEntry entry = entryIterator.next();
+
+                    if (!entry.isDirectory()) {
+                        addLastModifiedTime(entry.getTime());
+                        nextEntry = entry;
+                        break;
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public String getPathName() {
+        return file.getPath();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public String toString() {
+        return file.getPath();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+
+/**
+ * Implementation of ICodeBaseEntry for resources in memory-mapped zip files.
+ */
+public class MappedZipCodeBaseEntry extends AbstractScannableCodeBaseEntry {
+    private static final int STORED = 0;
+
+    private static final int DEFLATED = 8;
+
+    private final MappedZipCodeBase codeBase;
+
+    private final String name;
+
+    private final int method;
+
+    private final long compressedSize;
+
+    private final long size;
+
+    private final int localHeaderOffset;
+
+    private final long dosTime;
+
+    MappedZipCodeBaseEntry(MappedZipCodeBase codeBase, String name, int method, long compressedSize, long size,
+            int localHeaderOffset, long dosTime) {
+        this.codeBase = codeBase;
+        this.name = name;
+        this.method = method;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.localHeaderOffset = localHeaderOffset;
+        this.dosTime = dosTime;
+    }
+
+    boolean isDirectory() {
+        return name.endsWith("/");
+    }
+
+    /**
+     * @return the modification time of the entry, in milliseconds since the
+     *         epoch
+     */
+    long getTime() {
+        Calendar calendar = new GregorianCalendar((int) ((dosTime >> 25) & 0x7f) + 1980, (int) ((dosTime >> 21) & 0x0f) - 1,
+                (int) ((dosTime >> 16) & 0x1f), (int) ((dosTime >> 11) & 0x1f), (int) ((dosTime >> 5) & 0x3f),
+                (int) ((dosTime << 1) & 0x3e));
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Get the contents of the resource. A stored resource is copied out of
+     * the mapped zip file, and a deflated resource is inflated, into a new
+     * buffer.
+     *
+     * @return a ByteBuffer containing the contents of the resource
+     * @throws IOException
+     *             if the resource can't be read
+     */
+    public ByteBuffer getContents() throws IOException {
+        ByteBuffer data = codeBase.getData(localHeaderOffset, compressedSize);
+        if (method == STORED) {
+            // Copied, so the buffer stays valid whatever happens to the
+            // mapping
+            byte[] contents = new byte[data.remaining()];
+            data.get(contents);
+            return ByteBuffer.wrap(contents);
+        }
+        if (method != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + method + " for " + this);
+        }
+
+        // Inflater only takes arrays as input before Java 11
+        byte[] input = new byte[(int) compressedSize];
+        data.get(input);
+        byte[] output = new byte[(int) size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int n = 0;
+            while (n < output.length) {
+                int count = inflater.inflate(output, n, output.length - n);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += count;
+            }
+            if (n != output.length) {
+                throw new ZipException("Truncated deflated data for " + this);
+            }
+        } catch (DataFormatException e) {
+            ZipException zipException = new ZipException("Invalid deflated data for " + this);
+            zipException.initCause(e);
+            throw zipException;
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.ICodeBaseEntry#getNumBytes()
+     */
+    @Override
+    public int getNumBytes() {
+        return (int) size;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.ICodeBaseEntry#openResource()
+     */
+    @Override
+    public InputStream openResource() throws IOException {
+        return new ByteBufferInputStream(getContents());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.impl.AbstractScannableCodeBaseEntry#getCodeBase
+     * ()
+     */
+    @Override
+    public AbstractScannableCodeBase getCodeBase() {
+        return codeBase;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.impl.AbstractScannableCodeBaseEntry#
+     * getRealResourceName()
+     */
+    @Override
+    public String getRealResourceName() {
+        return name;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.ICodeBaseEntry#getClassDescriptor()
+     */
+    @Override
+    public ClassDescriptor getClassDescriptor() {
+        return DescriptorFactory.createClassDescriptorFromResourceName(getResourceName());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        MappedZipCodeBaseEntry other = (MappedZipCodeBaseEntry) obj;
+        return this.codeBase.equals(other.codeBase) && this.name.equals(other.name);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return 7919 * codeBase.hashCode() + name.hashCode();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return getCodeBase() + ":" + getResourceName();
+    }
+
+    /**
+     * InputStream reading the remaining bytes of a ByteBuffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
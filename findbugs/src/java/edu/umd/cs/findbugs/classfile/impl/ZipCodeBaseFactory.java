@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.zip.ZipException;
 
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.ICodeBaseLocator;
 import edu.umd.cs.findbugs.log.Profiler;
@@ -32,10 +33,26 @@ import edu.umd.cs.findbugs.log.Profiler;
  */
 public class ZipCodeBaseFactory {
 
+    /**
+     * Whether zip files are memory-mapped. Off by default, since a mapping is
+     * only released when it is garbage collected, and until then the file
+     * can't be deleted or replaced on Windows, and counts against the address
+     * space and the limit on mappings of the process.
+     */
+    private static final boolean MAP_ZIP_FILES = SystemProperties.getBoolean("findbugs.zip.mapped");
+
     public static AbstractScannableCodeBase makeZipCodeBase(ICodeBaseLocator codeBaseLocator, File file) throws IOException {
         Profiler profiler = Global.getAnalysisCache().getProfiler();
         profiler.start(ZipCodeBaseFactory.class);
         try {
+            if (MAP_ZIP_FILES) {
+                try {
+                    return new MappedZipCodeBase(codeBaseLocator, file);
+                } catch (IOException e) {
+                    // Let ZipFile read the file, or explain why it can't
+                    assert true;
+                }
+            }
             return new ZipFileCodeBase(codeBaseLocator, file);
         } catch (ZipException e) {
             // May be too many zip entries
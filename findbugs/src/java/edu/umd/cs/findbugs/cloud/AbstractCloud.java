@@ -27,6 +27,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
@@ -782,12 +783,8 @@ public abstract class AbstractCloud implements Cloud {
     }
 
     public BugInstance getBugByHash(String hash) {
-        for (BugInstance instance : bugCollection.getCollection()) {
-            if (instance.getInstanceHash().equals(hash)) {
-                return instance;
-            }
-        }
-        return null;
+        Iterator<BugInstance> i = bugCollection.findBugsByInstanceHash(hash).iterator();
+        return i.hasNext() ? i.next() : null;
     }
 
     protected NameLookup getUsernameLookup() throws IOException {
@@ -40,6 +40,12 @@ import edu.umd.cs.findbugs.classfile.MethodDescriptor;
  * qualifiers. It could become a more general-purpose facility if there were a
  * need.
  *
+ * Each call is an edge to the method named by the call instruction; virtual
+ * calls are not resolved to their possible targets, so this graph doesn't use
+ * the targets memoized by
+ * {@link edu.umd.cs.findbugs.ba.ch.ClassHierarchyCallGraph}, which also
+ * provides the call graph with resolved targets.
+ *
  * @author David Hovemeyer
  */
 public class BuildInterproceduralCallGraph extends BytecodeScanningDetector implements NonReportingDetector {
@@ -0,0 +1,222 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.detect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.Detector2;
+import edu.umd.cs.findbugs.NonReportingDetector;
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.ba.BasicBlock;
+import edu.umd.cs.findbugs.ba.Dataflow;
+import edu.umd.cs.findbugs.ba.DataflowAnalysis;
+import edu.umd.cs.findbugs.ba.SignatureConverter;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.BlockTypeAnalysisFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.CallListDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.ConstantDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.IsNullValueDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.LiveLocalStoreDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.LoadDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.LockDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.ReturnPathDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.ReturnPathTypeDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.StoreDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.TypeDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.UnconditionalValueDerefDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.ValueNumberDataflowFactory;
+
+/**
+ * This detector is a test harness to compare the sweeping and the worklist
+ * solvers of {@link Dataflow}. Each dataflow analysis is executed on every
+ * method once with each solver; the facts computed by the two solvers are
+ * compared, and the number of transfer function applications and the time
+ * taken are totalled. The totals are printed at the end of the pass. Methods
+ * on which the solvers compute different facts are printed if the
+ * dataflow.solver.verbose property is set.
+ */
+public class DataflowSolverBenchmark implements Detector2, NonReportingDetector {
+
+    private static final boolean VERBOSE = SystemProperties.getBoolean("dataflow.solver.verbose");
+
+    /**
+     * Totals for one dataflow analysis.
+     */
+    private static class Stats {
+        final AnalysisFactory<? extends Dataflow<?, ?>> factory;
+
+        String name;
+
+        int numMethods;
+
+        int numDifferent;
+
+        long sweepTransfers;
+
+        long worklistTransfers;
+
+        long sweepIterations;
+
+        long worklistIterations;
+
+        long sweepNanos;
+
+        long worklistNanos;
+
+        Stats(AnalysisFactory<? extends Dataflow<?, ?>> factory) {
+            this.factory = factory;
+        }
+    }
+
+    private final List<Stats> statsList = new ArrayList<Stats>();
+
+    public DataflowSolverBenchmark(BugReporter bugReporter) {
+        statsList.add(new Stats(new ValueNumberDataflowFactory()));
+        statsList.add(new Stats(new TypeDataflowFactory()));
+        statsList.add(new Stats(new IsNullValueDataflowFactory()));
+        statsList.add(new Stats(new UnconditionalValueDerefDataflowFactory()));
+        statsList.add(new Stats(new LiveLocalStoreDataflowFactory()));
+        statsList.add(new Stats(new ConstantDataflowFactory()));
+        statsList.add(new Stats(new LockDataflowFactory()));
+        statsList.add(new Stats(new ReturnPathDataflowFactory()));
+        statsList.add(new Stats(new ReturnPathTypeDataflowFactory()));
+        statsList.add(new Stats(new BlockTypeAnalysisFactory()));
+        statsList.add(new Stats(new CallListDataflowFactory()));
+        statsList.add(new Stats(new LoadDataflowFactory()));
+        statsList.add(new Stats(new StoreDataflowFactory()));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.Detector2#visitClass(edu.umd.cs.findbugs.classfile
+     * .ClassDescriptor)
+     */
+    @Override
+    public void visitClass(ClassDescriptor classDescriptor) throws CheckedAnalysisException {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+
+        XClass classInfo = analysisCache.getClassAnalysis(XClass.class, classDescriptor);
+
+        for (XMethod xMethod : classInfo.getXMethods()) {
+            if (xMethod.isAbstract() || xMethod.isNative()) {
+                continue;
+            }
+            MethodDescriptor methodDescriptor = xMethod.getMethodDescriptor();
+            for (Stats stats : statsList) {
+                compareSolvers(analysisCache, methodDescriptor, stats);
+            }
+        }
+    }
+
+    private void compareSolvers(IAnalysisCache analysisCache, MethodDescriptor methodDescriptor, Stats stats) {
+        Dataflow<?, ?> sweep;
+        Dataflow<?, ?> worklist;
+        long sweepNanos;
+        long worklistNanos;
+        try {
+            Dataflow.setWorklistSolverOverride(Boolean.FALSE);
+            long start = System.nanoTime();
+            sweep = stats.factory.analyze(analysisCache, methodDescriptor);
+            sweepNanos = System.nanoTime() - start;
+            Dataflow.setWorklistSolverOverride(Boolean.TRUE);
+            start = System.nanoTime();
+            worklist = stats.factory.analyze(analysisCache, methodDescriptor);
+            worklistNanos = System.nanoTime() - start;
+        } catch (CheckedAnalysisException e) {
+            // Analysis not possible for this method
+            return;
+        } finally {
+            Dataflow.setWorklistSolverOverride(null);
+        }
+
+        stats.name = sweep.getClass().getSimpleName();
+        stats.numMethods++;
+        stats.sweepTransfers += sweep.getNumTransfers();
+        stats.worklistTransfers += worklist.getNumTransfers();
+        stats.sweepIterations += sweep.getNumIterations();
+        stats.worklistIterations += worklist.getNumIterations();
+        stats.sweepNanos += sweepNanos;
+        stats.worklistNanos += worklistNanos;
+        if (!sameFacts(sweep, worklist)) {
+            stats.numDifferent++;
+            if (VERBOSE) {
+                System.out.println(stats.name + " differs for " + SignatureConverter.convertMethodSignature(methodDescriptor));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Fact, AnalysisType extends DataflowAnalysis<Fact>> boolean sameFacts(Dataflow<Fact, AnalysisType> dataflow,
+            Dataflow<?, ?> other) {
+        Dataflow<Fact, AnalysisType> otherDataflow = (Dataflow<Fact, AnalysisType>) other;
+        AnalysisType analysis = dataflow.getAnalysis();
+        for (BasicBlock block : dataflow.getCFG().blocks()) {
+            if (!analysis.same(dataflow.getStartFact(block), otherDataflow.getStartFact(block))
+                    || !analysis.same(dataflow.getResultFact(block), otherDataflow.getResultFact(block))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.Detector2#finishPass()
+     */
+    @Override
+    public void finishPass() {
+        System.out.printf("%-32s %8s %8s %10s %10s %8s %8s %8s %8s%n", "Analysis", "Methods", "Differ", "Sweep", "Worklist",
+                "Sweep", "Worklist", "Sweep", "Worklist");
+        System.out.printf("%-32s %8s %8s %10s %10s %8s %8s %8s %8s%n", "", "", "", "transfers", "transfers", "iters", "iters",
+                "ms", "ms");
+        for (Stats stats : statsList) {
+            if (stats.numMethods == 0) {
+                continue;
+            }
+            System.out.printf("%-32s %8d %8d %10d %10d %8.2f %8.2f %8d %8d%n", stats.name, stats.numMethods, stats.numDifferent,
+                    stats.sweepTransfers, stats.worklistTransfers, (double) stats.sweepIterations / stats.numMethods,
+                    (double) stats.worklistIterations / stats.numMethods, stats.sweepNanos / 1000000,
+                    stats.worklistNanos / 1000000);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.Detector2#getDetectorClassName()
+     */
+    @Override
+    public String getDetectorClassName() {
+        return getClass().getName();
+    }
+
+}
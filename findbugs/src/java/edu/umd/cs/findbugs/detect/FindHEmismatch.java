@@ -42,7 +42,6 @@ import edu.umd.cs.findbugs.MethodAnnotation;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.Priorities;
 import edu.umd.cs.findbugs.SourceLineAnnotation;
-import edu.umd.cs.findbugs.StatelessDetector;
 import edu.umd.cs.findbugs.TypeAnnotation;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.EqualsKindSummary;
@@ -57,7 +56,7 @@ import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 import edu.umd.cs.findbugs.util.ClassName;
 import edu.umd.cs.findbugs.visitclass.PreorderVisitor;
 
-public class FindHEmismatch extends OpcodeStackDetector implements StatelessDetector {
+public class FindHEmismatch extends OpcodeStackDetector {
 
     static final Pattern mapPattern = Pattern.compile("[^y]HashMap<L([^;<]*);");
     static final Pattern hashTablePattern = Pattern.compile("Hashtable<L([^;<]*);");
@@ -19,11 +19,11 @@
 
 package edu.umd.cs.findbugs.detect;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -39,6 +39,7 @@ import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.Type;
 
 import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.CacheableFirstPassDetector;
 import edu.umd.cs.findbugs.NonReportingDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.OpcodeStack.Item;
@@ -49,9 +50,11 @@ import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.ba.XField;
 import edu.umd.cs.findbugs.ba.XMethod;
 import edu.umd.cs.findbugs.ba.ch.Subtypes2;
+import edu.umd.cs.findbugs.ba.ch.SummaryScheduler;
 import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.FieldDescriptor;
 import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
@@ -60,7 +63,7 @@ import edu.umd.cs.findbugs.util.ClassName;
 /**
  * @author Tagir Valeev
  */
-public class FindNoSideEffectMethods extends OpcodeStackDetector implements NonReportingDetector {
+public class FindNoSideEffectMethods extends OpcodeStackDetector implements NonReportingDetector, CacheableFirstPassDetector {
     private static final MethodDescriptor GET_CLASS = new MethodDescriptor("java/lang/Object", "getClass", "()Ljava/lang/Class;");
     private static final MethodDescriptor ARRAY_COPY = new MethodDescriptor("java/lang/System", "arraycopy", "(Ljava/lang/Object;ILjava/lang/Object;II)V", true);
     private static final MethodDescriptor HASH_CODE = new MethodDescriptor("java/lang/Object", "hashCode", "()I");
@@ -232,6 +235,70 @@ public class FindNoSideEffectMethods extends OpcodeStackDetector implements NonR
         }
     }
 
+    /**
+     * What visiting a class recorded for one of its methods. Descriptors are
+     * kept as strings, since they aren't serializable.
+     */
+    private static class MethodContribution implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+
+        final String signature;
+
+        final boolean isStatic;
+
+        final SideEffectStatus status;
+
+        /** Class, name, signature and target of each call, or null if the status is sure */
+        final String[][] calls;
+
+        final boolean getStatic;
+
+        final boolean uselessVoidCandidate;
+
+        MethodContribution(MethodDescriptor method, SideEffectStatus status, List<MethodCall> calls, boolean getStatic,
+                boolean uselessVoidCandidate) {
+            this.name = method.getName();
+            this.signature = method.getSignature();
+            this.isStatic = method.isStatic();
+            this.status = status;
+            if (calls == null) {
+                this.calls = null;
+            } else {
+                this.calls = new String[calls.size()][];
+                for (int i = 0; i < this.calls.length; i++) {
+                    MethodDescriptor called = calls.get(i).getMethod();
+                    FieldDescriptor target = calls.get(i).getTarget();
+                    this.calls[i] = new String[] { called.getSlashedClassName(), called.getName(), called.getSignature(),
+                            String.valueOf(called.isStatic()), target.getSlashedClassName(), target.getName(),
+                            target.getSignature(), String.valueOf(target.isStatic()) };
+                }
+            }
+            this.getStatic = getStatic;
+            this.uselessVoidCandidate = uselessVoidCandidate;
+        }
+
+        List<MethodCall> getCalls() {
+            DescriptorFactory factory = DescriptorFactory.instance();
+            List<MethodCall> result = new ArrayList<>(calls.length);
+            for (String[] call : calls) {
+                MethodDescriptor method = factory.getMethodDescriptor(call[0], call[1], call[2], Boolean.parseBoolean(call[3]));
+                FieldDescriptor target = factory.getFieldDescriptor(call[4], call[5], call[6], Boolean.parseBoolean(call[7]));
+                // The targets which aren't fields are compared by identity
+                if (target.equals(TARGET_THIS)) {
+                    target = TARGET_THIS;
+                } else if (target.equals(TARGET_NEW)) {
+                    target = TARGET_NEW;
+                } else if (target.equals(TARGET_OTHER)) {
+                    target = TARGET_OTHER;
+                }
+                result.add(new MethodCall(method, target));
+            }
+            return result;
+        }
+    }
+
     /**
      * Public status of the method in NSE database
      * TODO: implement CHECK
@@ -1000,37 +1067,76 @@ public class FindNoSideEffectMethods extends OpcodeStackDetector implements NonR
         return false;
     }
 
+    /**
+     * Recompute the status of a method whose status was unsure.
+     *
+     * @return true if the status or the unsure calls of the method changed
+     */
+    private boolean computeStatus(MethodDescriptor method) {
+        List<MethodCall> calls = callGraph.get(method);
+        if (calls == null) {
+            // The status is sure
+            return false;
+        }
+        uselessVoidCandidate = uselessVoidCandidates.contains(method);
+        SideEffectStatus prevStatus = statusMap.get(method);
+        status = prevStatus.toSure();
+        calledMethods = new ArrayList<>();
+        for(MethodCall methodCall : calls) {
+            sawCall(methodCall, true);
+            if(status == SideEffectStatus.SIDE_EFFECT) {
+                break;
+            }
+        }
+        if (!uselessVoidCandidate || (status != SideEffectStatus.UNSURE && status != SideEffectStatus.NO_SIDE_EFFECT)) {
+            uselessVoidCandidates.remove(method);
+        }
+        if (status == prevStatus && calls.equals(calledMethods)) {
+            return false;
+        }
+        statusMap.put(method, status);
+        if (status.unsure()) {
+            callGraph.put(method, calledMethods);
+        } else {
+            callGraph.remove(method);
+        }
+        return true;
+    }
+
     private void computeFinalStatus() {
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            Iterator<Entry<MethodDescriptor, List<MethodCall>>> iterator = callGraph.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Entry<MethodDescriptor, List<MethodCall>> entry = iterator.next();
-                MethodDescriptor method = entry.getKey();
-                uselessVoidCandidate = uselessVoidCandidates.contains(method);
-                SideEffectStatus prevStatus = statusMap.get(method);
-                status = prevStatus.toSure();
-                calledMethods = new ArrayList<>();
-                for(MethodCall methodCall : entry.getValue()) {
-                    sawCall(methodCall, true);
-                    if(status == SideEffectStatus.SIDE_EFFECT) {
-                        break;
+        // Number the methods whose status is unsure and summarize them
+        // bottom-up over the calls between them; the status of other
+        // methods is already final
+        final List<MethodDescriptor> methods = new ArrayList<>(callGraph.keySet());
+        Map<MethodDescriptor, Integer> ids = new HashMap<>();
+        for (int i = 0; i < methods.size(); i++) {
+            ids.put(methods.get(i), i);
+        }
+        int[] calleeStart = new int[methods.size() + 1];
+        int[] callee = new int[16];
+        int numEdges = 0;
+        for (int i = 0; i < methods.size(); i++) {
+            for (MethodCall methodCall : callGraph.get(methods.get(i))) {
+                Integer id = ids.get(methodCall.getMethod());
+                if (id != null) {
+                    if (numEdges == callee.length) {
+                        callee = Arrays.copyOf(callee, 2 * numEdges);
                     }
-                }
-                if (!uselessVoidCandidate || (status != SideEffectStatus.UNSURE && status != SideEffectStatus.NO_SIDE_EFFECT)) {
-                    uselessVoidCandidates.remove(method);
-                }
-                if (status != prevStatus || !entry.getValue().equals(calledMethods)) {
-                    statusMap.put(method, status);
-                    if (status.unsure()) {
-                        entry.setValue(calledMethods);
-                    } else {
-                        iterator.remove();
-                    }
-                    changed = true;
+                    callee[numEdges++] = id;
                 }
             }
+            calleeStart[i + 1] = numEdges;
+        }
+        // sawCall works on the fields of this detector, so one thread
+        try {
+            new SummaryScheduler(methods.size(), calleeStart, callee).run(new SummaryScheduler.Summarizer() {
+                @Override
+                public boolean summarize(int id) {
+                    return computeStatus(methods.get(id));
+                }
+            }, 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         for(Entry<MethodDescriptor, List<MethodCall>> entry : callGraph.entrySet()) {
             MethodDescriptor method = entry.getKey();
@@ -1072,4 +1178,52 @@ public class FindNoSideEffectMethods extends OpcodeStackDetector implements NonR
             }
         }
     }
+
+    @Override
+    public Serializable getContribution(ClassDescriptor classDescriptor) {
+        XClass xClass;
+        try {
+            xClass = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+        } catch (CheckedAnalysisException e) {
+            return null;
+        }
+        List<MethodDescriptor> methods = new ArrayList<>();
+        for (XMethod xMethod : xClass.getXMethods()) {
+            methods.add(xMethod.getMethodDescriptor());
+        }
+        // visitAfter() adds one if there is none
+        MethodDescriptor clinit = new MethodDescriptor(classDescriptor.getClassName(), "<clinit>", "()V", true);
+        if (!methods.contains(clinit)) {
+            methods.add(clinit);
+        }
+        ArrayList<MethodContribution> result = new ArrayList<>();
+        for (MethodDescriptor method : methods) {
+            SideEffectStatus methodStatus = statusMap.get(method);
+            if (methodStatus != null) {
+                result.add(new MethodContribution(method, methodStatus, callGraph.get(method), getStaticMethods.contains(method),
+                        uselessVoidCandidates.contains(method)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void addContribution(ClassDescriptor classDescriptor, Serializable contribution) {
+        @SuppressWarnings("unchecked")
+        List<MethodContribution> methods = (List<MethodContribution>) contribution;
+        for (MethodContribution m : methods) {
+            MethodDescriptor method = DescriptorFactory.instance().getMethodDescriptor(classDescriptor.getClassName(), m.name,
+                    m.signature, m.isStatic);
+            statusMap.put(method, m.status);
+            if (m.calls != null) {
+                callGraph.put(method, m.getCalls());
+            }
+            if (m.getStatic) {
+                getStaticMethods.add(method);
+            }
+            if (m.uselessVoidCandidate) {
+                uselessVoidCandidates.add(method);
+            }
+        }
+    }
 }
@@ -19,6 +19,8 @@
 
 package edu.umd.cs.findbugs.detect;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
 
 import javax.annotation.CheckForNull;
@@ -30,6 +32,7 @@ import org.apache.bcel.generic.Type;
 
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.CacheableFirstPassDetector;
 import edu.umd.cs.findbugs.FirstPassDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.OpcodeStack.Item;
@@ -43,10 +46,14 @@ import edu.umd.cs.findbugs.ba.generic.GenericSignatureParser;
 import edu.umd.cs.findbugs.ba.generic.GenericUtilities;
 import edu.umd.cs.findbugs.bcel.BCELUtil;
 import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
 import edu.umd.cs.findbugs.util.ClassName;
 
-public class FunctionsThatMightBeMistakenForProcedures extends OpcodeStackDetector implements FirstPassDetector {
+public class FunctionsThatMightBeMistakenForProcedures extends OpcodeStackDetector implements FirstPassDetector,
+CacheableFirstPassDetector {
 
     final BugReporter bugReporter;
 
@@ -66,7 +73,7 @@ public class FunctionsThatMightBeMistakenForProcedures extends OpcodeStackDetect
     public void visit(JavaClass obj) {
         isInnerClass = false;
         hasNonFinalFields = false;
-
+        functionsAdded.clear();
     }
 
     @Override
@@ -90,6 +97,9 @@ public class FunctionsThatMightBeMistakenForProcedures extends OpcodeStackDetect
 
     HashSet<XMethod> okToIgnore = new HashSet<XMethod>();
 
+    /** Names and signatures of the methods of the class added to the XFactory */
+    ArrayList<String> functionsAdded = new ArrayList<String>();
+
     HashSet<XMethod> methodsSeen = new HashSet<XMethod>();
 
     HashSet<XMethod> doNotIgnore = new HashSet<XMethod>();
@@ -184,6 +194,8 @@ public class FunctionsThatMightBeMistakenForProcedures extends OpcodeStackDetect
                 if (!m.isStatic()) {
                     XFactory xFactory = AnalysisContext.currentXFactory();
                     xFactory.addFunctionThatMightBeMistakenForProcedures(getMethodDescriptor());
+                    functionsAdded.add(getMethodName());
+                    functionsAdded.add(getMethodSig());
                     if (inferredMethod != null) {
                         inferredMethod.setPriority(priority);
                         inferredMethod.addString(String.format("%3d %3d %5d %3d", returnOther, returnSelf, returnNew, updates));
@@ -305,4 +317,26 @@ public class FunctionsThatMightBeMistakenForProcedures extends OpcodeStackDetect
             break;
         }
     }
+
+    @Override
+    public Serializable getContribution(ClassDescriptor classDescriptor) {
+        if (testingEnabled && REPORT_INFERRED_METHODS) {
+            // Reports warnings, which aren't kept
+            return null;
+        }
+        String[] result = functionsAdded.toArray(new String[functionsAdded.size()]);
+        functionsAdded.clear();
+        return result;
+    }
+
+    @Override
+    public void addContribution(ClassDescriptor classDescriptor, Serializable contribution) {
+        String[] functions = (String[]) contribution;
+        XFactory xFactory = AnalysisContext.currentXFactory();
+        for (int i = 0; i < functions.length; i += 2) {
+            MethodDescriptor m = DescriptorFactory.instance().getMethodDescriptor(classDescriptor.getClassName(), functions[i],
+                    functions[i + 1], false);
+            xFactory.addFunctionThatMightBeMistakenForProcedures(m);
+        }
+    }
 }
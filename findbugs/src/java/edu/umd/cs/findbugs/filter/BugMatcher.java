@@ -83,6 +83,18 @@ public class BugMatcher implements Matcher {
         return codes.equals(other.codes) && patterns.equals(other.patterns) && categories.equals(other.categories);
     }
 
+    StringSetMatch getCodes() {
+        return codes;
+    }
+
+    StringSetMatch getPatterns() {
+        return patterns;
+    }
+
+    StringSetMatch getCategories() {
+        return categories;
+    }
+
     @Override
     public void writeXML(XMLOutput xmlOutput, boolean disabled) throws IOException {
         xmlOutput.startTag("Bug");
@@ -68,6 +68,14 @@ public class ClassMatcher implements Matcher {
         return result;
     }
 
+    NameMatch getClassName() {
+        return className;
+    }
+
+    String getRole() {
+        return role;
+    }
+
     @Override
     public void writeXML(XMLOutput xmlOutput, boolean disabled) throws IOException {
         XMLAttributeList attributes = new XMLAttributeList().addAttribute("name", className.getSpec());
@@ -0,0 +1,371 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.ClassAnnotation;
+
+/**
+ * Indexed evaluator for the rules (the enabled children) of a
+ * {@link Filter}. A BugInstance matches if any rule matches it, as for
+ * {@link OrMatcher}, but only the rules which can match it are evaluated.
+ *
+ * <p>
+ * Each rule gets, where possible, a guard: a condition on the bug pattern,
+ * bug code, category or primary class of a BugInstance which holds for every
+ * BugInstance the rule matches. A {@link BugMatcher} or a {@link ClassMatcher}
+ * of the primary class is its own guard; an {@link AndMatcher} is guarded by
+ * the most selective guard of its children, an {@link OrMatcher} by the
+ * guards of all of its children. The guards are indexed by exact value, and
+ * regular expressions for class names by their literal prefix in a trie.
+ * Which class name guards hold is computed once per class and cached. Rules
+ * without guards, such as {@link NotMatcher}s, are always evaluated.
+ * </p>
+ *
+ * <p>
+ * Rules are evaluated with their own match() method, in the order of the
+ * filter, unless their guard is equivalent to the rule. So the result is the
+ * same as for {@link Filter#match(BugInstance)}, but
+ * {@link AndMatcher#anyMatches()} isn't updated for rules which are skipped
+ * or decided by their guard.
+ * </p>
+ */
+final class CompiledFilter {
+
+    private static final int CLASS = 0, TYPE = 1, ABBREV = 2, CLASS_PREFIX = 3, CATEGORY = 4, CLASS_REGEX = 5;
+
+    /**
+     * A condition on one property of a BugInstance.
+     */
+    private static final class Atom {
+        final int kind;
+
+        final String value;
+
+        final @CheckForNull Pattern pattern;
+
+        Atom(int kind, String value, @CheckForNull Pattern pattern) {
+            this.kind = kind;
+            this.value = value;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * A disjunction of atoms holding for every BugInstance a matcher matches.
+     */
+    private static final class Guard {
+        final List<Atom> atoms = new ArrayList<Atom>();
+
+        /** True if the guard holds only for BugInstances the matcher matches */
+        boolean exact;
+
+        Guard(boolean exact) {
+            this.exact = exact;
+        }
+
+        int cost() {
+            int cost = -1;
+            for (Atom atom : atoms) {
+                cost = Math.max(cost, atom.kind);
+            }
+            return cost;
+        }
+    }
+
+    /**
+     * Trie of the literal prefixes of class name regular expressions.
+     */
+    private static final class TrieNode {
+        final Map<Character, TrieNode> children = new HashMap<Character, TrieNode>();
+
+        final List<Atom> atoms = new ArrayList<Atom>();
+
+        final List<Integer> rules = new ArrayList<Integer>();
+    }
+
+    private final Matcher[] rules;
+
+    private final boolean[] exact;
+
+    private final BitSet unguarded = new BitSet();
+
+    private final Map<String, BitSet> byClass = new HashMap<String, BitSet>();
+
+    private final Map<String, BitSet> byType = new HashMap<String, BitSet>();
+
+    private final Map<String, BitSet> byAbbrev = new HashMap<String, BitSet>();
+
+    private final Map<String, BitSet> byCategory = new HashMap<String, BitSet>();
+
+    private final TrieNode classRegexes = new TrieNode();
+
+    /** Rules whose class guards hold, by class name */
+    private final ConcurrentHashMap<String, BitSet> classCache = new ConcurrentHashMap<String, BitSet>();
+
+    /**
+     * Compile rules.
+     *
+     * @param rules
+     *            the rules, in the order they should be evaluated
+     */
+    CompiledFilter(Collection<Matcher> rules) {
+        this.rules = rules.toArray(new Matcher[rules.size()]);
+        this.exact = new boolean[this.rules.length];
+        for (int i = 0; i < this.rules.length; i++) {
+            Guard guard = guard(this.rules[i]);
+            if (guard == null) {
+                unguarded.set(i);
+                continue;
+            }
+            exact[i] = guard.exact;
+            for (Atom atom : guard.atoms) {
+                index(atom, i);
+            }
+        }
+    }
+
+    private void index(Atom atom, int rule) {
+        switch (atom.kind) {
+        case CLASS:
+            add(byClass, atom.value, rule);
+            break;
+        case TYPE:
+            add(byType, atom.value, rule);
+            break;
+        case ABBREV:
+            add(byAbbrev, atom.value, rule);
+            break;
+        case CATEGORY:
+            add(byCategory, atom.value, rule);
+            break;
+        default:
+            TrieNode node = classRegexes;
+            for (int i = 0; i < atom.value.length(); i++) {
+                Character c = atom.value.charAt(i);
+                TrieNode child = node.children.get(c);
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.atoms.add(atom);
+            node.rules.add(rule);
+            break;
+        }
+    }
+
+    private static void add(Map<String, BitSet> index, String key, int rule) {
+        BitSet rules = index.get(key);
+        if (rules == null) {
+            rules = new BitSet();
+            index.put(key, rules);
+        }
+        rules.set(rule);
+    }
+
+    /**
+     * Determine whether any rule matches a BugInstance.
+     *
+     * @param bugInstance
+     *            the BugInstance
+     * @return true if a rule matches
+     */
+    boolean match(BugInstance bugInstance) {
+        ClassAnnotation primaryClass = bugInstance.getPrimaryClass();
+        if (primaryClass == null) {
+            // Evaluate all rules, as some matchers don't expect this
+            for (Matcher rule : rules) {
+                if (rule.match(bugInstance)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        BitSet candidates = (BitSet) getClassRules(primaryClass.getClassName()).clone();
+        candidates.or(unguarded);
+        addRules(candidates, byType, bugInstance.getType());
+        if (!byAbbrev.isEmpty()) {
+            addRules(candidates, byAbbrev, bugInstance.getAbbrev());
+        }
+        if (!byCategory.isEmpty()) {
+            addRules(candidates, byCategory, bugInstance.getBugPattern().getCategory());
+        }
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (exact[i] || rules[i].match(bugInstance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addRules(BitSet candidates, Map<String, BitSet> index, String key) {
+        // StringSetMatch trims the strings it matches
+        BitSet rules = index.get(key.trim());
+        if (rules != null) {
+            candidates.or(rules);
+        }
+    }
+
+    private BitSet getClassRules(String className) {
+        BitSet result = classCache.get(className);
+        if (result != null) {
+            return result;
+        }
+        result = new BitSet();
+        BitSet exactMatches = byClass.get(className);
+        if (exactMatches != null) {
+            result.or(exactMatches);
+        }
+        TrieNode node = classRegexes;
+        int i = 0;
+        while (node != null) {
+            for (int j = 0; j < node.atoms.size(); j++) {
+                int rule = node.rules.get(j);
+                if (!result.get(rule) && node.atoms.get(j).pattern.matcher(className).matches()) {
+                    result.set(rule);
+                }
+            }
+            node = i < className.length() ? node.children.get(className.charAt(i++)) : null;
+        }
+        classCache.putIfAbsent(className, result);
+        return result;
+    }
+
+    /**
+     * Compute a guard for a matcher.
+     *
+     * @param m
+     *            the matcher
+     * @return the guard, or null if the matcher has none
+     */
+    private static @CheckForNull Guard guard(Matcher m) {
+        if (m.getClass() == BugMatcher.class) {
+            BugMatcher bugMatcher = (BugMatcher) m;
+            Guard guard = new Guard(true);
+            for (String code : bugMatcher.getCodes().getStrings()) {
+                guard.atoms.add(new Atom(ABBREV, code, null));
+            }
+            for (String pattern : bugMatcher.getPatterns().getStrings()) {
+                guard.atoms.add(new Atom(TYPE, pattern, null));
+            }
+            for (String category : bugMatcher.getCategories().getStrings()) {
+                guard.atoms.add(new Atom(CATEGORY, category, null));
+            }
+            return guard;
+        }
+        if (m.getClass() == ClassMatcher.class) {
+            ClassMatcher classMatcher = (ClassMatcher) m;
+            String role = classMatcher.getRole();
+            if (role != null && !"".equals(role)) {
+                return null;
+            }
+            NameMatch name = classMatcher.getClassName();
+            Guard guard = new Guard(true);
+            if (name.getExact() != null) {
+                guard.atoms.add(new Atom(CLASS, name.getExact(), null));
+            } else if (name.getPattern() != null) {
+                Pattern pattern = name.getPattern();
+                String prefix = literalPrefix(pattern.pattern());
+                guard.atoms.add(new Atom(prefix.length() > 0 ? CLASS_PREFIX : CLASS_REGEX, prefix, pattern));
+            } else {
+                return null;
+            }
+            return guard;
+        }
+        if (m.getClass() == OrMatcher.class) {
+            Guard guard = new Guard(true);
+            for (Matcher child : ((OrMatcher) m).getChildren()) {
+                Guard childGuard = guard(child);
+                if (childGuard == null) {
+                    return null;
+                }
+                guard.atoms.addAll(childGuard.atoms);
+                guard.exact &= childGuard.exact;
+            }
+            return guard;
+        }
+        if (m.getClass() == AndMatcher.class) {
+            Collection<Matcher> children = ((AndMatcher) m).getChildren();
+            Guard best = null;
+            for (Matcher child : children) {
+                Guard childGuard = guard(child);
+                if (childGuard != null
+                        && (best == null || childGuard.cost() < best.cost() || childGuard.cost() == best.cost()
+                        && childGuard.atoms.size() < best.atoms.size())) {
+                    best = childGuard;
+                }
+            }
+            if (best != null && children.size() > 1) {
+                best.exact = false;
+            }
+            return best;
+        }
+        return null;
+    }
+
+    /**
+     * Get a prefix of all strings matched by a regular expression.
+     *
+     * @param regex
+     *            the regular expression
+     * @return the prefix, possibly empty
+     */
+    static String literalPrefix(String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int next = i + 1;
+            if (c == '\\') {
+                if (next >= regex.length() || Character.isLetterOrDigit(regex.charAt(next))) {
+                    break;
+                }
+                c = regex.charAt(next++);
+            } else if (".[]()*+?{}^$".indexOf(c) >= 0) {
+                break;
+            }
+            if (next < regex.length() && "*+?{".indexOf(regex.charAt(next)) >= 0) {
+                // The character is optional or repeated
+                break;
+            }
+            prefix.append(c);
+            i = next;
+        }
+        return prefix.toString();
+    }
+}
@@ -25,8 +25,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.annotation.WillClose;
 
@@ -52,8 +54,16 @@ import edu.umd.cs.findbugs.xml.XMLOutput;
 public class Filter extends OrMatcher {
     private static final boolean DEBUG = SystemProperties.getBoolean("filter.debug");
 
+    private static final boolean COMPILE = SystemProperties.getBoolean("filter.compile", true);
+
     private final IdentityHashMap<Matcher, Boolean> disabled = new IdentityHashMap<Matcher, Boolean>();
 
+    /**
+     * Indexed evaluator of the enabled children, built by the first match()
+     * and discarded when the children change
+     */
+    private transient volatile CompiledFilter compiled;
+
     /**
      * Constructor for empty filter
      *
@@ -106,6 +116,7 @@ public class Filter extends OrMatcher {
 
     public void disable(Matcher m) {
         disabled.put(m, true);
+        compiled = null;
     }
 
     public boolean isEnabled(Matcher m) {
@@ -114,6 +125,7 @@ public class Filter extends OrMatcher {
 
     public void enable(Matcher m) {
         disabled.remove(m);
+        compiled = null;
     }
 
     public static Filter parseFilter(String fileName) throws IOException {
@@ -161,6 +173,7 @@ public class Filter extends OrMatcher {
      */
     public void softAdd(Matcher child) {
         super.addChild(child);
+        compiled = null;
     }
 
     @Override
@@ -173,16 +186,33 @@ public class Filter extends OrMatcher {
     public void removeChild(Matcher child) {
         enable(child);// Remove from disabled before removing it
         super.removeChild(child);
+        compiled = null;
     }
 
     @Override
     public void clear() {
         disabled.clear();
         super.clear();
+        compiled = null;
     }
 
+    /**
+     * Determine whether any enabled child matches the given BugInstance.
+     * Unless the filter.compile property is false, the children are compiled
+     * into an indexed evaluator (see {@link CompiledFilter}) when this is
+     * first called, so they should not be changed afterwards except through
+     * the methods of this class.
+     */
     @Override
     public boolean match(BugInstance bugInstance) {
+        if (COMPILE) {
+            CompiledFilter c = compiled;
+            if (c == null) {
+                c = compile();
+                compiled = c;
+            }
+            return c.match(bugInstance);
+        }
         Iterator<Matcher> i = childIterator();
         while (i.hasNext()) {
             Matcher child = i.next();
@@ -193,6 +223,18 @@ public class Filter extends OrMatcher {
         return false;
     }
 
+    private CompiledFilter compile() {
+        List<Matcher> enabled = new ArrayList<Matcher>();
+        Iterator<Matcher> i = childIterator();
+        while (i.hasNext()) {
+            Matcher child = i.next();
+            if (isEnabled(child)) {
+                enabled.add(child);
+            }
+        }
+        return new CompiledFilter(enabled);
+    }
+
     /**
      * Parse and load the given filter file.
      *
@@ -122,4 +122,22 @@ public class NameMatch {
     public String getSpec() {
         return spec;
     }
+
+    /**
+     * @return the name matched exactly, or null if this matches a regular
+     *         expression or any name
+     */
+    @CheckForNull
+    String getExact() {
+        return exact;
+    }
+
+    /**
+     * @return the regular expression matched, or null if this matches an
+     *         exact name or any name
+     */
+    @CheckForNull
+    Pattern getPattern() {
+        return pattern;
+    }
 }
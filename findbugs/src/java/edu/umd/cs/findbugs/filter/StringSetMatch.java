@@ -66,6 +66,13 @@ public class StringSetMatch {
         return strings.isEmpty();
     }
 
+    /**
+     * @return the (trimmed) strings matched
+     */
+    Set<String> getStrings() {
+        return strings;
+    }
+
     /**
      * Returns true if the given string is contained in the value set.
      *
@@ -0,0 +1,356 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.Detector;
+import edu.umd.cs.findbugs.Detector2;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.classfile.IAnalysisEngine;
+
+/**
+ * ProfilerListener collecting the time and allocations of each analyzed class
+ * and the slowest individual calls, and exporting them together with the
+ * totals of the {@link Profiler} as JSON or CSV.
+ *
+ * @see Profiler
+ */
+public class ProfileExporter implements ProfilerListener {
+
+    static class ContextTotals {
+        final AtomicInteger visits = new AtomicInteger();
+
+        final AtomicLong nanos = new AtomicLong();
+
+        final AtomicLong allocatedBytes = new AtomicLong();
+    }
+
+    static class Call {
+        final Class<?> clazz;
+
+        final String subject;
+
+        final long nanos;
+
+        final long allocatedBytes;
+
+        Call(Class<?> clazz, String subject, long nanos, long allocatedBytes) {
+            this.clazz = clazz;
+            this.subject = subject;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private static final Comparator<Call> CALL_COMPARATOR = new Comparator<Call>() {
+        @Override
+        public int compare(Call c1, Call c2) {
+            return c1.nanos < c2.nanos ? -1 : (c1.nanos > c2.nanos ? 1 : 0);
+        }
+    };
+
+    private final Profiler profiler;
+
+    private final int maxCalls;
+
+    private final ConcurrentMap<String, ContextTotals> contexts = new ConcurrentHashMap<String, ContextTotals>();
+
+    /** The slowest calls, fastest first */
+    private final PriorityQueue<Call> slowestCalls;
+
+    /** Calls not slower than this are not kept */
+    private volatile long threshold;
+
+    /**
+     * Constructor.
+     *
+     * @param profiler
+     *            the profiler whose totals are exported
+     * @param maxCalls
+     *            the number of slowest calls to keep
+     */
+    public ProfileExporter(Profiler profiler, int maxCalls) {
+        this.profiler = profiler;
+        this.maxCalls = maxCalls;
+        this.slowestCalls = new PriorityQueue<Call>(maxCalls + 1, CALL_COMPARATOR);
+    }
+
+    @Override
+    public void callFinished(Class<?> c, @CheckForNull Object subject, long nanos, long allocatedBytes) {
+        if (nanos <= threshold) {
+            return;
+        }
+        synchronized (slowestCalls) {
+            slowestCalls.add(new Call(c, String.valueOf(subject), nanos, allocatedBytes));
+            if (slowestCalls.size() > maxCalls) {
+                slowestCalls.remove();
+                threshold = slowestCalls.peek().nanos;
+            }
+        }
+    }
+
+    @Override
+    public void contextFinished(Object context, long nanos, long allocatedBytes) {
+        String key = String.valueOf(context);
+        ContextTotals totals = contexts.get(key);
+        if (totals == null) {
+            totals = new ContextTotals();
+            ContextTotals totals2 = contexts.putIfAbsent(key, totals);
+            if (totals2 != null) {
+                totals = totals2;
+            }
+        }
+        totals.visits.incrementAndGet();
+        totals.nanos.addAndGet(nanos);
+        totals.allocatedBytes.addAndGet(allocatedBytes);
+    }
+
+    /**
+     * @return the slowest calls, slowest first
+     */
+    List<Call> getSlowestCalls() {
+        List<Call> result;
+        synchronized (slowestCalls) {
+            result = new ArrayList<Call>(slowestCalls);
+        }
+        Collections.sort(result, Collections.reverseOrder(CALL_COMPARATOR));
+        return result;
+    }
+
+    /**
+     * @return the analyzed classes, slowest first
+     */
+    List<Map.Entry<String, ContextTotals>> getSlowestContexts() {
+        List<Map.Entry<String, ContextTotals>> result = new ArrayList<Map.Entry<String, ContextTotals>>(contexts.entrySet());
+        Collections.sort(result, new Comparator<Map.Entry<String, ContextTotals>>() {
+            @Override
+            public int compare(Map.Entry<String, ContextTotals> e1, Map.Entry<String, ContextTotals> e2) {
+                long n1 = e1.getValue().nanos.get();
+                long n2 = e2.getValue().nanos.get();
+                if (n1 != n2) {
+                    return n1 > n2 ? -1 : 1;
+                }
+                return e1.getKey().compareTo(e2.getKey());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the profiled classes, the one with the largest total time first
+     */
+    List<Class<?>> getProfiledClasses() {
+        List<Class<?>> result = new ArrayList<Class<?>>();
+        for (Class<?> c : profiler.getProfiledClasses()) {
+            result.add(c);
+        }
+        Collections.sort(result, new Profiler.TotalTimeComparator(profiler));
+        return result;
+    }
+
+    static String getKind(Class<?> c) {
+        if (Detector.class.isAssignableFrom(c) || Detector2.class.isAssignableFrom(c)) {
+            return "detector";
+        }
+        if (IAnalysisEngine.class.isAssignableFrom(c)) {
+            return "engine";
+        }
+        return "other";
+    }
+
+    /**
+     * Print the slowest analyzed classes and the slowest calls.
+     *
+     * @param stream
+     *            the stream to print to
+     */
+    public void reportSlowest(PrintStream stream) {
+        stream.println("SLOWEST CLASSES");
+        stream.printf("%8s %10s  %s%n", "msecs", "KB alloc", "Class");
+        int count = 0;
+        for (Map.Entry<String, ContextTotals> e : getSlowestContexts()) {
+            if (count++ >= maxCalls) {
+                break;
+            }
+            ContextTotals totals = e.getValue();
+            stream.printf("%8d %10d  %s%n", Long.valueOf(TimeUnit.NANOSECONDS.toMillis(totals.nanos.get())),
+                    Long.valueOf(totals.allocatedBytes.get() / 1024), e.getKey());
+        }
+        stream.println("SLOWEST CALLS");
+        stream.printf("%8s %10s  %s%n", "msecs", "KB alloc", "Call");
+        for (Call call : getSlowestCalls()) {
+            stream.printf("%8d %10d  %s on %s%n", Long.valueOf(TimeUnit.NANOSECONDS.toMillis(call.nanos)),
+                    Long.valueOf(call.allocatedBytes / 1024), call.clazz.getSimpleName(), call.subject);
+        }
+        stream.flush();
+    }
+
+    /**
+     * Write the metrics to a file, as CSV if the name of the file ends with
+     * .csv, and as JSON otherwise.
+     *
+     * @param file
+     *            the file to write
+     * @throws IOException
+     */
+    public void export(File file) throws IOException {
+        PrintWriter out = UTF8.printWriter(file);
+        try {
+            if (file.getName().endsWith(".csv")) {
+                writeCSV(out);
+            } else {
+                writeJSON(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Error writing " + file);
+        }
+    }
+
+    /**
+     * Write the metrics as CSV. Each row is either the totals of a profiled
+     * class (kind detector, engine or other), of an analyzed class (kind
+     * class), or one of the slowest calls (kind call).
+     *
+     * @param out
+     *            the writer to write to
+     */
+    public void writeCSV(PrintWriter out) {
+        out.println("kind,name,subject,calls,totalNanos,maxNanos,allocatedBytes");
+        for (Class<?> c : getProfiledClasses()) {
+            Profiler.Profile p = profiler.getProfile(c);
+            out.println(getKind(c) + "," + csv(c.getName()) + ",," + p.getTotalCalls() + "," + p.getTotalTime() + ","
+                    + p.getMaxTime() + "," + p.getTotalAllocatedBytes());
+        }
+        for (Map.Entry<String, ContextTotals> e : getSlowestContexts()) {
+            ContextTotals totals = e.getValue();
+            out.println("class," + csv(e.getKey()) + ",," + totals.visits.get() + "," + totals.nanos.get() + ",,"
+                    + totals.allocatedBytes.get());
+        }
+        for (Call call : getSlowestCalls()) {
+            out.println("call," + csv(call.clazz.getName()) + "," + csv(call.subject) + ",1," + call.nanos + "," + call.nanos
+                    + "," + call.allocatedBytes);
+        }
+    }
+
+    /**
+     * Write the metrics as a JSON object with the arrays profiles, classes and
+     * slowestCalls.
+     *
+     * @param out
+     *            the writer to write to
+     */
+    public void writeJSON(PrintWriter out) {
+        out.println("{");
+        out.println("  \"profiles\": [");
+        String separator = "";
+        for (Class<?> c : getProfiledClasses()) {
+            Profiler.Profile p = profiler.getProfile(c);
+            out.print(separator);
+            out.print("    {\"kind\": " + json(getKind(c)) + ", \"name\": " + json(c.getName()) + ", \"calls\": "
+                    + p.getTotalCalls() + ", \"totalNanos\": " + p.getTotalTime() + ", \"maxNanos\": " + p.getMaxTime()
+                    + ", \"allocatedBytes\": " + p.getTotalAllocatedBytes() + "}");
+            separator = ",\n";
+        }
+        out.println();
+        out.println("  ],");
+        out.println("  \"classes\": [");
+        separator = "";
+        for (Map.Entry<String, ContextTotals> e : getSlowestContexts()) {
+            ContextTotals totals = e.getValue();
+            out.print(separator);
+            out.print("    {\"name\": " + json(e.getKey()) + ", \"visits\": " + totals.visits.get() + ", \"nanos\": "
+                    + totals.nanos.get() + ", \"allocatedBytes\": " + totals.allocatedBytes.get() + "}");
+            separator = ",\n";
+        }
+        out.println();
+        out.println("  ],");
+        out.println("  \"slowestCalls\": [");
+        separator = "";
+        for (Call call : getSlowestCalls()) {
+            out.print(separator);
+            out.print("    {\"name\": " + json(call.clazz.getName()) + ", \"subject\": " + json(call.subject) + ", \"nanos\": "
+                    + call.nanos + ", \"allocatedBytes\": " + call.allocatedBytes + "}");
+            separator = ",\n";
+        }
+        out.println();
+        out.println("  ]");
+        out.println("}");
+    }
+
+    static String csv(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+            return s;
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    static String json(String s) {
+        StringBuilder buf = new StringBuilder(s.length() + 2);
+        buf.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                buf.append("\\\"");
+                break;
+            case '\\':
+                buf.append("\\\\");
+                break;
+            case '\n':
+                buf.append("\\n");
+                break;
+            case '\r':
+                buf.append("\\r");
+                break;
+            case '\t':
+                buf.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    buf.append(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    buf.append(c);
+                }
+            }
+        }
+        buf.append('"');
+        return buf.toString();
+    }
+}
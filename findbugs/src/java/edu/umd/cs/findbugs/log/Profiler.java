@@ -19,19 +19,25 @@
 
 package edu.umd.cs.findbugs.log;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
 import java.util.Comparator;
 import java.util.EmptyStackException;
+import java.util.List;
 import java.util.Stack;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.CheckForNull;
+
 import edu.umd.cs.findbugs.FindBugs2;
 import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
@@ -39,19 +45,62 @@ import edu.umd.cs.findbugs.xml.XMLOutput;
 import edu.umd.cs.findbugs.xml.XMLWriteable;
 
 /**
+ * Times detectors, analysis engines and other parts of FindBugs. Besides the
+ * per-class totals written into the FindBugsSummary, the profiler notifies
+ * {@link ProfilerListener}s of each timed call and of each analyzed class.
+ * The following system properties control the built-in reports:
+ * <ul>
+ * <li>profiler.report: print the totals to System.err at the end of the run</li>
+ * <li>findbugs.profiler.allocation: also measure the bytes allocated, if the
+ * JVM supports it</li>
+ * <li>findbugs.profiler.slowest=N: print the N slowest classes and analysis
+ * calls to System.err at the end of the run</li>
+ * <li>findbugs.profiler.export=file: write all metrics to a file, as CSV if
+ * the file name ends with .csv and as JSON otherwise</li>
+ * </ul>
+ *
  * @author pugh
  */
 public class Profiler implements XMLWriteable {
 
     final static boolean REPORT = SystemProperties.getBoolean("profiler.report");
     final static boolean MAX_CONTEXT = SystemProperties.getBoolean("findbugs.profiler.maxcontext");
+    final static boolean ALLOCATION = SystemProperties.getBoolean("findbugs.profiler.allocation");
+    final static int SLOWEST = SystemProperties.getInt("findbugs.profiler.slowest", 0);
+    final static String EXPORT = SystemProperties.getProperty("findbugs.profiler.export");
+
+    /** Number of slowest calls kept when exporting without findbugs.profiler.slowest */
+    private static final int DEFAULT_SLOWEST = 20;
+
+    private final List<ProfilerListener> listeners = new CopyOnWriteArrayList<ProfilerListener>();
+
+    private final ProfileExporter exporter;
 
     public Profiler() {
-        startTimes = new Stack<Clock>();
         profile = new ConcurrentHashMap<Class<?>, Profile>();
         if (REPORT) {
             System.err.println("Profiling activated");
         }
+        if (SLOWEST > 0 || EXPORT != null) {
+            exporter = new ProfileExporter(this, SLOWEST > 0 ? SLOWEST : DEFAULT_SLOWEST);
+            addListener(exporter);
+        } else {
+            exporter = null;
+        }
+    }
+
+    /**
+     * Add a listener to be notified of timed calls and analyzed classes.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addListener(ProfilerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ProfilerListener listener) {
+        listeners.remove(listener);
     }
 
     public static interface Filter {
@@ -121,6 +170,8 @@ public class Profiler implements XMLWriteable {
 
         final AtomicLong totalSquareMicroseconds = new AtomicLong();
 
+        final AtomicLong totalAllocatedBytes = new AtomicLong();
+
         private final String className;
 
         Object maxContext;
@@ -134,8 +185,13 @@ public class Profiler implements XMLWriteable {
         }
 
         public void handleCall(long nanoTime, Object context) {
+            handleCall(nanoTime, 0, context);
+        }
+
+        public void handleCall(long nanoTime, long allocatedBytes, Object context) {
             totalCalls.incrementAndGet();
             totalTime.addAndGet(nanoTime);
+            totalAllocatedBytes.addAndGet(allocatedBytes);
             long oldMax = maxTime.get();
             if (nanoTime > oldMax) {
                 maxTime.compareAndSet(oldMax, nanoTime);
@@ -147,10 +203,33 @@ public class Profiler implements XMLWriteable {
             totalSquareMicroseconds.addAndGet(microseconds * microseconds);
         }
 
+        /**
+         * @return the full qualified name of the profiled class
+         */
+        public String getClassName() {
+            return className;
+        }
+
         public long getTotalTime() {
             return totalTime.get();
         }
 
+        public int getTotalCalls() {
+            return totalCalls.get();
+        }
+
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+
+        /**
+         * @return the number of bytes allocated, or 0 if allocations are not
+         *         measured
+         */
+        public long getTotalAllocatedBytes() {
+            return totalAllocatedBytes.get();
+        }
+
         /**
          * @param xmlOutput
          * @throws IOException
@@ -189,58 +268,166 @@ public class Profiler implements XMLWriteable {
     static class Clock {
         final Class<?> clazz;
 
+        final Object subject;
+
         long startTimeNanos;
 
         long accumulatedTime;
 
-        Clock(Class<?> clazz, long currentNanoTime) {
+        long startAllocatedBytes;
+
+        long accumulatedAllocatedBytes;
+
+        Clock(Class<?> clazz, @CheckForNull Object subject, long currentNanoTime, long currentAllocatedBytes) {
             this.clazz = clazz;
+            this.subject = subject;
             startTimeNanos = currentNanoTime;
+            startAllocatedBytes = currentAllocatedBytes;
         }
 
-        void accumulateTime(long currentNanoTime) {
+        void accumulateTime(long currentNanoTime, long currentAllocatedBytes) {
             accumulatedTime += currentNanoTime - startTimeNanos;
+            accumulatedAllocatedBytes += currentAllocatedBytes - startAllocatedBytes;
         }
 
-        void restartClock(long currentNanoTime) {
+        void restartClock(long currentNanoTime, long currentAllocatedBytes) {
             startTimeNanos = currentNanoTime;
+            startAllocatedBytes = currentAllocatedBytes;
         }
 
     }
 
-    final Stack<Clock> startTimes;
+    static class ContextFrame {
+        final Object context;
+
+        final long startTimeNanos;
+
+        final long startAllocatedBytes;
+
+        ContextFrame(Object context, long startTimeNanos, long startAllocatedBytes) {
+            this.context = context;
+            this.startTimeNanos = startTimeNanos;
+            this.startAllocatedBytes = startAllocatedBytes;
+        }
+    }
+
+    /**
+     * Measures the bytes allocated by the current thread. Kept in its own
+     * class so that JVMs without com.sun.management only fail here.
+     */
+    static class AllocationMeter {
+        static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+
+        private static com.sun.management.ThreadMXBean getThreadBean() {
+            try {
+                java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                    if (sunBean.isThreadAllocatedMemorySupported()) {
+                        sunBean.setThreadAllocatedMemoryEnabled(true);
+                        return sunBean;
+                    }
+                }
+            } catch (LinkageError e) {
+                assert true;
+            } catch (RuntimeException e) {
+                assert true;
+            }
+            System.err.println("Measuring allocations is not supported by this JVM");
+            return null;
+        }
+
+        static long currentThreadAllocatedBytes() {
+            if (THREAD_BEAN == null) {
+                return 0;
+            }
+            return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+
+    private static long currentAllocatedBytes() {
+        if (!ALLOCATION) {
+            return 0;
+        }
+        try {
+            return AllocationMeter.currentThreadAllocatedBytes();
+        } catch (LinkageError e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Timer and context stacks are kept per thread, so that the profiler can
+     * be shared by the analysis worker threads (see FindBugs2 -threads).
+     */
+    final ThreadLocal<Stack<Clock>> startTimes = new ThreadLocal<Stack<Clock>>() {
+        @Override
+        protected Stack<Clock> initialValue() {
+            return new Stack<Clock>();
+        }
+    };
 
     final ConcurrentMap<Class<?>, Profile> profile;
 
-    final Stack<Object> context = new Stack<Object>();
+    final ThreadLocal<Stack<ContextFrame>> context = new ThreadLocal<Stack<ContextFrame>>() {
+        @Override
+        protected Stack<ContextFrame> initialValue() {
+            return new Stack<ContextFrame>();
+        }
+    };
 
     public void startContext(Object context) {
-        this.context.push(context);
+        this.context.get().push(new ContextFrame(context, System.nanoTime(), currentAllocatedBytes()));
     }
 
     public void endContext(Object context) {
-        Object o = this.context.pop();
-        assert o == context;
+        ContextFrame frame = this.context.get().pop();
+        assert frame.context == context;
+        if (listeners.isEmpty()) {
+            return;
+        }
+        long nanos = System.nanoTime() - frame.startTimeNanos;
+        long allocatedBytes = currentAllocatedBytes() - frame.startAllocatedBytes;
+        for (ProfilerListener listener : listeners) {
+            listener.contextFinished(frame.context, nanos, allocatedBytes);
+        }
     }
 
     private Object getContext() {
-        if (context.size() == 0) {
+        Stack<ContextFrame> stack = context.get();
+        if (stack.size() == 0) {
             return "";
         }
         try {
-            return context.peek();
+            return stack.peek().context;
         } catch (EmptyStackException e) {
             return "";
         }
     }
+
     public void start(Class<?> c) {
+        start(c, null);
+    }
+
+    /**
+     * Start timing a call.
+     *
+     * @param c
+     *            the class being timed
+     * @param subject
+     *            what the call works on, e.g. the descriptor of the class or
+     *            method an analysis engine analyzes; if null, the current
+     *            context is used
+     */
+    public void start(Class<?> c, @CheckForNull Object subject) {
         long currentNanoTime = System.nanoTime();
+        long currentAllocatedBytes = currentAllocatedBytes();
 
-        Stack<Clock> stack = startTimes;
+        Stack<Clock> stack = startTimes.get();
         if (!stack.isEmpty()) {
-            stack.peek().accumulateTime(currentNanoTime);
+            stack.peek().accumulateTime(currentNanoTime, currentAllocatedBytes);
         }
-        stack.push(new Clock(c, currentNanoTime));
+        stack.push(new Clock(c, subject, currentNanoTime, currentAllocatedBytes));
         // System.err.println("push " + c.getSimpleName());
 
     }
@@ -248,17 +435,18 @@ public class Profiler implements XMLWriteable {
     public void end(Class<?> c) {
         // System.err.println("pop " + c.getSimpleName());
         long currentNanoTime = System.nanoTime();
+        long currentAllocatedBytes = currentAllocatedBytes();
 
-        Stack<Clock> stack = startTimes;
+        Stack<Clock> stack = startTimes.get();
         Clock ending = stack.pop();
         if (ending.clazz != c) {
             throw new AssertionError("Asked to end timing for " + c + " but top of stack is " + ending.clazz
                     + ", remaining stack is " + stack);
         }
-        ending.accumulateTime(currentNanoTime);
+        ending.accumulateTime(currentNanoTime, currentAllocatedBytes);
         if (!stack.isEmpty()) {
             Clock restarting = stack.peek();
-            restarting.restartClock(currentNanoTime);
+            restarting.restartClock(currentNanoTime, currentAllocatedBytes);
         }
         long accumulatedTime = ending.accumulatedTime;
         if (accumulatedTime == 0) {
@@ -272,8 +460,11 @@ public class Profiler implements XMLWriteable {
                 counter = counter2;
             }
         }
-        counter.handleCall(accumulatedTime, getContext());
-
+        Object subject = ending.subject != null ? ending.subject : getContext();
+        counter.handleCall(accumulatedTime, ending.accumulatedAllocatedBytes, subject);
+        for (ProfilerListener listener : listeners) {
+            listener.callFinished(c, subject, accumulatedTime, ending.accumulatedAllocatedBytes);
+        }
     }
 
     public static class ClassNameComparator implements Comparator<Class<?>>, Serializable {
@@ -369,10 +560,22 @@ public class Profiler implements XMLWriteable {
      * class statistics based on total time spent fot a class
      */
     public void report() {
-        if (!REPORT) {
+        if (REPORT) {
+            report(new TotalTimeComparator(this), new FilterByTime(10000000), System.err);
+        }
+        if (exporter == null) {
             return;
         }
-        report(new TotalTimeComparator(this), new FilterByTime(10000000), System.err);
+        if (SLOWEST > 0) {
+            exporter.reportSlowest(System.err);
+        }
+        if (EXPORT != null) {
+            try {
+                exporter.export(new File(EXPORT));
+            } catch (IOException e) {
+                System.err.println("Could not write profile to " + EXPORT + ": " + e);
+            }
+        }
     }
 
     /**
@@ -417,7 +620,14 @@ public class Profiler implements XMLWriteable {
      */
     public void clear() {
         profile.clear();
-        startTimes.clear();
+        startTimes.get().clear();
+    }
+
+    /**
+     * @return the classes for which a profile has been recorded
+     */
+    public Iterable<Class<?>> getProfiledClasses() {
+        return profile.keySet();
     }
 
     public Profile getProfile(Class<?> c) {
@@ -0,0 +1,67 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.log;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Listener notified by a {@link Profiler} each time a timed call finishes and
+ * each time a context (usually the class being analyzed) is left. Listeners
+ * are called from the thread that made the call, which may be any of the
+ * analysis threads, so implementations must be thread safe.
+ *
+ * @see Profiler#addListener(ProfilerListener)
+ */
+public interface ProfilerListener {
+
+    /**
+     * Called when a call timed by {@link Profiler#start(Class)} and
+     * {@link Profiler#end(Class)} finishes. Time and allocation spent in
+     * nested timed calls are not included.
+     *
+     * @param c
+     *            the class being timed (a detector, analysis engine, ...)
+     * @param subject
+     *            what the call was working on: the descriptor analyzed by an
+     *            analysis engine, otherwise the current context; null if
+     *            unknown
+     * @param nanos
+     *            the time spent in the call, in nanoseconds
+     * @param allocatedBytes
+     *            the number of bytes allocated by the call, or 0 if
+     *            allocations are not measured
+     */
+    public void callFinished(Class<?> c, @CheckForNull Object subject, long nanos, long allocatedBytes);
+
+    /**
+     * Called when a context entered with {@link Profiler#startContext(Object)}
+     * is left.
+     *
+     * @param context
+     *            the context, e.g. the name of the class being analyzed
+     * @param nanos
+     *            the time spent in the context, including all the calls made
+     *            in it, in nanoseconds
+     * @param allocatedBytes
+     *            the number of bytes allocated in the context, or 0 if
+     *            allocations are not measured
+     */
+    public void contextFinished(Object context, long nanos, long allocatedBytes);
+}
@@ -20,6 +20,8 @@
 package edu.umd.cs.findbugs.plan;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -42,6 +44,9 @@ public class AnalysisPass {
 
     private final HashSet<DetectorFactory> memberSet;
 
+    /** Detectors each detector must be applied after, by intra-pass constraints */
+    private final HashMap<DetectorFactory, Set<DetectorFactory>> earlierMap;
+
     // private Detector2[] detectorList;
 
     /**
@@ -52,6 +57,7 @@ public class AnalysisPass {
     public AnalysisPass() {
         this.orderedFactoryList = new LinkedList<DetectorFactory>();
         this.memberSet = new HashSet<DetectorFactory>();
+        this.earlierMap = new HashMap<DetectorFactory, Set<DetectorFactory>>();
     }
 
     /**
@@ -79,6 +85,40 @@ public class AnalysisPass {
         this.orderedFactoryList.addLast(factory);
     }
 
+    /**
+     * Record that a detector must be applied to a class after another one,
+     * because of an intra-pass ordering constraint.
+     *
+     * @param earlier
+     *            the detector applied first
+     * @param later
+     *            the detector applied after it
+     */
+    public void addOrderingConstraint(DetectorFactory earlier, DetectorFactory later) {
+        Set<DetectorFactory> earlierSet = earlierMap.get(later);
+        if (earlierSet == null) {
+            earlierSet = new HashSet<DetectorFactory>();
+            earlierMap.put(later, earlierSet);
+        }
+        earlierSet.add(earlier);
+    }
+
+    /**
+     * Get the detectors a detector must be applied after, because of
+     * intra-pass ordering constraints.
+     *
+     * @param factory
+     *            a DetectorFactory
+     * @return the detectors directly constrained to be applied before it
+     */
+    public Set<DetectorFactory> getEarlierDetectors(DetectorFactory factory) {
+        Set<DetectorFactory> earlierSet = earlierMap.get(factory);
+        if (earlierSet == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(earlierSet);
+    }
+
     /**
      * Get the members of this pass.
      *
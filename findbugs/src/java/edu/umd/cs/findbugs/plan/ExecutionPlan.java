@@ -450,6 +450,13 @@ public class ExecutionPlan {
             throw new OrderingConstraintException("Cycle in intra-pass ordering constraints!");
         }
 
+        // Remember the constraints, so detectors can be applied out of
+        // order when they aren't constrained
+        for (Iterator<ConstraintEdge> i = constraintGraph.edgeIterator(); i.hasNext();) {
+            ConstraintEdge edge = i.next();
+            pass.addOrderingConstraint(edge.getSource().getFactory(), edge.getTarget().getFactory());
+        }
+
         // Do a topological sort to put the detectors in the pass
         // in the right order.
         for (Iterator<DetectorNode> i = dfs.topologicalSortIterator(); i.hasNext();) {
@@ -162,6 +162,25 @@ public class Strings {
      *      javadoc</a>
      */
     public static String escapeXml(String s) {
+        if (s == null || s.length() == 0) {
+            return s;
+        }
+
+        return StringEscapeUtils.escapeXml(escapeInvalidXMLCharacters(s));
+    }
+
+    /**
+     * Escape the characters not permitted by the XML specification in the
+     * given string, as {@link #escapeXml(String)} does, but leave XML entities
+     * alone. The result is what an XML parser reports for a string written
+     * with {@link #escapeXml(String)}.
+     *
+     * @param s
+     *            a string
+     * @return the same string with characters not permitted by the XML
+     *         specification escaped
+     */
+    public static String escapeInvalidXMLCharacters(String s) {
         initializeEscapeMap();
 
         if (s == null || s.length() == 0) {
@@ -181,11 +200,14 @@ public class Strings {
                 lastReplacement = i + 1;
             }
         }
+        if (lastReplacement == 0) {
+            return s;
+        }
         if (lastReplacement < sChars.length) {
             sb.append(sChars, lastReplacement, sChars.length - lastReplacement);
         }
 
-        return StringEscapeUtils.escapeXml(sb.toString());
+        return sb.toString();
     }
 
     private static final String unicodeUnescapeMatchExpression = "(\\\\*)(\\\\u)(\\p{XDigit}{4})";
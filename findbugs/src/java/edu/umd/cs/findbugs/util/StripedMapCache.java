@@ -0,0 +1,150 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * A thread-safe cache, split into a number of independently locked stripes.
+ * If a maximum size is given, each stripe is a {@link MapCache} discarding its
+ * least recently used entries, so that the whole cache stays within (about)
+ * the maximum size; otherwise entries are never discarded.
+ */
+public class StripedMapCache<K, V> {
+
+    private static final int MAX_STRIPES = 16;
+
+    /** Smallest number of entries a bounded stripe should hold */
+    private static final int MIN_STRIPE_SIZE = 32;
+
+    private final List<Map<K, V>> stripes;
+
+    private final int maxSize;
+
+    /**
+     * Create a new StripedMapCache
+     *
+     * @param maxSize
+     *            maximum number of entries in the cache, or a non-positive
+     *            value for an unbounded cache
+     */
+    public StripedMapCache(int maxSize) {
+        this.maxSize = maxSize;
+        int numStripes = maxSize <= 0 ? MAX_STRIPES : Math.max(1, Math.min(MAX_STRIPES, maxSize / MIN_STRIPE_SIZE));
+        stripes = new ArrayList<Map<K, V>>(numStripes);
+        for (int i = 0; i < numStripes; i++) {
+            if (maxSize <= 0) {
+                stripes.add(new HashMap<K, V>());
+            } else {
+                stripes.add(new MapCache<K, V>((maxSize + numStripes - 1) / numStripes));
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of entries, or a non-positive value if the
+     *         cache is unbounded
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private Map<K, V> stripe(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes.get((h & 0x7fffffff) % stripes.size());
+    }
+
+    public @CheckForNull V get(K key) {
+        Map<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public void put(K key, V value) {
+        Map<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, value);
+        }
+    }
+
+    public void putAll(Map<? extends K, ? extends V> map) {
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    public @CheckForNull V remove(K key) {
+        Map<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Map<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return a copy of the values currently in the cache
+     */
+    public List<V> values() {
+        List<V> result = new ArrayList<V>();
+        for (Map<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                result.addAll(stripe.values());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the contents of the cache
+     */
+    public Map<K, V> toMap() {
+        Map<K, V> result = new HashMap<K, V>();
+        for (Map<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                result.putAll(stripe);
+            }
+        }
+        return result;
+    }
+}
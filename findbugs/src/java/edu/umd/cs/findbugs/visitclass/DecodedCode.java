@@ -0,0 +1,547 @@
+/*
+ * FindBugs - Find bugs in Java programs
+ * Copyright (C) 2003,2004 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.visitclass;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantFloat;
+import org.apache.bcel.classfile.ConstantInteger;
+import org.apache.bcel.classfile.ConstantInvokeDynamic;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.ConstantUtf8;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+
+/**
+ * The instructions of a Code attribute, with their operands read and their
+ * constant pool references resolved. DismantleBytecode dispatches its
+ * sawOpcode() and related events from this table rather than parsing the
+ * bytecode itself. DecodedCode objects are cached in the analysis cache, so
+ * the bytecode of a method is decoded once and shared by all the detectors
+ * visiting it.
+ *
+ * @see DismantleBytecode
+ * @see edu.umd.cs.findbugs.classfile.engine.bcel.DecodedCodeFactory
+ */
+public class DecodedCode implements Constants2 {
+
+    static final int INVALID_OFFSET = Integer.MIN_VALUE;
+
+    static final String NOT_AVAILABLE = SlashedClassName.NOT_AVAILABLE;
+
+    /** The instruction has an int operand, or an int constant operand */
+    static final int HAS_INT = 1;
+
+    static final int HAS_LONG = 2;
+
+    static final int HAS_FLOAT = 4;
+
+    static final int HAS_DOUBLE = 8;
+
+    /** The instruction is a (non-switch) branch */
+    static final int IS_BRANCH = 16;
+
+    /** The instruction references a field or method through a ConstantCP */
+    static final int HAS_REF = 32;
+
+    static final int IS_WIDE = 64;
+
+    static final int IS_REGISTER_LOAD = 128;
+
+    static final int IS_REGISTER_STORE = 256;
+
+    static final int REF_FIELD_IS_STATIC = 512;
+
+    /**
+     * One decoded instruction. Fields which don't apply to the instruction
+     * have the values DismantleBytecode resets them to.
+     */
+    static final class Instruction {
+        int pc;
+
+        int nextPC;
+
+        int opcode;
+
+        int flags;
+
+        int registerOperand = -1;
+
+        int intConstant;
+
+        long longConstant;
+
+        float floatConstant;
+
+        double doubleConstant;
+
+        int branchOffset = INVALID_OFFSET;
+
+        int defaultSwitchOffset = INVALID_OFFSET;
+
+        int switchLow;
+
+        int switchHigh;
+
+        int[] switchOffsets;
+
+        int[] switchLabels;
+
+        Constant constantRefOperand;
+
+        @SlashedClassName
+        String classConstantOperand = NOT_AVAILABLE;
+
+        String nameConstantOperand = NOT_AVAILABLE;
+
+        String sigConstantOperand = NOT_AVAILABLE;
+
+        String stringConstantOperand = NOT_AVAILABLE;
+
+        ClassDescriptor referencedClass;
+
+        boolean is(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private final Code code;
+
+    final Instruction[] instructions;
+
+    private final IOException truncation;
+
+    private final RuntimeException failure;
+
+    private DecodedCode(Code code, Instruction[] instructions, @CheckForNull IOException truncation,
+            @CheckForNull RuntimeException failure) {
+        this.code = code;
+        this.instructions = instructions;
+        this.truncation = truncation;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the Code attribute that was decoded
+     */
+    public Code getCode() {
+        return code;
+    }
+
+    /**
+     * @return the number of instructions decoded
+     */
+    public int getNumInstructions() {
+        return instructions.length;
+    }
+
+    /**
+     * @return the exception thrown if the bytecode ended in the middle of an
+     *         instruction, or null
+     */
+    @CheckForNull
+    IOException getTruncation() {
+        return truncation;
+    }
+
+    /**
+     * @return the exception thrown if the bytecode could not be decoded, or
+     *         null; the instructions before the invalid one are decoded
+     */
+    @CheckForNull
+    RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Decode the instructions of a Code attribute.
+     *
+     * @param code
+     *            the Code attribute
+     * @return the decoded instructions
+     */
+    public static DecodedCode decode(Code code) {
+        ConstantPool constantPool = code.getConstantPool();
+        byte[] codeBytes = code.getCode();
+        DataInputStream byteStream = new DataInputStream(new ByteArrayInputStream(codeBytes));
+        List<Instruction> instructions = new ArrayList<Instruction>();
+        IOException truncation = null;
+        RuntimeException failure = null;
+        try {
+            for (int i = 0; i < codeBytes.length;) {
+                Instruction insn = new Instruction();
+                insn.pc = i;
+                i = decode(insn, byteStream, i, constantPool);
+                insn.nextPC = i;
+                instructions.add(insn);
+            }
+        } catch (IOException e) {
+            truncation = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        return new DecodedCode(code, instructions.toArray(new Instruction[instructions.size()]), truncation, failure);
+    }
+
+    /**
+     * Decode one instruction.
+     *
+     * @return the offset of the next instruction
+     */
+    private static int decode(Instruction insn, DataInputStream byteStream, int i, ConstantPool constantPool)
+            throws IOException {
+        int pc = i;
+        int opcode = byteStream.readUnsignedByte();
+        i++;
+        int byteStreamArgCount = NO_OF_OPERANDS[opcode];
+        if (byteStreamArgCount == UNPREDICTABLE) {
+
+            if (opcode == LOOKUPSWITCH) {
+                int pad = 4 - (i & 3);
+                if (pad == 4) {
+                    pad = 0;
+                }
+                int count = pad;
+                while (count > 0) {
+                    count -= byteStream.skipBytes(count);
+                }
+                i += pad;
+                insn.defaultSwitchOffset = byteStream.readInt();
+                insn.branchOffset = insn.defaultSwitchOffset;
+                i += 4;
+                int npairs = byteStream.readInt();
+                i += 4;
+                int[] switchOffsets = new int[npairs];
+                int[] switchLabels = new int[npairs];
+                for (int o = 0; o < npairs; o++) {
+                    switchLabels[o] = byteStream.readInt();
+                    switchOffsets[o] = byteStream.readInt();
+                    i += 8;
+                }
+                sortByOffset(switchOffsets, switchLabels);
+                insn.switchOffsets = switchOffsets;
+                insn.switchLabels = switchLabels;
+            } else if (opcode == TABLESWITCH) {
+                int pad = 4 - (i & 3);
+                if (pad == 4) {
+                    pad = 0;
+                }
+                int count = pad;
+                while (count > 0) {
+                    count -= byteStream.skipBytes(count);
+                }
+                i += pad;
+                insn.defaultSwitchOffset = byteStream.readInt();
+                insn.branchOffset = insn.defaultSwitchOffset;
+                i += 4;
+                int switchLow = byteStream.readInt();
+                i += 4;
+                int switchHigh = byteStream.readInt();
+                i += 4;
+                int npairs = switchHigh - switchLow + 1;
+                int[] switchOffsets = new int[npairs];
+                int[] switchLabels = new int[npairs];
+                for (int o = 0; o < npairs; o++) {
+                    switchLabels[o] = o + switchLow;
+                    switchOffsets[o] = byteStream.readInt();
+                    i += 4;
+                }
+                sortByOffset(switchOffsets, switchLabels);
+                insn.switchLow = switchLow;
+                insn.switchHigh = switchHigh;
+                insn.switchOffsets = switchOffsets;
+                insn.switchLabels = switchLabels;
+            } else if (opcode == WIDE) {
+                insn.flags |= IS_WIDE;
+                opcode = byteStream.readUnsignedByte();
+                i++;
+                switch (opcode) {
+                case ILOAD:
+                case FLOAD:
+                case ALOAD:
+                case LLOAD:
+                case DLOAD:
+                case ISTORE:
+                case FSTORE:
+                case ASTORE:
+                case LSTORE:
+                case DSTORE:
+                case RET:
+                    insn.registerOperand = byteStream.readUnsignedShort();
+                    i += 2;
+                    break;
+                case IINC:
+                    insn.registerOperand = byteStream.readUnsignedShort();
+                    i += 2;
+                    insn.intConstant = byteStream.readShort();
+                    insn.flags |= HAS_INT;
+                    i += 2;
+                    break;
+                default:
+                    throw new IllegalStateException(String.format("bad wide bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
+                }
+            } else {
+                throw new IllegalStateException(String.format("bad unpredicatable bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
+            }
+        } else {
+            if (byteStreamArgCount < 0) {
+                throw new IllegalStateException(String.format("bad length for bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
+            }
+            for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
+
+                int v;
+                int t = TYPE_OF_OPERANDS[opcode][k];
+                int m = DismantleBytecode.MEANING_OF_OPERANDS[opcode][k];
+                boolean unsigned = (m == DismantleBytecode.M_CP || m == DismantleBytecode.M_R || m == DismantleBytecode.M_UINT);
+                switch (t) {
+                case T_BYTE:
+                    if (unsigned) {
+                        v = byteStream.readUnsignedByte();
+                    } else {
+                        v = byteStream.readByte();
+                    }
+                    i++;
+                    break;
+                case T_SHORT:
+                    if (unsigned) {
+                        v = byteStream.readUnsignedShort();
+                    } else {
+                        v = byteStream.readShort();
+                    }
+                    i += 2;
+                    break;
+                case T_INT:
+                    v = byteStream.readInt();
+                    i += 4;
+                    break;
+                default:
+                    throw new IllegalStateException();
+                }
+                switch (m) {
+                case DismantleBytecode.M_BR:
+                    insn.branchOffset = v;
+                    insn.flags |= IS_BRANCH;
+                    break;
+                case DismantleBytecode.M_CP:
+                    decodeConstant(insn, constantPool, v);
+                    break;
+                case DismantleBytecode.M_R:
+                    insn.registerOperand = v;
+                    break;
+                case DismantleBytecode.M_UINT:
+                case DismantleBytecode.M_INT:
+                    insn.intConstant = v;
+                    insn.flags |= HAS_INT;
+                    break;
+                case DismantleBytecode.M_PAD:
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpecting meaning " + m);
+                }
+            }
+
+        }
+        insn.opcode = opcode;
+        decodeRegisterAccess(insn);
+        return i;
+    }
+
+    private static void decodeConstant(Instruction insn, ConstantPool constantPool, int index) {
+        Constant constantRefOperand = constantPool.getConstant(index);
+        insn.constantRefOperand = constantRefOperand;
+        if (constantRefOperand instanceof ConstantClass) {
+            ConstantClass clazz = (ConstantClass) constantRefOperand;
+            insn.classConstantOperand = getStringFromIndex(constantPool, clazz.getNameIndex());
+            insn.referencedClass = DescriptorFactory.createClassDescriptor(insn.classConstantOperand);
+
+        } else if (constantRefOperand instanceof ConstantInteger) {
+            insn.intConstant = ((ConstantInteger) constantRefOperand).getBytes();
+            insn.flags |= HAS_INT;
+        } else if (constantRefOperand instanceof ConstantLong) {
+            insn.longConstant = ((ConstantLong) constantRefOperand).getBytes();
+            insn.flags |= HAS_LONG;
+        } else if (constantRefOperand instanceof ConstantFloat) {
+            insn.floatConstant = ((ConstantFloat) constantRefOperand).getBytes();
+            insn.flags |= HAS_FLOAT;
+        } else if (constantRefOperand instanceof ConstantDouble) {
+            insn.doubleConstant = ((ConstantDouble) constantRefOperand).getBytes();
+            insn.flags |= HAS_DOUBLE;
+        } else if (constantRefOperand instanceof ConstantString) {
+            int s = ((ConstantString) constantRefOperand).getStringIndex();
+
+            insn.stringConstantOperand = getStringFromIndex(constantPool, s);
+        } else if (constantRefOperand instanceof ConstantInvokeDynamic) {
+            ConstantInvokeDynamic id = (ConstantInvokeDynamic) constantRefOperand;
+            ConstantNameAndType sig = (ConstantNameAndType) constantPool.getConstant(id.getNameAndTypeIndex());
+            insn.nameConstantOperand = getStringFromIndex(constantPool, sig.getNameIndex());
+            insn.sigConstantOperand = getStringFromIndex(constantPool, sig.getSignatureIndex());
+        } else if (constantRefOperand instanceof ConstantCP) {
+            ConstantCP cp = (ConstantCP) constantRefOperand;
+            ConstantClass clazz = (ConstantClass) constantPool.getConstant(cp.getClassIndex());
+            insn.classConstantOperand = getStringFromIndex(constantPool, clazz.getNameIndex());
+            insn.referencedClass = DescriptorFactory.createClassDescriptor(insn.classConstantOperand);
+            ConstantNameAndType sig = (ConstantNameAndType) constantPool.getConstant(cp.getNameAndTypeIndex());
+            insn.nameConstantOperand = getStringFromIndex(constantPool, sig.getNameIndex());
+            insn.sigConstantOperand = getStringFromIndex(constantPool, sig.getSignatureIndex());
+            insn.flags |= HAS_REF;
+        }
+    }
+
+    private static void decodeRegisterAccess(Instruction insn) {
+        int opcode = insn.opcode;
+        switch (opcode) {
+        case IINC:
+            insn.flags |= IS_REGISTER_LOAD | IS_REGISTER_STORE;
+            break;
+        case ILOAD_0:
+        case ILOAD_1:
+        case ILOAD_2:
+        case ILOAD_3:
+            insn.registerOperand = opcode - ILOAD_0;
+            insn.flags |= IS_REGISTER_LOAD;
+            break;
+        case ALOAD_0:
+        case ALOAD_1:
+        case ALOAD_2:
+        case ALOAD_3:
+            insn.registerOperand = opcode - ALOAD_0;
+            insn.flags |= IS_REGISTER_LOAD;
+            break;
+        case FLOAD_0:
+        case FLOAD_1:
+        case FLOAD_2:
+        case FLOAD_3:
+            insn.registerOperand = opcode - FLOAD_0;
+            insn.flags |= IS_REGISTER_LOAD;
+            break;
+        case DLOAD_0:
+        case DLOAD_1:
+        case DLOAD_2:
+        case DLOAD_3:
+            insn.registerOperand = opcode - DLOAD_0;
+            insn.flags |= IS_REGISTER_LOAD;
+            break;
+        case LLOAD_0:
+        case LLOAD_1:
+        case LLOAD_2:
+        case LLOAD_3:
+            insn.registerOperand = opcode - LLOAD_0;
+            insn.flags |= IS_REGISTER_LOAD;
+            break;
+        case ILOAD:
+        case FLOAD:
+        case ALOAD:
+        case LLOAD:
+        case DLOAD:
+            insn.flags |= IS_REGISTER_LOAD;
+            break;
+        case ISTORE_0:
+        case ISTORE_1:
+        case ISTORE_2:
+        case ISTORE_3:
+            insn.registerOperand = opcode - ISTORE_0;
+            insn.flags |= IS_REGISTER_STORE;
+            break;
+        case ASTORE_0:
+        case ASTORE_1:
+        case ASTORE_2:
+        case ASTORE_3:
+            insn.registerOperand = opcode - ASTORE_0;
+            insn.flags |= IS_REGISTER_STORE;
+            break;
+        case FSTORE_0:
+        case FSTORE_1:
+        case FSTORE_2:
+        case FSTORE_3:
+            insn.registerOperand = opcode - FSTORE_0;
+            insn.flags |= IS_REGISTER_STORE;
+            break;
+        case DSTORE_0:
+        case DSTORE_1:
+        case DSTORE_2:
+        case DSTORE_3:
+            insn.registerOperand = opcode - DSTORE_0;
+            insn.flags |= IS_REGISTER_STORE;
+            break;
+        case LSTORE_0:
+        case LSTORE_1:
+        case LSTORE_2:
+        case LSTORE_3:
+            insn.registerOperand = opcode - LSTORE_0;
+            insn.flags |= IS_REGISTER_STORE;
+            break;
+        case ISTORE:
+        case FSTORE:
+        case ASTORE:
+        case LSTORE:
+        case DSTORE:
+            insn.flags |= IS_REGISTER_STORE;
+            break;
+        case GETSTATIC:
+        case PUTSTATIC:
+            insn.flags |= REF_FIELD_IS_STATIC;
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static String getStringFromIndex(ConstantPool constantPool, int i) {
+        ConstantUtf8 name = (ConstantUtf8) constantPool.getConstant(i);
+        return name.getBytes();
+    }
+
+    private static void sortByOffset(int[] switchOffsets, int[] switchLabels) {
+        int npairs = switchOffsets.length;
+        // Sort by offset
+        for (int j = 0; j < npairs; j++) {
+            int min = j;
+            for (int k = j + 1; k < npairs; k++) {
+                if (switchOffsets[min] > switchOffsets[k]) {
+                    min = k;
+                }
+            }
+            if (min > j) {
+                int tmp = switchOffsets[min];
+                switchOffsets[min] = switchOffsets[j];
+                switchOffsets[j] = tmp;
+                tmp = switchLabels[min];
+                switchLabels[min] = switchLabels[j];
+                switchLabels[j] = tmp;
+            }
+        }
+    }
+}
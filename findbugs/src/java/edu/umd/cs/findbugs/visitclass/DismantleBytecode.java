@@ -19,9 +19,6 @@
 
 package edu.umd.cs.findbugs.visitclass;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
 import java.text.NumberFormat;
 
 import javax.annotation.CheckForNull;
@@ -29,20 +26,18 @@ import javax.annotation.CheckForNull;
 import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.CodeException;
 import org.apache.bcel.classfile.Constant;
-import org.apache.bcel.classfile.ConstantCP;
 import org.apache.bcel.classfile.ConstantClass;
 import org.apache.bcel.classfile.ConstantDouble;
 import org.apache.bcel.classfile.ConstantFieldref;
 import org.apache.bcel.classfile.ConstantFloat;
 import org.apache.bcel.classfile.ConstantInteger;
 import org.apache.bcel.classfile.ConstantInterfaceMethodref;
-import org.apache.bcel.classfile.ConstantInvokeDynamic;
 import org.apache.bcel.classfile.ConstantLong;
 import org.apache.bcel.classfile.ConstantMethodref;
-import org.apache.bcel.classfile.ConstantNameAndType;
 import org.apache.bcel.classfile.ConstantString;
 import org.apache.bcel.classfile.LineNumberTable;
 
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.Hierarchy2;
@@ -131,6 +126,8 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
 
     private static final String NOT_AVAILABLE = SlashedClassName.NOT_AVAILABLE;
 
+    private static final boolean UNSHARED_DECODED_CODE = SystemProperties.getBoolean("findbugs.decodedCode.unshared");
+
     static String replaceSlashesWithDots(String c) {
         return c.replace('/', '.');
     }
@@ -489,27 +486,6 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         referencedXField = null;
     }
 
-    private static void sortByOffset(int[] switchOffsets, int[] switchLabels) {
-        int npairs = switchOffsets.length;
-        // Sort by offset
-        for (int j = 0; j < npairs; j++) {
-            int min = j;
-            for (int k = j + 1; k < npairs; k++) {
-                if (switchOffsets[min] > switchOffsets[k]) {
-                    min = k;
-                }
-            }
-            if (min > j) {
-                int tmp = switchOffsets[min];
-                switchOffsets[min] = switchOffsets[j];
-                switchOffsets[j] = tmp;
-                tmp = switchLabels[min];
-                switchLabels[min] = switchLabels[j];
-                switchLabels[j] = tmp;
-            }
-        }
-    }
-
     public int getMaxPC() {
         return codeBytes.length - 1;
     }
@@ -540,418 +516,164 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         sizePrevOpcodeBuffer = 0;
         currentPosInPrevOpcodeBuffer = prevOpcode.length - 1;
 
-        int switchLow = 1000000;
-        int switchHigh = -1000000;
         codeBytes = obj.getCode();
-        DataInputStream byteStream = new DataInputStream(new ByteArrayInputStream(codeBytes));
 
         lineNumberTable = obj.getLineNumberTable();
 
-        try {
-            for (int i = 0; i < codeBytes.length;) {
-                resetState();
-                PC = i;
-                opcodeIsWide = false;
-                opcode = byteStream.readUnsignedByte();
-
-                sizePrevOpcodeBuffer++;
-                currentPosInPrevOpcodeBuffer++;
-                if (currentPosInPrevOpcodeBuffer >= prevOpcode.length) {
-                    currentPosInPrevOpcodeBuffer = 0;
-                }
-                prevOpcode[currentPosInPrevOpcodeBuffer] = opcode;
-                i++;
-                // System.out.println(OPCODE_NAMES[opCode]);
-                int byteStreamArgCount = NO_OF_OPERANDS[opcode];
-                if (byteStreamArgCount == UNPREDICTABLE) {
-
-                    if (opcode == LOOKUPSWITCH) {
-                        int pad = 4 - (i & 3);
-                        if (pad == 4) {
-                            pad = 0;
-                        }
-                        int count = pad;
-                        while (count > 0) {
-                            count -= byteStream.skipBytes(count);
-                        }
-                        i += pad;
-                        defaultSwitchOffset = byteStream.readInt();
-                        branchOffset = defaultSwitchOffset;
-                        branchTarget = branchOffset + PC;
-                        i += 4;
-                        int npairs = byteStream.readInt();
-                        i += 4;
-                        switchOffsets = new int[npairs];
-                        switchLabels = new int[npairs];
-                        for (int o = 0; o < npairs; o++) {
-                            switchLabels[o] = byteStream.readInt();
-                            switchOffsets[o] = byteStream.readInt();
-                            i += 8;
-                        }
-                        sortByOffset(switchOffsets, switchLabels);
-                    } else if (opcode == TABLESWITCH) {
-                        int pad = 4 - (i & 3);
-                        if (pad == 4) {
-                            pad = 0;
-                        }
-                        int count = pad;
-                        while (count > 0) {
-                            count -= byteStream.skipBytes(count);
-                        }
-                        i += pad;
-                        defaultSwitchOffset = byteStream.readInt();
-                        branchOffset = defaultSwitchOffset;
-                        branchTarget = branchOffset + PC;
-                        i += 4;
-                        switchLow = byteStream.readInt();
-                        i += 4;
-                        switchHigh = byteStream.readInt();
-                        i += 4;
-                        int npairs = switchHigh - switchLow + 1;
-                        switchOffsets = new int[npairs];
-                        switchLabels = new int[npairs];
-                        for (int o = 0; o < npairs; o++) {
-                            switchLabels[o] = o + switchLow;
-                            switchOffsets[o] = byteStream.readInt();
-                            i += 4;
-                        }
-                        sortByOffset(switchOffsets, switchLabels);
-                    } else if (opcode == WIDE) {
-                        opcodeIsWide = true;
-                        opcode = byteStream.readUnsignedByte();
-                        i++;
-                        switch (opcode) {
-                        case ILOAD:
-                        case FLOAD:
-                        case ALOAD:
-                        case LLOAD:
-                        case DLOAD:
-                        case ISTORE:
-                        case FSTORE:
-                        case ASTORE:
-                        case LSTORE:
-                        case DSTORE:
-                        case RET:
-                            registerOperand = byteStream.readUnsignedShort();
-                            i += 2;
-                            break;
-                        case IINC:
-                            registerOperand = byteStream.readUnsignedShort();
-                            i += 2;
-                            intConstant = byteStream.readShort();
-                            i += 2;
-                            break;
-                        default:
-                            throw new IllegalStateException(String.format("bad wide bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
-                        }
-                    } else {
-                        throw new IllegalStateException(String.format("bad unpredicatable bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
-                    }
-                } else {
-                    if (byteStreamArgCount < 0) {
-                        throw new IllegalStateException(String.format("bad length for bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
-                    }
-                    for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
-
-                        int v;
-                        int t = TYPE_OF_OPERANDS[opcode][k];
-                        int m = MEANING_OF_OPERANDS[opcode][k];
-                        boolean unsigned = (m == M_CP || m == M_R || m == M_UINT);
-                        switch (t) {
-                        case T_BYTE:
-                            if (unsigned) {
-                                v = byteStream.readUnsignedByte();
-                            } else {
-                                v = byteStream.readByte();
-                            }
-                            /*
-                             * System.out.print("Read byte " + v);
-                             * System.out.println(" with meaning" + m);
-                             */
-                            i++;
-                            break;
-                        case T_SHORT:
-                            if (unsigned) {
-                                v = byteStream.readUnsignedShort();
-                            } else {
-                                v = byteStream.readShort();
-                            }
-                            i += 2;
-                            break;
-                        case T_INT:
-                            v = byteStream.readInt();
-                            i += 4;
-                            break;
-                        default:
-                            throw new IllegalStateException();
-                        }
-                        switch (m) {
-                        case M_BR:
-                            branchOffset = v;
-                            branchTarget = v + PC;
-                            branchFallThrough = i;
-                            break;
-                        case M_CP:
-                            constantRefOperand = getConstantPool().getConstant(v);
-                            if (constantRefOperand instanceof ConstantClass) {
-                                ConstantClass clazz = (ConstantClass) constantRefOperand;
-                                classConstantOperand = getStringFromIndex(clazz.getNameIndex());
-                                referencedClass = DescriptorFactory.createClassDescriptor(classConstantOperand);
-
-                            } else if (constantRefOperand instanceof ConstantInteger) {
-                                intConstant = ((ConstantInteger) constantRefOperand).getBytes();
-                            } else if (constantRefOperand instanceof ConstantLong) {
-                                longConstant = ((ConstantLong) constantRefOperand).getBytes();
-                            } else if (constantRefOperand instanceof ConstantFloat) {
-                                floatConstant = ((ConstantFloat) constantRefOperand).getBytes();
-                            } else if (constantRefOperand instanceof ConstantDouble) {
-                                doubleConstant = ((ConstantDouble) constantRefOperand).getBytes();
-                            } else if (constantRefOperand instanceof ConstantString) {
-                                int s = ((ConstantString) constantRefOperand).getStringIndex();
-
-                                stringConstantOperand = getStringFromIndex(s);
-                            } else if (constantRefOperand instanceof ConstantInvokeDynamic) {
-                                ConstantInvokeDynamic id = (ConstantInvokeDynamic) constantRefOperand;
-                                ConstantNameAndType sig = (ConstantNameAndType) getConstantPool().getConstant(
-                                        id.getNameAndTypeIndex());
-                                nameConstantOperand = getStringFromIndex(sig.getNameIndex());
-                                sigConstantOperand = getStringFromIndex(sig.getSignatureIndex());
-                            } else if (constantRefOperand instanceof ConstantCP) {
-                                ConstantCP cp = (ConstantCP) constantRefOperand;
-                                ConstantClass clazz = (ConstantClass) getConstantPool().getConstant(cp.getClassIndex());
-                                classConstantOperand = getStringFromIndex(clazz.getNameIndex());
-                                referencedClass = DescriptorFactory.createClassDescriptor(classConstantOperand);
-                                referencedXClass = null;
-                                ConstantNameAndType sig = (ConstantNameAndType) getConstantPool().getConstant(
-                                        cp.getNameAndTypeIndex());
-                                nameConstantOperand = getStringFromIndex(sig.getNameIndex());
-                                sigConstantOperand = getStringFromIndex(sig.getSignatureIndex());
-                                refConstantOperand = null;
-                            }
-                            break;
-                        case M_R:
-                            registerOperand = v;
-                            break;
-                        case M_UINT:
-                        case M_INT:
-                            intConstant = v;
-                            break;
-                        case M_PAD:
-                            break;
-                        default:
-                            throw new IllegalStateException("Unexpecting meaning " + m);
-                        }
-                    }
+        DecodedCode decodedCode = getDecodedCode(obj);
+        for (DecodedCode.Instruction insn : decodedCode.instructions) {
+            resetState();
+            PC = insn.pc;
+            nextPC = insn.nextPC;
+            opcode = insn.opcode;
+            opcodeIsWide = insn.is(DecodedCode.IS_WIDE);
+
+            sizePrevOpcodeBuffer++;
+            currentPosInPrevOpcodeBuffer++;
+            if (currentPosInPrevOpcodeBuffer >= prevOpcode.length) {
+                currentPosInPrevOpcodeBuffer = 0;
+            }
+            prevOpcode[currentPosInPrevOpcodeBuffer] = opcodeIsWide ? WIDE : opcode;
+
+            registerOperand = insn.registerOperand;
+            isRegisterLoad = insn.is(DecodedCode.IS_REGISTER_LOAD);
+            isRegisterStore = insn.is(DecodedCode.IS_REGISTER_STORE);
+            refFieldIsStatic = insn.is(DecodedCode.REF_FIELD_IS_STATIC);
+            if (insn.is(DecodedCode.HAS_INT)) {
+                intConstant = insn.intConstant;
+            }
+            if (insn.is(DecodedCode.HAS_LONG)) {
+                longConstant = insn.longConstant;
+            }
+            if (insn.is(DecodedCode.HAS_FLOAT)) {
+                floatConstant = insn.floatConstant;
+            }
+            if (insn.is(DecodedCode.HAS_DOUBLE)) {
+                doubleConstant = insn.doubleConstant;
+            }
+            constantRefOperand = insn.constantRefOperand;
+            classConstantOperand = insn.classConstantOperand;
+            nameConstantOperand = insn.nameConstantOperand;
+            sigConstantOperand = insn.sigConstantOperand;
+            stringConstantOperand = insn.stringConstantOperand;
+            if (insn.is(DecodedCode.HAS_REF)) {
+                refConstantOperand = null;
+            }
+            referencedClass = insn.referencedClass;
+            branchOffset = insn.branchOffset;
+            if (branchOffset != INVALID_OFFSET) {
+                branchTarget = branchOffset + PC;
+            }
+            if (insn.is(DecodedCode.IS_BRANCH)) {
+                branchFallThrough = nextPC;
+            }
+            defaultSwitchOffset = insn.defaultSwitchOffset;
+            switchOffsets = insn.switchOffsets;
+            switchLabels = insn.switchLabels;
 
-                }
-                switch (opcode) {
-                case IINC:
-                    isRegisterLoad = true;
-                    isRegisterStore = true;
-                    break;
-                case ILOAD_0:
-                case ILOAD_1:
-                case ILOAD_2:
-                case ILOAD_3:
-                    registerOperand = opcode - ILOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case ALOAD_0:
-                case ALOAD_1:
-                case ALOAD_2:
-                case ALOAD_3:
-                    registerOperand = opcode - ALOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case FLOAD_0:
-                case FLOAD_1:
-                case FLOAD_2:
-                case FLOAD_3:
-                    registerOperand = opcode - FLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case DLOAD_0:
-                case DLOAD_1:
-                case DLOAD_2:
-                case DLOAD_3:
-                    registerOperand = opcode - DLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case LLOAD_0:
-                case LLOAD_1:
-                case LLOAD_2:
-                case LLOAD_3:
-                    registerOperand = opcode - LLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-                case ILOAD:
-                case FLOAD:
-                case ALOAD:
-                case LLOAD:
-                case DLOAD:
-                    isRegisterLoad = true;
-                    break;
-
-                case ISTORE_0:
-                case ISTORE_1:
-                case ISTORE_2:
-                case ISTORE_3:
-                    registerOperand = opcode - ISTORE_0;
-                    isRegisterStore = true;
-                    break;
-
-                case ASTORE_0:
-                case ASTORE_1:
-                case ASTORE_2:
-                case ASTORE_3:
-                    registerOperand = opcode - ASTORE_0;
-                    isRegisterStore = true;
-                    break;
-
-                case FSTORE_0:
-                case FSTORE_1:
-                case FSTORE_2:
-                case FSTORE_3:
-                    registerOperand = opcode - FSTORE_0;
-                    isRegisterStore = true;
-                    break;
-
-                case DSTORE_0:
-                case DSTORE_1:
-                case DSTORE_2:
-                case DSTORE_3:
-                    registerOperand = opcode - DSTORE_0;
-                    isRegisterStore = true;
-                    break;
-
-                case LSTORE_0:
-                case LSTORE_1:
-                case LSTORE_2:
-                case LSTORE_3:
-                    registerOperand = opcode - LSTORE_0;
-                    isRegisterStore = true;
-                    break;
-                case ISTORE:
-                case FSTORE:
-                case ASTORE:
-                case LSTORE:
-                case DSTORE:
-                    isRegisterStore = true;
-                    break;
-                default:
-                    break;
-                }
+            if (beforeOpcode(opcode)) {
+                sawOpcode(opcode);
+            }
+            afterOpcode(opcode);
 
-                switch (opcode) {
-                case ILOAD:
-                case FLOAD:
-                case ALOAD:
-                case LLOAD:
-                case DLOAD:
-                    // registerKind = opcode - ILOAD;
-                    break;
-                case ISTORE:
-                case FSTORE:
-                case ASTORE:
-                case LSTORE:
-                case DSTORE:
-                    // registerKind = opcode - ISTORE;
-                    break;
-                case RET:
-                    // registerKind = R_REF;
-                    break;
-                case GETSTATIC:
-                case PUTSTATIC:
-                    refFieldIsStatic = true;
-                    break;
-                case GETFIELD:
-                case PUTFIELD:
-                    refFieldIsStatic = false;
-                    break;
-                default:
-                    break;
+            if (opcode == TABLESWITCH) {
+                sawInt(insn.switchLow);
+                sawInt(insn.switchHigh);
+                for (int o = 0; o <= insn.switchHigh - insn.switchLow; o++) {
+                    sawBranchTo(switchOffsets[o] + PC);
                 }
-
-                nextPC = i;
-                if (beforeOpcode(opcode)) {
-                    sawOpcode(opcode);
+                sawBranchTo(defaultSwitchOffset + PC);
+            } else if (opcode == LOOKUPSWITCH) {
+                sawInt(switchOffsets.length);
+                for (int o = 0; o < switchOffsets.length; o++) {
+                    sawBranchTo(switchOffsets[o] + PC);
+                    sawInt(switchLabels[o]);
                 }
-                afterOpcode(opcode);
-
-                if (opcode == TABLESWITCH) {
-                    sawInt(switchLow);
-                    sawInt(switchHigh);
-                    //                    int prevOffset = i - PC;
-                    for (int o = 0; o <= switchHigh - switchLow; o++) {
-                        sawBranchTo(switchOffsets[o] + PC);
-                        //                        prevOffset = switchOffsets[o];
-                    }
-                    sawBranchTo(defaultSwitchOffset + PC);
-                } else if (opcode == LOOKUPSWITCH) {
-                    sawInt(switchOffsets.length);
-                    //                    int prevOffset = i - PC;
-                    for (int o = 0; o < switchOffsets.length; o++) {
-                        sawBranchTo(switchOffsets[o] + PC);
-                        //                        prevOffset = switchOffsets[o];
-                        sawInt(switchLabels[o]);
-                    }
-                    sawBranchTo(defaultSwitchOffset + PC);
-                } else {
-                    for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
-                        int m = MEANING_OF_OPERANDS[opcode][k];
-                        switch (m) {
-                        case M_BR:
-                            sawBranchTo(branchOffset + PC);
-                            break;
-                        case M_CP:
-                            if (constantRefOperand instanceof ConstantInteger) {
-                                sawInt(intConstant);
-                            } else if (constantRefOperand instanceof ConstantLong) {
-                                sawLong(longConstant);
-                            } else if (constantRefOperand instanceof ConstantFloat) {
-                                sawFloat(floatConstant);
-                            } else if (constantRefOperand instanceof ConstantDouble) {
-                                sawDouble(doubleConstant);
-                            } else if (constantRefOperand instanceof ConstantString) {
-                                sawString(stringConstantOperand);
-                            } else if (constantRefOperand instanceof ConstantFieldref) {
-                                sawField();
-                            } else if (constantRefOperand instanceof ConstantMethodref) {
-                                sawMethod();
-                            } else if (constantRefOperand instanceof ConstantInterfaceMethodref) {
-                                sawIMethod();
-                            } else if (constantRefOperand instanceof ConstantClass) {
-                                sawClass();
-                            }
-                            break;
-                        case M_R:
-                            sawRegister(registerOperand);
-                            break;
-                        case M_INT:
+                sawBranchTo(defaultSwitchOffset + PC);
+            } else {
+                for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
+                    int m = MEANING_OF_OPERANDS[opcode][k];
+                    switch (m) {
+                    case M_BR:
+                        sawBranchTo(branchOffset + PC);
+                        break;
+                    case M_CP:
+                        if (constantRefOperand instanceof ConstantInteger) {
                             sawInt(intConstant);
-                            break;
-                        default:
-                            break;
+                        } else if (constantRefOperand instanceof ConstantLong) {
+                            sawLong(longConstant);
+                        } else if (constantRefOperand instanceof ConstantFloat) {
+                            sawFloat(floatConstant);
+                        } else if (constantRefOperand instanceof ConstantDouble) {
+                            sawDouble(doubleConstant);
+                        } else if (constantRefOperand instanceof ConstantString) {
+                            sawString(stringConstantOperand);
+                        } else if (constantRefOperand instanceof ConstantFieldref) {
+                            sawField();
+                        } else if (constantRefOperand instanceof ConstantMethodref) {
+                            sawMethod();
+                        } else if (constantRefOperand instanceof ConstantInterfaceMethodref) {
+                            sawIMethod();
+                        } else if (constantRefOperand instanceof ConstantClass) {
+                            sawClass();
                         }
+                        break;
+                    case M_R:
+                        sawRegister(registerOperand);
+                        break;
+                    case M_INT:
+                        sawInt(intConstant);
+                        break;
+                    default:
+                        break;
                     }
                 }
             }
-        } catch (IOException e) {
-            AnalysisContext.logError("Error while dismantling bytecode", e);
-            assert false;
         }
 
-        try {
-            byteStream.close();
-        } catch (IOException e) {
+        if (decodedCode.getFailure() != null) {
+            throw decodedCode.getFailure();
+        }
+        if (decodedCode.getTruncation() != null) {
+            AnalysisContext.logError("Error while dismantling bytecode", decodedCode.getTruncation());
             assert false;
         }
     }
 
+    /**
+     * Should the decoded bytecode of the visited method be shared with other
+     * visitors through the analysis cache? Subclasses which visit Code
+     * attributes which are not those of the analyzed classes (e.g. generated
+     * or modified code) should return false.
+     *
+     * @return true if the decoded bytecode may be shared
+     */
+    protected boolean useSharedDecodedCode() {
+        return !UNSHARED_DECODED_CODE;
+    }
+
+    /**
+     * Get the decoded instructions of the visited Code attribute. The bytecode
+     * of a method is decoded once, and the instructions are shared by all the
+     * detectors visiting the method; if the cached instructions were decoded
+     * from a different Code attribute, the bytecode is decoded again.
+     */
+    private DecodedCode getDecodedCode(Code obj) {
+        MethodDescriptor methodDescriptor = getMethodDescriptor();
+        if (useSharedDecodedCode() && methodDescriptor != null && Global.getAnalysisCache() != null) {
+            try {
+                DecodedCode decodedCode = Global.getAnalysisCache().getMethodAnalysis(DecodedCode.class, methodDescriptor);
+                if (decodedCode != null && decodedCode.getCode() == obj) {
+                    return decodedCode;
+                }
+            } catch (CheckedAnalysisException e) {
+                assert true;
+            }
+        }
+        return DecodedCode.decode(obj);
+    }
+
+
     public void sawDouble(double seen) {
     }
 
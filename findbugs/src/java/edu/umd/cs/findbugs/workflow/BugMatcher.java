@@ -0,0 +1,292 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.KeyedBugComparator;
+
+/**
+ * Matches the warnings of a new version with the warnings of an older
+ * version, using a comparator: each new warning is matched with the first
+ * unmatched old warning comparing as equal to it, if any.
+ *
+ * <p>
+ * If the comparator is a {@link KeyedBugComparator}, the warnings are
+ * grouped by their match key, computed once per warning, and only warnings
+ * with the same key are compared. Since warnings with different keys never
+ * match, the groups are matched independently, on several threads if there
+ * are many warnings. The matches are the same as when all warnings are
+ * compared.
+ * </p>
+ *
+ * @see Update
+ */
+final class BugMatcher {
+
+    /** Number of warnings below which matching isn't worth parallelizing */
+    private static final int MIN_PARALLEL_WARNINGS = 2000;
+
+    /**
+     * Old and new warnings which may match.
+     */
+    private final class Group {
+        final List<BugInstance> oldBugs = new ArrayList<BugInstance>(2);
+
+        final List<BugInstance> newBugs = new ArrayList<BugInstance>(2);
+
+        final Map<BugInstance, BugInstance> matches = new IdentityHashMap<BugInstance, BugInstance>();
+
+        final List<BugInstance> resurrected = new ArrayList<BugInstance>();
+
+        void match() {
+            TreeMap<BugInstance, LinkedList<BugInstance>> set = new TreeMap<BugInstance, LinkedList<BugInstance>>(comparator);
+            for (BugInstance bug : oldBugs) {
+                LinkedList<BugInstance> q = set.get(bug);
+                if (q == null) {
+                    q = new LinkedList<BugInstance>();
+                    set.put(bug, q);
+                }
+                q.add(bug);
+            }
+            for (BugInstance bug : newBugs) {
+                LinkedList<BugInstance> q = set.get(bug);
+                if (q == null) {
+                    continue;
+                }
+                for (Iterator<BugInstance> i = q.iterator(); i.hasNext();) {
+                    BugInstance matchedBug = i.next();
+
+                    if (matchedBug.isDead()) {
+                        if (noResurrections || matchedBug.isRemovedByChangeOfPersistingClass()
+                                && newVersion - matchedBug.getLastVersion() > maxResurrection) {
+                            continue;
+                        }
+                        resurrected.add(bug);
+                    }
+
+                    matches.put(bug, matchedBug);
+                    i.remove();
+                    if (q.isEmpty()) {
+                        set.remove(bug);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private final Comparator<BugInstance> comparator;
+
+    private final long newVersion;
+
+    private final boolean noResurrections;
+
+    private final int maxResurrection;
+
+    private final int threads;
+
+    private final Map<BugInstance, BugInstance> matches = new IdentityHashMap<BugInstance, BugInstance>();
+
+    private final Set<BugInstance> resurrected = Collections.newSetFromMap(new IdentityHashMap<BugInstance, Boolean>());
+
+    /**
+     * Constructor.
+     *
+     * @param comparator
+     *            the comparator deciding which warnings match
+     * @param newVersion
+     *            sequence number of the new version
+     * @param noResurrections
+     *            true if dead old warnings should not be matched
+     * @param maxResurrection
+     *            maximum number of versions for which a warning removed by a
+     *            change of its class may be dead and still be matched
+     * @param threads
+     *            maximum number of threads to use
+     */
+    BugMatcher(Comparator<BugInstance> comparator, long newVersion, boolean noResurrections, int maxResurrection,
+            int threads) {
+        this.comparator = comparator;
+        this.newVersion = newVersion;
+        this.noResurrections = noResurrections;
+        this.maxResurrection = maxResurrection;
+        this.threads = threads;
+    }
+
+    /**
+     * Match warnings.
+     *
+     * @param oldBugs
+     *            the old warnings which may be matched, in order of preference
+     * @param newBugs
+     *            the new warnings to match, in order
+     */
+    void match(List<BugInstance> oldBugs, List<BugInstance> newBugs) {
+        int numThreads = oldBugs.size() + newBugs.size() < MIN_PARALLEL_WARNINGS ? 1 : threads;
+        List<Group> groups;
+        if (comparator instanceof KeyedBugComparator) {
+            groups = group((KeyedBugComparator) comparator, oldBugs, newBugs, numThreads);
+        } else {
+            Group group = new Group();
+            group.oldBugs.addAll(oldBugs);
+            group.newBugs.addAll(newBugs);
+            groups = Collections.singletonList(group);
+        }
+
+        final List<Group> work = groups;
+        run(numThreads, work.size(), new Task() {
+            @Override
+            public void run(int i) {
+                work.get(i).match();
+            }
+        });
+
+        for (Group group : groups) {
+            matches.putAll(group.matches);
+            resurrected.addAll(group.resurrected);
+        }
+    }
+
+    private List<Group> group(final KeyedBugComparator keyedComparator, final List<BugInstance> oldBugs,
+            final List<BugInstance> newBugs, int numThreads) {
+        final String[] oldKeys = new String[oldBugs.size()];
+        final String[] newKeys = new String[newBugs.size()];
+        run(numThreads, oldKeys.length + newKeys.length, new Task() {
+            @Override
+            public void run(int i) {
+                if (i < oldKeys.length) {
+                    oldKeys[i] = keyedComparator.getMatchKey(oldBugs.get(i));
+                } else {
+                    newKeys[i - oldKeys.length] = keyedComparator.getMatchKey(newBugs.get(i - oldKeys.length));
+                }
+            }
+        });
+
+        HashMap<String, Group> groups = new HashMap<String, Group>();
+        for (int i = 0; i < oldKeys.length; i++) {
+            Group group = groups.get(oldKeys[i]);
+            if (group == null) {
+                group = new Group();
+                groups.put(oldKeys[i], group);
+            }
+            group.oldBugs.add(oldBugs.get(i));
+        }
+        List<Group> result = new ArrayList<Group>();
+        for (int i = 0; i < newKeys.length; i++) {
+            Group group = groups.get(newKeys[i]);
+            if (group != null) {
+                if (group.newBugs.isEmpty()) {
+                    result.add(group);
+                }
+                group.newBugs.add(newBugs.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return map from each matched new warning to the old warning it matches
+     */
+    Map<BugInstance, BugInstance> getMatches() {
+        return matches;
+    }
+
+    /**
+     * @return the new warnings matching dead old warnings
+     */
+    Set<BugInstance> getResurrected() {
+        return resurrected;
+    }
+
+    private interface Task {
+        void run(int i);
+    }
+
+    /**
+     * Run a task for 0 .. count-1, spreading them over threads in contiguous
+     * ranges.
+     */
+    private static void run(int numThreads, final int count, final Task task) {
+        numThreads = Math.min(numThreads, count);
+        if (numThreads <= 1) {
+            for (int i = 0; i < count; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "FindBugs warning matcher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(numThreads);
+            for (int n = 0; n < numThreads; n++) {
+                final int start = (int) ((long) count * n / numThreads);
+                final int end = (int) ((long) count * (n + 1) / numThreads);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = start; i < end; i++) {
+                            task.run(i);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while matching warnings", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package edu.umd.cs.findbugs.workflow;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Date;
@@ -36,6 +37,8 @@ import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
+import javax.annotation.CheckForNull;
+
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.AppVersion;
@@ -57,6 +60,8 @@ import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SloppyBugComparator;
 import edu.umd.cs.findbugs.SortedBugCollection;
 import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.StreamingBugCollectionReader;
+import edu.umd.cs.findbugs.StreamingBugCollectionWriter;
 import edu.umd.cs.findbugs.charsets.UTF8;
 import edu.umd.cs.findbugs.cloud.Cloud;
 import edu.umd.cs.findbugs.cloud.Cloud.SigninState;
@@ -688,6 +693,18 @@ public class Filter {
 
         }
 
+        /**
+         * Can the options be applied to one BugInstance at a time, as the
+         * BugInstances are read? Options which depend on the history or on
+         * all BugInstances of the collection can't.
+         */
+        boolean canStream() {
+            return firstAsString == null && afterAsString == null && beforeAsString == null && maybeMutatedAsString == null
+                    && lastAsString == null && trimToVersionAsString == null && fixedAsString == null && presentAsString == null
+                    && absentAsString == null && !sloppyUniqueSpecified && !hashChangedSpecified && !maxAgeSpecified
+                    && !notAProblemSpecified && !shouldFixSpecified && !withMessages;
+        }
+
         HashSet<String> mutationPoints;
 
         /**
@@ -763,6 +780,12 @@ public class Filter {
 
         int argCount = commandLine.parse(args, 0, 2, "Usage: " + Filter.class.getName()
                 + " [options] [<orig results> [<new results]] ");
+        if (commandLine.canStream()) {
+            String input = argCount < args.length ? args[argCount++] : null;
+            String output = argCount < args.length ? args[argCount++] : null;
+            streamingFilter(commandLine, input, output);
+            return;
+        }
         SortedBugCollection origCollection = new SortedBugCollection();
 
         if (argCount == args.length) {
@@ -864,6 +887,78 @@ public class Filter {
         if (verbose) {
             System.out.println(passed + " warnings passed through, " + dropped + " warnings dropped");
         }
+        purgeClassesWithoutSource(commandLine, projectStats);
+        projectStats.recomputeFromComponents();
+        if (argCount == args.length) {
+            assert !verbose;
+            resultCollection.writeXML(System.out);
+        } else {
+            resultCollection.writeXML(args[argCount++]);
+
+        }
+
+    }
+
+    /**
+     * Filter the BugInstances one at a time as they are read, so that files of
+     * any size can be filtered.
+     *
+     * @param commandLine
+     *            the options, which must allow streaming
+     * @param input
+     *            the file to read, or null to read the standard input
+     * @param output
+     *            the file to write, or null to write the standard output
+     */
+    private static void streamingFilter(FilterCommandLine commandLine, @CheckForNull String input, @CheckForNull String output)
+            throws IOException, DocumentException {
+        SortedBugCollection collection = new SortedBugCollection();
+        StreamingBugCollectionReader reader = input == null ? new StreamingBugCollectionReader(collection, System.in, null)
+        : new StreamingBugCollectionReader(collection, new File(input));
+        try {
+            boolean verbose = output != null;
+            Project project = collection.getProject();
+            commandLine.adjustFilter(project, collection);
+            ProjectStats projectStats = collection.getProjectStats();
+            sourceSearcher = new SourceSearcher(project);
+            boolean purgeHistory = commandLine.purgeHistorySpecified && commandLine.purgeHistory;
+
+            StreamingBugCollectionWriter writer = output == null ? new StreamingBugCollectionWriter(collection, System.out)
+            : new StreamingBugCollectionWriter(collection, output);
+            int passed = 0;
+            int dropped = 0;
+            BugInstance bug;
+            while ((bug = reader.readBugInstance()) != null) {
+                if (commandLine.accept(collection, bug)) {
+                    if (purgeHistory) {
+                        bug.clearHistory();
+                    }
+                    writer.writeBugInstance(bug);
+                    passed++;
+                } else {
+                    dropped++;
+                }
+            }
+
+            // The history and the statistics follow the BugInstances
+            if (purgeHistory) {
+                collection.clearAppVersions();
+            }
+            if (commandLine.classPattern != null) {
+                projectStats.purgeClassesThatDontMatch(commandLine.classPattern);
+            }
+            if (verbose) {
+                System.out.println(passed + " warnings passed through, " + dropped + " warnings dropped");
+            }
+            purgeClassesWithoutSource(commandLine, projectStats);
+            projectStats.recomputeFromComponents();
+            writer.finish();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void purgeClassesWithoutSource(FilterCommandLine commandLine, ProjectStats projectStats) {
         if (commandLine.withSourceSpecified && commandLine.withSource && !commandLine.dontUpdateStats
                 && projectStats.hasClassStats()) {
             for (PackageStats stats : projectStats.getPackageStats()) {
@@ -878,15 +973,6 @@ public class Filter {
             }
 
         }
-        projectStats.recomputeFromComponents();
-        if (argCount == args.length) {
-            assert !verbose;
-            resultCollection.writeXML(System.out);
-        } else {
-            resultCollection.writeXML(args[argCount++]);
-
-        }
-
     }
 
 
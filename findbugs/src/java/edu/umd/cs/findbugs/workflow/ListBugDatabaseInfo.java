@@ -17,6 +17,7 @@
  */
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Date;
@@ -26,11 +27,13 @@ import javax.annotation.CheckForNull;
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.AppVersion;
+import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.Priorities;
 import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.StreamingBugCollectionReader;
 import edu.umd.cs.findbugs.charsets.UTF8;
 import edu.umd.cs.findbugs.config.CommandLine;
 
@@ -94,13 +97,22 @@ public class ListBugDatabaseInfo {
         SortedBugCollection origCollection;
         origCollection = new SortedBugCollection();
 
-        if (fileName == null) {
-            origCollection.readXML(System.in);
-        } else {
-            origCollection.readXML(fileName);
+        // Only the statistics are needed, so the BugInstances are counted
+        // as they are read rather than kept
+        StreamingBugCollectionReader reader = fileName == null ? new StreamingBugCollectionReader(origCollection, System.in,
+                null) : new StreamingBugCollectionReader(origCollection, new File(fileName));
+        ProjectStats stats = origCollection.getProjectStats();
+        try {
+            BugInstance bug;
+            while ((bug = reader.readBugInstance()) != null) {
+                if (!bug.isDead()) {
+                    stats.addBug(bug);
+                }
+            }
+        } finally {
+            reader.close();
         }
         AppVersion appVersion = origCollection.getCurrentAppVersion();
-        ProjectStats stats = origCollection.getProjectStats();
         out.print(appVersion.getReleaseName());
         out.print('\t');
         if (formatDates) {
@@ -19,8 +19,22 @@
 
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
 
 import org.dom4j.DocumentException;
 
@@ -31,7 +45,9 @@ import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.Project;
 import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.StreamingBugCollectionWriter;
 import edu.umd.cs.findbugs.config.CommandLine;
+import edu.umd.cs.findbugs.util.Util;
 
 /**
  * Compute the union of two sets of bug results, preserving annotations.
@@ -99,6 +115,10 @@ public class UnionResults {
                 into.add(bugInstance);
             }
         }
+        mergeMetadata(into, from);
+    }
+
+    private static void mergeMetadata(SortedBugCollection into, SortedBugCollection from) {
         ProjectStats stats = into.getProjectStats();
         ProjectStats stats2 = from.getProjectStats();
         stats.addStats(stats2);
@@ -110,8 +130,6 @@ public class UnionResults {
         for(AnalysisError error : from.getErrors()) {
             into.addError(error);
         }
-
-        return;
     }
 
     public static void main(String[] argv) throws IOException {
@@ -122,6 +140,11 @@ public class UnionResults {
         int argCount = commandLine.parse(argv, 2, Integer.MAX_VALUE, "Usage: " + UnionResults.class.getName()
                 + " [options] [<results1> <results2> ... <resultsn>] ");
 
+        if (!commandLine.withMessages) {
+            streamingUnion(commandLine, Arrays.asList(argv).subList(argCount, argv.length));
+            return;
+        }
+
         SortedBugCollection results = null;
         HashSet<String> hashes = new HashSet<String>();
 
@@ -156,5 +179,158 @@ public class UnionResults {
         }
     }
 
+    /**
+     * Compute the union of the results without keeping all BugInstances in
+     * memory, so that many large files can be combined. Each file is read and
+     * merged as by {@link #merge(HashSet, SortedBugCollection, SortedBugCollection)},
+     * and its new BugInstances are sorted and spilled to a temporary file. A
+     * file which can't be read or parsed is skipped as a whole. Once all
+     * files are read, the sorted runs are merged and written, so the output
+     * is the same as that of the in-memory union. Messages can't be written
+     * this way, since they depend on all BugInstances.
+     */
+    private static void streamingUnion(UnionResultsCommandLine commandLine, List<String> files) throws IOException {
+        Comparator<BugInstance> comparator = SortedBugCollection.MultiversionBugInstanceComparator.instance;
+        SortedBugCollection results = null;
+        HashSet<String> hashes = new HashSet<String>();
+        List<File> runs = new ArrayList<File>();
+        List<ObjectInputStream> inputs = new ArrayList<ObjectInputStream>();
+        try {
+            for (String file : files) {
+                SortedBugCollection more = new SortedBugCollection();
+                try {
+                    more.readXML(file);
+                } catch (IOException e) {
+                    System.err.println("Trouble reading/parsing " + file);
+                    continue;
+                } catch (DocumentException e) {
+                    System.err.println("Trouble reading/parsing " + file);
+                    continue;
+                }
+                if (results == null) {
+                    results = more.createEmptyCollectionWithMetadata();
+                }
+
+                TreeSet<BugInstance> run = new TreeSet<BugInstance>(comparator);
+                for (BugInstance bugInstance : more.getCollection()) {
+                    if (hashes.add(bugInstance.getInstanceHash())) {
+                        // As in SortedBugCollection.add(BugInstance)
+                        if (bugInstance.getFirstVersion() == 0L && bugInstance.getLastVersion() == 0L) {
+                            bugInstance.setFirstVersion(results.getSequenceNumber());
+                        }
+                        if (!bugInstance.isDead()) {
+                            results.getProjectStats().addBug(bugInstance);
+                        }
+                        run.add(bugInstance);
+                    }
+                }
+                mergeMetadata(results, more);
+                runs.add(writeRun(run));
+            }
+
+            if (results == null) {
+                System.err.println("No files successfully read");
+                System.exit(1);
+                return;
+            }
+
+            StreamingBugCollectionWriter writer = commandLine.outputFile == null ? new StreamingBugCollectionWriter(results,
+                    System.out) : new StreamingBugCollectionWriter(results, commandLine.outputFile);
+            PriorityQueue<RunHead> heads = new PriorityQueue<RunHead>();
+            for (File run : runs) {
+                ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(run)));
+                inputs.add(in);
+                RunHead head = new RunHead(comparator, inputs.size(), in);
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+            BugInstance last = null;
+            while (!heads.isEmpty()) {
+                RunHead head = heads.poll();
+                // Like the TreeSet of the in-memory union, keep only the
+                // first of the BugInstances which compare equal
+                if (last == null || comparator.compare(last, head.bugInstance) != 0) {
+                    last = head.bugInstance;
+                    writer.writeCountedBugInstance(last);
+                }
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+            writer.finish();
+        } finally {
+            for (ObjectInputStream in : inputs) {
+                Util.closeSilently(in);
+            }
+            for (File run : runs) {
+                if (!run.delete()) {
+                    run.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    private static File writeRun(Collection<BugInstance> run) throws IOException {
+        File file = File.createTempFile("findbugs-union", ".ser");
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(run.size());
+            for (BugInstance bugInstance : run) {
+                out.writeObject(bugInstance);
+                out.reset();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * The next BugInstance of a sorted run. Runs of earlier files come first
+     * among equal BugInstances.
+     */
+    private static class RunHead implements Comparable<RunHead> {
+        private final Comparator<BugInstance> comparator;
+
+        private final int index;
+
+        private final ObjectInputStream in;
+
+        private int remaining;
+
+        BugInstance bugInstance;
+
+        RunHead(Comparator<BugInstance> comparator, int index, ObjectInputStream in) throws IOException {
+            this.comparator = comparator;
+            this.index = index;
+            this.in = in;
+            this.remaining = in.readInt();
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                bugInstance = null;
+                return false;
+            }
+            remaining--;
+            try {
+                bugInstance = (BugInstance) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Can't read back BugInstance: " + e.getMessage());
+            }
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunHead other) {
+            int cmp = comparator.compare(bugInstance, other.bugInstance);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return index - other.index;
+        }
+    }
+
 }
 
@@ -19,14 +19,14 @@ package edu.umd.cs.findbugs.workflow;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.dom4j.DocumentException;
@@ -83,6 +83,8 @@ public class Update {
 
     int maxRank = BugRanker.VISIBLE_RANK_MAX;
 
+    int threads = Runtime.getRuntime().availableProcessors();
+
     class UpdateCommandLine extends CommandLine {
         boolean overrideRevisionNames = false;
 
@@ -106,6 +108,7 @@ public class Update {
             addSwitch("-useAnalysisTimes", "use analysis timestamp rather than code timestamp in history");
             addSwitch("-withMessages", "Add bug description");
             addOption("-onlyMostRecent", "number", "only use the last # input files");
+            addOption("-threads", "number", "number of threads used to match warnings (default: number of processors)");
         }
 
         @Override
@@ -156,6 +159,8 @@ public class Update {
                 maxRank = Integer.parseInt(argument);
             } else if ("-onlyMostRecent".equals(option)) {
                 mostRecent = Integer.parseInt(argument);
+            } else if ("-threads".equals(option)) {
+                threads = Integer.parseInt(argument);
             } else {
                 throw new IllegalArgumentException("Can't handle option " + option);
             }
@@ -604,59 +609,29 @@ public class Update {
     private void matchBugs(Comparator<BugInstance> bugInstanceComparator, BugCollection origCollection,
             BugCollection newCollection, MatchOldBugs matchOld) {
 
-        TreeMap<BugInstance, LinkedList<BugInstance>> set = new TreeMap<BugInstance, LinkedList<BugInstance>>(
-                bugInstanceComparator);
-        //        int oldBugs = 0;
-        //        int newBugs = 0;
-        //        int matchedBugs = 0;
+        List<BugInstance> oldBugs = new ArrayList<BugInstance>();
         for (BugInstance bug : origCollection.getCollection()) {
-            if (!matchedOldBugs.containsKey(bug)) {
-                if (matchOld.match(bug)) {
-                    //                    oldBugs++;
-                    LinkedList<BugInstance> q = set.get(bug);
-                    if (q == null) {
-                        q = new LinkedList<BugInstance>();
-                        set.put(bug, q);
-                    }
-                    q.add(bug);
-                }
-
+            if (!matchedOldBugs.containsKey(bug) && matchOld.match(bug)) {
+                oldBugs.add(bug);
             }
         }
-        long newVersion = origCollection.getCurrentAppVersion().getSequenceNumber() + 1;
+        List<BugInstance> newBugs = new ArrayList<BugInstance>();
         for (BugInstance bug : newCollection.getCollection()) {
             if (!mapFromNewToOldBug.containsKey(bug)) {
-                //                newBugs++;
-                LinkedList<BugInstance> q = set.get(bug);
-                if (q == null) {
-                    continue;
-                }
-                for (Iterator<BugInstance> i = q.iterator(); i.hasNext();) {
-                    BugInstance matchedBug = i.next();
-
-                    if (matchedBug.isDead()) {
-                        if (noResurrections || matchedBug.isRemovedByChangeOfPersistingClass()
-                                && newVersion - matchedBug.getLastVersion() > maxResurrection) {
-                            continue;
-                        }
-                        resurrected.add(bug.getInstanceKey());
-                        // System.out.println("in version " +
-                        // newCollection.getReleaseName());
-                        // System.out.println("  resurrected " +
-                        // bug.getMessageWithoutPrefix());
-                    }
-
-                    //                    matchedBugs++;
-                    mapFromNewToOldBug.put(bug, matchedBug);
-                    matchedOldBugs.put(matchedBug, null);
-                    i.remove();
-                    if (q.isEmpty()) {
-                        set.remove(bug);
-                    }
-                    break;
-                }
+                newBugs.add(bug);
             }
         }
+        long newVersion = origCollection.getCurrentAppVersion().getSequenceNumber() + 1;
+        BugMatcher matcher = new BugMatcher(bugInstanceComparator, newVersion, noResurrections, maxResurrection, threads);
+        matcher.match(oldBugs, newBugs);
+
+        for (Map.Entry<BugInstance, BugInstance> e : matcher.getMatches().entrySet()) {
+            mapFromNewToOldBug.put(e.getKey(), e.getValue());
+            matchedOldBugs.put(e.getValue(), null);
+        }
+        for (BugInstance bug : matcher.getResurrected()) {
+            resurrected.add(bug.getInstanceKey());
+        }
     }
 
 }
@@ -0,0 +1,96 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the pruning of the analysis result cache.
+ */
+public class AnalysisResultCacheTest extends TestCase {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private File directory;
+
+    private long now;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("fbcache", null);
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create temp dir");
+        }
+        now = System.currentTimeMillis();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    private File entry(String name, int size, long lastUsed) throws IOException {
+        File file = new File(directory, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+        assertTrue(file.setLastModified(lastUsed));
+        return file;
+    }
+
+    public void testPruneByAge() throws Exception {
+        File recent = entry("a.bugs", 10, now - DAY);
+        File old = entry("b.bugs", 10, now - 40 * DAY);
+        File other = entry("notes.txt", 10, now - 40 * DAY);
+
+        assertEquals(1, AnalysisResultCache.prune(directory, now - 30 * DAY, Long.MAX_VALUE));
+        assertTrue(recent.exists());
+        assertFalse(old.exists());
+        // Only cache entries are deleted
+        assertTrue(other.exists());
+    }
+
+    public void testPruneBySize() throws Exception {
+        File newest = entry("a.bugs", 100, now - 1000);
+        File middle = entry("b.bugs", 100, now - 2 * DAY);
+        File oldest = entry("c.bugs", 100, now - 3 * DAY);
+
+        // The least recently used entries go first
+        assertEquals(1, AnalysisResultCache.prune(directory, 0, 250));
+        assertTrue(newest.exists());
+        assertTrue(middle.exists());
+        assertFalse(oldest.exists());
+
+        assertEquals(0, AnalysisResultCache.prune(directory, 0, 250));
+        assertEquals(2, AnalysisResultCache.prune(directory, 0, 0));
+        assertFalse(newest.exists());
+        assertFalse(middle.exists());
+    }
+}
@@ -0,0 +1,89 @@
+package edu.umd.cs.findbugs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.log.Profiler;
+
+public class BinaryBugCollectionReaderTest extends TestCase {
+
+    private SortedBugCollection bc;
+
+    @Override
+    protected void setUp() throws Exception {
+        bc = new SortedBugCollection();
+        bc.setReleaseName("1.0");
+        bc.addError("some analysis error\u0001");
+        bc.add(createBug("NP_NULL_ON_SOME_PATH", "com.example.Foo", 10));
+        bc.add(createBug("DLS_DEAD_LOCAL_STORE", "com.example.Foo", -1));
+        bc.add(createBug("DLS_DEAD_LOCAL_STORE", "com.example.Bar", 20));
+    }
+
+    private static BugInstance createBug(String type, String className, int line) {
+        BugInstance bug = new BugInstance(type, Priorities.NORMAL_PRIORITY);
+        bug.addClass(className);
+        bug.addSourceLine(new SourceLineAnnotation(className, "Source.java", line, line, -1, -1));
+        return bug;
+    }
+
+    private byte[] writeBinary() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bc.writeBinary(out);
+        return out.toByteArray();
+    }
+
+    private static String toXML(SortedBugCollection collection) throws Exception {
+        StringWriter out = new StringWriter();
+        collection.writeXML(out);
+        // Leave out the times and the memory used, which are measured anew,
+        // and the profile, which only lists the classes that happened to take
+        // more than 10ms in this JVM, and isn't read back from any format
+        return out.toString().replaceAll("(timestamp|analysisTimestamp)=\"[0-9]*\"", "")
+                .replaceAll("<FindBugsSummary [^>]*>", "")
+                .replaceAll("(?s)<FindBugsProfile>.*</FindBugsProfile>", "");
+    }
+
+    public void testRoundTrip() throws Exception {
+        // Whatever else was timed, make sure the profile isn't empty
+        Profiler profiler = bc.getProjectStats().getProfiler();
+        profiler.start(getClass());
+        Thread.sleep(20);
+        profiler.end(getClass());
+
+        SortedBugCollection read = new SortedBugCollection();
+        read.readXML(new ByteArrayInputStream(writeBinary()));
+        assertEquals(3, read.getCollection().size());
+        assertEquals(toXML(bc), toXML(read));
+    }
+
+    public void testClassFilter() throws Exception {
+        BinaryBugCollectionReader reader = new BinaryBugCollectionReader(writeBinary());
+        assertTrue(reader.hasClassIndex());
+        assertEquals(2, reader.getIndexedClasses().size());
+        reader.setClassFilter(Collections.singleton("com.example.Foo"));
+
+        SortedBugCollection read = new SortedBugCollection();
+        reader.parse(new SAXBugCollectionHandler(read, null));
+        assertEquals(2, read.getCollection().size());
+        for (BugInstance bug : read.getCollection()) {
+            assertEquals("com.example.Foo", bug.getPrimaryClass().getClassName());
+        }
+        assertEquals("1.0", read.getReleaseName());
+        assertEquals(1, read.getErrors().size());
+    }
+
+    public void testCanonicalLong() {
+        assertTrue(BinaryBugCollectionOutput.isCanonicalLong("0"));
+        assertTrue(BinaryBugCollectionOutput.isCanonicalLong("-17"));
+        assertTrue(BinaryBugCollectionOutput.isCanonicalLong("1280333224881"));
+        assertFalse(BinaryBugCollectionOutput.isCanonicalLong(""));
+        assertFalse(BinaryBugCollectionOutput.isCanonicalLong("-"));
+        assertFalse(BinaryBugCollectionOutput.isCanonicalLong("-0"));
+        assertFalse(BinaryBugCollectionOutput.isCanonicalLong("007"));
+        assertFalse(BinaryBugCollectionOutput.isCanonicalLong("1.5"));
+        assertFalse(BinaryBugCollectionOutput.isCanonicalLong("1234567890123456789"));
+    }
+}
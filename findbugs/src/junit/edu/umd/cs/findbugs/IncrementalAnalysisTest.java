@@ -0,0 +1,132 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+
+/**
+ * Tests of the selection of classes and previous warnings in incremental
+ * analysis.
+ */
+public class IncrementalAnalysisTest extends TestCase {
+
+    // Base <- Sub (extends Base), Client calls Sub, Other is unrelated
+    private final ClassDescriptor base = DescriptorFactory.createClassDescriptor("p/Base");
+
+    private final ClassDescriptor sub = DescriptorFactory.createClassDescriptor("p/Sub");
+
+    private final ClassDescriptor client = DescriptorFactory.createClassDescriptor("p/Client");
+
+    private final ClassDescriptor other = DescriptorFactory.createClassDescriptor("p/Other");
+
+    private final ClassDescriptor object = DescriptorFactory.createClassDescriptor("java/lang/Object");
+
+    private List<ClassDescriptor> appClassList;
+
+    private Map<ClassDescriptor, Collection<ClassDescriptor>> dependencies;
+
+    @Override
+    protected void setUp() throws Exception {
+        appClassList = Arrays.asList(base, sub, client, other);
+        dependencies = new HashMap<ClassDescriptor, Collection<ClassDescriptor>>();
+        dependencies.put(base, Collections.singleton(object));
+        dependencies.put(sub, Arrays.asList(base, object));
+        dependencies.put(client, Arrays.asList(sub, object));
+        dependencies.put(other, Collections.singleton(object));
+    }
+
+    private static <T> Set<T> set(T... elements) {
+        return new HashSet<T>(Arrays.asList(elements));
+    }
+
+    public void testFindChangedClasses() {
+        assertEquals(set(base), FindBugs2.findChangedClasses(Collections.singleton("p.Base"), appClassList));
+        assertEquals(set(sub), FindBugs2.findChangedClasses(Collections.singleton("p/Sub.class"), appClassList));
+        assertEquals(set(client),
+                FindBugs2.findChangedClasses(Collections.singleton("build\\classes\\p\\Client.class"), appClassList));
+        assertEquals(set(), FindBugs2.findChangedClasses(Arrays.asList("p.Missing", "Base.class"), appClassList));
+    }
+
+    public void testReverseDependencies() {
+        Set<ClassDescriptor> reported = FindBugs2.addUsingClasses(set(base), dependencies);
+        // Sub extends Base; Client only uses Sub
+        assertEquals(set(base, sub), reported);
+
+        // Client uses Sub, so it is reanalyzed; Base is used by Sub. The
+        // library class Object isn't an application class.
+        List<ClassDescriptor> reanalyzed = FindBugs2.findReanalyzedClasses(reported, dependencies, appClassList);
+        assertEquals(Arrays.asList(base, sub, client), reanalyzed);
+
+        Set<ClassDescriptor> leaf = FindBugs2.addUsingClasses(set(client), dependencies);
+        assertEquals(set(client), leaf);
+        assertEquals(Arrays.asList(sub, client), FindBugs2.findReanalyzedClasses(leaf, dependencies, appClassList));
+    }
+
+    private static BugInstance bug(String className, int line) {
+        BugInstance bug = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY);
+        bug.addClass(className);
+        bug.addSourceLine(new SourceLineAnnotation(className, "Source.java", line, line, -1, -1));
+        return bug;
+    }
+
+    public void testSelectPreviousResults() {
+        SortedBugCollection previous = new SortedBugCollection();
+        BugInstance inOther = bug("p.Other", 1);
+        BugInstance inBase = bug("p.Base", 2);
+        BugInstance inDeleted = bug("p.Deleted", 3);
+        previous.add(inOther);
+        previous.add(inBase);
+        previous.add(inDeleted);
+
+        // Base is reported again, and Deleted no longer exists
+        List<BugInstance> kept = FindBugs2.selectPreviousResults(previous.getCollection(), appClassList, set(base, sub));
+        assertEquals(Collections.singletonList(inOther), kept);
+
+        // Nothing changed: all warnings in existing classes are kept
+        kept = FindBugs2.selectPreviousResults(previous.getCollection(), appClassList, Collections.<ClassDescriptor> emptySet());
+        assertEquals(set(inOther, inBase), new HashSet<BugInstance>(kept));
+    }
+
+    public void testSelectPreviousResultsWithoutClass() {
+        // A warning without a class annotation belongs to the class of its
+        // method or field. SortedBugCollection can't hold such warnings,
+        // since it orders warnings by class, but other collections can.
+        BugInstance methodOnly = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY);
+        methodOnly.addMethod("p.Other", "m", "()V", false);
+        BugInstance fieldInDeleted = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY);
+        fieldInDeleted.addField("p.Deleted", "f", "I", false);
+        BugInstance noMember = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY);
+        List<BugInstance> previous = Arrays.asList(methodOnly, fieldInDeleted, noMember);
+
+        assertEquals(Collections.singletonList(methodOnly),
+                FindBugs2.selectPreviousResults(previous, appClassList, set(base, sub)));
+    }
+}
@@ -2,6 +2,7 @@ package edu.umd.cs.findbugs;
 
 import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
+import java.util.Iterator;
 
 import junit.framework.TestCase;
 import edu.umd.cs.findbugs.cloud.Cloud;
@@ -162,4 +163,28 @@ public class SAXBugCollectionHandlerTest extends TestCase {
         assertEquals(Cloud.UserDesignation.SHOULD_FIX, cloud.getConsensusDesignation(bug));
 
     }
+
+    public void testNestedSourceLinesAreShared() throws Exception {
+        SortedBugCollection bc = new SortedBugCollection();
+        StringBuilder xml = new StringBuilder("<BugCollection version='3.0.1' sequence='0' timestamp='1280333223462' release=''>");
+        for (int line : new int[] { 210, 220 }) {
+            xml.append("<BugInstance type='DLS_DEAD_LOCAL_STORE' priority='2' abbrev='DLS' category='STYLE'>")
+                    .append("<Class classname='org.apache.bcel.Constants' primary='true'>")
+                    .append("<SourceLine classname='org.apache.bcel.Constants' start='1' end='1443' sourcefile='Constants.java'/>")
+                    .append("</Class>")
+                    .append("<SourceLine classname='org.apache.bcel.Constants' primary='true' start='").append(line)
+                    .append("' end='").append(line).append("' startBytecode='89' endBytecode='89' sourcefile='Constants.java'/>")
+                    .append("</BugInstance>");
+        }
+        xml.append("</BugCollection>");
+        bc.readXML(new StringReader(xml.toString()));
+
+        assertEquals(2, bc.getCollection().size());
+        Iterator<BugInstance> i = bc.getCollection().iterator();
+        BugInstance first = i.next();
+        BugInstance last = i.next();
+        assertSame(first.getPrimaryClass().getSourceLines(), last.getPrimaryClass().getSourceLines());
+        assertNotSame(first.getPrimarySourceLineAnnotation(), last.getPrimarySourceLineAnnotation());
+        assertEquals(89, first.getPrimarySourceLineAnnotation().getStartBytecode());
+    }
 }
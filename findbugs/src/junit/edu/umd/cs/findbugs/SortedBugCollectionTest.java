@@ -0,0 +1,66 @@
+package edu.umd.cs.findbugs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+public class SortedBugCollectionTest extends TestCase {
+
+    private SortedBugCollection bc;
+
+    private BugInstance foo10, foo20, bar10;
+
+    @Override
+    protected void setUp() throws Exception {
+        bc = new SortedBugCollection();
+        foo10 = createBug("NP_NULL_ON_SOME_PATH", "com.example.Foo", 10);
+        foo20 = createBug("DLS_DEAD_LOCAL_STORE", "com.example.Foo", 20);
+        bar10 = createBug("NP_NULL_ON_SOME_PATH", "com.example.Bar", 10);
+        bc.add(foo10);
+        bc.add(foo20);
+    }
+
+    private static BugInstance createBug(String type, String className, int line) {
+        BugInstance bug = new BugInstance(type, Priorities.NORMAL_PRIORITY);
+        bug.addClass(className);
+        bug.addSourceLine(new SourceLineAnnotation(className, "Source.java", line, line, -1, -1));
+        return bug;
+    }
+
+    public void testQueries() {
+        assertEquals(Arrays.asList(foo20, foo10), bc.findBugsByPrimaryClass("com.example.Foo"));
+        assertEquals(Collections.singletonList(foo10), bc.findBugsByType("NP_NULL_ON_SOME_PATH"));
+        assertEquals(Collections.singletonList(foo20), bc.findBugsByInstanceHash(foo20.getInstanceHash()));
+        assertEquals(2, bc.findBugsBySourcePath("com/example/Source.java").size());
+        assertTrue(bc.findBugsByPrimaryClass("com.example.Bar").isEmpty());
+        assertSame(foo10, bc.findBug(foo10.getInstanceHash(), "NP_NULL_ON_SOME_PATH", 10));
+        assertNull(bc.findBug(foo10.getInstanceHash(), "NP_NULL_ON_SOME_PATH", 11));
+    }
+
+    public void testIndexesFollowChanges() {
+        assertEquals(1, bc.findBugsByType("NP_NULL_ON_SOME_PATH").size());
+
+        bc.add(bar10);
+        assertEquals(Arrays.asList(bar10, foo10), bc.findBugsByType("NP_NULL_ON_SOME_PATH"));
+        assertEquals(Collections.singletonList(bar10), bc.findBugsByPrimaryClass("com.example.Bar"));
+
+        // An equal BugInstance removes the one in the collection
+        assertTrue(bc.remove(createBug("NP_NULL_ON_SOME_PATH", "com.example.Foo", 10)));
+        assertEquals(Collections.singletonList(bar10), bc.findBugsByType("NP_NULL_ON_SOME_PATH"));
+        assertEquals(Collections.singletonList(foo20), bc.findBugsByPrimaryClass("com.example.Foo"));
+        assertTrue(bc.findBugsByInstanceHash(foo10.getInstanceHash()).isEmpty());
+        assertFalse(bc.remove(foo10));
+
+        for (Iterator<BugInstance> i = bc.iterator(); i.hasNext();) {
+            if (i.next() == foo20) {
+                i.remove();
+            }
+        }
+        assertTrue(bc.findBugsByPrimaryClass("com.example.Foo").isEmpty());
+
+        bc.clearBugInstances();
+        assertTrue(bc.findBugsByType("NP_NULL_ON_SOME_PATH").isEmpty());
+    }
+}
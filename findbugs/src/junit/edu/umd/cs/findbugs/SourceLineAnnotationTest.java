@@ -0,0 +1,40 @@
+package edu.umd.cs.findbugs;
+
+import junit.framework.TestCase;
+
+public class SourceLineAnnotationTest extends TestCase {
+
+    public void testBytecodeRange() {
+        SourceLineAnnotation a = new SourceLineAnnotation("com.example.Foo", "Foo.java", 10, 12, 0, 65534);
+        assertEquals(0, a.getStartBytecode());
+        assertEquals(65534, a.getEndBytecode());
+
+        SourceLineAnnotation unknown = SourceLineAnnotation.createUnknown("com.example.Foo", "Foo.java");
+        assertEquals(-1, unknown.getStartBytecode());
+        assertEquals(-1, unknown.getEndBytecode());
+
+        // Offsets are kept as given, even if no method can have them
+        SourceLineAnnotation wide = new SourceLineAnnotation("com.example.Foo", "Foo.java", 10, 12, -5, 70000);
+        assertEquals(-5, wide.getStartBytecode());
+        assertEquals(70000, wide.getEndBytecode());
+
+        // and when the role changes, also in a clone
+        SourceLineAnnotation clone = (SourceLineAnnotation) wide.clone();
+        clone.setDescription(SourceLineAnnotation.ROLE_ANOTHER_INSTANCE);
+        assertEquals(SourceLineAnnotation.ROLE_ANOTHER_INSTANCE, clone.getDescription());
+        assertEquals(-5, clone.getStartBytecode());
+        assertEquals(70000, clone.getEndBytecode());
+        assertEquals(SourceLineAnnotation.DEFAULT_ROLE, wide.getDescription());
+        assertFalse(wide.equals(clone));
+    }
+
+    public void testEqualityUsesBytecodeRangeForUnknownLines() {
+        SourceLineAnnotation a = SourceLineAnnotation.createUnknown("com.example.Foo", "Foo.java", 3, 7);
+        SourceLineAnnotation b = SourceLineAnnotation.createUnknown("com.example.Foo", "Foo.java", 3, 7);
+        SourceLineAnnotation c = SourceLineAnnotation.createUnknown("com.example.Foo", "Foo.java", 3, 8);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertFalse(a.equals(c));
+        assertTrue(a.compareTo(c) < 0);
+    }
+}
@@ -0,0 +1,54 @@
+package edu.umd.cs.findbugs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+public class StreamingBugCollectionReaderTest extends TestCase {
+
+    private static BugInstance createBug(String type, String className, int line) {
+        BugInstance bug = new BugInstance(type, Priorities.NORMAL_PRIORITY);
+        bug.addClass(className);
+        bug.addSourceLine(new SourceLineAnnotation(className, "Source.java", line, line, -1, -1));
+        return bug;
+    }
+
+    public void testWriteAndReadBack() throws Exception {
+        SortedBugCollection bc = new SortedBugCollection();
+        bc.setReleaseName("1.0");
+        bc.addError("some analysis error");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingBugCollectionWriter writer = new StreamingBugCollectionWriter(bc, out);
+        writer.writeBugInstance(createBug("NP_NULL_ON_SOME_PATH", "com.example.Foo", 10));
+        writer.writeBugInstance(createBug("DLS_DEAD_LOCAL_STORE", "com.example.Bar", 20));
+        writer.finish();
+
+        StreamingBugCollectionReader reader = new StreamingBugCollectionReader(new SortedBugCollection(),
+                new ByteArrayInputStream(out.toByteArray()), null);
+        try {
+            SortedBugCollection read = reader.getBugCollection();
+            assertEquals("1.0", read.getReleaseName());
+
+            BugInstance first = reader.readBugInstance();
+            assertNotNull(first);
+            assertEquals("NP_NULL_ON_SOME_PATH", first.getType());
+            assertEquals("com.example.Foo", first.getPrimaryClass().getClassName());
+
+            BugInstance second = reader.readBugInstance();
+            assertNotNull(second);
+            assertEquals("DLS_DEAD_LOCAL_STORE", second.getType());
+
+            assertNull(reader.readBugInstance());
+            assertNull(reader.readBugInstance());
+
+            // Read instances are not kept in the collection, but the
+            // metadata following them is
+            assertTrue(read.getCollection().isEmpty());
+            assertEquals(1, read.getErrors().size());
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.Arrays;
+
+import org.apache.bcel.classfile.JavaClass;
+
+import edu.umd.cs.findbugs.FindBugsTestCase;
+import edu.umd.cs.findbugs.RunnableWithExceptions;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+
+/**
+ * Tests of {@link ClassHash}.
+ */
+public class ClassHashTest extends FindBugsTestCase {
+
+    private static void checkXClassHash(String className) throws Exception {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        ClassDescriptor classDescriptor = DescriptorFactory.createClassDescriptor(className);
+        JavaClass javaClass = analysisCache.getClassAnalysis(JavaClass.class, classDescriptor);
+        XClass xclass = analysisCache.getClassAnalysis(XClass.class, classDescriptor);
+
+        byte[] expected = new ClassHash().computeHash(javaClass).getClassHash();
+        byte[] actual = new ClassHash().computeHash(xclass).getClassHash();
+        assertTrue(ClassHash.hashToString(expected) + " != " + ClassHash.hashToString(actual), Arrays.equals(expected, actual));
+    }
+
+    public void testXClassHashMatchesJavaClassHash() throws Exception {
+        executeFindBugsTest(new RunnableWithExceptions() {
+            @Override
+            public void run() throws Throwable {
+                checkXClassHash("Empty");
+                checkXClassHash("java/lang/String");
+            }
+        });
+    }
+}
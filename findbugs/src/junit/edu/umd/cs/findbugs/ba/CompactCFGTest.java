@@ -0,0 +1,318 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2005, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.MethodGen;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.bcel.generic.NONNULL2Z;
+import edu.umd.cs.findbugs.bcel.generic.NULL2Z;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
+import edu.umd.cs.findbugs.io.IO;
+
+public class CompactCFGTest extends TestCase {
+
+    private byte[] classBytes;
+
+    private ClassReader classReader;
+
+    private File tempDir;
+
+    private IClassPath classPath;
+
+    @Override
+    protected void setUp() throws Exception {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PRIVATE, "f", "I", null, null).visitEnd();
+
+        // if (x > 0) return 1; return 0;
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "branch", "(I)I", null, null);
+        mv.visitCode();
+        Label zero = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFLE, zero);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(zero);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        // try { o.toString(); } catch (Throwable t) { } return;
+        mv = cw.visitMethod(Opcodes.ACC_STATIC, "tryCatch", "(Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mv.visitTryCatchBlock(start, end, handler, "java/lang/Throwable");
+        mv.visitLabel(start);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "toString", "()Ljava/lang/String;", false);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitLabel(end);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitLabel(handler);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        // switch (x) { case 1: case 2: return 1; default: return 0; }
+        mv = cw.visitMethod(Opcodes.ACC_STATIC, "lookupSwitch", "(I)I", null, null);
+        mv.visitCode();
+        Label one = new Label();
+        Label dflt = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitLookupSwitchInsn(dflt, new int[] { 1, 2 }, new Label[] { one, one });
+        mv.visitLabel(one);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(dflt);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        // while (x < 10) x++; return x;
+        mv = cw.visitMethod(Opcodes.ACC_STATIC, "loop", "(I)I", null, null);
+        mv.visitCode();
+        Label test = new Label();
+        Label done = new Label();
+        mv.visitLabel(test);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitIntInsn(Opcodes.BIPUSH, 10);
+        mv.visitJumpInsn(Opcodes.IF_ICMPGE, done);
+        mv.visitIincInsn(0, 1);
+        mv.visitJumpInsn(Opcodes.GOTO, test);
+        mv.visitLabel(done);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(2, 1);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_ABSTRACT, "noCode", "()V", null, null);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        classBytes = cw.toByteArray();
+        classReader = new ClassReader(classBytes);
+
+        // The BCEL CFG builder uses the analysis cache and context, which
+        // look up the classes on the class path
+        tempDir = File.createTempFile("findbugs", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        OutputStream out = new FileOutputStream(new File(tempDir, "Test.class"));
+        try {
+            out.write(classBytes);
+        } finally {
+            out.close();
+        }
+        IClassFactory factory = ClassFactory.instance();
+        classPath = factory.createClassPath();
+        classPath.addCodeBase(factory.createFilesystemCodeBaseLocator(tempDir.getPath()).openCodeBase());
+        String findBugsClasses = new File(CompactCFG.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .getPath();
+        classPath.addCodeBase(factory.createFilesystemCodeBaseLocator(findBugsClasses).openCodeBase());
+        IAnalysisCache analysisCache = factory.createAnalysisCache(classPath, new PrintingBugReporter());
+        new edu.umd.cs.findbugs.classfile.engine.EngineRegistrar().registerAnalysisEngines(analysisCache);
+        new edu.umd.cs.findbugs.classfile.engine.asm.EngineRegistrar().registerAnalysisEngines(analysisCache);
+        new edu.umd.cs.findbugs.classfile.engine.bcel.EngineRegistrar().registerAnalysisEngines(analysisCache);
+        Global.setAnalysisCacheForCurrentThread(analysisCache);
+        AnalysisContext.setCurrentAnalysisContext(new AnalysisContext(new Project()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        AnalysisContext.removeCurrentAnalysisContext();
+        Global.removeAnalysisCacheForCurrentThread();
+        classPath.close();
+        new File(tempDir, "Test.class").delete();
+        tempDir.delete();
+    }
+
+    public void testBranch() throws Exception {
+        CompactCFG cfg = CompactCFG.build(classReader, "branch", "(I)I");
+        assertNotNull(cfg);
+        assertEquals(4, cfg.getNumBasicBlocks());
+        assertEquals(3, cfg.getExit());
+        assertEquals(2, cfg.getNumInstructions(0));
+        assertEquals(1, cfg.getLastInstructionPC(0));
+        assertEquals(1, cfg.getSuccessorWithEdgeType(0, EdgeTypes.FALL_THROUGH_EDGE));
+        assertEquals(2, cfg.getSuccessorWithEdgeType(0, EdgeTypes.IFCMP_EDGE));
+        assertEquals(cfg.getExit(), cfg.getSuccessorWithEdgeType(1, EdgeTypes.RETURN_EDGE));
+        assertEquals(cfg.getExit(), cfg.getSuccessorWithEdgeType(2, EdgeTypes.RETURN_EDGE));
+        assertEquals(2, cfg.getNumPredecessors(cfg.getExit()));
+        assertEquals(0, cfg.getNumSuccessors(cfg.getExit()));
+        assertTrue(cfg.isEmpty(cfg.getExit()));
+    }
+
+    public void testBlockContaining() throws Exception {
+        CompactCFG cfg = CompactCFG.build(classReader, "branch", "(I)I");
+        assertEquals(0, cfg.getBlockContaining(0));
+        assertEquals(0, cfg.getBlockContaining(1));
+        assertEquals(1, cfg.getBlockContaining(4));
+        assertEquals(1, cfg.getBlockContaining(5));
+        assertEquals(2, cfg.getBlockContaining(6));
+        assertEquals(-1, cfg.getBlockContaining(cfg.getCodeLength()));
+    }
+
+    public void testExceptionHandler() throws Exception {
+        CompactCFG cfg = CompactCFG.build(classReader, "tryCatch", "(Ljava/lang/Object;)V");
+        assertNotNull(cfg);
+        // The end of the protected range doesn't end the first block
+        assertEquals(3, cfg.getNumBasicBlocks());
+        assertEquals(cfg.getExit(), cfg.getSuccessorWithEdgeType(0, EdgeTypes.RETURN_EDGE));
+        assertEquals(1, cfg.getSuccessorWithEdgeType(0, EdgeTypes.HANDLED_EXCEPTION_EDGE));
+        assertEquals(1, cfg.getNumNonExceptionSuccessors(0));
+        // The handler is outside the protected range
+        assertEquals(-1, cfg.getSuccessorWithEdgeType(1, EdgeTypes.HANDLED_EXCEPTION_EDGE));
+        assertEquals(0, cfg.getPredecessorWithEdgeType(1, EdgeTypes.HANDLED_EXCEPTION_EDGE));
+    }
+
+    public void testSwitch() throws Exception {
+        CompactCFG cfg = CompactCFG.build(classReader, "lookupSwitch", "(I)I");
+        assertNotNull(cfg);
+        assertEquals(4, cfg.getNumBasicBlocks());
+        // Both cases share one edge
+        assertEquals(2, cfg.getNumSuccessors(0));
+        assertEquals(2, cfg.getSuccessorWithEdgeType(0, EdgeTypes.SWITCH_DEFAULT_EDGE));
+        assertEquals(1, cfg.getSuccessorWithEdgeType(0, EdgeTypes.SWITCH_EDGE));
+    }
+
+    public void testLoop() throws Exception {
+        CompactCFG cfg = CompactCFG.build(classReader, "loop", "(I)I");
+        assertNotNull(cfg);
+        assertEquals(4, cfg.getNumBasicBlocks());
+        assertEquals(0, cfg.getSuccessorWithEdgeType(1, EdgeTypes.GOTO_EDGE));
+        assertEquals(2, cfg.getSuccessorWithEdgeType(0, EdgeTypes.IFCMP_EDGE));
+        // The only edge into the entry block is the back edge
+        assertEquals(1, cfg.getNumPredecessors(0));
+        assertEquals(4, cfg.getReachableBlocks().cardinality());
+    }
+
+    public void testNoCode() throws Exception {
+        assertNull(CompactCFG.build(classReader, "noCode", "()V"));
+        assertNull(CompactCFG.build(classReader, "missing", "()V"));
+    }
+    public void testMapBasicBlocks() throws Exception {
+        checkMapping(classBytes, "Test");
+    }
+
+    public void testMapBasicBlocksOfRealCode() throws Exception {
+        for (Class<?> c : new Class<?>[] { CompactCFG.class, BetterCFGBuilder2.class }) {
+            InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class");
+            checkMapping(IO.readAll(in), c.getName());
+        }
+    }
+
+    /**
+     * Check that the mapping from the BCEL CFG of every method of a class
+     * keeps the instructions of each block, and that every edge between
+     * blocks mapped to different blocks, except unhandled exception and exit
+     * edges, is an edge of the compact CFG. Blocks with null checks simplified by
+     * the CFG builder are only checked up to the check.
+     */
+    private void checkMapping(byte[] bytes, String className) throws Exception {
+        ClassReader reader = new ClassReader(bytes);
+        JavaClass jclass = new ClassParser(new ByteArrayInputStream(bytes), className + ".class").parse();
+        ConstantPoolGen cpg = new ConstantPoolGen(jclass.getConstantPool());
+        for (Method method : jclass.getMethods()) {
+            if (method.getCode() == null) {
+                continue;
+            }
+            String where = className + "." + method.getName() + method.getSignature();
+            CompactCFG compact = CompactCFG.build(reader, method.getName(), method.getSignature());
+            MethodDescriptor descriptor = DescriptorFactory.instance().getMethodDescriptor(className.replace('.', '/'),
+                    method.getName(), method.getSignature(), method.isStatic());
+            BetterCFGBuilder2 builder = new BetterCFGBuilder2(descriptor, new MethodGen(method, className, cpg));
+            builder.build();
+            CFG cfg = builder.getCFG();
+
+            int[] map = compact.mapBasicBlocks(cfg);
+            Set<BasicBlock> nullChecks = new HashSet<BasicBlock>();
+            for (BasicBlock block : cfg.blocks()) {
+                int mapped = map[block.getLabel()];
+                assertTrue(where + " " + block, mapped >= 0);
+                for (Iterator<InstructionHandle> i = block.instructionIterator(); i.hasNext();) {
+                    InstructionHandle handle = i.next();
+                    if (handle.getInstruction() instanceof NULL2Z || handle.getInstruction() instanceof NONNULL2Z) {
+                        // The rest of the block spans the blocks of the check
+                        nullChecks.add(block);
+                        break;
+                    }
+                    int pc = handle.getPosition();
+                    // The NOP added by the builder at the entry has no PC
+                    assertTrue(where + " " + block, pc < 0 || compact.getStartPC(mapped) <= pc && pc < compact.getEndPC(mapped));
+                }
+            }
+            for (Iterator<Edge> i = cfg.edgeIterator(); i.hasNext();) {
+                Edge edge = i.next();
+                int source = map[edge.getSource().getLabel()];
+                int target = map[edge.getTarget().getLabel()];
+                // Only athrow has unhandled exception edges here, and calls
+                // of System.exit() have no exit edges
+                if (source != target && edge.getType() != EdgeTypes.UNHANDLED_EXCEPTION_EDGE
+                        && edge.getType() != EdgeTypes.EXIT_EDGE && !nullChecks.contains(edge.getSource())) {
+                    assertTrue(where + " " + edge, hasEdge(compact, source, target));
+                }
+            }
+        }
+    }
+
+    private static boolean hasEdge(CompactCFG cfg, int source, int target) {
+        for (int i = 0; i < cfg.getNumSuccessors(source); i++) {
+            if (cfg.getSuccessor(source, i) == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
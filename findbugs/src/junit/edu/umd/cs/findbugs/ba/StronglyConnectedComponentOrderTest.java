@@ -0,0 +1,91 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2005, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class StronglyConnectedComponentOrderTest extends TestCase {
+
+    private CFG cfg;
+
+    private BasicBlock entry, a, b, c, exit;
+
+    /**
+     * Orders blocks by decreasing label, which is not a topological order of
+     * the test CFG.
+     */
+    private BlockOrder blockOrder;
+
+    @Override
+    protected void setUp() throws Exception {
+        cfg = new CFG();
+        entry = cfg.getEntry();
+        a = cfg.allocate();
+        b = cfg.allocate();
+        c = cfg.allocate();
+        exit = cfg.getExit();
+
+        // entry -> a <-> b -> c -> exit
+        cfg.createEdge(entry, a, EdgeTypes.FALL_THROUGH_EDGE);
+        cfg.createEdge(a, b, EdgeTypes.FALL_THROUGH_EDGE);
+        cfg.createEdge(b, a, EdgeTypes.GOTO_EDGE);
+        cfg.createEdge(b, c, EdgeTypes.IFCMP_EDGE);
+        cfg.createEdge(c, exit, EdgeTypes.RETURN_EDGE);
+
+        blockOrder = new AbstractBlockOrder(cfg, new Comparator<BasicBlock>() {
+            @Override
+            public int compare(BasicBlock o1, BasicBlock o2) {
+                return o2.getLabel() - o1.getLabel();
+            }
+        }) {
+        };
+    }
+
+    private static List<BasicBlock> toList(BlockOrder order) {
+        List<BasicBlock> result = new ArrayList<BasicBlock>();
+        for (Iterator<BasicBlock> i = order.blockIterator(); i.hasNext();) {
+            result.add(i.next());
+        }
+        return result;
+    }
+
+    public void testForwards() {
+        StronglyConnectedComponentOrder order = new StronglyConnectedComponentOrder(cfg, blockOrder, true);
+        assertEquals(Arrays.asList(entry, b, a, c, exit), toList(order));
+    }
+
+    public void testBackwards() {
+        StronglyConnectedComponentOrder order = new StronglyConnectedComponentOrder(cfg, blockOrder, false);
+        assertEquals(Arrays.asList(exit, c, b, a, entry), toList(order));
+    }
+
+    public void testLabelsUnchanged() {
+        new StronglyConnectedComponentOrder(cfg, blockOrder, true);
+        assertEquals(0, entry.getLabel());
+        assertEquals(4, exit.getLabel());
+        assertEquals(5, cfg.getNumBasicBlocks());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.ch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+public class ClassHierarchyCallGraphTest extends TestCase {
+
+    private static MethodDescriptor method(String name) {
+        return DescriptorFactory.instance().getMethodDescriptor("test/C", name, "()V", false);
+    }
+
+    public void testGraphCallers() {
+        // a -> b, a -> c, b -> c; c calls nothing, d is a library method
+        // called by c
+        List<MethodDescriptor> methods = new ArrayList<MethodDescriptor>();
+        Map<MethodDescriptor, Integer> ids = new HashMap<MethodDescriptor, Integer>();
+        for (String name : new String[] { "a", "b", "c", "d" }) {
+            ids.put(method(name), methods.size());
+            methods.add(method(name));
+        }
+        int[] calleeStart = { 0, 2, 3, 4, 4 };
+        int[] callee = { 1, 2, 2, 3 };
+        ClassHierarchyCallGraph.Graph graph = new ClassHierarchyCallGraph.Graph(methods, ids, 3, calleeStart, callee);
+
+        assertEquals(4, graph.getNumMethods());
+        assertEquals(3, graph.getNumApplicationMethods());
+        assertEquals(4, graph.getNumEdges());
+        assertEquals(2, graph.getMethodId(method("c")));
+        assertEquals(-1, graph.getMethodId(method("e")));
+        assertEquals(method("d"), graph.getMethod(3));
+
+        assertEquals(2, graph.getNumCallees(0));
+        assertEquals(1, graph.getCallee(0, 0));
+        assertEquals(2, graph.getCallee(0, 1));
+        assertEquals(0, graph.getNumCallees(3));
+
+        assertEquals(0, graph.getNumCallers(0));
+        assertEquals(1, graph.getNumCallers(1));
+        assertEquals(0, graph.getCaller(1, 0));
+        assertEquals(2, graph.getNumCallers(2));
+        assertEquals(0, graph.getCaller(2, 0));
+        assertEquals(1, graph.getCaller(2, 1));
+        assertEquals(1, graph.getNumCallers(3));
+        assertEquals(2, graph.getCaller(3, 0));
+    }
+
+    public void testDispatchTargets() {
+        ClassHierarchyCallGraph callGraph = new ClassHierarchyCallGraph();
+        ClassDescriptor receiver = DescriptorFactory.createClassDescriptor("test/C");
+
+        assertNull(callGraph.getDispatchTargets(receiver, "m", "()V", false, false));
+        Set<XMethod> targets = callGraph.putDispatchTargets(receiver, "m", "()V", false, false, new LinkedHashSet<XMethod>());
+        assertTrue(targets.isEmpty());
+        assertSame(targets, callGraph.getDispatchTargets(receiver, "m", "()V", false, false));
+
+        // Exact and invokespecial calls are memoized separately
+        assertNull(callGraph.getDispatchTargets(receiver, "m", "()V", true, false));
+        assertNull(callGraph.getDispatchTargets(receiver, "m", "()V", false, true));
+        assertEquals(1, callGraph.getNumDispatchTargets());
+
+        // So are the concrete targets
+        assertNull(callGraph.getConcreteDispatchTargets(receiver, "m", "()V", false, false));
+        Set<XMethod> concrete = callGraph.putConcreteDispatchTargets(receiver, "m", "()V", false, false,
+                new LinkedHashSet<XMethod>());
+        assertSame(concrete, callGraph.getConcreteDispatchTargets(receiver, "m", "()V", false, false));
+        assertSame(targets, callGraph.getDispatchTargets(receiver, "m", "()V", false, false));
+        assertEquals(2, callGraph.getNumDispatchTargets());
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.ch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.bcel.Constants;
+
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IClassFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
+import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
+
+public class HierarchyIndexTest extends TestCase {
+
+    private InheritanceGraph graph;
+
+    private Map<String, ClassVertex> vertices;
+
+    private HierarchyIndex index;
+
+    private IClassPath classPath;
+
+    private static ClassDescriptor desc(String name) {
+        return DescriptorFactory.createClassDescriptor(name);
+    }
+
+    private ClassVertex addClass(String name, boolean isInterface, String superclass, String... interfaces) {
+        ClassInfo.Builder builder = new ClassInfo.Builder();
+        builder.setClassDescriptor(desc(name));
+        builder.setAccessFlags(isInterface ? Constants.ACC_INTERFACE | Constants.ACC_ABSTRACT : 0);
+        ClassVertex vertex = ClassVertex.createResolvedClassVertex(desc(name), builder.build());
+        graph.addVertex(vertex);
+        vertices.put(name, vertex);
+        if (superclass != null) {
+            graph.createEdge(vertex, vertices.get(superclass));
+        }
+        for (String i : interfaces) {
+            graph.createEdge(vertex, vertices.get(i));
+        }
+        return vertex;
+    }
+
+    private ClassVertex addMissingClass(String name) {
+        ClassVertex vertex = ClassVertex.createMissingClassVertex(desc(name), false);
+        graph.addVertex(vertex);
+        vertices.put(name, vertex);
+        return vertex;
+    }
+
+    private int id(String name) {
+        return index.getId(desc(name));
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        // The ClassInfos are built from scratch, but like those of an
+        // analysis they may consult the analysis cache
+        IClassFactory factory = ClassFactory.instance();
+        classPath = factory.createClassPath();
+        Global.setAnalysisCacheForCurrentThread(factory.createAnalysisCache(classPath, new PrintingBugReporter()));
+
+        graph = new InheritanceGraph();
+        vertices = new HashMap<String, ClassVertex>();
+
+        // Object
+        // +- p/A implements p/I
+        // |  +- p/B implements q/J
+        // |  +- p/C
+        // +- q/D implements q/K
+        // +- p/I, q/J (extends p/I), q/K (extends p/I)
+        // r/Missing
+        // +- r/E
+        addClass("java/lang/Object", false, null);
+        addClass("p/I", true, "java/lang/Object");
+        addClass("q/J", true, "java/lang/Object", "p/I");
+        addClass("q/K", true, "java/lang/Object", "p/I");
+        addClass("p/A", false, "java/lang/Object", "p/I");
+        addClass("p/B", false, "p/A", "q/J");
+        addClass("p/C", false, "p/A");
+        addClass("q/D", false, "java/lang/Object", "q/K");
+        addMissingClass("r/Missing");
+        addClass("r/E", false, "r/Missing");
+
+        index = new HierarchyIndex(graph);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Global.removeAnalysisCacheForCurrentThread();
+        classPath.close();
+    }
+
+    public void testIds() {
+        assertEquals(10, index.size());
+        assertTrue(index.isComplete());
+        assertEquals(-1, index.getId(desc("p/Unknown")));
+        assertEquals(desc("p/B"), index.getClassDescriptor(id("p/B")));
+    }
+
+    public void testSupertypes() {
+        assertTrue(index.hasSupertype(id("p/B"), desc("p/A")));
+        assertTrue(index.hasSupertype(id("p/B"), desc("java/lang/Object")));
+        assertTrue(index.hasSupertype(id("p/B"), desc("q/J")));
+        assertTrue(index.hasSupertype(id("p/B"), desc("p/I")));
+        assertTrue(index.hasSupertype(id("p/C"), desc("p/I")));
+        assertTrue(index.hasSupertype(id("q/J"), desc("p/I")));
+        assertTrue(index.hasSupertype(id("r/E"), desc("r/Missing")));
+        assertFalse(index.hasSupertype(id("p/C"), desc("q/J")));
+        assertFalse(index.hasSupertype(id("p/A"), desc("p/B")));
+        assertFalse(index.hasSupertype(id("q/D"), desc("p/A")));
+        assertFalse(index.hasSupertype(id("p/A"), desc("p/Unknown")));
+        assertFalse(index.isIncomplete(id("p/B")));
+        assertTrue(index.isIncomplete(id("r/E")));
+    }
+
+    public void testSubtypes() throws Exception {
+        assertEquals(set("p/I", "q/J", "q/K", "p/A", "p/B", "p/C", "q/D"), index.getSubtypes(id("p/I")));
+        assertEquals(set("q/J", "p/B"), index.getSubtypes(id("q/J")));
+        assertEquals(set("p/A", "p/B", "p/C"), index.getSubtypes(id("p/A")));
+        assertEquals(set("p/C"), index.getSubtypes(id("p/C")));
+        try {
+            index.getSubtypes(id("r/Missing"));
+            fail();
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+    }
+
+    public void testFirstCommonSuperclass() throws Exception {
+        assertEquals(id("p/A"), index.getFirstCommonSuperclass(id("p/B"), id("p/C")));
+        assertEquals(id("p/A"), index.getFirstCommonSuperclass(id("p/A"), id("p/C")));
+        // Only Object is a common superclass, so a common interface is used
+        assertEquals(id("p/I"), index.getFirstCommonSuperclass(id("p/B"), id("q/D")));
+        assertEquals(id("p/I"), index.getFirstCommonSuperclass(id("q/J"), id("q/K")));
+        try {
+            index.getFirstCommonSuperclass(id("r/E"), id("p/A"));
+            fail();
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compare the index of random hierarchies with the transitive closure of
+     * the graph's edges.
+     */
+    public void testRandomHierarchies() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            graph = new InheritanceGraph();
+            vertices = new HashMap<String, ClassVertex>();
+            List<String> classes = new ArrayList<String>();
+            List<String> interfaces = new ArrayList<String>();
+            addClass("java/lang/Object", false, null);
+            classes.add("java/lang/Object");
+            int n = 1 + random.nextInt(60);
+            for (int i = 0; i < n; i++) {
+                String name = "p" + random.nextInt(3) + "/T" + i;
+                int kind = random.nextInt(10);
+                if (kind == 0) {
+                    addMissingClass(name);
+                    classes.add(name);
+                    continue;
+                }
+                List<String> implemented = new ArrayList<String>();
+                for (String candidate : interfaces) {
+                    if (random.nextInt(4) == 0) {
+                        implemented.add(candidate);
+                    }
+                }
+                String[] implementedArray = implemented.toArray(new String[implemented.size()]);
+                if (kind < 4) {
+                    addClass(name, true, "java/lang/Object", implementedArray);
+                    interfaces.add(name);
+                } else {
+                    addClass(name, false, classes.get(random.nextInt(classes.size())), implementedArray);
+                    classes.add(name);
+                }
+            }
+            index = new HierarchyIndex(graph);
+            checkIndex();
+        }
+    }
+
+    private void checkIndex() throws Exception {
+        assertEquals(vertices.size(), index.size());
+        assertTrue(index.isComplete());
+
+        Map<String, Set<String>> supertypes = new HashMap<String, Set<String>>();
+        for (String name : vertices.keySet()) {
+            supertypes.put(name, closure(name));
+        }
+        for (String sub : vertices.keySet()) {
+            Set<String> expected = supertypes.get(sub);
+            boolean missing = false;
+            for (String sup : expected) {
+                missing |= !vertices.get(sup).isResolved();
+            }
+            assertEquals(sub, missing, index.isIncomplete(id(sub)));
+            for (String sup : vertices.keySet()) {
+                assertEquals(sub + " <: " + sup, expected.contains(sup), index.hasSupertype(id(sub), desc(sup)));
+            }
+        }
+
+        for (String sup : vertices.keySet()) {
+            if (!vertices.get(sup).isResolved()) {
+                continue;
+            }
+            Set<ClassDescriptor> expected = new HashSet<ClassDescriptor>();
+            for (String sub : vertices.keySet()) {
+                if (supertypes.get(sub).contains(sup)) {
+                    expected.add(desc(sub));
+                }
+            }
+            assertEquals(sup, expected, index.getSubtypes(id(sup)));
+        }
+
+        for (String a : vertices.keySet()) {
+            for (String b : vertices.keySet()) {
+                int common;
+                try {
+                    common = index.getFirstCommonSuperclass(id(a), id(b));
+                } catch (ClassNotFoundException e) {
+                    assertTrue(a + ", " + b, index.isIncomplete(id(a)) || index.isIncomplete(id(b)));
+                    continue;
+                }
+                if (common >= 0) {
+                    String name = index.getClassDescriptor(common).getClassName();
+                    assertTrue(a + ", " + b, supertypes.get(a).contains(name) && supertypes.get(b).contains(name));
+                    // Object is only returned if it is one of the classes
+                    assertTrue(!"java/lang/Object".equals(name) || name.equals(a) || name.equals(b));
+                } else {
+                    Set<String> shared = new HashSet<String>(supertypes.get(a));
+                    shared.retainAll(supertypes.get(b));
+                    shared.remove("java/lang/Object");
+                    assertTrue(a + ", " + b + ": " + shared, shared.isEmpty());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the class and all its supertypes, found by following the edges
+     *         of the graph
+     */
+    private Set<String> closure(String name) {
+        Set<String> result = new HashSet<String>();
+        List<ClassVertex> workList = new ArrayList<ClassVertex>();
+        workList.add(vertices.get(name));
+        while (!workList.isEmpty()) {
+            ClassVertex vertex = workList.remove(workList.size() - 1);
+            if (result.add(vertex.getClassDescriptor().getClassName())) {
+                for (Iterator<InheritanceEdge> i = graph.outgoingEdgeIterator(vertex); i.hasNext();) {
+                    workList.add(i.next().getTarget());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Set<ClassDescriptor> set(String... names) {
+        Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
+        for (String name : names) {
+            result.add(desc(name));
+        }
+        return result;
+    }
+}
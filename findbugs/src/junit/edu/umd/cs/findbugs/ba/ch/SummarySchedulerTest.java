@@ -0,0 +1,134 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.ch;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+public class SummarySchedulerTest extends TestCase {
+
+    /*
+     * 0 -> 1, 0 -> 2, 1 -> 3, 2 -> 3, 3 -> 4, 4 -> 3, 5 -> 5, 6 alone
+     */
+    private static final int[] CALLEE_START = { 0, 2, 3, 4, 5, 6, 7, 7 };
+
+    private static final int[] CALLEE = { 1, 2, 3, 3, 4, 3, 5 };
+
+    private SummaryScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        scheduler = new SummaryScheduler(7, CALLEE_START, CALLEE);
+    }
+
+    public void testComponents() {
+        assertEquals(6, scheduler.getNumComponents());
+        assertEquals(scheduler.getComponent(3), scheduler.getComponent(4));
+        assertEquals(2, scheduler.getComponentSize(scheduler.getComponent(3)));
+        assertTrue(scheduler.isRecursive(scheduler.getComponent(3)));
+        assertTrue(scheduler.isRecursive(scheduler.getComponent(5)));
+        assertFalse(scheduler.isRecursive(scheduler.getComponent(0)));
+        assertFalse(scheduler.isRecursive(scheduler.getComponent(6)));
+    }
+
+    public void testBottomUp() {
+        for (int m = 0; m < 7; m++) {
+            for (int e = CALLEE_START[m]; e < CALLEE_START[m + 1]; e++) {
+                assertTrue(scheduler.getComponent(CALLEE[e]) <= scheduler.getComponent(m));
+            }
+        }
+        assertTrue(scheduler.getComponent(1) < scheduler.getComponent(0));
+        assertTrue(scheduler.getComponent(3) < scheduler.getComponent(2));
+    }
+
+    /**
+     * Computes the length of the longest call chain from each method, capped
+     * at 10, which needs iteration in recursive components.
+     */
+    private static class Depth implements SummaryScheduler.Summarizer {
+        final AtomicIntegerArray depth = new AtomicIntegerArray(7);
+
+        final AtomicIntegerArray count = new AtomicIntegerArray(7);
+
+        @Override
+        public boolean summarize(int method) {
+            count.incrementAndGet(method);
+            int d = 0;
+            for (int e = CALLEE_START[method]; e < CALLEE_START[method + 1]; e++) {
+                d = Math.max(d, depth.get(CALLEE[e]) + 1);
+            }
+            d = Math.min(d, 10);
+            return depth.getAndSet(method, d) != d;
+        }
+    }
+
+    private void checkDepth(Depth summarizer) {
+        assertEquals(10, summarizer.depth.get(0));
+        assertEquals(10, summarizer.depth.get(3));
+        assertEquals(10, summarizer.depth.get(5));
+        assertEquals(0, summarizer.depth.get(6));
+        // Methods which aren't recursive are summarized once
+        assertEquals(1, summarizer.count.get(0));
+        assertEquals(1, summarizer.count.get(1));
+        assertEquals(1, summarizer.count.get(6));
+        assertTrue(summarizer.count.get(3) > 1);
+    }
+
+    public void testRun() throws InterruptedException {
+        Depth summarizer = new Depth();
+        scheduler.run(summarizer, 1);
+        checkDepth(summarizer);
+    }
+
+    public void testParallelRun() throws InterruptedException {
+        Depth summarizer = new Depth();
+        scheduler.run(summarizer, 4);
+        checkDepth(summarizer);
+    }
+
+    public void testParallelRunOfChain() throws InterruptedException {
+        // Each method calls the next one
+        int n = 1000;
+        int[] calleeStart = new int[n + 1];
+        int[] callee = new int[n - 1];
+        for (int m = 0; m < n - 1; m++) {
+            callee[m] = m + 1;
+            calleeStart[m + 1] = m + 1;
+        }
+        calleeStart[n] = n - 1;
+        final int[] order = new int[n];
+        Arrays.fill(order, -1);
+        final int[] next = new int[1];
+        new SummaryScheduler(n, calleeStart, callee).run(new SummaryScheduler.Summarizer() {
+            @Override
+            public boolean summarize(int method) {
+                synchronized (next) {
+                    order[method] = next[0]++;
+                }
+                return false;
+            }
+        }, 4);
+        for (int m = 0; m < n - 1; m++) {
+            assertTrue(order[m] > order[m + 1]);
+        }
+    }
+}
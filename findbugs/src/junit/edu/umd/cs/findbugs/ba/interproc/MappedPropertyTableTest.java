@@ -0,0 +1,67 @@
+package edu.umd.cs.findbugs.ba.interproc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.ba.npe.ReturnValueNullnessPropertyDatabase;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+public class MappedPropertyTableTest extends TestCase {
+
+    private static byte[] write(MappedPropertyTable.Entry... entries) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MappedPropertyTable.write(Arrays.asList(entries), out);
+        return out.toByteArray();
+    }
+
+    public void testLookup() throws Exception {
+        MappedPropertyTable table = MappedPropertyTable.wrap(write(
+                new MappedPropertyTable.Entry("java.lang.String,valueOf,(I)Ljava/lang/String;", 9, "true"),
+                new MappedPropertyTable.Entry("java.lang.Object,toString,()Ljava/lang/String;", 1, "true"),
+                new MappedPropertyTable.Entry("java.lang.String,trim,()Ljava/lang/String;", 1, "false"),
+                new MappedPropertyTable.Entry("java.lang.String,trim,()Ljava/lang/String;", 1, "true"),
+                new MappedPropertyTable.Entry("java.lang.String,trim,()Ljava/lang/String;", 9, "static")));
+
+        assertEquals(4, table.size());
+        assertEquals("java.lang.Object,toString,()Ljava/lang/String;", table.getKey(0));
+        assertEquals("true", table.lookup("java.lang.String", "valueOf", "(I)Ljava/lang/String;", true));
+        assertNull(table.lookup("java.lang.String", "valueOf", "(I)Ljava/lang/String;", false));
+        // The last of equal entries is kept
+        assertEquals("true", table.lookup("java.lang.String", "trim", "()Ljava/lang/String;", false));
+        assertEquals("static", table.lookup("java.lang.String", "trim", "()Ljava/lang/String;", true));
+        assertNull(table.lookup("java.lang.String", "tri", "()Ljava/lang/String;", false));
+        assertNull(table.lookup("java.lang.Strin", "trim", "()Ljava/lang/String;", false));
+    }
+
+    public void testReadDatabase() throws Exception {
+        byte[] data = write(new MappedPropertyTable.Entry("java.lang.Object,toString,()Ljava/lang/String;", 1, "true"));
+        ReturnValueNullnessPropertyDatabase database = new ReturnValueNullnessPropertyDatabase();
+        database.read(new ByteArrayInputStream(data));
+
+        DescriptorFactory factory = DescriptorFactory.instance();
+        MethodDescriptor toString = factory.getMethodDescriptor("java/lang/Object", "toString", "()Ljava/lang/String;", false);
+        MethodDescriptor hashCode = factory.getMethodDescriptor("java/lang/Object", "hashCode", "()I", false);
+        assertFalse(database.isEmpty());
+        assertEquals(Boolean.TRUE, database.getProperty(toString));
+        assertNull(database.getProperty(hashCode));
+
+        database.setProperty(toString, Boolean.FALSE);
+        assertEquals(Boolean.FALSE, database.getProperty(toString));
+
+        database.setProperty(hashCode, Boolean.TRUE);
+        assertEquals(2, database.getKeys().size());
+        assertEquals(Boolean.FALSE, database.getProperty(toString));
+    }
+
+    public void testReadTextDatabase() throws Exception {
+        byte[] data = "java.lang.Object,toString,()Ljava/lang/String;,1|true\n".getBytes("UTF-8");
+        ReturnValueNullnessPropertyDatabase database = new ReturnValueNullnessPropertyDatabase();
+        database.read(new ByteArrayInputStream(data));
+        MethodDescriptor toString = DescriptorFactory.instance().getMethodDescriptor("java/lang/Object", "toString",
+                "()Ljava/lang/String;", false);
+        assertEquals(Boolean.TRUE, database.getProperty(toString));
+    }
+}
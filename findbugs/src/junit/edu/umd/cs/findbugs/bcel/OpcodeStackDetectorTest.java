@@ -0,0 +1,68 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.bcel;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.OpcodeStack;
+
+public class OpcodeStackDetectorTest extends TestCase {
+
+    static class ReadingDetector extends OpcodeStackDetector {
+        @Override
+        public void sawOpcode(int seen) {
+            stack.getStackDepth();
+        }
+    }
+
+    @OpcodeStack.ModifiesStack
+    static class AnnotatedDetector extends OpcodeStackDetector {
+        @Override
+        public void sawOpcode(int seen) {
+            stack.replaceTop(new OpcodeStack.Item());
+        }
+    }
+
+    static class UnannotatedDetector extends OpcodeStackDetector {
+        @Override
+        public void sawOpcode(int seen) {
+            stack.replaceTop(new OpcodeStack.Item());
+        }
+    }
+
+    static class UnannotatedSubclass extends UnannotatedDetector {
+    }
+
+    public void testFindUnannotatedStackModification() throws Exception {
+        assertNull(OpcodeStackDetector.findUnannotatedStackModification(ReadingDetector.class));
+        assertNull(OpcodeStackDetector.findUnannotatedStackModification(AnnotatedDetector.class));
+        assertEquals(UnannotatedDetector.class.getName() + ".sawOpcode",
+                OpcodeStackDetector.findUnannotatedStackModification(UnannotatedDetector.class));
+        assertEquals(UnannotatedDetector.class.getName() + ".sawOpcode",
+                OpcodeStackDetector.findUnannotatedStackModification(UnannotatedSubclass.class));
+    }
+
+    public void testIsModifyingStack() {
+        assertFalse(new ReadingDetector().isModifyingStack());
+        assertTrue(new AnnotatedDetector().isModifyingStack());
+        // Not annotated, but simulates the stack anyway
+        assertTrue(new UnannotatedDetector().isModifyingStack());
+        assertTrue(new UnannotatedSubclass().isModifyingStack());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.analysis;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.bcel.Constants;
+
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+
+public class MemberStoreTest extends TestCase {
+
+    private static final ClassDescriptor NULLABLE = DescriptorFactory.createClassDescriptor("javax/annotation/Nullable");
+
+    private ClassInfo classInfo(String className) {
+        ClassInfo.Builder builder = new ClassInfo.Builder();
+        builder.setClassDescriptor(DescriptorFactory.createClassDescriptor(className));
+        builder.setAccessFlags(Constants.ACC_PUBLIC);
+
+        FieldInfo.Builder count = new FieldInfo.Builder(className, "count", "I", Constants.ACC_PRIVATE);
+        builder.addFieldDescriptor(count.build());
+        FieldInfo.Builder name = new FieldInfo.Builder(className, "name", "Ljava/lang/String;", Constants.ACC_PUBLIC);
+        name.addAnnotation("Ljavax/annotation/Nullable;", new AnnotationValue(NULLABLE));
+        builder.addFieldDescriptor(name.build());
+        FieldInfo.Builder instance = new FieldInfo.Builder(className, "INSTANCE", "L" + className + ";",
+                Constants.ACC_PUBLIC | Constants.ACC_STATIC | Constants.ACC_FINAL);
+        builder.addFieldDescriptor(instance.build());
+        return builder.build();
+    }
+
+    public void testCompact() {
+        MemberStore store = new MemberStore();
+        ClassInfo c = classInfo("test/A");
+        assertFalse(c.hasCompactMembers());
+        assertTrue(store.compact(c));
+        assertTrue(c.hasCompactMembers());
+        assertFalse(store.compact(c));
+        assertEquals(3, store.getNumFields());
+
+        assertTrue(store.compact(classInfo("test/B")));
+        assertEquals(6, store.getNumFields());
+    }
+
+    public void testFindField() {
+        MemberStore store = new MemberStore();
+        ClassInfo c = classInfo("test/A");
+        store.compact(c);
+
+        XField name = c.findField("name", "Ljava/lang/String;", false);
+        assertNotNull(name);
+        assertEquals("test.A", name.getClassName());
+        assertTrue(name.isPublic());
+        assertNotNull(name.getAnnotation(NULLABLE));
+        // A field is materialized only once
+        assertSame(name, c.findField("name", "Ljava/lang/String;", false));
+
+        XField instance = c.findField("INSTANCE", "Ltest/A;", true);
+        assertNotNull(instance);
+        assertTrue(instance.isStatic());
+        assertTrue(instance.isFinal());
+        assertTrue(instance.getAnnotations().isEmpty());
+
+        assertNull(c.findField("INSTANCE", "Ltest/A;", false));
+    }
+
+    public void testGetXFields() {
+        MemberStore store = new MemberStore();
+        ClassInfo c = classInfo("test/A");
+        store.compact(c);
+
+        XField count = c.findField("count", "I", false);
+        List<? extends XField> fields = c.getXFields();
+        assertEquals(3, fields.size());
+        assertSame(count, fields.get(0));
+        assertEquals("name", fields.get(1).getName());
+        assertEquals("INSTANCE", fields.get(2).getName());
+        assertSame(fields.get(2), c.findField("INSTANCE", "Ltest/A;", true));
+    }
+}
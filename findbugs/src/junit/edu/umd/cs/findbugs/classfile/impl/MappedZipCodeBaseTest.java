@@ -0,0 +1,141 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006,2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ICodeBaseIterator;
+import edu.umd.cs.findbugs.io.IO;
+
+public class MappedZipCodeBaseTest extends TestCase {
+
+    private File zipFile;
+
+    private byte[] stored;
+
+    private byte[] deflated;
+
+    @Override
+    protected void setUp() throws Exception {
+        stored = new byte[1000];
+        for (int i = 0; i < stored.length; i++) {
+            stored[i] = (byte) (i * 31);
+        }
+        deflated = new byte[100000];
+        for (int i = 0; i < deflated.length; i++) {
+            deflated[i] = (byte) (i % 97);
+        }
+
+        zipFile = File.createTempFile("findbugs", ".zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+        try {
+            out.putNextEntry(new ZipEntry("dir/"));
+            out.closeEntry();
+
+            ZipEntry storedEntry = new ZipEntry("dir/Stored.class");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setCrc(crc.getValue());
+            out.putNextEntry(storedEntry);
+            out.write(stored);
+            out.closeEntry();
+
+            out.putNextEntry(new ZipEntry("dir/Deflated.class"));
+            out.write(deflated);
+            out.closeEntry();
+
+            out.setComment("a comment");
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        zipFile.delete();
+    }
+
+    private static byte[] read(ICodeBaseEntry entry) throws IOException {
+        return IO.readAll(entry.openResource());
+    }
+
+    public void testReadEntries() throws Exception {
+        MappedZipCodeBase codeBase = new MappedZipCodeBase(null, zipFile);
+        try {
+            assertTrue(Arrays.equals(stored, read(codeBase.lookupResource("dir/Stored.class"))));
+            assertTrue(Arrays.equals(deflated, read(codeBase.lookupResource("dir/Deflated.class"))));
+            assertNull(codeBase.lookupResource("dir/Missing.class"));
+        } finally {
+            codeBase.close();
+        }
+    }
+
+    public void testContentsAreNotMapped() throws Exception {
+        MappedZipCodeBase codeBase = new MappedZipCodeBase(null, zipFile);
+        try {
+            MappedZipCodeBaseEntry entry = (MappedZipCodeBaseEntry) codeBase.lookupResource("dir/Stored.class");
+            assertFalse(entry.getContents().isDirect());
+            entry = (MappedZipCodeBaseEntry) codeBase.lookupResource("dir/Deflated.class");
+            assertFalse(entry.getContents().isDirect());
+        } finally {
+            codeBase.close();
+        }
+    }
+
+    public void testClose() throws Exception {
+        MappedZipCodeBase codeBase = new MappedZipCodeBase(null, zipFile);
+        ICodeBaseEntry entry = codeBase.lookupResource("dir/Stored.class");
+        InputStream in = entry.openResource();
+        codeBase.close();
+        codeBase.close();
+        // A stream opened before the codebase is closed can still be read
+        assertTrue(Arrays.equals(stored, IO.readAll(in)));
+        try {
+            entry.openResource();
+            fail("Entry of a closed codebase read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testIteratorSkipsDirectories() throws Exception {
+        MappedZipCodeBase codeBase = new MappedZipCodeBase(null, zipFile);
+        Set<String> names = new HashSet<String>();
+        for (ICodeBaseIterator i = codeBase.iterator(); i.hasNext();) {
+            names.add(i.next().getResourceName());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("dir/Stored.class", "dir/Deflated.class")), names);
+        assertTrue(codeBase.getLastModifiedTime() > 0);
+        codeBase.close();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006,2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class SingleFlightTest extends TestCase {
+
+    public void testComputedOnce() throws Exception {
+        final ConcurrentAnalysisCache.SingleFlight singleFlight = new ConcurrentAnalysisCache.SingleFlight();
+        final AtomicInteger computations = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<Object> cache = new AtomicReference<Object>();
+        final ConcurrentAnalysisCache.Computation slow = new ConcurrentAnalysisCache.Computation() {
+            @Override
+            public Object compute() {
+                // Like the analysis cache, look for a result computed meanwhile
+                if (cache.get() != null) {
+                    return cache.get();
+                }
+                computations.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                cache.set("result");
+                return "result";
+            }
+        };
+        final Object[] results = new Object[4];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    results[index] = singleFlight.run("key", slow);
+                }
+            };
+            threads[i].start();
+            if (i == 0) {
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            }
+        }
+        release.countDown();
+        for (Thread t : threads) {
+            t.join(10000);
+        }
+        assertEquals(1, computations.get());
+        for (Object r : results) {
+            assertEquals("result", r);
+        }
+    }
+
+    public void testRecursiveRequest() {
+        final ConcurrentAnalysisCache.SingleFlight singleFlight = new ConcurrentAnalysisCache.SingleFlight();
+        final AtomicInteger depth = new AtomicInteger();
+        Object result = singleFlight.run("key", new ConcurrentAnalysisCache.Computation() {
+            @Override
+            public Object compute() {
+                if (depth.incrementAndGet() == 1) {
+                    return singleFlight.run("key", this);
+                }
+                return "inner";
+            }
+        });
+        assertEquals("inner", result);
+    }
+}
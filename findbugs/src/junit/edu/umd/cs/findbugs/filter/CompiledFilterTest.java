@@ -0,0 +1,126 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.filter;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.umd.cs.findbugs.BugInstance;
+
+public class CompiledFilterTest {
+
+    private static BugInstance bug(String type, String className, String methodName) {
+        BugInstance bug = new BugInstance(type, 2);
+        bug.addClass(className);
+        bug.addMethod(className, methodName, "()V", false);
+        return bug;
+    }
+
+    private static Matcher and(Matcher... children) {
+        AndMatcher result = new AndMatcher();
+        for (Matcher child : children) {
+            result.addChild(child);
+        }
+        return result;
+    }
+
+    private static Matcher or(Matcher... children) {
+        OrMatcher result = new OrMatcher();
+        for (Matcher child : children) {
+            result.addChild(child);
+        }
+        return result;
+    }
+
+    private static Matcher not(Matcher child) {
+        NotMatcher result = new NotMatcher();
+        result.addChild(child);
+        return result;
+    }
+
+    @Test
+    public void matchesLikeOrMatcher() {
+        List<Matcher> rules = Arrays.asList(
+                new ClassMatcher("com.example.Foo"),
+                new ClassMatcher("~com\\.example\\.gen\\..*"),
+                new ClassMatcher("~.*Test"),
+                new BugMatcher(null, "DLS_DEAD_LOCAL_STORE", null),
+                new BugMatcher("UrF", null, null),
+                and(new BugMatcher(null, "NP_NULL_ON_SOME_PATH", null), new MethodMatcher("run")),
+                and(new ClassMatcher("~com\\.example\\.a.*"), new MethodMatcher("~get.*")),
+                or(new ClassMatcher("com.example.Bar"), new BugMatcher(null, " SE_BAD_FIELD ", null)),
+                and(not(new ClassMatcher("~com\\.example\\..*")), new MethodMatcher("main")),
+                and(new PriorityMatcher("2"), new BugMatcher(null, "EI_EXPOSE_REP", null)));
+        List<BugInstance> bugs = new ArrayList<BugInstance>();
+        for (String type : new String[] { "DLS_DEAD_LOCAL_STORE", "NP_NULL_ON_SOME_PATH", "URF_UNREAD_FIELD",
+                "SE_BAD_FIELD", "EI_EXPOSE_REP", "UUF_UNUSED_FIELD" }) {
+            for (String className : new String[] { "com.example.Foo", "com.example.Bar", "com.example.gen.Baz",
+                    "com.example.FooTest", "com.example.abc.Qux", "org.other.Main" }) {
+                for (String methodName : new String[] { "run", "getX", "main" }) {
+                    bugs.add(bug(type, className, methodName));
+                }
+            }
+        }
+
+        for (int n = 0; n <= rules.size(); n++) {
+            Filter filter = new Filter();
+            OrMatcher expected = new OrMatcher();
+            for (Matcher rule : rules.subList(0, n)) {
+                filter.addChild(rule);
+                expected.addChild(rule);
+            }
+            for (BugInstance bug : bugs) {
+                assertEquals(n + " rules, " + bug.getType() + " in " + bug.getPrimaryMethod().getFullMethod(bug.getPrimaryClass()),
+                        expected.match(bug), filter.match(bug));
+            }
+        }
+    }
+
+    @Test
+    public void followsEnabledChildren() {
+        Filter filter = new Filter();
+        Matcher rule = new ClassMatcher("com.example.Foo");
+        filter.addChild(rule);
+        BugInstance bug = bug("DLS_DEAD_LOCAL_STORE", "com.example.Foo", "run");
+        assertTrue(filter.match(bug));
+        filter.disable(rule);
+        assertFalse(filter.match(bug));
+        filter.enable(rule);
+        assertTrue(filter.match(bug));
+        filter.removeChild(rule);
+        assertFalse(filter.match(bug));
+    }
+
+    @Test
+    public void literalPrefix() {
+        assertEquals("com.example.", CompiledFilter.literalPrefix("com\\.example\\..*"));
+        assertEquals("com.exampl", CompiledFilter.literalPrefix("com\\.example?"));
+        assertEquals("", CompiledFilter.literalPrefix(".*Test"));
+        assertEquals("", CompiledFilter.literalPrefix("com\\.a|org\\.b"));
+        assertEquals("", CompiledFilter.literalPrefix("(?i)com"));
+        assertEquals("com", CompiledFilter.literalPrefix("com\\w+"));
+        assertEquals("Foo$", CompiledFilter.literalPrefix("Foo\\$[0-9]+"));
+    }
+}
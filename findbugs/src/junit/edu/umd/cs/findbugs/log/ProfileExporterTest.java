@@ -0,0 +1,87 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2005, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ProfileExporterTest extends TestCase {
+
+    private Profiler profiler;
+
+    private ProfileExporter exporter;
+
+    @Override
+    protected void setUp() throws Exception {
+        profiler = new Profiler();
+        exporter = new ProfileExporter(profiler, 2);
+        profiler.addListener(exporter);
+    }
+
+    public void testKeepsSlowestCalls() {
+        exporter.callFinished(String.class, "a", 10, 0);
+        exporter.callFinished(String.class, "b", 30, 0);
+        exporter.callFinished(String.class, "c", 20, 0);
+        exporter.callFinished(String.class, "d", 5, 0);
+
+        List<ProfileExporter.Call> calls = exporter.getSlowestCalls();
+        assertEquals(2, calls.size());
+        assertEquals("b", calls.get(0).subject);
+        assertEquals("c", calls.get(1).subject);
+    }
+
+    public void testContextTotals() {
+        profiler.startContext("Foo");
+        profiler.start(Integer.class);
+        profiler.end(Integer.class);
+        profiler.endContext("Foo");
+        exporter.contextFinished("Bar", 1000000000L, 0);
+        exporter.contextFinished("Bar", 1000000000L, 0);
+
+        List<Map.Entry<String, ProfileExporter.ContextTotals>> contexts = exporter.getSlowestContexts();
+        assertEquals(2, contexts.size());
+        assertEquals("Bar", contexts.get(0).getKey());
+        assertEquals(2, contexts.get(0).getValue().visits.get());
+        assertEquals(2000000000L, contexts.get(0).getValue().nanos.get());
+        assertEquals("Foo", contexts.get(1).getKey());
+        assertEquals(1, contexts.get(1).getValue().visits.get());
+    }
+
+    public void testEscaping() {
+        assertEquals("plain", ProfileExporter.csv("plain"));
+        assertEquals("\"a,\"\"b\"\"\"", ProfileExporter.csv("a,\"b\""));
+        assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", ProfileExporter.json("a\"b\\c\n\u0001"));
+    }
+
+    public void testWriteCSV() {
+        exporter.contextFinished("Foo", 100, 64);
+        exporter.callFinished(String.class, "Foo.bar()V", 50, 32);
+        StringWriter buf = new StringWriter();
+        exporter.writeCSV(new PrintWriter(buf));
+        String[] lines = buf.toString().split("\\r?\\n");
+        assertEquals("kind,name,subject,calls,totalNanos,maxNanos,allocatedBytes", lines[0]);
+        assertEquals("class,Foo,,1,100,,64", lines[1]);
+        assertEquals("call,java.lang.String,Foo.bar()V,1,50,50,32", lines[2]);
+    }
+}